@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * A {@link CharSequence} view of a byte range, mapping every byte to the char
+ * with the same value (ISO-8859-1).
+ * <p>
+ * This allows the {@link PolicyTokenizer} to work directly on raw header bytes.
+ * Bytes outside of the ASCII range show up as chars {@code >= 0x80} and are
+ * therefore rejected by the tokenizer. Only {@link #subSequence(int, int)} and
+ * {@link #toString()} create {@code String}s.
+ * </p>
+ * <p>
+ * The bytes are not copied; the underlying array or buffer must not be
+ * modified while the view is in use.
+ * </p>
+ */
+final class AsciiByteSequence implements CharSequence {
+    private final byte[] bytes_;
+    private final ByteBuffer buffer_;
+    private final int offset_;
+    private final int length_;
+
+    private AsciiByteSequence(final byte[] bytes, final ByteBuffer buffer, final int offset, final int length) {
+        bytes_ = bytes;
+        buffer_ = buffer;
+        offset_ = offset;
+        length_ = length;
+    }
+
+    /**
+     * Returns a view of the given range of the array.
+     *
+     * @param bytes the array
+     * @param offset the start of the range
+     * @param length the length of the range
+     * @return a view of the given range of the array
+     * @throws IndexOutOfBoundsException if the range is outside of the array
+     */
+    static AsciiByteSequence of(final byte[] bytes, final int offset, final int length) {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        return new AsciiByteSequence(bytes, null, offset, length);
+    }
+
+    /**
+     * Returns a view of the remaining bytes of the buffer; the position of the buffer is not changed.
+     *
+     * @param buffer the buffer
+     * @return a view of the remaining bytes of the buffer; the position of the buffer is not changed
+     */
+    static AsciiByteSequence of(final ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return new AsciiByteSequence(buffer.array(), null,
+                    buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        return new AsciiByteSequence(null, buffer, buffer.position(), buffer.remaining());
+    }
+
+    @Override
+    public int length() {
+        return length_;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        Objects.checkIndex(index, length_);
+        if (bytes_ != null) {
+            return (char) (bytes_[offset_ + index] & 0xFF);
+        }
+        return (char) (buffer_.get(offset_ + index) & 0xFF);
+    }
+
+    @Override
+    public String subSequence(final int start, final int end) {
+        Objects.checkFromToIndex(start, end, length_);
+        if (bytes_ != null) {
+            return new String(bytes_, offset_ + start, end - start, StandardCharsets.ISO_8859_1);
+        }
+        final byte[] copy = new byte[end - start];
+        buffer_.get(offset_ + start, copy);
+        return new String(copy, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length_);
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size bounded, thread-safe LRU map.
+ * <p>
+ * The entries are spread over a small number of independently locked segments,
+ * each one an access ordered {@link LinkedHashMap}; there is no global lock.
+ * Eviction is least-recently-used per segment, which approximates a global LRU
+ * closely enough for caching purposes. Hits, misses and evictions are counted
+ * with {@link LongAdder}s.
+ * </p>
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+final class BoundedCache<K, V> {
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments_;
+    private final int maxSize_;
+
+    private final LongAdder hits_ = new LongAdder();
+    private final LongAdder misses_ = new LongAdder();
+    private final LongAdder evictions_ = new LongAdder();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize the maximum number of entries, must be positive
+     * @throws IllegalArgumentException if {@code maxSize} is not positive
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    BoundedCache(final int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        maxSize_ = maxSize;
+
+        // a power of two not larger than maxSize, so every segment holds at least one entry
+        final int segmentCount = Math.min(MAX_SEGMENTS, Integer.highestOneBit(maxSize));
+        segments_ = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            final int capacity = maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0);
+            segments_[i] = new Segment<>(capacity, evictions_);
+        }
+    }
+
+    private Segment<K, V> segmentFor(final Object key) {
+        final int h = key.hashCode();
+        return segments_[(h ^ (h >>> 16)) & (segments_.length - 1)];
+    }
+
+    /**
+     * Returns the cached value or {@code null}; counts as a hit or a miss.
+     *
+     * @param key the key
+     * @return the cached value or {@code null}; counts as a hit or a miss
+     */
+    V get(final K key) {
+        final Segment<K, V> segment = segmentFor(key);
+        final V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value == null) {
+            misses_.increment();
+        }
+        else {
+            hits_.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Adds the value unless the key is already present.
+     *
+     * @param key the key
+     * @param value the value
+     * @return the value now associated with the key
+     */
+    V putIfAbsent(final K key, final V value) {
+        final Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            final V existing = segment.putIfAbsent(key, value);
+            return existing == null ? value : existing;
+        }
+    }
+
+    /**
+     * Adds the value, replacing the value associated with the key if any.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    void put(final K key, final V value) {
+        final Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+    }
+
+    /**
+     * Returns the maximum number of entries.
+     *
+     * @return the maximum number of entries
+     */
+    int getMaxSize() {
+        return maxSize_;
+    }
+
+    /**
+     * Returns the current number of entries.
+     *
+     * @return the current number of entries
+     */
+    int size() {
+        int size = 0;
+        for (final Segment<K, V> segment : segments_) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes all entries; the statistics are not reset.
+     */
+    void clear() {
+        for (final Segment<K, V> segment : segments_) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of lookups that found a value.
+     *
+     * @return the number of lookups that found a value
+     */
+    long getHitCount() {
+        return hits_.sum();
+    }
+
+    /**
+     * Returns the number of lookups that did not find a value.
+     *
+     * @return the number of lookups that did not find a value
+     */
+    long getMissCount() {
+        return misses_.sum();
+    }
+
+    /**
+     * Returns the number of entries removed to respect the size bound.
+     *
+     * @return the number of entries removed to respect the size bound
+     */
+    long getEvictionCount() {
+        return evictions_.sum();
+    }
+
+    private static final class Segment<K, V> {
+        private final LinkedHashMap<K, V> map_ = new LinkedHashMap<>(16, 0.75f, true);
+        private final int capacity_;
+        private final LongAdder evictions_;
+
+        Segment(final int capacity, final LongAdder evictions) {
+            capacity_ = capacity;
+            evictions_ = evictions;
+        }
+
+        V get(final K key) {
+            return map_.get(key);
+        }
+
+        V putIfAbsent(final K key, final V value) {
+            final V existing = map_.putIfAbsent(key, value);
+            evictIfFull();
+            return existing;
+        }
+
+        void put(final K key, final V value) {
+            map_.put(key, value);
+            evictIfFull();
+        }
+
+        int size() {
+            return map_.size();
+        }
+
+        void clear() {
+            map_.clear();
+        }
+
+        // the map is access ordered, its first entry is the least recently used one
+        private void evictIfFull() {
+            if (map_.size() > capacity_) {
+                final Iterator<K> eldest = map_.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                evictions_.increment();
+            }
+        }
+    }
+}
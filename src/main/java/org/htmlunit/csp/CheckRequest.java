@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import org.htmlunit.csp.url.URLWithScheme;
+
+/**
+ * A description of a request, inline content or navigation to be checked with
+ * {@link Policy#check(CheckRequest)} or {@link CompiledPolicy#check(CheckRequest)}.
+ * <p>
+ * The {@code allows*} methods of {@link Policy} take every piece of information as an
+ * {@link java.util.Optional}, which costs an allocation per argument and call. A request
+ * holds the same information in plain fields, {@code null} meaning unknown or absent, and
+ * can be reused: set the fields for one check, call {@link #reset()} and fill it in again
+ * for the next one. The {@link Destination} tells which check is made and which fields
+ * are used; all others are ignored.
+ * </p>
+ * <p>
+ * Instances are not thread-safe.
+ * </p>
+ */
+public final class CheckRequest {
+
+    /**
+     * The kinds of checks, each one corresponding to an {@code allows*} method of {@link Policy}.
+     */
+    public enum Destination {
+        /** {@link Policy#allowsExternalScript}: nonce, integrity, URL, parser-inserted and origin. */
+        Script,
+        /** {@link Policy#allowsExternalStyle}: nonce, URL and origin. */
+        Style,
+        /** {@link Policy#allowsImage}: URL and origin. */
+        Image,
+        /** {@link Policy#allowsFont}: URL and origin. */
+        Font,
+        /** {@link Policy#allowsMedia}: URL and origin. */
+        Media,
+        /** {@link Policy#allowsObject}: URL and origin. */
+        Object,
+        /** {@link Policy#allowsFrame}: URL and origin. */
+        Frame,
+        /** {@link Policy#allowsWorker}: URL and origin. */
+        Worker,
+        /** {@link Policy#allowsApplicationManifest}: URL and origin. */
+        Manifest,
+        /** {@link Policy#allowsPrefetch}: URL and origin. */
+        Prefetch,
+        /** {@link Policy#allowsConnection}: URL and origin. */
+        Connection,
+        /** {@link Policy#allowsNavigation}: URL, redirect information and origin. */
+        Navigation,
+        /** {@link Policy#allowsFormAction}: URL, redirect information and origin. */
+        FormAction,
+        /** {@link Policy#allowsFrameAncestor}: URL and origin. */
+        FrameAncestor,
+        /** {@link Policy#allowsInlineScript}: nonce, source and parser-inserted. */
+        InlineScript,
+        /** {@link Policy#allowsInlineStyle}: nonce and source. */
+        InlineStyle,
+        /** {@link Policy#allowsScriptAsAttribute}: source. */
+        ScriptAttribute,
+        /** {@link Policy#allowsStyleAsAttribute}: source. */
+        StyleAttribute,
+        /** {@link Policy#allowsJavascriptUrlNavigation}: source (without the scheme) and origin. */
+        JavascriptUrl
+    }
+
+    private Destination destination_;
+    private URLWithScheme url_;
+    private URLWithScheme origin_;
+    private String nonce_;
+    private String integrity_;
+    private String source_;
+    private Boolean parserInserted_;
+    private Boolean redirected_;
+    private URLWithScheme redirectedTo_;
+    private InlineDigestCache inlineDigestCache_;
+
+    /**
+     * Creates an empty request; the destination has to be set before it is checked.
+     */
+    public CheckRequest() {
+    }
+
+    /**
+     * Creates a request for the given destination.
+     *
+     * @param destination the kind of check
+     */
+    public CheckRequest(final Destination destination) {
+        destination_ = destination;
+    }
+
+    /**
+     * Clears all fields but the origin and the inline digest cache, which usually stay
+     * the same for all requests of a document.
+     *
+     * @return this request
+     */
+    public CheckRequest reset() {
+        destination_ = null;
+        url_ = null;
+        nonce_ = null;
+        integrity_ = null;
+        source_ = null;
+        parserInserted_ = null;
+        redirected_ = null;
+        redirectedTo_ = null;
+        return this;
+    }
+
+    /**
+     * Returns the kind of check.
+     *
+     * @return the destination, or {@code null} if not set
+     */
+    public Destination getDestination() {
+        return destination_;
+    }
+
+    /**
+     * Sets the kind of check.
+     *
+     * @param destination the destination
+     * @return this request
+     */
+    public CheckRequest setDestination(final Destination destination) {
+        destination_ = destination;
+        return this;
+    }
+
+    /**
+     * Returns the URL of the resource, the navigation target or the ancestor frame.
+     *
+     * @return the URL, or {@code null} if unknown
+     */
+    public URLWithScheme getUrl() {
+        return url_;
+    }
+
+    /**
+     * Sets the URL of the resource, the navigation target or the ancestor frame.
+     *
+     * @param url the URL, or {@code null} if unknown
+     * @return this request
+     */
+    public CheckRequest setUrl(final URLWithScheme url) {
+        url_ = url;
+        return this;
+    }
+
+    /**
+     * Returns the origin of the protected resource.
+     *
+     * @return the origin, or {@code null} if unknown
+     */
+    public URLWithScheme getOrigin() {
+        return origin_;
+    }
+
+    /**
+     * Sets the origin of the protected resource.
+     *
+     * @param origin the origin, or {@code null} if unknown
+     * @return this request
+     */
+    public CheckRequest setOrigin(final URLWithScheme origin) {
+        origin_ = origin;
+        return this;
+    }
+
+    /**
+     * Returns the nonce attribute value of the element.
+     *
+     * @return the nonce, or {@code null} if the element has none
+     */
+    public String getNonce() {
+        return nonce_;
+    }
+
+    /**
+     * Sets the nonce attribute value of the element.
+     *
+     * @param nonce the nonce, or {@code null} if the element has none
+     * @return this request
+     */
+    public CheckRequest setNonce(final String nonce) {
+        nonce_ = nonce;
+        return this;
+    }
+
+    /**
+     * Returns the integrity attribute value (SRI metadata) of a script element.
+     *
+     * @return the integrity metadata, or {@code null} if the element has none
+     */
+    public String getIntegrity() {
+        return integrity_;
+    }
+
+    /**
+     * Sets the integrity attribute value (SRI metadata) of a script element.
+     *
+     * @param integrity the integrity metadata, or {@code null} if the element has none
+     * @return this request
+     */
+    public CheckRequest setIntegrity(final String integrity) {
+        integrity_ = integrity;
+        return this;
+    }
+
+    /**
+     * Returns the inline content, used for hash matching.
+     *
+     * @return the source, or {@code null} if unknown
+     */
+    public String getSource() {
+        return source_;
+    }
+
+    /**
+     * Sets the inline content, used for hash matching. For {@link Destination#JavascriptUrl}
+     * this is the code after the {@code javascript:} prefix.
+     *
+     * @param source the source, or {@code null} if unknown
+     * @return this request
+     */
+    public CheckRequest setSource(final String source) {
+        source_ = source;
+        return this;
+    }
+
+    /**
+     * Returns whether the script element is parser-inserted.
+     *
+     * @return whether the element is parser-inserted, or {@code null} if unknown
+     */
+    public Boolean getParserInserted() {
+        return parserInserted_;
+    }
+
+    /**
+     * Sets whether the script element is parser-inserted.
+     *
+     * @param parserInserted whether the element is parser-inserted, or {@code null} if unknown
+     * @return this request
+     */
+    public CheckRequest setParserInserted(final Boolean parserInserted) {
+        parserInserted_ = parserInserted;
+        return this;
+    }
+
+    /**
+     * Returns whether the navigation or form submission is a redirect.
+     *
+     * @return whether it is a redirect, or {@code null} if unknown
+     */
+    public Boolean getRedirected() {
+        return redirected_;
+    }
+
+    /**
+     * Sets whether the navigation or form submission is a redirect.
+     *
+     * @param redirected whether it is a redirect, or {@code null} if unknown
+     * @return this request
+     */
+    public CheckRequest setRedirected(final Boolean redirected) {
+        redirected_ = redirected;
+        return this;
+    }
+
+    /**
+     * Returns the final URL after a redirect.
+     *
+     * @return the URL after the redirect, or {@code null} if unknown
+     */
+    public URLWithScheme getRedirectedTo() {
+        return redirectedTo_;
+    }
+
+    /**
+     * Sets the final URL after a redirect.
+     *
+     * @param redirectedTo the URL after the redirect, or {@code null} if unknown
+     * @return this request
+     */
+    public CheckRequest setRedirectedTo(final URLWithScheme redirectedTo) {
+        redirectedTo_ = redirectedTo;
+        return this;
+    }
+
+    /**
+     * Returns the cache the digests of inline content are taken from.
+     *
+     * @return the cache, or {@code null} if the content is digested for every check
+     */
+    public InlineDigestCache getInlineDigestCache() {
+        return inlineDigestCache_;
+    }
+
+    /**
+     * Sets the cache the digests of inline content are taken from when hash-sources are
+     * checked; useful if the same inline scripts and styles are checked again and again.
+     *
+     * @param inlineDigestCache the cache, or {@code null} to digest the content for every check
+     * @return this request
+     */
+    public CheckRequest setInlineDigestCache(final InlineDigestCache inlineDigestCache) {
+        inlineDigestCache_ = inlineDigestCache;
+        return this;
+    }
+}
@@ -0,0 +1,723 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.htmlunit.csp.Policy.InlineType;
+import org.htmlunit.csp.directive.HostSourceDirective;
+import org.htmlunit.csp.directive.PluginTypesDirective;
+import org.htmlunit.csp.directive.RequireTrustedTypesForDirective;
+import org.htmlunit.csp.directive.SandboxDirective;
+import org.htmlunit.csp.directive.SourceExpressionDirective;
+import org.htmlunit.csp.url.URI;
+import org.htmlunit.csp.url.URLWithScheme;
+import org.htmlunit.csp.value.Hash;
+import org.htmlunit.csp.value.MediaType;
+
+/**
+ * An immutable, query-optimized form of a {@link Policy}, created by {@link Policy#compile()}.
+ * <p>
+ * The governing directive of every effective directive is resolved once into a table
+ * indexed by the {@link FetchDirectiveKind} ordinal, and every source list is flattened
+ * into flags, scheme bit masks and host-source arrays. The {@code allows*} methods take
+ * the same arguments and give the same answers as the ones of {@link Policy}, without
+ * walking the fallback lists or the directive objects on every call.
+ * </p>
+ * <p>
+ * A compiled policy is a frozen snapshot: everything its query methods need is captured
+ * when it is created, so changes made to the policy or its directives afterwards (e.g.
+ * {@link org.htmlunit.csp.directive.TrustedTypesDirective#setNone}) are not reflected.
+ * All fields are final and nothing is computed lazily, hence an instance can be handed
+ * to other threads without synchronization, even through a data race, and be queried
+ * by any number of threads at once without locking.
+ * </p>
+ */
+public final class CompiledPolicy {
+    private static final FetchDirectiveKind[] FETCH_DIRECTIVE_KINDS = FetchDirectiveKind.values();
+
+    private final Policy policy_;
+
+    // the governing source list per effective directive, null if there is none
+    private final CompiledSourceList[] governing_;
+    private final CompiledSourceList formAction_;
+    private final CompiledSourceList navigateTo_;
+    private final CompiledSourceList frameAncestors_;
+
+    private final boolean blockScripts_;
+    private final boolean blockForms_;
+    private final boolean allowsEval_;
+    // null if there is no plugin-types directive
+    private final MediaType[] pluginTypes_;
+
+    private final boolean allowsWildcardPolicyNames_;
+    private final boolean requiresTrustedTypesForScript_;
+    private final boolean upgradeInsecureRequests_;
+    private final boolean blockAllMixedContent_;
+    private final String serialized_;
+    private final byte[] serializedBytes_;
+
+    CompiledPolicy(final Policy policy) {
+        policy_ = policy;
+
+        // directives governing several effective directives are compiled only once
+        final Map<HostSourceDirective, CompiledSourceList> compiled = new IdentityHashMap<>();
+        governing_ = new CompiledSourceList[FETCH_DIRECTIVE_KINDS.length];
+        for (final FetchDirectiveKind kind : FETCH_DIRECTIVE_KINDS) {
+            // child-src and default-src are only used as fallbacks, never as effective directives
+            if (kind != FetchDirectiveKind.ChildSrc && kind != FetchDirectiveKind.DefaultSrc) {
+                governing_[kind.ordinal()] =
+                        compile(policy.getGoverningDirectiveForEffectiveDirective(kind).orElse(null), compiled);
+            }
+        }
+        formAction_ = compile(policy.formAction().orElse(null), compiled);
+        navigateTo_ = compile(policy.navigateTo().orElse(null), compiled);
+        frameAncestors_ = compile(policy.frameAncestors().orElse(null), compiled);
+
+        final SandboxDirective sandbox = policy.sandbox().orElse(null);
+        blockScripts_ = sandbox != null && !sandbox.allowScripts();
+        blockForms_ = sandbox != null && !sandbox.allowForms();
+
+        // This is done in prose, not in a table
+        final SourceExpressionDirective evalSourceList = policy.getFetchDirective(FetchDirectiveKind.ScriptSrc)
+                .or(() -> policy.getFetchDirective(FetchDirectiveKind.DefaultSrc)).orElse(null);
+        allowsEval_ = evalSourceList == null || evalSourceList.unsafeEval();
+
+        final PluginTypesDirective pluginTypes = policy.pluginTypes().orElse(null);
+        pluginTypes_ = pluginTypes == null ? null : pluginTypes.getMediaTypes().toArray(new MediaType[0]);
+
+        allowsWildcardPolicyNames_ = policy.allowsWildcardPolicyNames();
+        requiresTrustedTypesForScript_ = policy.requireTrustedTypesFor()
+                .map(RequireTrustedTypesForDirective::script).orElse(false);
+        upgradeInsecureRequests_ = policy.upgradeInsecureRequests();
+        blockAllMixedContent_ = policy.blockAllMixedContent();
+        serialized_ = policy.toString();
+        serializedBytes_ = serialized_.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static CompiledSourceList compile(final HostSourceDirective directive,
+            final Map<HostSourceDirective, CompiledSourceList> compiled) {
+        if (directive == null) {
+            return null;
+        }
+        return compiled.computeIfAbsent(directive, CompiledSourceList::new);
+    }
+
+    /**
+     * Returns the policy this was compiled from.
+     * <p>
+     * The policy may have been changed since; this snapshot still answers like the policy
+     * did when it was compiled.
+     * </p>
+     *
+     * @return the policy this was compiled from
+     */
+    public Policy getPolicy() {
+        return policy_;
+    }
+
+    /**
+     * Same as {@link Policy#allowsWildcardPolicyNames}.
+     *
+     * @return {@code true} if wildcard policy names are permitted by the trusted-types directive
+     */
+    public boolean allowsWildcardPolicyNames() {
+        return allowsWildcardPolicyNames_;
+    }
+
+    /**
+     * Returns whether the policy has a {@code require-trusted-types-for 'script'} directive.
+     *
+     * @return {@code true} if Trusted Types are required for script sinks
+     * @see Policy#requireTrustedTypesFor()
+     */
+    public boolean requiresTrustedTypesForScript() {
+        return requiresTrustedTypesForScript_;
+    }
+
+    /**
+     * Same as {@link Policy#upgradeInsecureRequests}.
+     *
+     * @return {@code true} if the policy contains the {@code upgrade-insecure-requests} directive
+     */
+    public boolean upgradeInsecureRequests() {
+        return upgradeInsecureRequests_;
+    }
+
+    /**
+     * Same as {@link Policy#blockAllMixedContent}.
+     *
+     * @return {@code true} if the policy contains the {@code block-all-mixed-content} directive
+     */
+    public boolean blockAllMixedContent() {
+        return blockAllMixedContent_;
+    }
+
+    /**
+     * Returns whether the governing directive for the given effective directive exists,
+     * i.e. whether {@link Policy#getGoverningDirectiveForEffectiveDirective} is non-empty.
+     *
+     * @param kind the effective {@link FetchDirectiveKind}
+     * @return {@code true} if a directive in the fallback chain of {@code kind} is present
+     * @throws IllegalArgumentException if {@code kind} is not an effective directive
+     */
+    public boolean hasGoverningDirective(final FetchDirectiveKind kind) {
+        // validates the kind like Policy does
+        FetchDirectiveKind.getFetchDirectiveFallbackList(kind);
+        return governing_[kind.ordinal()] != null;
+    }
+
+    /**
+     * Same as {@link Policy#allowsExternalScript}.
+     *
+     * @param nonce the nonce attribute value of the script element, if any
+     * @param integrity the integrity attribute value (SRI metadata), if any
+     * @param scriptUrl the URL of the external script, if known
+     * @param parserInserted whether the script element is parser-inserted;
+     *        {@link Optional#empty()} if unknown
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if the policy allows the external script
+     */
+    public boolean allowsExternalScript(
+            final Optional<String> nonce,
+            final Optional<String> integrity,
+            final Optional<? extends URLWithScheme> scriptUrl,
+            final Optional<Boolean> parserInserted,
+            final Optional<? extends URLWithScheme> origin) {
+        return allowsExternalScript(nonce.orElse(null), integrity.orElse(null), scriptUrl.orElse(null),
+                parserInserted.orElse(null), origin.orElse(null));
+    }
+
+    private boolean allowsExternalScript(final String nonce, final String integrity, final URLWithScheme scriptUrl,
+            final Boolean parserInserted, final URLWithScheme origin) {
+        if (blockScripts_) {
+            return false;
+        }
+        final CompiledSourceList list = governing_[FetchDirectiveKind.ScriptSrcElem.ordinal()];
+        if (list == null) {
+            return true;
+        }
+        if (nonce != null && list.matchesNonce(nonce)) {
+            return true;
+        }
+        if (integrity != null && list.hasHashes()) {
+            boolean bypassDueToIntegrityMatch = true;
+            boolean atLeastOneValidIntegrity = false;
+            // https://www.w3.org/TR/SRI/#parse-metadata
+            for (final String source : Utils.splitOnAsciiWhitespace(integrity)) {
+                final Optional<Hash> parsedIntegritySource = Hash.parseHash("'" + source + "'");
+                if (parsedIntegritySource.isEmpty()) {
+                    continue;
+                }
+                if (!list.containsHash(parsedIntegritySource.get())) {
+                    bypassDueToIntegrityMatch = false;
+                    break;
+                }
+                atLeastOneValidIntegrity = true;
+            }
+            if (atLeastOneValidIntegrity && bypassDueToIntegrityMatch) {
+                return true;
+            }
+        }
+        if (list.strictDynamic()) {
+            // if not the parameter is not supplied, we have to assume the worst case
+            return parserInserted != null && !parserInserted;
+        }
+        return scriptUrl != null && list.matches(scriptUrl, origin);
+    }
+
+    /**
+     * Same as {@link Policy#allowsInlineScript}.
+     *
+     * @param nonce the nonce attribute value of the script element, if any
+     * @param source the text content of the inline script, if known (used for hash matching)
+     * @param parserInserted whether the script element is parser-inserted;
+     *        {@link Optional#empty()} if unknown
+     * @return {@code true} if the policy allows the inline script
+     */
+    public boolean allowsInlineScript(final Optional<String> nonce,
+            final Optional<String> source, final Optional<Boolean> parserInserted) {
+        return allowsInlineScript(nonce.orElse(null), source.orElse(null), null, parserInserted.orElse(null));
+    }
+
+    private boolean allowsInlineScript(final String nonce, final String source, final InlineDigestCache digestCache,
+            final Boolean parserInserted) {
+        if (blockScripts_) {
+            return false;
+        }
+        return matchesElement(InlineType.Script, nonce, source, digestCache, parserInserted);
+    }
+
+    /**
+     * Same as {@link Policy#allowsScriptAsAttribute}.
+     *
+     * @param source the text content of the event handler attribute, if known
+     * @return {@code true} if the policy allows the script attribute
+     */
+    public boolean allowsScriptAsAttribute(final Optional<String> source) {
+        return allowsScriptAsAttribute(source.orElse(null), null);
+    }
+
+    private boolean allowsScriptAsAttribute(final String source, final InlineDigestCache digestCache) {
+        if (blockScripts_) {
+            return false;
+        }
+        return matchesElement(InlineType.ScriptAttribute, null, source, digestCache, null);
+    }
+
+    /**
+     * Same as {@link Policy#allowsEval}.
+     *
+     * @return {@code true} if the policy allows eval
+     */
+    public boolean allowsEval() {
+        return allowsEval_;
+    }
+
+    /**
+     * Same as {@link Policy#allowsNavigation}.
+     *
+     * @param to the initial navigation target URL, if known
+     * @param redirected whether the navigation is a redirect; {@link Optional#empty()} if unknown
+     * @param redirectedTo the final URL after redirect, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if the policy allows the navigation
+     */
+    public boolean allowsNavigation(
+            final Optional<? extends URLWithScheme> to,
+            final Optional<Boolean> redirected,
+            final Optional<? extends URLWithScheme> redirectedTo,
+            final Optional<? extends URLWithScheme> origin) {
+        return allowsNavigation(to.orElse(null), redirected.orElse(null), redirectedTo.orElse(null),
+                origin.orElse(null));
+    }
+
+    private boolean allowsNavigation(final URLWithScheme to, final Boolean redirected,
+            final URLWithScheme redirectedTo, final URLWithScheme origin) {
+        if (navigateTo_ == null) {
+            return true;
+        }
+        if (navigateTo_.unsafeAllowRedirects()) {
+            // if unsafe-allow-redirects is present, check `to` in non-redirect or maybe-non-redirect cases
+            if ((redirected == null || !redirected) && (to == null || !navigateTo_.matches(to, origin))) {
+                return false;
+            }
+            // if unsafe-allow-redirects is present, check `redirectedTo` in redirect or maybe-redirect cases
+            return redirected != null && !redirected
+                    || redirectedTo != null && navigateTo_.matches(redirectedTo, origin);
+        }
+        // if unsafe-allow-redirects is absent, always and only check `to`
+        return to != null && navigateTo_.matches(to, origin);
+    }
+
+    /**
+     * Same as {@link Policy#allowsFormAction}.
+     *
+     * @param to the form action target URL, if known
+     * @param redirected whether the form submission results in a redirect;
+     *        {@link Optional#empty()} if unknown
+     * @param redirectedTo the final URL after redirect, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if the policy allows the form action
+     */
+    public boolean allowsFormAction(
+            final Optional<? extends URLWithScheme> to,
+            final Optional<Boolean> redirected,
+            final Optional<? extends URLWithScheme> redirectedTo,
+            final Optional<? extends URLWithScheme> origin) {
+        return allowsFormAction(to.orElse(null), redirected.orElse(null), redirectedTo.orElse(null),
+                origin.orElse(null));
+    }
+
+    private boolean allowsFormAction(final URLWithScheme to, final Boolean redirected,
+            final URLWithScheme redirectedTo, final URLWithScheme origin) {
+        if (blockForms_) {
+            return false;
+        }
+        if (formAction_ != null) {
+            return to != null && formAction_.matches(to, origin);
+        }
+        // this isn't implemented like other fallbacks because
+        // it isn't one: form-action does not respect unsafe-allow-redirects
+        return allowsNavigation(to, redirected, redirectedTo, origin);
+    }
+
+    /**
+     * Same as {@link Policy#allowsJavascriptUrlNavigation}.
+     *
+     * @param source the JavaScript source code after the {@code javascript:} prefix, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if the policy allows the {@code javascript:} URL navigation
+     */
+    public boolean allowsJavascriptUrlNavigation(
+            final Optional<String> source,
+            final Optional<? extends URLWithScheme> origin) {
+        return allowsJavascriptUrlNavigation(source.orElse(null), null, origin.orElse(null));
+    }
+
+    private boolean allowsJavascriptUrlNavigation(final String source, final InlineDigestCache digestCache,
+            final URLWithScheme origin) {
+        // only the scheme of a URL without host is matched
+        if (navigateTo_ != null && !navigateTo_.matches("javascript", null, null, "", origin)) {
+            return false;
+        }
+        return matchesElement(InlineType.Navigation, null, source, digestCache, Boolean.FALSE);
+    }
+
+    /**
+     * Same as {@link Policy#allowsExternalStyle}.
+     *
+     * @param nonce the nonce attribute value of the link element, if any
+     * @param styleUrl the URL of the external stylesheet, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if the policy allows the external style
+     */
+    public boolean allowsExternalStyle(
+            final Optional<String> nonce,
+            final Optional<? extends URLWithScheme> styleUrl,
+            final Optional<? extends URLWithScheme> origin) {
+        return allowsExternalStyle(nonce.orElse(null), styleUrl.orElse(null), origin.orElse(null));
+    }
+
+    private boolean allowsExternalStyle(final String nonce, final URLWithScheme styleUrl,
+            final URLWithScheme origin) {
+        final CompiledSourceList list = governing_[FetchDirectiveKind.StyleSrcElem.ordinal()];
+        if (list == null) {
+            return true;
+        }
+        if (nonce != null && list.matchesNonce(nonce)) {
+            return true;
+        }
+        // integrity is not used: https://github.com/w3c/webappsec-csp/issues/430
+        return styleUrl != null && list.matches(styleUrl, origin);
+    }
+
+    /**
+     * Same as {@link Policy#allowsInlineStyle}.
+     *
+     * @param nonce the nonce attribute value of the style element, if any
+     * @param source the text content of the inline style, if known (used for hash matching)
+     * @return {@code true} if the policy allows the inline style
+     */
+    public boolean allowsInlineStyle(final Optional<String> nonce, final Optional<String> source) {
+        return matchesElement(InlineType.Style, nonce.orElse(null), source.orElse(null), null, null);
+    }
+
+    /**
+     * Same as {@link Policy#allowsStyleAsAttribute}.
+     *
+     * @param source the text content of the style attribute, if known
+     * @return {@code true} if the policy allows the style attribute
+     */
+    public boolean allowsStyleAsAttribute(final Optional<String> source) {
+        return matchesElement(InlineType.StyleAttribute, null, source.orElse(null), null, null);
+    }
+
+    /**
+     * Same as {@link Policy#allowsFrame}.
+     *
+     * @param source the URL of the framed resource, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if the policy allows the frame
+     */
+    public boolean allowsFrame(final Optional<? extends URLWithScheme> source,
+                               final Optional<? extends URLWithScheme> origin) {
+        return allowsFetch(FetchDirectiveKind.FrameSrc, source.orElse(null), origin.orElse(null));
+    }
+
+    /**
+     * Same as {@link Policy#allowsFrameAncestor}.
+     *
+     * @param source the URL of the ancestor frame, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if the policy allows the frame ancestor
+     */
+    public boolean allowsFrameAncestor(final Optional<? extends URLWithScheme> source,
+                                       final Optional<? extends URLWithScheme> origin) {
+        return allowsFrameAncestor(source.orElse(null), origin.orElse(null));
+    }
+
+    private boolean allowsFrameAncestor(final URLWithScheme source, final URLWithScheme origin) {
+        if (frameAncestors_ == null) {
+            return true;
+        }
+        return source != null && frameAncestors_.matches(source, origin);
+    }
+
+    /**
+     * Same as {@link Policy#allowsConnection}.
+     *
+     * @param source the URL to connect to, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if the policy allows the connection
+     */
+    public boolean allowsConnection(final Optional<? extends URLWithScheme> source,
+                                    final Optional<? extends URLWithScheme> origin) {
+        return allowsConnection(source.orElse(null), origin.orElse(null));
+    }
+
+    private boolean allowsConnection(final URLWithScheme actualSource, final URLWithScheme origin) {
+        final CompiledSourceList list = governing_[FetchDirectiveKind.ConnectSrc.ordinal()];
+        if (list == null) {
+            return true;
+        }
+        if (actualSource == null) {
+            return false;
+        }
+        // See https://fetch.spec.whatwg.org/#concept-websocket-establish
+        // Also browsers don't implement this; see https://github.com/w3c/webappsec-csp/issues/429
+        String scheme = actualSource.getScheme();
+        if (actualSource instanceof URI) {
+            if ("ws".equals(scheme)) {
+                scheme = "http";
+            }
+            else if ("wss".equals(scheme)) {
+                scheme = "https";
+            }
+        }
+        return list.matches(scheme, actualSource.getHost(), actualSource.getPort(), actualSource.getPath(),
+                origin);
+    }
+
+    /**
+     * Same as {@link Policy#allowsFont}.
+     *
+     * @param source the URL of the font resource, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if the policy allows the font
+     */
+    public boolean allowsFont(final Optional<? extends URLWithScheme> source,
+                              final Optional<? extends URLWithScheme> origin) {
+        return allowsFetch(FetchDirectiveKind.FontSrc, source.orElse(null), origin.orElse(null));
+    }
+
+    /**
+     * Same as {@link Policy#allowsImage}.
+     *
+     * @param source the URL of the image resource, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if the policy allows the image
+     */
+    public boolean allowsImage(final Optional<? extends URLWithScheme> source,
+                               final Optional<? extends URLWithScheme> origin) {
+        return allowsFetch(FetchDirectiveKind.ImgSrc, source.orElse(null), origin.orElse(null));
+    }
+
+    /**
+     * Same as {@link Policy#allowsApplicationManifest}.
+     *
+     * @param source the URL of the manifest resource, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if the policy allows the manifest
+     */
+    public boolean allowsApplicationManifest(final Optional<? extends URLWithScheme> source,
+                                             final Optional<? extends URLWithScheme> origin) {
+        return allowsFetch(FetchDirectiveKind.ManifestSrc, source.orElse(null), origin.orElse(null));
+    }
+
+    /**
+     * Same as {@link Policy#allowsMedia}.
+     *
+     * @param source the URL of the media resource, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if the policy allows the media
+     */
+    public boolean allowsMedia(final Optional<? extends URLWithScheme> source,
+                               final Optional<? extends URLWithScheme> origin) {
+        return allowsFetch(FetchDirectiveKind.MediaSrc, source.orElse(null), origin.orElse(null));
+    }
+
+    /**
+     * Same as {@link Policy#allowsObject}.
+     *
+     * @param source the URL of the object resource, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if the policy allows the object
+     */
+    public boolean allowsObject(final Optional<? extends URLWithScheme> source,
+                                final Optional<? extends URLWithScheme> origin) {
+        return allowsFetch(FetchDirectiveKind.ObjectSrc, source.orElse(null), origin.orElse(null));
+    }
+
+    /**
+     * Same as {@link Policy#allowsPrefetch}.
+     *
+     * @param source the URL to prefetch, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if the policy allows the prefetch
+     */
+    public boolean allowsPrefetch(final Optional<? extends URLWithScheme> source,
+                                  final Optional<? extends URLWithScheme> origin) {
+        return allowsFetch(FetchDirectiveKind.PrefetchSrc, source.orElse(null), origin.orElse(null));
+    }
+
+    /**
+     * Same as {@link Policy#allowsWorker}.
+     *
+     * @param source the URL of the worker script, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if the policy allows the worker
+     */
+    public boolean allowsWorker(final Optional<? extends URLWithScheme> source,
+                                final Optional<? extends URLWithScheme> origin) {
+        return allowsFetch(FetchDirectiveKind.WorkerSrc, source.orElse(null), origin.orElse(null));
+    }
+
+    /**
+     * Same as {@link Policy#allowsPlugin}.
+     *
+     * @param mediaType the media type of the plugin, if known
+     * @return {@code true} if the policy allows the plugin type
+     */
+    public boolean allowsPlugin(final Optional<? extends MediaType> mediaType) {
+        if (pluginTypes_ == null) {
+            return true;
+        }
+        if (mediaType.isEmpty()) {
+            return false;
+        }
+        final MediaType actualMediaType = mediaType.get();
+        for (final MediaType candidate : pluginTypes_) {
+            if (candidate.equals(actualMediaType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Same as {@link Policy#check}.
+     *
+     * @param request the request to check
+     * @return {@code true} if the policy allows the request
+     * @throws IllegalArgumentException if the request has no destination
+     */
+    public boolean check(final CheckRequest request) {
+        final CheckRequest.Destination destination = request.getDestination();
+        if (destination == null) {
+            throw new IllegalArgumentException("The request has no destination");
+        }
+        final URLWithScheme url = request.getUrl();
+        final URLWithScheme origin = request.getOrigin();
+        final InlineDigestCache digestCache = request.getInlineDigestCache();
+        return switch (destination) {
+            case Script -> allowsExternalScript(request.getNonce(), request.getIntegrity(), url,
+                    request.getParserInserted(), origin);
+            case Style -> allowsExternalStyle(request.getNonce(), url, origin);
+            case Image -> allowsFetch(FetchDirectiveKind.ImgSrc, url, origin);
+            case Font -> allowsFetch(FetchDirectiveKind.FontSrc, url, origin);
+            case Media -> allowsFetch(FetchDirectiveKind.MediaSrc, url, origin);
+            case Object -> allowsFetch(FetchDirectiveKind.ObjectSrc, url, origin);
+            case Frame -> allowsFetch(FetchDirectiveKind.FrameSrc, url, origin);
+            case Worker -> allowsFetch(FetchDirectiveKind.WorkerSrc, url, origin);
+            case Manifest -> allowsFetch(FetchDirectiveKind.ManifestSrc, url, origin);
+            case Prefetch -> allowsFetch(FetchDirectiveKind.PrefetchSrc, url, origin);
+            case Connection -> allowsConnection(url, origin);
+            case Navigation -> allowsNavigation(url, request.getRedirected(), request.getRedirectedTo(), origin);
+            case FormAction -> allowsFormAction(url, request.getRedirected(), request.getRedirectedTo(), origin);
+            case FrameAncestor -> allowsFrameAncestor(url, origin);
+            case InlineScript -> allowsInlineScript(request.getNonce(), request.getSource(), digestCache,
+                    request.getParserInserted());
+            case InlineStyle -> matchesElement(InlineType.Style, request.getNonce(), request.getSource(),
+                    digestCache, null);
+            case ScriptAttribute -> allowsScriptAsAttribute(request.getSource(), digestCache);
+            case StyleAttribute -> matchesElement(InlineType.StyleAttribute, null, request.getSource(),
+                    digestCache, null);
+            case JavascriptUrl -> allowsJavascriptUrlNavigation(request.getSource(), digestCache, origin);
+        };
+    }
+
+    private boolean allowsFetch(final FetchDirectiveKind kind, final URLWithScheme source,
+            final URLWithScheme origin) {
+        final CompiledSourceList list = governing_[kind.ordinal()];
+        if (list == null) {
+            return true;
+        }
+        return source != null && list.matches(source, origin);
+    }
+
+    private boolean matchesElement(final InlineType type, final String nonce, final String source,
+            final InlineDigestCache digestCache, final Boolean parserInserted) {
+        final CompiledSourceList list = governing_[type.getEffectiveDirective().ordinal()];
+        return list == null || list.matchesElement(type, nonce, source, digestCache, parserInserted);
+    }
+
+    /**
+     * Returns the serialized form of the policy at the time it was compiled.
+     *
+     * @return the serialized policy
+     */
+    @Override
+    public String toString() {
+        return serialized_;
+    }
+
+    /**
+     * Returns the length of the serialized form, in characters and in ASCII bytes.
+     *
+     * @return the length of {@link #toString()}
+     */
+    public int getSerializedLength() {
+        return serializedBytes_.length;
+    }
+
+    /**
+     * Writes the serialized form of the policy at the time it was compiled to the
+     * given {@link Appendable}.
+     *
+     * @param out the target
+     * @throws IOException if the target throws
+     */
+    public void appendTo(final Appendable out) throws IOException {
+        out.append(serialized_);
+    }
+
+    /**
+     * Writes the serialized form of the policy at the time it was compiled as ASCII bytes
+     * to the given buffer, starting at its position.
+     * <p>
+     * The bytes are encoded once when the policy is compiled, so emitting the policy
+     * as a header value is a plain copy. The position is advanced by
+     * {@link #getSerializedLength()}. Nothing is written if the buffer has not enough
+     * space left.
+     * </p>
+     *
+     * @param out the target buffer
+     * @throws java.nio.BufferOverflowException if the buffer has less than
+     *         {@link #getSerializedLength()} bytes remaining
+     * @throws java.nio.ReadOnlyBufferException if the buffer is read-only
+     */
+    public void writeTo(final ByteBuffer out) {
+        out.put(serializedBytes_);
+    }
+
+    /**
+     * Returns the serialized form of the policy at the time it was compiled as ASCII bytes.
+     * <p>
+     * The returned buffer is a read-only view of the bytes cached by this compiled policy,
+     * positioned at the start; every call returns a new view.
+     * </p>
+     *
+     * @return a read-only buffer holding the serialized policy
+     */
+    public ByteBuffer getSerializedBytes() {
+        return ByteBuffer.wrap(serializedBytes_).asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+import org.htmlunit.csp.Policy.InlineType;
+import org.htmlunit.csp.directive.HostSourceDirective;
+import org.htmlunit.csp.directive.SourceExpressionDirective;
+import org.htmlunit.csp.internal.HostKind;
+import org.htmlunit.csp.internal.PathSegments;
+import org.htmlunit.csp.url.URI;
+import org.htmlunit.csp.url.URLWithScheme;
+import org.htmlunit.csp.value.Hash;
+import org.htmlunit.csp.value.Host;
+import org.htmlunit.csp.value.Scheme;
+
+/**
+ * The flattened form of a source list used by {@link CompiledPolicy}.
+ * <p>
+ * The keywords become flags, the scheme-sources a bit mask over the schemes with
+ * special matching rules, and the host-sources parallel arrays looked up through a
+ * {@link HostIndex}. The matching follows
+ * {@link Policy#doesUrlMatchSourceListInOrigin} and the inline checks of {@link Policy}
+ * step by step.
+ * </p>
+ */
+final class CompiledSourceList {
+    // the URL schemes scheme-part matching treats specially
+    static final int HTTP = 1;
+    static final int HTTPS = 1 << 1;
+    static final int WS = 1 << 2;
+    static final int WSS = 1 << 3;
+    static final int FTP = 1 << 4;
+    // https://fetch.spec.whatwg.org/#network-scheme
+    private static final int NETWORK_SCHEMES = FTP | HTTP | HTTPS;
+
+    private static final String[] NO_STRINGS = {};
+    private static final Hash[] NO_HASHES = {};
+
+    private final boolean star_;
+    private final boolean self_;
+    private final boolean unsafeEval_;
+    private final boolean strictDynamic_;
+    private final boolean unsafeHashes_;
+    private final boolean unsafeAllowRedirects_;
+    // https://w3c.github.io/webappsec-csp/#allow-all-inline, for script like and for style types
+    private final boolean allowAllInlineScript_;
+    private final boolean allowAllInlineStyle_;
+
+    // bit set of the URL schemes matched by the scheme-sources with special rules,
+    // all the other scheme-sources only match their own scheme
+    private final int schemeMask_;
+    private final String[] otherSchemes_;
+
+    // the host-sources; a host-source without scheme has the mask -1 and uses the scheme of the origin
+    private final int[] hostSchemeMasks_;
+    private final String[] hostOtherSchemes_;
+    private final Host[] hosts_;
+    private final int[] ports_;
+    private final HostKind[] kinds_;
+    private final PathSegments[] paths_;
+    private final HostIndex hostIndex_;
+
+    // the directive holding the nonce-sources, null if it has none
+    private final SourceExpressionDirective nonceSources_;
+    private final Hash[] hashes_;
+    private final HashSourceSet hashSources_;
+
+    CompiledSourceList(final HostSourceDirective directive) {
+        star_ = directive.star();
+        self_ = directive.self();
+
+        int schemeMask = 0;
+        final List<Scheme> schemes = directive.getSchemes();
+        int others = 0;
+        final String[] otherSchemes = new String[schemes.size()];
+        for (final Scheme scheme : schemes) {
+            final int mask = matchedSchemes(scheme.value());
+            if (mask == 0) {
+                otherSchemes[others++] = scheme.value();
+            }
+            schemeMask |= mask;
+        }
+        schemeMask_ = schemeMask;
+        otherSchemes_ = others == 0 ? NO_STRINGS : Arrays.copyOf(otherSchemes, others);
+
+        final List<Host> hosts = directive.getHosts();
+        final int hostCount = hosts.size();
+        hostSchemeMasks_ = new int[hostCount];
+        hostOtherSchemes_ = new String[hostCount];
+        hosts_ = new Host[hostCount];
+        ports_ = new int[hostCount];
+        kinds_ = new HostKind[hostCount];
+        paths_ = new PathSegments[hostCount];
+        for (int i = 0; i < hostCount; i++) {
+            final Host host = hosts.get(i);
+            final String scheme = host.scheme();
+            if (scheme == null) {
+                hostSchemeMasks_[i] = -1;
+            }
+            else {
+                hostSchemeMasks_[i] = matchedSchemes(scheme);
+                if (hostSchemeMasks_[i] == 0) {
+                    hostOtherSchemes_[i] = scheme;
+                }
+            }
+            hosts_[i] = host;
+            ports_[i] = host.port();
+            kinds_[i] = Policy.DIRECTIVES.hostKind(directive, i);
+            paths_[i] = Policy.DIRECTIVES.hostPath(directive, i);
+        }
+        hostIndex_ = new HostIndex(hosts_, kinds_);
+
+        if (directive instanceof SourceExpressionDirective sourceExpressions) {
+            unsafeEval_ = sourceExpressions.unsafeEval();
+            strictDynamic_ = sourceExpressions.strictDynamic();
+            unsafeHashes_ = sourceExpressions.unsafeHashes();
+            unsafeAllowRedirects_ = sourceExpressions.unsafeAllowRedirects();
+
+            nonceSources_ = sourceExpressions.getNonces().isEmpty() ? null : sourceExpressions;
+            hashes_ = sourceExpressions.getHashes().toArray(NO_HASHES);
+            hashSources_ = sourceExpressions.getHashSourceSet();
+
+            final boolean noNoncesOrHashes = nonceSources_ == null && hashes_.length == 0;
+            allowAllInlineStyle_ = noNoncesOrHashes && sourceExpressions.unsafeInline();
+            allowAllInlineScript_ = allowAllInlineStyle_ && !strictDynamic_;
+        }
+        else {
+            unsafeEval_ = false;
+            strictDynamic_ = false;
+            unsafeHashes_ = false;
+            unsafeAllowRedirects_ = false;
+            allowAllInlineScript_ = false;
+            allowAllInlineStyle_ = false;
+            nonceSources_ = null;
+            hashes_ = NO_HASHES;
+            hashSources_ = HashSourceSet.EMPTY;
+        }
+    }
+
+    /**
+     * Returns the bit of the scheme, or {@code 0} if scheme-part matching has no special rule for it.
+     *
+     * @param scheme the lowercase scheme of a URL
+     * @return the bit of the scheme, or {@code 0} if scheme-part matching has no special rule for it
+     */
+    static int schemeBit(final String scheme) {
+        return switch (scheme) {
+            case "http" -> HTTP;
+            case "https" -> HTTPS;
+            case "ws" -> WS;
+            case "wss" -> WSS;
+            case "ftp" -> FTP;
+            default -> 0;
+        };
+    }
+
+    // the URL schemes matched by a scheme-source, see https://w3c.github.io/webappsec-csp/#scheme-part-match
+    private static int matchedSchemes(final String scheme) {
+        return switch (scheme) {
+            case "http" -> HTTP | HTTPS;
+            case "https" -> HTTPS;
+            case "ws" -> WS | WSS | HTTP | HTTPS;
+            case "wss" -> WSS | HTTPS;
+            case "ftp" -> FTP;
+            default -> 0;
+        };
+    }
+
+    boolean unsafeEval() {
+        return unsafeEval_;
+    }
+
+    boolean strictDynamic() {
+        return strictDynamic_;
+    }
+
+    boolean unsafeAllowRedirects() {
+        return unsafeAllowRedirects_;
+    }
+
+    boolean hasHashes() {
+        return hashes_.length != 0;
+    }
+
+    boolean containsHash(final Hash hash) {
+        for (final Hash candidate : hashes_) {
+            if (candidate.equals(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean matchesNonce(final String nonce) {
+        return nonceSources_ != null && nonceSources_.matchesNonce(nonce);
+    }
+
+    boolean matches(final URLWithScheme url, final URLWithScheme origin) {
+        return matches(url.getScheme(), url.getHost(), url.getPort(), url.getPath(), origin);
+    }
+
+    // https://w3c.github.io/webappsec-csp/#match-url-to-source-list
+    boolean matches(final String urlScheme, final String urlHost, final Integer urlPort, final String urlPath,
+            final URLWithScheme origin) {
+        final int urlBit = schemeBit(urlScheme);
+        if (star_) {
+            if ((urlBit & NETWORK_SCHEMES) != 0) {
+                return true;
+            }
+            if (origin != null && urlScheme.equals(origin.getScheme())) {
+                return true;
+            }
+        }
+        if ((schemeMask_ & urlBit) != 0) {
+            return true;
+        }
+        for (final String scheme : otherSchemes_) {
+            if (scheme.equals(urlScheme)) {
+                return true;
+            }
+        }
+
+        if (urlHost != null && hosts_.length != 0
+                && matchesHostSources(urlBit, urlScheme, urlHost, urlPort, urlPath, origin)) {
+            return true;
+        }
+
+        if (self_ && origin != null) {
+            final String originScheme = origin.getScheme();
+            final Integer originPort = origin.getPort();
+            return Objects.equals(origin.getHost(), urlHost)
+                    && (Objects.equals(originPort, urlPort)
+                            || Objects.equals(originPort, URI.defaultPortForProtocol(originScheme))
+                            && Objects.equals(urlPort, URI.defaultPortForProtocol(urlScheme)))
+                    && ((urlBit & (HTTPS | WSS)) != 0
+                            || "http".equals(originScheme) && (urlBit & (HTTP | WS)) != 0);
+        }
+        return false;
+    }
+
+    private boolean matchesHostSources(final int urlBit, final String urlScheme, final String urlHost,
+            final Integer urlPort, final String urlPath, final URLWithScheme origin) {
+        final boolean originSchemeMatches = origin != null
+                && Policy.schemePartMatches(origin.getScheme(), urlScheme);
+
+        // host-part matching compares ignoring case; hosts that do not lowercase to ASCII
+        // can compare equal to hosts written differently and are matched one by one
+        final String host = urlHost.toLowerCase(Locale.ROOT);
+        if (!HostIndex.isAsciiLowercase(host)) {
+            for (int i = 0; i < hosts_.length; i++) {
+                if (kinds_[i].matches(hosts_[i].host(), urlHost)
+                        && matchesRest(i, urlBit, urlScheme, originSchemeMatches, urlPort, urlPath)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        if (matchesAny(hostIndex_.exact(host), urlBit, urlScheme, originSchemeMatches, urlPort, urlPath)
+                || matchesAny(hostIndex_.any(), urlBit, urlScheme, originSchemeMatches, urlPort, urlPath)) {
+            return true;
+        }
+        if (hostIndex_.hasWildcards()) {
+            // walk the labels from the right; the wildcard entries of a node need a '.' in front of its labels
+            int node = 0;
+            int end = host.length();
+            while (end > 0) {
+                final int dot = host.lastIndexOf('.', end - 1);
+                node = hostIndex_.child(node, host, dot + 1, end);
+                if (node == -1 || dot == -1) {
+                    break;
+                }
+                if (matchesAny(hostIndex_.wildcards(node), urlBit, urlScheme, originSchemeMatches, urlPort, urlPath)) {
+                    return true;
+                }
+                end = dot;
+            }
+        }
+        for (final int i : hostIndex_.unindexed()) {
+            if (kinds_[i].matches(hosts_[i].host(), urlHost)
+                    && matchesRest(i, urlBit, urlScheme, originSchemeMatches, urlPort, urlPath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesAny(final int[] entries, final int urlBit, final String urlScheme,
+            final boolean originSchemeMatches, final Integer urlPort, final String urlPath) {
+        if (entries != null) {
+            for (final int i : entries) {
+                if (matchesRest(i, urlBit, urlScheme, originSchemeMatches, urlPort, urlPath)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // the scheme, port and path parts of a host-source whose host part matches
+    private boolean matchesRest(final int i, final int urlBit, final String urlScheme,
+            final boolean originSchemeMatches, final Integer urlPort, final String urlPath) {
+        final int mask = hostSchemeMasks_[i];
+        if (mask == -1) {
+            if (!originSchemeMatches) {
+                return false;
+            }
+        }
+        else if ((mask & urlBit) == 0 && !urlScheme.equals(hostOtherSchemes_[i])) {
+            return false;
+        }
+        // url.port is non-null whenever url.host is
+        return Policy.portPartMatches(ports_[i], urlPort, urlScheme)
+                && Policy.pathPartMatches(paths_[i], urlPath);
+    }
+
+    // https://w3c.github.io/webappsec-csp/#match-element-to-source-list
+    // for Navigation, the source is the code of a javascript: URL; its digests are looked up in digestCache, if any
+    boolean matchesElement(final InlineType type, final String nonce, final String source,
+            final InlineDigestCache digestCache, final Boolean parserInserted) {
+        final boolean scriptLike = type == InlineType.Script
+                || type == InlineType.ScriptAttribute
+                || type == InlineType.Navigation;
+        if (scriptLike ? allowAllInlineScript_ : allowAllInlineStyle_) {
+            return true;
+        }
+        if (nonce != null && matchesNonce(nonce)) {
+            return true;
+        }
+        if (source != null
+                && (type == InlineType.Script || type == InlineType.Style || unsafeHashes_)
+                && !hashSources_.isEmpty()
+                && hashSources_.matches(type == InlineType.Navigation ? "javascript:" + source : source,
+                        digestCache)) {
+            return true;
+        }
+
+        // This is not per spec, but matches implementations and the spec
+        // author's intent: https://github.com/w3c/webappsec-csp/issues/426
+        return type == InlineType.Script && strictDynamic_ && parserInserted != null && !parserInserted;
+    }
+}
@@ -24,6 +24,10 @@
  * IP addresses, etc.) as well as sentinel values for ports and a helper
  * method for ASCII whitespace detection.
  * </p>
+ * <p>
+ * The parser itself uses the equivalent scanners in {@link Lexer} instead of the
+ * value grammar patterns; they are kept here as the reference definitions.
+ * </p>
  */
 public final class Constants {
     /**
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import java.util.Locale;
+
+import org.htmlunit.csp.Policy.Severity;
+
+/**
+ * The errors and warnings reported while parsing policies.
+ * <p>
+ * Every code has a fixed {@link Severity} and a message template with up to three
+ * placeholders {@code {0}}, {@code {1}} and {@code {2}}. The parser reports a code
+ * together with its arguments (tokens, directive names, parsed values or numbers);
+ * the message text is only built when {@link #format(Object, Object, Object)} is
+ * called, e.g. by the default implementation of
+ * {@link Directive.DirectiveErrorConsumer#report(DiagnosticCode, int, Object, Object, Object)}.
+ * </p>
+ */
+public enum DiagnosticCode {
+    /** A message reported through one of the {@code add} methods; the message is the only argument. */
+    Message(Severity.Info, "{0}"),
+
+    // directives
+
+    /** A directive that must not have values has some; the argument is the directive name. */
+    DirectiveDoesNotSupportValues(Severity.Error, "The {0} directive does not support values"),
+    /** A directive is ignored in a meta element; the argument is the directive name. */
+    DirectiveIgnoredInMeta(Severity.Warning, "The {0} directive is ignored when delivered via a meta element"),
+    /** A deprecated directive; the argument is the directive name. */
+    DeprecatedDirective(Severity.Warning, "The {0} directive has been deprecated"),
+    /** A directive without the required value; the argument is the directive name. */
+    DirectiveRequiresValue(Severity.Error, "The {0} directive requires a value"),
+    /** The referrer directive. */
+    ReferrerDeprecated(Severity.Warning,
+            "The referrer directive has been deprecated in favor of the Referrer-Policy header"),
+    /** The report-uri directive. */
+    ReportUriDeprecated(Severity.Warning,
+            "The report-uri directive has been deprecated in favor of the new report-to directive"),
+    /** A directive name with invalid characters; the argument is the name. */
+    InvalidDirectiveName(Severity.Error,
+            "Directive name {0} contains characters outside the range ALPHA / DIGIT / \"-\""),
+    /** An unknown directive; the argument is the name, which is rendered in lowercase. */
+    UnrecognizedDirective(Severity.Warning, "Unrecognized directive {0}", true),
+    /** A repeated directive; the argument is the lowercase name. */
+    DuplicateDirective(Severity.Warning, "Duplicate directive {0}"),
+
+    // report-to and report-uri
+
+    /** A report-to value that is not a token; the argument is the value. */
+    ExpectedRFC7230Token(Severity.Error, "Expecting RFC 7230 token but found \"{0}\""),
+    /** A report-to directive with several values; the argument is the number of values. */
+    ReportToRequiresOneValue(Severity.Error, "The report-to directive requires exactly one value (found {0})"),
+    /** An empty report-uri directive. */
+    ReportUriRequiresValue(Severity.Error, "The report-uri value requires at least one value"),
+    /** A repeated report-uri value. */
+    DuplicateReportUri(Severity.Info,
+            "Duplicate report-to URI; are you sure you intend to get multiple copies of each report?"),
+
+    // source lists
+
+    /** 'none' combined with other values; the argument is the kind of value, e.g. {@code source-expression}. */
+    NoneCombined(Severity.Error, "'none' must not be combined with any other {0}"),
+    /** An empty source list; the argument is the capitalized kind of value, e.g. {@code Source-expression}. */
+    EmptySourceList(Severity.Error, "{0} lists cannot be empty (use 'none' instead)"),
+    /** A repeated keyword; the arguments are the kind of value and the keyword. */
+    DuplicateSourceExpression(Severity.Warning, "Duplicate {0} {1}"),
+    /** A source that can not be parsed; the arguments are the kind of value and the token. */
+    UnrecognizedSource(Severity.Error, "Unrecognized {0} {1}"),
+    /** A host that looks like a keyword without quotes; the argument is the token. */
+    UnquotedKeyword(Severity.Warning, "This host name is unusual, and likely meant to be a keyword "
+            + "that is missing the required quotes: '{0}'."),
+    /** A repeated scheme-source; the argument is the {@link org.htmlunit.csp.value.Scheme}. */
+    DuplicateScheme(Severity.Warning, "Duplicate scheme {0}"),
+    /** A repeated host-source; the argument is the {@link org.htmlunit.csp.value.Host}. */
+    DuplicateHost(Severity.Warning, "Duplicate host {0}"),
+    /** The removed 'unsafe-redirect' keyword. */
+    UnsafeRedirectRemoved(Severity.Error, "'unsafe-redirect' has been removed from CSP as of version 2.0"),
+    /** The renamed 'unsafe-hashed-attributes' keyword. */
+    UnsafeHashedAttributesRenamed(Severity.Error,
+            "'unsafe-hashed-attributes' was renamed to 'unsafe-hashes' in June 2018"),
+    /** A nonce-like token that is not a nonce; the argument is the token. */
+    UnrecognizedNonce(Severity.Error, "Unrecognised nonce {0}"),
+    /** A hash-like token that is not a hash. */
+    UnrecognizedHash(Severity.Error, "'sha...' source-expression uses an unrecognized algorithm or "
+            + "does not match the base64-value grammar (or is missing its trailing \"'\")"),
+    /** A repeated nonce; the argument is the {@link org.htmlunit.csp.value.Nonce}. */
+    DuplicateNonce(Severity.Warning, "Duplicate nonce {0}"),
+    /** A repeated hash; the argument is the {@link org.htmlunit.csp.value.Hash}. */
+    DuplicateHash(Severity.Warning, "Duplicate hash {0}"),
+    /** A hash of the wrong length; the arguments are the algorithm, the expected and the actual length. */
+    WrongHashLength(Severity.Warning, "Wrong length for {0}: expected {1}, got {2}"),
+    /** A hash using the base64url alphabet. */
+    HashNeverMatches(Severity.Warning, "'_' and '-' in hashes can never match actual elements"),
+
+    // plugin-types
+
+    /** A plugin-types value that is not a media type; the argument is the value. */
+    ExpectedMediaType(Severity.Error, "Expecting media-type but found \"{0}\""),
+    /** A repeated media type; the argument is the {@link org.htmlunit.csp.value.MediaType}. */
+    DuplicateMediaType(Severity.Warning, "Duplicate media type {0}"),
+    /** A media type with a wildcard. */
+    WildcardMediaType(Severity.Warning,
+            "Media types can only be matched literally. Make sure using `*` is not an oversight."),
+
+    // sandbox
+
+    /** A repeated sandbox keyword; the argument is the keyword. */
+    DuplicateSandboxKeyword(Severity.Warning, "Duplicate sandbox keyword {0}"),
+    /** A quoted sandbox keyword; the argument is the token. */
+    QuotedSandboxKeyword(Severity.Error,
+            "Unrecognized sandbox keyword {0} - note that sandbox keywords do not have \"'\"s"),
+    /** An unknown sandbox keyword; the argument is the token. */
+    UnrecognizedSandboxKeyword(Severity.Error, "Unrecognized sandbox keyword {0}"),
+
+    // trusted types
+
+    /** A repeated keyword; the argument is the keyword. */
+    DuplicateKeyword(Severity.Warning, "Duplicate keyword {0}"),
+    /** An unknown quoted keyword; the arguments are the directive name and the token. */
+    UnrecognizedKeyword(Severity.Error, "Unrecognized {0} keyword {1}"),
+    /** An unknown require-trusted-types-for value without quotes; the argument is the token. */
+    UnquotedRequireTrustedTypesForValue(Severity.Error,
+            "Unrecognized require-trusted-types-for value {0} - keywords must be wrapped in single quotes"),
+    /** A repeated wildcard. */
+    DuplicateWildcard(Severity.Warning, "Duplicate wildcard *"),
+    /** A wildcard policy name. */
+    WildcardPolicyName(Severity.Warning,
+            "Wildcard policy names (*) permit any policy name, which may reduce security"),
+    /** A repeated policy name; the argument is the name. */
+    DuplicatePolicyName(Severity.Warning, "Duplicate policy name {0}"),
+    /** An invalid policy name; the argument is the token. */
+    InvalidPolicyName(Severity.Error, "Invalid trusted-types policy name {0}"),
+    /** An empty trusted-types directive. */
+    EmptyTrustedTypes(Severity.Warning,
+            "Empty trusted-types directive allows all policy names (use '*' or 'none' to be explicit)"),
+    /** Policy names next to a wildcard. */
+    RedundantPolicyNames(Severity.Warning,
+            "Wildcard (*) permits any policy name, making specific policy names redundant"),
+    /** 'allow-duplicates' next to a wildcard. */
+    RedundantAllowDuplicates(Severity.Warning, "'allow-duplicates' is redundant when wildcard (*) is present"),
+    /** 'allow-duplicates' without policy names. */
+    IneffectiveAllowDuplicates(Severity.Warning,
+            "'allow-duplicates' has no effect without policy names or wildcard");
+
+    private final Severity severity_;
+    private final String template_;
+    private final boolean lowercaseArguments_;
+    private final int argumentCount_;
+
+    DiagnosticCode(final Severity severity, final String template) {
+        this(severity, template, false);
+    }
+
+    DiagnosticCode(final Severity severity, final String template, final boolean lowercaseArguments) {
+        severity_ = severity;
+        template_ = template;
+        lowercaseArguments_ = lowercaseArguments;
+
+        int count = 0;
+        while (template.contains("{" + count + "}")) {
+            count++;
+        }
+        argumentCount_ = count;
+    }
+
+    /**
+     * Returns the severity. For {@link #Message} the severity is given together with the message.
+     *
+     * @return the severity of this code
+     */
+    public Severity getSeverity() {
+        return severity_;
+    }
+
+    /**
+     * Returns the message template with the placeholders {@code {0}} to {@code {2}}.
+     *
+     * @return the message template with the placeholders {@code {0}} to {@code {2}}
+     */
+    public String getTemplate() {
+        return template_;
+    }
+
+    /**
+     * Returns the number of arguments of this code.
+     *
+     * @return the number of arguments of this code
+     */
+    public int getArgumentCount() {
+        return argumentCount_;
+    }
+
+    /**
+     * Renders the message.
+     *
+     * @param arg0 the first argument, or {@code null}
+     * @param arg1 the second argument, or {@code null}
+     * @param arg2 the third argument, or {@code null}
+     * @return the message text
+     */
+    public String format(final Object arg0, final Object arg1, final Object arg2) {
+        if (argumentCount_ == 0) {
+            return template_;
+        }
+
+        final StringBuilder message = new StringBuilder(template_.length() + 32);
+        int start = 0;
+        int open = template_.indexOf('{');
+        while (open != -1) {
+            if (open + 2 < template_.length() && template_.charAt(open + 2) == '}') {
+                final int argument = template_.charAt(open + 1) - '0';
+                if (argument >= 0 && argument < argumentCount_) {
+                    message.append(template_, start, open);
+                    final String value = String.valueOf(argument == 0 ? arg0 : argument == 1 ? arg1 : arg2);
+                    message.append(lowercaseArguments_ ? value.toLowerCase(Locale.ROOT) : value);
+                    start = open + 3;
+                }
+            }
+            open = template_.indexOf('{', open + 1);
+        }
+        return message.append(template_, start, template_.length()).toString();
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.htmlunit.csp.Policy.PolicyErrorConsumer;
+import org.htmlunit.csp.Policy.PolicyListErrorConsumer;
+import org.htmlunit.csp.Policy.Severity;
+
+/**
+ * A compact store for the diagnostics of one or many parses.
+ * <p>
+ * The codes, severities and indices are kept in a single {@code int} array and the
+ * arguments in an {@code Object} array; no object is created per diagnostic and the
+ * messages are only rendered by {@link #getMessage(int)}. This suits linting large
+ * numbers of policies, where most diagnostics are only counted or filtered.
+ * </p>
+ * <p>
+ * The collector can be passed wherever a {@link PolicyListErrorConsumer} or a
+ * {@link PolicyErrorConsumer} is expected; diagnostics of a single policy are
+ * recorded with the policy index {@code 0}. Messages passed to the {@code add}
+ * methods are recorded as {@link DiagnosticCode#Message}. Instances are not thread-safe.
+ * </p>
+ */
+public final class DiagnosticCollector implements PolicyListErrorConsumer, PolicyErrorConsumer {
+    private static final int INTS = 4;
+    private static final int ARGS = 3;
+    private static final DiagnosticCode[] CODES = DiagnosticCode.values();
+    private static final Severity[] SEVERITIES = Severity.values();
+
+    // code ordinal << 8 | severity ordinal, policy index, directive index, value index
+    private int[] data_;
+    private Object[] arguments_;
+    private int size_;
+
+    /**
+     * Creates an empty collector.
+     */
+    public DiagnosticCollector() {
+        data_ = new int[16 * INTS];
+        arguments_ = new Object[16 * ARGS];
+    }
+
+    @Override
+    public void add(final Severity severity, final String message,
+            final int policyIndex, final int directiveIndex, final int valueIndex) {
+        append(DiagnosticCode.Message, severity, policyIndex, directiveIndex, valueIndex, message, null, null);
+    }
+
+    @Override
+    public void add(final Severity severity, final String message, final int directiveIndex, final int valueIndex) {
+        append(DiagnosticCode.Message, severity, 0, directiveIndex, valueIndex, message, null, null);
+    }
+
+    @Override
+    public void report(final DiagnosticCode code, final int policyIndex, final int directiveIndex,
+            final int valueIndex, final Object arg0, final Object arg1, final Object arg2) {
+        append(code, code.getSeverity(), policyIndex, directiveIndex, valueIndex, arg0, arg1, arg2);
+    }
+
+    @Override
+    public void report(final DiagnosticCode code, final int directiveIndex, final int valueIndex,
+            final Object arg0, final Object arg1, final Object arg2) {
+        append(code, code.getSeverity(), 0, directiveIndex, valueIndex, arg0, arg1, arg2);
+    }
+
+    private void append(final DiagnosticCode code, final Severity severity, final int policyIndex,
+            final int directiveIndex, final int valueIndex, final Object arg0, final Object arg1, final Object arg2) {
+        if (size_ * INTS == data_.length) {
+            data_ = Arrays.copyOf(data_, data_.length * 2);
+            arguments_ = Arrays.copyOf(arguments_, arguments_.length * 2);
+        }
+        final int i = size_ * INTS;
+        data_[i] = code.ordinal() << 8 | severity.ordinal();
+        data_[i + 1] = policyIndex;
+        data_[i + 2] = directiveIndex;
+        data_[i + 3] = valueIndex;
+        final int a = size_ * ARGS;
+        arguments_[a] = arg0;
+        arguments_[a + 1] = arg1;
+        arguments_[a + 2] = arg2;
+        size_++;
+    }
+
+    /**
+     * Returns the number of diagnostics.
+     *
+     * @return the number of diagnostics
+     */
+    public int size() {
+        return size_;
+    }
+
+    /**
+     * Returns {@code true} if no diagnostic was recorded.
+     *
+     * @return {@code true} if no diagnostic was recorded
+     */
+    public boolean isEmpty() {
+        return size_ == 0;
+    }
+
+    /**
+     * Removes all diagnostics; the storage is kept for reuse.
+     */
+    public void clear() {
+        Arrays.fill(arguments_, 0, size_ * ARGS, null);
+        size_ = 0;
+    }
+
+    /**
+     * Returns the code of the diagnostic.
+     *
+     * @param index the number of the diagnostic
+     * @return the code of the diagnostic
+     */
+    public DiagnosticCode getCode(final int index) {
+        return CODES[data_[checkIndex(index) * INTS] >>> 8];
+    }
+
+    /**
+     * Returns the severity of the diagnostic.
+     *
+     * @param index the number of the diagnostic
+     * @return the severity of the diagnostic
+     */
+    public Severity getSeverity(final int index) {
+        return SEVERITIES[data_[checkIndex(index) * INTS] & 0xFF];
+    }
+
+    /**
+     * Returns the zero-based index of the policy within the list.
+     *
+     * @param index the number of the diagnostic
+     * @return the zero-based index of the policy within the list
+     */
+    public int getPolicyIndex(final int index) {
+        return data_[checkIndex(index) * INTS + 1];
+    }
+
+    /**
+     * Returns the zero-based index of the directive within the policy.
+     *
+     * @param index the number of the diagnostic
+     * @return the zero-based index of the directive within the policy
+     */
+    public int getDirectiveIndex(final int index) {
+        return data_[checkIndex(index) * INTS + 2];
+    }
+
+    /**
+     * Returns the zero-based index of the value within the directive, or {@code -1}.
+     *
+     * @param index the number of the diagnostic
+     * @return the zero-based index of the value within the directive, or {@code -1}
+     */
+    public int getValueIndex(final int index) {
+        return data_[checkIndex(index) * INTS + 3];
+    }
+
+    /**
+     * Returns the argument, or {@code null}.
+     *
+     * @param index the number of the diagnostic
+     * @param argument the number of the argument, {@code 0} to {@code 2}
+     * @return the argument, or {@code null}
+     */
+    public Object getArgument(final int index, final int argument) {
+        Objects.checkIndex(argument, ARGS);
+        return arguments_[checkIndex(index) * ARGS + argument];
+    }
+
+    /**
+     * Renders the message of a diagnostic.
+     *
+     * @param index the number of the diagnostic
+     * @return the message text
+     */
+    public String getMessage(final int index) {
+        final int a = checkIndex(index) * ARGS;
+        return getCode(index).format(arguments_[a], arguments_[a + 1], arguments_[a + 2]);
+    }
+
+    /**
+     * Returns the number of diagnostics with the given code.
+     *
+     * @param code the code
+     * @return the number of diagnostics with the given code
+     */
+    public int count(final DiagnosticCode code) {
+        int count = 0;
+        for (int i = 0; i < size_; i++) {
+            if (data_[i * INTS] >>> 8 == code.ordinal()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of diagnostics with the given severity.
+     *
+     * @param severity the severity
+     * @return the number of diagnostics with the given severity
+     */
+    public int count(final Severity severity) {
+        int count = 0;
+        for (int i = 0; i < size_; i++) {
+            if ((data_[i * INTS] & 0xFF) == severity.ordinal()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the highest severity of all diagnostics, or {@code null} if there are none.
+     *
+     * @return the highest severity of all diagnostics, or {@code null} if there are none
+     */
+    public Severity getMaxSeverity() {
+        int max = -1;
+        for (int i = 0; i < size_; i++) {
+            max = Math.max(max, data_[i * INTS] & 0xFF);
+        }
+        return max == -1 ? null : SEVERITIES[max];
+    }
+
+    /**
+     * Passes all diagnostics in order to the given consumer.
+     *
+     * @param policyListErrorConsumer the consumer
+     */
+    public void replay(final PolicyListErrorConsumer policyListErrorConsumer) {
+        for (int i = 0; i < size_; i++) {
+            final int d = i * INTS;
+            final int a = i * ARGS;
+            final DiagnosticCode code = CODES[data_[d] >>> 8];
+            if (code == DiagnosticCode.Message) {
+                policyListErrorConsumer.add(SEVERITIES[data_[d] & 0xFF], (String) arguments_[a],
+                        data_[d + 1], data_[d + 2], data_[d + 3]);
+            }
+            else {
+                policyListErrorConsumer.report(code, data_[d + 1], data_[d + 2], data_[d + 3],
+                        arguments_[a], arguments_[a + 1], arguments_[a + 2]);
+            }
+        }
+    }
+
+    private int checkIndex(final int index) {
+        return Objects.checkIndex(index, size_);
+    }
+}
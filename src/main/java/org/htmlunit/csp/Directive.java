@@ -20,6 +20,8 @@
 import java.util.Locale;
 import java.util.function.Predicate;
 
+import org.htmlunit.csp.internal.Lexer;
+
 /**
  * Base class for all CSP directive representations.
  * <p>
@@ -31,7 +33,8 @@
 public class Directive {
 
     /** Predicate that tests whether a string is a valid directive name ({@code ALPHA / DIGIT / "-"}). */
-    public static final Predicate<String> IS_DIRECTIVE_NAME = Constants.DIRECTIVE_NAME_PATTERN.asPredicate();
+    public static final Predicate<String> IS_DIRECTIVE_NAME
+            = name -> Lexer.isDirectiveName(name, 0, Lexer.endIgnoringFinalLineTerminator(name, 0, name.length()));
 
     private List<String> values_;
 
@@ -89,6 +92,11 @@ public List<String> getValues() {
         return Collections.unmodifiableList(values_);
     }
 
+    // the values without the unmodifiable view, for serializing
+    List<String> values() {
+        return values_;
+    }
+
     /**
      * Constructs a directive with the given list of values.
      * <p>
@@ -133,11 +141,28 @@ protected void removeValueIgnoreCase(final String value) {
      * A {@code valueIndex} of {@code -1} indicates the error does not pertain
      * to a specific value within the directive.
      * </p>
+     * <p>
+     * The parser reports through the {@code report} methods, which by default render the
+     * message and pass it to {@link #add(Policy.Severity, String, int)}. Implementations
+     * interested in the structured {@link DiagnosticCode}s can override
+     * {@link #report(DiagnosticCode, int, Object, Object, Object)} instead.
+     * </p>
      */
     @FunctionalInterface
     public interface DirectiveErrorConsumer {
-        /** A no-op consumer that silently ignores all errors. */
-        DirectiveErrorConsumer ignored = (severity, message, valueIndex) -> { };
+        /** A no-op consumer that silently ignores all errors; no messages are rendered. */
+        DirectiveErrorConsumer ignored = new DirectiveErrorConsumer() {
+            @Override
+            public void add(final Policy.Severity severity, final String message, final int valueIndex) {
+                // ignore
+            }
+
+            @Override
+            public void report(final DiagnosticCode code, final int valueIndex,
+                    final Object arg0, final Object arg1, final Object arg2) {
+                // ignore
+            }
+        };
 
         /**
          * Called when a parsing error or warning is encountered.
@@ -150,5 +175,52 @@ public interface DirectiveErrorConsumer {
         void add(Policy.Severity severity, String message,
                 int valueIndex); // index = -1 for errors not pertaining to a value
 
+        /**
+         * Called when a parsing error or warning is encountered.
+         *
+         * @param code the kind of issue
+         * @param valueIndex the zero-based index of the value within the directive,
+         *        or {@code -1} if the issue does not pertain to a specific value
+         * @param arg0 the first argument of the code, or {@code null}
+         * @param arg1 the second argument of the code, or {@code null}
+         * @param arg2 the third argument of the code, or {@code null}
+         */
+        default void report(final DiagnosticCode code, final int valueIndex,
+                final Object arg0, final Object arg1, final Object arg2) {
+            add(code.getSeverity(), code.format(arg0, arg1, arg2), valueIndex);
+        }
+
+        /**
+         * Reports a code without arguments.
+         *
+         * @param code the kind of issue
+         * @param valueIndex the zero-based index of the value, or {@code -1}
+         */
+        default void report(final DiagnosticCode code, final int valueIndex) {
+            report(code, valueIndex, null, null, null);
+        }
+
+        /**
+         * Reports a code with one argument.
+         *
+         * @param code the kind of issue
+         * @param valueIndex the zero-based index of the value, or {@code -1}
+         * @param arg0 the argument of the code
+         */
+        default void report(final DiagnosticCode code, final int valueIndex, final Object arg0) {
+            report(code, valueIndex, arg0, null, null);
+        }
+
+        /**
+         * Reports a code with two arguments.
+         *
+         * @param code the kind of issue
+         * @param valueIndex the zero-based index of the value, or {@code -1}
+         * @param arg0 the first argument of the code
+         * @param arg1 the second argument of the code
+         */
+        default void report(final DiagnosticCode code, final int valueIndex, final Object arg0, final Object arg1) {
+            report(code, valueIndex, arg0, arg1, null);
+        }
     }
 }
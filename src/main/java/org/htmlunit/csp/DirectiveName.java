@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import org.htmlunit.csp.internal.KeywordTable;
+
+/**
+ * The directive names known to {@link Policy}, except for the fetch directives
+ * (see {@link FetchDirectiveKind}).
+ */
+enum DirectiveName {
+    BaseUri("base-uri"),
+    BlockAllMixedContent("block-all-mixed-content"),
+    FormAction("form-action"),
+    FrameAncestors("frame-ancestors"),
+    NavigateTo("navigate-to"),
+    PluginTypes("plugin-types"),
+    ReportTo("report-to"),
+    Referrer("referrer"),
+    ReportUri("report-uri"),
+    Sandbox("sandbox"),
+    TrustedTypes("trusted-types"),
+    RequireTrustedTypesFor("require-trusted-types-for"),
+    UpgradeInsecureRequests("upgrade-insecure-requests"),
+    /** Any other name, including the fetch directives. */
+    Other(null);
+
+    private static final KeywordTable<DirectiveName> NAMES =
+            new KeywordTable<>(DirectiveName.class, DirectiveName::getRepr, Other);
+
+    private final String repr_;
+
+    DirectiveName(final String repr) {
+        repr_ = repr;
+    }
+
+    /**
+     * Returns the lowercase directive name, {@code null} for {@link #Other}.
+     *
+     * @return the lowercase directive name, {@code null} for {@link #Other}
+     */
+    String getRepr() {
+        return repr_;
+    }
+
+    /**
+     * Returns the constant for the name ignoring ASCII case, or {@link #Other}.
+     *
+     * @param name the directive name
+     * @return the constant for the name ignoring ASCII case, or {@link #Other}
+     */
+    static DirectiveName lookup(final CharSequence name) {
+        return NAMES.lookup(name);
+    }
+
+    /**
+     * Returns the constant for the name ignoring ASCII case, or {@link #Other}.
+     *
+     * @param input the input
+     * @param start the start of the directive name
+     * @param end the end of the directive name
+     * @return the constant for the name ignoring ASCII case, or {@link #Other}
+     */
+    static DirectiveName lookup(final CharSequence input, final int start, final int end) {
+        return NAMES.lookup(input, start, end);
+    }
+}
@@ -14,6 +14,8 @@
  */
 package org.htmlunit.csp;
 
+import org.htmlunit.csp.internal.KeywordTable;
+
 /**
  * Enumerates the CSP fetch directive names and provides their fallback chains.
  * <p>
@@ -105,6 +107,9 @@ public enum FetchDirectiveKind {
     private static final FetchDirectiveKind[] FontSrcFallback = {FontSrc, DefaultSrc };
     private static final FetchDirectiveKind[] ImgSrcFallback = {ImgSrc, DefaultSrc };
 
+    private static final KeywordTable<FetchDirectiveKind> NAMES =
+            new KeywordTable<>(FetchDirectiveKind.class, FetchDirectiveKind::getRepr, null);
+
     private final String repr_;
 
     FetchDirectiveKind(final String repr) {
@@ -151,6 +156,28 @@ public static FetchDirectiveKind fromString(final String name) {
         };
     }
 
+    /**
+     * Looks up a {@link FetchDirectiveKind} by its directive name, ignoring ASCII case.
+     *
+     * @param name the directive name to look up (e.g. {@code "Script-Src"})
+     * @return the matching {@link FetchDirectiveKind}, or {@code null}
+     */
+    static FetchDirectiveKind lookupIgnoreCase(final CharSequence name) {
+        return NAMES.lookup(name);
+    }
+
+    /**
+     * Looks up a {@link FetchDirectiveKind} by a directive name within a larger input, ignoring ASCII case.
+     *
+     * @param input the input
+     * @param start the start of the directive name
+     * @param end the end of the directive name
+     * @return the matching {@link FetchDirectiveKind}, or {@code null}
+     */
+    static FetchDirectiveKind lookupIgnoreCase(final CharSequence input, final int start, final int end) {
+        return NAMES.lookup(input, start, end);
+    }
+
     static FetchDirectiveKind[] getFetchDirectiveFallbackList(final FetchDirectiveKind directive) {
         return switch (directive) {
             case ScriptSrc -> ScriptSrcFallback;
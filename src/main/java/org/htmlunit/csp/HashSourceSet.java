@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.EnumSet;
+
+import org.htmlunit.csp.value.Hash;
+
+/**
+ * The hash-sources of a source list, decoded to raw digests for matching inline content.
+ * <p>
+ * Each hash-source is decoded once, when the set is created, and stored in a hash table
+ * per algorithm. Matching computes the digest of the content once for every algorithm
+ * with entries and looks it up in the table of that algorithm. The
+ * {@link MessageDigest} instances are reused per thread.
+ * </p>
+ * <p>
+ * Like the string comparison of
+ * <a href="https://w3c.github.io/webappsec-csp/#match-element-to-source-list">does element
+ * match source list</a>, a hash-source only matches if its value is the Base64 encoding of
+ * the digest; the base64url characters {@code -} and {@code _} are read as {@code +} and
+ * {@code /}. Values that are not a canonical encoding of a digest of the right length can
+ * never match and are left out.
+ * </p>
+ */
+public final class HashSourceSet {
+    private static final Hash.Algorithm[] ALGORITHMS = Hash.Algorithm.values();
+
+    /** The set without hash-sources. */
+    public static final HashSourceSet EMPTY = new HashSourceSet(new byte[ALGORITHMS.length][][]);
+
+    private static final ThreadLocal<MessageDigest[]> DIGESTS =
+            ThreadLocal.withInitial(() -> new MessageDigest[ALGORITHMS.length]);
+
+    // per algorithm, an open-addressing table of the digests or null if there are none
+    private final byte[][][] tables_;
+
+    private HashSourceSet(final byte[][][] tables) {
+        tables_ = tables;
+    }
+
+    /**
+     * Decodes the given hash-sources.
+     *
+     * @param hashes the hash-sources of a source list
+     * @return the set of their digests
+     */
+    public static HashSourceSet of(final Collection<Hash> hashes) {
+        if (hashes.isEmpty()) {
+            return EMPTY;
+        }
+
+        final int[] counts = new int[ALGORITHMS.length];
+        for (final Hash hash : hashes) {
+            counts[hash.getAlgorithm().ordinal()]++;
+        }
+
+        final byte[][][] tables = new byte[ALGORITHMS.length][][];
+        boolean empty = true;
+        for (final Hash hash : hashes) {
+            final byte[] digest = decode(hash);
+            if (digest == null) {
+                continue;
+            }
+            final int algorithm = hash.getAlgorithm().ordinal();
+            if (tables[algorithm] == null) {
+                int capacity = 2;
+                while (capacity < counts[algorithm] * 2) {
+                    capacity <<= 1;
+                }
+                tables[algorithm] = new byte[capacity][];
+            }
+            if (insert(tables[algorithm], digest)) {
+                empty = false;
+            }
+        }
+        return empty ? EMPTY : new HashSourceSet(tables);
+    }
+
+    // the raw digest of the hash-source, null if the value cannot match any digest
+    private static byte[] decode(final Hash hash) {
+        final String value = Policy.normalizeBase64Url(hash.getBase64ValuePart());
+        if (value.length() != hash.getAlgorithm().getLength()) {
+            return null;
+        }
+        final byte[] digest;
+        try {
+            digest = Base64.getDecoder().decode(value);
+        }
+        catch (final IllegalArgumentException e) {
+            return null;
+        }
+        // values with non-zero padding bits decode, but differ from the encoding of the digest
+        if (!Base64.getEncoder().encodeToString(digest).equals(value)) {
+            return null;
+        }
+        return digest;
+    }
+
+    private static boolean insert(final byte[][] table, final byte[] digest) {
+        final int mask = table.length - 1;
+        int slot = slot(digest) & mask;
+        while (table[slot] != null) {
+            if (Arrays.equals(table[slot], digest)) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = digest;
+        return true;
+    }
+
+    // digests are uniformly distributed, so their first bytes are a good hash code
+    private static int slot(final byte[] digest) {
+        return (digest[0] & 0xFF) << 24 | (digest[1] & 0xFF) << 16 | (digest[2] & 0xFF) << 8 | digest[3] & 0xFF;
+    }
+
+    /**
+     * Returns whether the set holds no hash-source that can match.
+     *
+     * @return {@code true} if no content matches this set
+     */
+    public boolean isEmpty() {
+        return this == EMPTY;
+    }
+
+    /**
+     * Returns whether the digest of the given content matches one of the hash-sources.
+     *
+     * @param source the inline content, digested in UTF-8
+     * @return {@code true} if a hash-source matches
+     */
+    public boolean matches(final String source) {
+        return matches(source, null);
+    }
+
+    /**
+     * Returns whether the digest of the given content matches one of the hash-sources,
+     * taking the digests from the given cache.
+     *
+     * @param source the inline content, digested in UTF-8
+     * @param cache the cache of digests, or {@code null} to digest the content
+     * @return {@code true} if a hash-source matches
+     */
+    boolean matches(final String source, final InlineDigestCache cache) {
+        if (isEmpty()) {
+            return false;
+        }
+        final InlineDigestCache.Entry entry = cache == null ? null : cache.lookup(source);
+        if (entry == null) {
+            return matches(source.getBytes(StandardCharsets.UTF_8));
+        }
+        for (int algorithm = 0; algorithm < ALGORITHMS.length; algorithm++) {
+            if (tables_[algorithm] != null && contains(tables_[algorithm], entry.digest(ALGORITHMS[algorithm]))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the digest of the given bytes matches one of the hash-sources.
+     *
+     * @param source the inline content encoded in UTF-8
+     * @return {@code true} if a hash-source matches
+     */
+    public boolean matches(final byte[] source) {
+        for (int algorithm = 0; algorithm < ALGORITHMS.length; algorithm++) {
+            if (tables_[algorithm] != null
+                    && contains(tables_[algorithm], messageDigest(ALGORITHMS[algorithm]).digest(source))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the given digest of inline content matches one of the hash-sources.
+     *
+     * @param digest the digest of the inline content
+     * @return {@code true} if a hash-source matches
+     * @throws IllegalArgumentException if the digest does not compute an algorithm
+     *         used by the hash-sources
+     */
+    public boolean matches(final InlineContentDigest digest) {
+        for (int algorithm = 0; algorithm < ALGORITHMS.length; algorithm++) {
+            if (tables_[algorithm] != null
+                    && contains(tables_[algorithm], digest.internalDigest(ALGORITHMS[algorithm]))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the algorithms used by the hash-sources that can match.
+     *
+     * @return the algorithms a digest of inline content has to compute to be matched against this set
+     */
+    public EnumSet<Hash.Algorithm> getAlgorithms() {
+        final EnumSet<Hash.Algorithm> algorithms = EnumSet.noneOf(Hash.Algorithm.class);
+        for (int algorithm = 0; algorithm < ALGORITHMS.length; algorithm++) {
+            if (tables_[algorithm] != null) {
+                algorithms.add(ALGORITHMS[algorithm]);
+            }
+        }
+        return algorithms;
+    }
+
+    /**
+     * Returns whether the given digest matches one of the hash-sources of an algorithm.
+     *
+     * @param algorithm the hash algorithm
+     * @param digest the raw digest
+     * @return {@code true} if a hash-source matches
+     */
+    public boolean containsDigest(final Hash.Algorithm algorithm, final byte[] digest) {
+        final byte[][] table = tables_[algorithm.ordinal()];
+        return table != null && contains(table, digest);
+    }
+
+    private static boolean contains(final byte[][] table, final byte[] digest) {
+        final int mask = table.length - 1;
+        int slot = slot(digest) & mask;
+        byte[] candidate;
+        while ((candidate = table[slot]) != null) {
+            if (Arrays.equals(candidate, digest)) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the {@link MessageDigest} of the current thread for an algorithm.
+     * <p>
+     * The instance is reset and can be used right away; it must not be handed to other threads.
+     * </p>
+     *
+     * @param algorithm the hash algorithm
+     * @return the message digest
+     */
+    static MessageDigest messageDigest(final Hash.Algorithm algorithm) {
+        final MessageDigest[] digests = DIGESTS.get();
+        MessageDigest digest = digests[algorithm.ordinal()];
+        if (digest == null) {
+            try {
+                digest = MessageDigest.getInstance(digestName(algorithm));
+            }
+            catch (final NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+            digests[algorithm.ordinal()] = digest;
+        }
+        else {
+            digest.reset();
+        }
+        return digest;
+    }
+
+    static String digestName(final Hash.Algorithm algorithm) {
+        return switch (algorithm) {
+            case SHA256 -> "SHA-256";
+            case SHA384 -> "SHA-384";
+            case SHA512 -> "SHA-512";
+        };
+    }
+}
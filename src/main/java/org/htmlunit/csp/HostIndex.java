@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.htmlunit.csp.internal.HostKind;
+import org.htmlunit.csp.value.Host;
+
+/**
+ * An index over the host parts of the host-sources of a source list.
+ * <p>
+ * The entries are the positions of the host-sources in the list. Exact hosts are found
+ * through a hash map; wildcard hosts ({@code *.example.com}) live in a trie over the
+ * reversed labels ({@code com}, {@code example}), which is walked along the labels of the
+ * URL host. The trie nodes are stored in one open-addressing table keyed by the parent
+ * node and the label, so the walk works on offsets and does not create substrings.
+ * </p>
+ * <p>
+ * Only hosts that can match are indexed: exact IP addresses other than {@code 127.0.0.1}
+ * never match per <a href="https://w3c.github.io/webappsec-csp/#host-part-match">host-part
+ * match</a> and are left out. Hosts outside of the host-source grammar are returned by
+ * {@link #unindexed()} and have to be matched one by one.
+ * </p>
+ */
+final class HostIndex {
+    private static final int[] NO_ENTRIES = {};
+
+    private final Map<String, int[]> exact_ = new HashMap<>();
+    // the entries with the host "*", matching every host
+    private final int[] any_;
+    private final int[] unindexed_;
+
+    // trie node 0 is the root; the wildcard entries of a node match the hosts ending
+    // with '.' followed by the labels of the path to the node
+    private final int[] parents_;
+    private final String[] labels_;
+    private final int[][] wildcards_;
+    // node number + 1 per slot, 0 if free
+    private final int[] table_;
+    private final int tableMask_;
+
+    HostIndex(final Host[] hosts, final HostKind[] kinds) {
+        final Map<String, List<Integer>> exact = new HashMap<>();
+        final List<Integer> any = new ArrayList<>();
+        final List<Integer> unindexed = new ArrayList<>();
+
+        final List<Integer> parents = new ArrayList<>();
+        final List<String> labels = new ArrayList<>();
+        final List<List<Integer>> wildcards = new ArrayList<>();
+        parents.add(-1);
+        labels.add("");
+        wildcards.add(null);
+
+        int labelCount = 0;
+        for (final Host host : hosts) {
+            labelCount += host.host().length() / 2 + 1;
+        }
+        int capacity = 16;
+        while (capacity < labelCount * 2) {
+            capacity <<= 1;
+        }
+        table_ = new int[capacity];
+        tableMask_ = capacity - 1;
+
+        for (int i = 0; i < hosts.length; i++) {
+            final HostKind kind = kinds[i];
+            final String host = hosts[i].host();
+            if (kind == HostKind.Wildcard) {
+                any.add(i);
+            }
+            else if (kind == HostKind.WildcardSuffix && host.startsWith("*.") && isAsciiLowercase(host)) {
+                int node = 0;
+                int end = host.length();
+                while (end > 1) {
+                    final int dot = host.lastIndexOf('.', end - 1);
+                    int child = child(parents, labels, node, host, dot + 1, end);
+                    if (child == -1) {
+                        child = parents.size();
+                        parents.add(node);
+                        labels.add(host.substring(dot + 1, end));
+                        wildcards.add(null);
+                        insert(child, node, host, dot + 1, end);
+                    }
+                    node = child;
+                    end = dot;
+                }
+                if (wildcards.get(node) == null) {
+                    wildcards.set(node, new ArrayList<>());
+                }
+                wildcards.get(node).add(i);
+            }
+            else if (kind == HostKind.WildcardSuffix || host.indexOf('*') != -1 || !isAsciiLowercase(host)) {
+                unindexed.add(i);
+            }
+            else if (kind == HostKind.Name || kind == HostKind.IPv4Loopback) {
+                exact.computeIfAbsent(host, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        for (final Map.Entry<String, List<Integer>> entry : exact.entrySet()) {
+            exact_.put(entry.getKey(), toArray(entry.getValue()));
+        }
+        any_ = toArray(any);
+        unindexed_ = toArray(unindexed);
+
+        parents_ = new int[parents.size()];
+        labels_ = labels.toArray(new String[0]);
+        wildcards_ = new int[parents.size()][];
+        for (int n = 0; n < parents_.length; n++) {
+            parents_[n] = parents.get(n);
+            wildcards_[n] = wildcards.get(n) == null ? null : toArray(wildcards.get(n));
+        }
+    }
+
+    private static int[] toArray(final List<Integer> entries) {
+        if (entries.isEmpty()) {
+            return NO_ENTRIES;
+        }
+        final int[] array = new int[entries.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = entries.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Returns whether the given host consists of lowercase ASCII characters only;
+     * only such hosts can be looked up in the index.
+     *
+     * @param host the host
+     * @return {@code true} if the host can be looked up
+     */
+    static boolean isAsciiLowercase(final String host) {
+        for (int i = 0; i < host.length(); i++) {
+            final char c = host.charAt(i);
+            if (c >= 0x80 || c >= 'A' && c <= 'Z') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the entries of the exact hosts equal to the given host.
+     *
+     * @param host the lowercase ASCII host
+     * @return the entries, or {@code null} if there are none
+     */
+    int[] exact(final String host) {
+        return exact_.get(host);
+    }
+
+    /**
+     * Returns the entries with the host {@code *}.
+     *
+     * @return the entries matching every host
+     */
+    int[] any() {
+        return any_;
+    }
+
+    /**
+     * Returns the entries not held by the index.
+     *
+     * @return the entries that have to be matched one by one
+     */
+    int[] unindexed() {
+        return unindexed_;
+    }
+
+    /**
+     * Returns whether the index holds wildcard hosts other than {@code *}.
+     *
+     * @return {@code true} if the trie is not empty
+     */
+    boolean hasWildcards() {
+        return parents_.length > 1;
+    }
+
+    /**
+     * Returns the child of a trie node.
+     *
+     * @param node the node, {@code 0} for the root
+     * @param host the host
+     * @param start the start of the label within the host
+     * @param end the end of the label within the host
+     * @return the child node for the label, or {@code -1}
+     */
+    int child(final int node, final String host, final int start, final int end) {
+        final int length = end - start;
+        int slot = slot(node, host, start, end);
+        while (table_[slot] != 0) {
+            final int candidate = table_[slot] - 1;
+            if (parents_[candidate] == node && labels_[candidate].length() == length
+                    && host.regionMatches(start, labels_[candidate], 0, length)) {
+                return candidate;
+            }
+            slot = (slot + 1) & tableMask_;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the wildcard entries of a trie node.
+     *
+     * @param node the node
+     * @return the entries, or {@code null} if there are none
+     */
+    int[] wildcards(final int node) {
+        return wildcards_[node];
+    }
+
+    private int child(final List<Integer> parents, final List<String> labels, final int node,
+            final String host, final int start, final int end) {
+        final int length = end - start;
+        int slot = slot(node, host, start, end);
+        while (table_[slot] != 0) {
+            final int candidate = table_[slot] - 1;
+            if (parents.get(candidate) == node && labels.get(candidate).length() == length
+                    && host.regionMatches(start, labels.get(candidate), 0, length)) {
+                return candidate;
+            }
+            slot = (slot + 1) & tableMask_;
+        }
+        return -1;
+    }
+
+    private void insert(final int child, final int node, final String host, final int start, final int end) {
+        int slot = slot(node, host, start, end);
+        while (table_[slot] != 0) {
+            slot = (slot + 1) & tableMask_;
+        }
+        table_[slot] = child + 1;
+    }
+
+    private int slot(final int node, final String host, final int start, final int end) {
+        int h = node * 0x9E3779B9;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + host.charAt(i);
+        }
+        return (h ^ h >>> 16) & tableMask_;
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.EnumSet;
+
+import org.htmlunit.csp.value.Hash;
+
+/**
+ * The digests of inline content, computed incrementally while the content is produced.
+ * <p>
+ * Large inline scripts and styles do not have to be collected into a {@link String} and
+ * copied into a byte array before they can be checked against hash-sources: the text is fed
+ * in chunks as the HTML parser produces it, encoded to UTF-8 through a small buffer and
+ * passed to the digests of the chosen algorithms right away. Once all content has been fed,
+ * the digest is handed to
+ * {@link Policy#allowsInlineScript(java.util.Optional, InlineContentDigest, java.util.Optional)}
+ * or {@link Policy#allowsInlineStyle(java.util.Optional, InlineContentDigest)}.
+ * </p>
+ * <p>
+ * Characters are encoded like {@link String#getBytes(java.nio.charset.Charset)} encodes them
+ * to UTF-8: surrogate pairs may be split between chunks, unpaired surrogates become {@code ?}.
+ * Text and UTF-8 encoded bytes can be mixed. {@link Policy#newInlineScriptDigest()} and
+ * {@link Policy#newInlineStyleDigest()} create digests for exactly the algorithms a policy
+ * needs; a digest without any algorithm ignores all content.
+ * </p>
+ * <p>
+ * Instances are not thread-safe. The content is complete once a digest has been read; further
+ * updates fail with an {@link IllegalStateException}.
+ * </p>
+ */
+public final class InlineContentDigest {
+    private static final int BUFFER_SIZE = 4096;
+
+    // per algorithm ordinal, null if the algorithm is not computed
+    private final MessageDigest[] digests_;
+    private final boolean active_;
+    private byte[][] results_;
+
+    private byte[] buffer_;
+    private int buffered_;
+    // a high surrogate waiting for the low surrogate of the next chunk, 0 if none
+    private char highSurrogate_;
+
+    private InlineContentDigest(final Collection<Hash.Algorithm> algorithms) {
+        digests_ = new MessageDigest[Hash.Algorithm.values().length];
+        for (final Hash.Algorithm algorithm : algorithms) {
+            try {
+                digests_[algorithm.ordinal()] = MessageDigest.getInstance(HashSourceSet.digestName(algorithm));
+            }
+            catch (final NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        active_ = !algorithms.isEmpty();
+    }
+
+    /**
+     * Creates a digest computing the given algorithms.
+     *
+     * @param algorithms the hash algorithms
+     * @return the new digest
+     */
+    public static InlineContentDigest forAlgorithms(final Collection<Hash.Algorithm> algorithms) {
+        return new InlineContentDigest(algorithms);
+    }
+
+    /**
+     * Creates a digest computing all algorithms of hash-sources, for use with any policy.
+     *
+     * @return the new digest
+     */
+    public static InlineContentDigest forAllAlgorithms() {
+        return new InlineContentDigest(EnumSet.allOf(Hash.Algorithm.class));
+    }
+
+    /**
+     * Returns whether this digest computes the given algorithm.
+     *
+     * @param algorithm the hash algorithm
+     * @return {@code true} if {@link #digest(Hash.Algorithm)} can be called for the algorithm
+     */
+    public boolean covers(final Hash.Algorithm algorithm) {
+        return digests_[algorithm.ordinal()] != null;
+    }
+
+    /**
+     * Feeds the given characters.
+     *
+     * @param chars the next chunk of the content
+     * @return this digest
+     * @throws IllegalStateException if the digest has already been read
+     */
+    public InlineContentDigest update(final CharSequence chars) {
+        return update(chars, 0, chars.length());
+    }
+
+    /**
+     * Feeds a range of the given characters.
+     *
+     * @param chars the characters
+     * @param start the index of the first character to feed
+     * @param end the index after the last character to feed
+     * @return this digest
+     * @throws IllegalStateException if the digest has already been read
+     */
+    public InlineContentDigest update(final CharSequence chars, final int start, final int end) {
+        checkOpen();
+        if (!active_) {
+            return this;
+        }
+        for (int i = start; i < end; i++) {
+            encode(chars.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * Feeds a range of the given characters.
+     *
+     * @param chars the characters
+     * @param offset the index of the first character to feed
+     * @param length the number of characters to feed
+     * @return this digest
+     * @throws IllegalStateException if the digest has already been read
+     */
+    public InlineContentDigest update(final char[] chars, final int offset, final int length) {
+        checkOpen();
+        if (!active_) {
+            return this;
+        }
+        for (int i = offset; i < offset + length; i++) {
+            encode(chars[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Feeds all characters of the given reader; the reader is not closed.
+     *
+     * @param reader the rest of the content
+     * @return this digest
+     * @throws IOException if reading fails
+     * @throws IllegalStateException if the digest has already been read
+     */
+    public InlineContentDigest update(final Reader reader) throws IOException {
+        checkOpen();
+        if (!active_) {
+            return this;
+        }
+        final char[] chars = new char[BUFFER_SIZE / 4];
+        int read;
+        while ((read = reader.read(chars)) != -1) {
+            update(chars, 0, read);
+        }
+        return this;
+    }
+
+    /**
+     * Feeds the remaining bytes of the given buffer, which hold UTF-8 encoded content.
+     * The position of the buffer is moved to its limit.
+     *
+     * @param utf8 the next chunk of the content
+     * @return this digest
+     * @throws IllegalStateException if the digest has already been read
+     */
+    public InlineContentDigest update(final ByteBuffer utf8) {
+        checkOpen();
+        if (!active_) {
+            utf8.position(utf8.limit());
+            return this;
+        }
+        flushSurrogate();
+        flush();
+        final int position = utf8.position();
+        for (final MessageDigest digest : digests_) {
+            if (digest != null) {
+                utf8.position(position);
+                digest.update(utf8);
+            }
+        }
+        utf8.position(utf8.limit());
+        return this;
+    }
+
+    /**
+     * Returns the digest of all content fed so far; no further content can be fed afterwards.
+     *
+     * @param algorithm the hash algorithm
+     * @return the raw digest
+     * @throws IllegalArgumentException if this digest does not compute the algorithm
+     */
+    public byte[] digest(final Hash.Algorithm algorithm) {
+        return internalDigest(algorithm).clone();
+    }
+
+    /**
+     * Returns the digest of all content without copying it.
+     *
+     * @param algorithm the hash algorithm
+     * @return the raw digest, must not be modified
+     * @throws IllegalArgumentException if this digest does not compute the algorithm
+     */
+    byte[] internalDigest(final Hash.Algorithm algorithm) {
+        if (!covers(algorithm)) {
+            throw new IllegalArgumentException("The digest does not compute " + algorithm);
+        }
+        if (results_ == null) {
+            flushSurrogate();
+            flush();
+            final byte[][] results = new byte[digests_.length][];
+            for (int i = 0; i < digests_.length; i++) {
+                if (digests_[i] != null) {
+                    results[i] = digests_[i].digest();
+                }
+            }
+            results_ = results;
+            buffer_ = null;
+        }
+        return results_[algorithm.ordinal()];
+    }
+
+    private void checkOpen() {
+        if (results_ != null) {
+            throw new IllegalStateException("The digest has already been computed");
+        }
+    }
+
+    private void encode(final char c) {
+        if (buffer_ == null) {
+            buffer_ = new byte[BUFFER_SIZE];
+        }
+        else if (buffered_ > BUFFER_SIZE - 4) {
+            flush();
+        }
+
+        if (highSurrogate_ != 0) {
+            final char high = highSurrogate_;
+            highSurrogate_ = 0;
+            if (Character.isLowSurrogate(c)) {
+                final int codePoint = Character.toCodePoint(high, c);
+                buffer_[buffered_++] = (byte) (0xF0 | codePoint >> 18);
+                buffer_[buffered_++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                buffer_[buffered_++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                buffer_[buffered_++] = (byte) (0x80 | codePoint & 0x3F);
+                return;
+            }
+            buffer_[buffered_++] = '?';
+            if (buffered_ > BUFFER_SIZE - 4) {
+                flush();
+            }
+        }
+
+        if (c < 0x80) {
+            buffer_[buffered_++] = (byte) c;
+        }
+        else if (c < 0x800) {
+            buffer_[buffered_++] = (byte) (0xC0 | c >> 6);
+            buffer_[buffered_++] = (byte) (0x80 | c & 0x3F);
+        }
+        else if (Character.isHighSurrogate(c)) {
+            highSurrogate_ = c;
+        }
+        else if (Character.isLowSurrogate(c)) {
+            buffer_[buffered_++] = '?';
+        }
+        else {
+            buffer_[buffered_++] = (byte) (0xE0 | c >> 12);
+            buffer_[buffered_++] = (byte) (0x80 | c >> 6 & 0x3F);
+            buffer_[buffered_++] = (byte) (0x80 | c & 0x3F);
+        }
+    }
+
+    private void flushSurrogate() {
+        if (highSurrogate_ != 0) {
+            highSurrogate_ = 0;
+            if (buffer_ == null) {
+                buffer_ = new byte[BUFFER_SIZE];
+            }
+            else if (buffered_ == BUFFER_SIZE) {
+                flush();
+            }
+            buffer_[buffered_++] = '?';
+        }
+    }
+
+    private void flush() {
+        if (buffered_ != 0) {
+            for (final MessageDigest digest : digests_) {
+                if (digest != null) {
+                    digest.update(buffer_, 0, buffered_);
+                }
+            }
+            buffered_ = 0;
+        }
+    }
+}
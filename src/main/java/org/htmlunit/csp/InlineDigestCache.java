@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.htmlunit.csp.value.Hash;
+
+/**
+ * A size bounded cache of the digests of inline content, used when matching
+ * hash-sources.
+ * <p>
+ * The same inline scripts and styles (analytics loaders, consent banners, JSON-LD blocks)
+ * tend to show up on many pages, so their digests are worth keeping. Entries are keyed
+ * by the length of the content and a fingerprint of a sample of its characters, which is
+ * far cheaper than hashing all of it; a hit is only taken after comparing the full content.
+ * A fingerprint holds one entry at a time: content that shares the fingerprint of an entry
+ * counts as a miss and replaces it. The digests of an entry are computed the first time an
+ * algorithm is needed. Content longer than {@code maxSourceLength} is never cached.
+ * </p>
+ * <p>
+ * A cache is used by the checks of the {@link CheckRequest}s it is
+ * {@linkplain CheckRequest#setInlineDigestCache(InlineDigestCache) set on}, with
+ * {@link Policy#check(CheckRequest)}, {@link PolicyList#check(CheckRequest)} and
+ * {@link CompiledPolicy#check(CheckRequest)}; there is no global instance, so independent
+ * users do not share their entries or statistics. The cache is safe to use from many
+ * threads; entries are spread over independently locked segments and evicted
+ * least-recently-used once {@code maxSize} is exceeded. Digests are computed outside of
+ * any lock.
+ * </p>
+ */
+public final class InlineDigestCache {
+    /** The default value of {@code maxSourceLength}. */
+    public static final int DEFAULT_MAX_SOURCE_LENGTH = 64 * 1024;
+
+    // the number of characters sampled for the fingerprint of long content
+    private static final int SAMPLES = 64;
+
+    private final BoundedCache<Long, Entry> cache_;
+    private final int maxSourceLength_;
+    // lookups that found an entry for the fingerprint holding other content
+    private final LongAdder collisions_ = new LongAdder();
+
+    /**
+     * Creates a new cache for content of up to {@link #DEFAULT_MAX_SOURCE_LENGTH} characters.
+     *
+     * @param maxSize the maximum number of distinct inline sources to keep
+     * @throws IllegalArgumentException if {@code maxSize} is not positive
+     */
+    public InlineDigestCache(final int maxSize) {
+        this(maxSize, DEFAULT_MAX_SOURCE_LENGTH);
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize the maximum number of distinct inline sources to keep
+     * @param maxSourceLength the maximum length of the inline sources to cache
+     * @throws IllegalArgumentException if {@code maxSize} is not positive
+     *         or {@code maxSourceLength} is negative
+     */
+    public InlineDigestCache(final int maxSize, final int maxSourceLength) {
+        if (maxSourceLength < 0) {
+            throw new IllegalArgumentException("maxSourceLength must not be negative");
+        }
+        cache_ = new BoundedCache<>(maxSize);
+        maxSourceLength_ = maxSourceLength;
+    }
+
+    /**
+     * Returns the entry holding the digests of the given content.
+     *
+     * @param source the inline content
+     * @return the entry, or {@code null} if the content is too long to be cached
+     */
+    Entry lookup(final String source) {
+        if (source.length() > maxSourceLength_) {
+            return null;
+        }
+        final Long key = (long) source.length() << 32 | fingerprint(source) & 0xFFFFFFFFL;
+        final Entry entry = cache_.get(key);
+        if (entry == null) {
+            // another thread may have added other content with the same fingerprint meanwhile
+            final Entry created = new Entry(source);
+            final Entry stored = cache_.putIfAbsent(key, created);
+            return stored.source_.equals(source) ? stored : created;
+        }
+        if (entry.source_.equals(source)) {
+            return entry;
+        }
+        collisions_.increment();
+        final Entry replacement = new Entry(source);
+        cache_.put(key, replacement);
+        return replacement;
+    }
+
+    // short content is hashed completely, long content at evenly spaced positions and at its end
+    private static int fingerprint(final String source) {
+        final int length = source.length();
+        int hash = 0;
+        if (length <= 2 * SAMPLES) {
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + source.charAt(i);
+            }
+            return hash;
+        }
+        final int stride = length / SAMPLES;
+        for (int i = 0; i < SAMPLES; i++) {
+            hash = 31 * hash + source.charAt(i * stride);
+        }
+        for (int i = length - SAMPLES; i < length; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the maximum number of entries.
+     *
+     * @return the maximum number of entries
+     */
+    public int getMaxSize() {
+        return cache_.getMaxSize();
+    }
+
+    /**
+     * Returns the maximum length of the inline sources to cache.
+     *
+     * @return the maximum length of the inline sources to cache
+     */
+    public int getMaxSourceLength() {
+        return maxSourceLength_;
+    }
+
+    /**
+     * Returns the current number of entries.
+     *
+     * @return the current number of entries
+     */
+    public int size() {
+        return cache_.size();
+    }
+
+    /**
+     * Removes all entries. The statistics are not reset.
+     */
+    public void clear() {
+        cache_.clear();
+    }
+
+    /**
+     * Returns the number of lookups that found the content in the cache.
+     *
+     * @return the number of lookups that found the content in the cache
+     */
+    public long getHitCount() {
+        return cache_.getHitCount() - collisions_.sum();
+    }
+
+    /**
+     * Returns the number of lookups that had to add the content.
+     *
+     * @return the number of lookups that had to add the content
+     */
+    public long getMissCount() {
+        return cache_.getMissCount() + collisions_.sum();
+    }
+
+    /**
+     * Returns the share of lookups that found the content in the cache.
+     *
+     * @return the hit rate between {@code 0.0} and {@code 1.0}, {@code 0.0} if there were no lookups
+     */
+    public double getHitRate() {
+        final long hits = getHitCount();
+        final long lookups = hits + getMissCount();
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    /**
+     * Returns the number of entries evicted to respect the size bound.
+     *
+     * @return the number of entries evicted to respect the size bound
+     */
+    public long getEvictionCount() {
+        return cache_.getEvictionCount();
+    }
+
+    /**
+     * The digests of one inline source.
+     */
+    static final class Entry {
+        private final String source_;
+        private final AtomicReferenceArray<byte[]> digests_ =
+                new AtomicReferenceArray<>(Hash.Algorithm.values().length);
+
+        Entry(final String source) {
+            source_ = source;
+        }
+
+        /**
+         * Returns the digest of the content, computing it on first use.
+         *
+         * @param algorithm the hash algorithm
+         * @return the raw digest, must not be modified
+         */
+        byte[] digest(final Hash.Algorithm algorithm) {
+            final int slot = algorithm.ordinal();
+            byte[] digest = digests_.get(slot);
+            if (digest == null) {
+                digest = HashSourceSet.messageDigest(algorithm).digest(source_.getBytes(StandardCharsets.UTF_8));
+                if (!digests_.compareAndSet(slot, null, digest)) {
+                    digest = digests_.get(slot);
+                }
+            }
+            return digest;
+        }
+    }
+}
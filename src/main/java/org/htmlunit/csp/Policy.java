@@ -14,19 +14,20 @@
  */
 package org.htmlunit.csp;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Base64;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
-import java.util.Iterator;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.regex.Matcher;
+import java.util.function.Predicate;
 
 import org.htmlunit.csp.directive.FrameAncestorsDirective;
 import org.htmlunit.csp.directive.HostSourceDirective;
@@ -36,6 +37,8 @@
 import org.htmlunit.csp.directive.SandboxDirective;
 import org.htmlunit.csp.directive.SourceExpressionDirective;
 import org.htmlunit.csp.directive.TrustedTypesDirective;
+import org.htmlunit.csp.internal.DirectiveAccess;
+import org.htmlunit.csp.internal.PathSegments;
 import org.htmlunit.csp.url.GUID;
 import org.htmlunit.csp.url.URI;
 import org.htmlunit.csp.url.URLWithScheme;
@@ -101,8 +104,44 @@ public final class Policy {
 
     private final boolean deliveredViaMeta_;
 
-    private Policy(final boolean deliveredViaMeta) {
+    // Lazily parsed policies only: the tokenized input and, per slot, the number of the
+    // tokenized directive that gets turned into a directive object on first use
+    private final PolicyTokenizer lazySource_;
+    private final int[] pendingDirectives_;
+    // bit set of the slots already materialized; the volatile write at the end of parsing
+    // also publishes pendingDirectives_ to other threads
+    private volatile int materializedSlots_;
+
+    // Slots of the directives that can be materialized lazily; the fetch directives
+    // use their FetchDirectiveKind ordinal as slot
+    // the directive constructors for parsed values and the match data of the host-sources
+    static final DirectiveAccess DIRECTIVES = DirectiveAccess.get();
+    private static final FetchDirectiveKind[] FETCH_DIRECTIVE_KINDS = FetchDirectiveKind.values();
+    private static final int SLOT_BASE_URI = FETCH_DIRECTIVE_KINDS.length;
+    private static final int SLOT_FORM_ACTION = SLOT_BASE_URI + 1;
+    private static final int SLOT_FRAME_ANCESTORS = SLOT_BASE_URI + 2;
+    private static final int SLOT_NAVIGATE_TO = SLOT_BASE_URI + 3;
+    private static final int SLOT_PLUGIN_TYPES = SLOT_BASE_URI + 4;
+    private static final int SLOT_REPORT_URI = SLOT_BASE_URI + 5;
+    private static final int SLOT_SANDBOX = SLOT_BASE_URI + 6;
+    private static final int SLOT_TRUSTED_TYPES = SLOT_BASE_URI + 7;
+    private static final int SLOT_REQUIRE_TRUSTED_TYPES_FOR = SLOT_BASE_URI + 8;
+    private static final int SLOT_COUNT = SLOT_BASE_URI + 9;
+
+    // the target of javascript: URL navigations; matching ignores the path of URLs without host
+    private static final GUID JAVASCRIPT_URL = new GUID("javascript", "");
+
+    Policy(final boolean deliveredViaMeta) {
         deliveredViaMeta_ = deliveredViaMeta;
+        lazySource_ = null;
+        pendingDirectives_ = null;
+    }
+
+    private Policy(final boolean deliveredViaMeta, final PolicyTokenizer lazySource) {
+        deliveredViaMeta_ = deliveredViaMeta;
+        lazySource_ = lazySource;
+        pendingDirectives_ = new int[SLOT_COUNT];
+        Arrays.fill(pendingDirectives_, -1);
     }
 
     /**
@@ -122,28 +161,87 @@ private Policy(final boolean deliveredViaMeta) {
      */
     public static PolicyList parseSerializedCSPList(final String serialized,
                         final PolicyListErrorConsumer policyListErrorConsumer) {
-        // "A serialized CSP list is an ASCII string"
-        enforceAscii(serialized);
-
-        final List<Policy> policies = new ArrayList<>();
-
-        // java's lambdas are dumb
-        final int[] index = {0};
-        final PolicyErrorConsumer policyErrorConsumer =
-                (Severity severity, String message, int directiveIndex, int valueIndex) ->
-                        policyListErrorConsumer.add(severity, message, index[0], directiveIndex, valueIndex);
-
-        // https://infra.spec.whatwg.org/#split-on-commas
-        for (final String token : serialized.split(",")) {
-            final Policy policy = parseSerializedCSP(token, policyErrorConsumer);
-            if (policy.directives_.isEmpty()) {
-                ++index[0];
-                continue;
-            }
+        return listFromTokenizer(PolicyTokenizer.tokenizeList(serialized), policyListErrorConsumer, false);
+    }
+
+    /**
+     * Parses a serialized CSP list given as a {@link CharSequence}.
+     * <p>
+     * Behaves like {@link #parseSerializedCSPList(String, PolicyListErrorConsumer)} but
+     * avoids converting the whole input into a {@code String}; only the retained directive
+     * names and values are copied.
+     * </p>
+     *
+     * @param serialized the comma-separated serialized CSP list to parse
+     * @param policyListErrorConsumer a consumer that receives any errors or warnings
+     *        encountered during parsing
+     * @return the parsed {@link PolicyList}
+     * @throws IllegalArgumentException if {@code serialized} contains non-ASCII characters
+     */
+    public static PolicyList parseSerializedCSPList(final CharSequence serialized,
+                        final PolicyListErrorConsumer policyListErrorConsumer) {
+        return listFromTokenizer(PolicyTokenizer.tokenizeList(serialized), policyListErrorConsumer, false);
+    }
+
+    /**
+     * Parses a serialized CSP list given as raw header bytes.
+     * <p>
+     * Behaves like {@link #parseSerializedCSPList(String, PolicyListErrorConsumer)}.
+     * The bytes are validated and tokenized in a single pass without decoding them
+     * first; every byte must be ASCII.
+     * </p>
+     *
+     * @param serialized the array holding the serialized CSP list
+     * @param offset the index of the first byte of the serialized CSP list
+     * @param length the number of bytes of the serialized CSP list
+     * @param policyListErrorConsumer a consumer that receives any errors or warnings
+     *        encountered during parsing
+     * @return the parsed {@link PolicyList}
+     * @throws IllegalArgumentException if the bytes contain non-ASCII characters
+     * @throws IndexOutOfBoundsException if {@code offset} or {@code length} is out of range
+     */
+    public static PolicyList parseSerializedCSPList(final byte[] serialized, final int offset, final int length,
+                        final PolicyListErrorConsumer policyListErrorConsumer) {
+        return listFromTokenizer(PolicyTokenizer.tokenizeList(AsciiByteSequence.of(serialized, offset, length)),
+                    policyListErrorConsumer, false);
+    }
+
+    /**
+     * Parses a serialized CSP list given as raw header bytes.
+     * <p>
+     * Behaves like {@link #parseSerializedCSPList(String, PolicyListErrorConsumer)}.
+     * The remaining bytes of the buffer are validated and tokenized in a single pass
+     * without decoding them first; every byte must be ASCII. The position of the
+     * buffer is not changed.
+     * </p>
+     *
+     * @param serialized the buffer holding the serialized CSP list
+     * @param policyListErrorConsumer a consumer that receives any errors or warnings
+     *        encountered during parsing
+     * @return the parsed {@link PolicyList}
+     * @throws IllegalArgumentException if the bytes contain non-ASCII characters
+     */
+    public static PolicyList parseSerializedCSPList(final ByteBuffer serialized,
+                        final PolicyListErrorConsumer policyListErrorConsumer) {
+        return listFromTokenizer(PolicyTokenizer.tokenizeList(AsciiByteSequence.of(serialized)),
+                    policyListErrorConsumer, false);
+    }
 
-            policies.add(policy);
+    private static PolicyList listFromTokenizer(final PolicyTokenizer tokenizer,
+                        final PolicyListErrorConsumer policyListErrorConsumer, final boolean lazy) {
+        final List<Policy> policies = new ArrayList<>(tokenizer.getPolicyCount());
 
-            ++index[0];
+        final PolicyIndexingConsumer indexing = policyListErrorConsumer == PolicyListErrorConsumer.ignored
+                ? null
+                : new PolicyIndexingConsumer(policyListErrorConsumer);
+        final PolicyErrorConsumer policyErrorConsumer = indexing == null ? PolicyErrorConsumer.ignored : indexing;
+
+        // empty policies are never recorded by the tokenizer
+        for (int i = 0; i < tokenizer.getPolicyCount(); i++) {
+            if (indexing != null) {
+                indexing.policyIndex_ = tokenizer.getPolicyIndex(i);
+            }
+            policies.add(fromTokenizer(tokenizer, i, policyErrorConsumer, false, lazy));
         }
         return new PolicyList(policies);
     }
@@ -197,49 +295,233 @@ public static Policy parseSerializedCSP(final String serialized, final PolicyErr
     public static Policy parseSerializedCSP(final String serialized, final PolicyErrorConsumer policyErrorConsumer,
             final boolean deliveredViaMeta) {
         // "A serialized CSP is an ASCII string", and browsers do in fact reject CSPs which contain non-ASCII characters
-        enforceAscii(serialized);
-        if (serialized.contains(",")) {
-            // This is not quite per spec, but
-            throw new IllegalArgumentException(
-                    "Serialized CSPs cannot contain commas - you may have wanted parseSerializedCSPList");
+        // commas are rejected as well; this is not quite per spec
+        return policyFromTokenizer(PolicyTokenizer.tokenizePolicy(serialized), policyErrorConsumer, deliveredViaMeta);
+    }
+
+    /**
+     * Parses a single serialized CSP given as a {@link CharSequence}.
+     * <p>
+     * Behaves like {@link #parseSerializedCSP(String, PolicyErrorConsumer)} but avoids
+     * converting the whole input into a {@code String}; only the retained directive
+     * names and values are copied.
+     * </p>
+     *
+     * @param serialized the serialized CSP to parse (must not contain commas)
+     * @param policyErrorConsumer a consumer that receives any errors or warnings
+     *        encountered during parsing
+     * @return the parsed {@link Policy}
+     * @throws IllegalArgumentException if {@code serialized} contains non-ASCII characters
+     *         or contains a comma
+     */
+    public static Policy parseSerializedCSP(final CharSequence serialized,
+            final PolicyErrorConsumer policyErrorConsumer) {
+        return policyFromTokenizer(PolicyTokenizer.tokenizePolicy(serialized), policyErrorConsumer, false);
+    }
+
+    /**
+     * Parses a single serialized CSP given as raw header bytes.
+     * <p>
+     * Behaves like {@link #parseSerializedCSP(String, PolicyErrorConsumer)}. The bytes
+     * are validated and tokenized in a single pass without decoding them first; every
+     * byte must be ASCII.
+     * </p>
+     *
+     * @param serialized the array holding the serialized CSP (must not contain commas)
+     * @param offset the index of the first byte of the serialized CSP
+     * @param length the number of bytes of the serialized CSP
+     * @param policyErrorConsumer a consumer that receives any errors or warnings
+     *        encountered during parsing
+     * @return the parsed {@link Policy}
+     * @throws IllegalArgumentException if the bytes contain non-ASCII characters
+     *         or contain a comma
+     * @throws IndexOutOfBoundsException if {@code offset} or {@code length} is out of range
+     */
+    public static Policy parseSerializedCSP(final byte[] serialized, final int offset, final int length,
+            final PolicyErrorConsumer policyErrorConsumer) {
+        return policyFromTokenizer(PolicyTokenizer.tokenizePolicy(AsciiByteSequence.of(serialized, offset, length)),
+                    policyErrorConsumer, false);
+    }
+
+    /**
+     * Parses a single serialized CSP given as raw header bytes.
+     * <p>
+     * Behaves like {@link #parseSerializedCSP(String, PolicyErrorConsumer)}. The remaining
+     * bytes of the buffer are validated and tokenized in a single pass without decoding
+     * them first; every byte must be ASCII. The position of the buffer is not changed.
+     * </p>
+     *
+     * @param serialized the buffer holding the serialized CSP (must not contain commas)
+     * @param policyErrorConsumer a consumer that receives any errors or warnings
+     *        encountered during parsing
+     * @return the parsed {@link Policy}
+     * @throws IllegalArgumentException if the bytes contain non-ASCII characters
+     *         or contain a comma
+     */
+    public static Policy parseSerializedCSP(final ByteBuffer serialized,
+            final PolicyErrorConsumer policyErrorConsumer) {
+        return policyFromTokenizer(PolicyTokenizer.tokenizePolicy(AsciiByteSequence.of(serialized)),
+                    policyErrorConsumer, false);
+    }
+
+    private static Policy policyFromTokenizer(final PolicyTokenizer tokenizer,
+            final PolicyErrorConsumer policyErrorConsumer, final boolean deliveredViaMeta) {
+        if (tokenizer.getPolicyCount() == 0) {
+            return new Policy(deliveredViaMeta);
+        }
+        return fromTokenizer(tokenizer, 0, policyErrorConsumer, deliveredViaMeta, false);
+    }
+
+    /**
+     * Parses a single serialized CSP into a {@link Policy} whose directives are built lazily.
+     * <p>
+     * Only the directive names are examined up front; the values of the source-list,
+     * {@code sandbox}, {@code trusted-types} and the other structured directives are
+     * kept as ranges of the input and turned into directive objects the first time an
+     * accessor or one of the {@code allows*} methods needs them. This pays off if only a
+     * few of the directives are ever queried. Building a directive is thread-safe and
+     * happens at most once.
+     * </p>
+     * <p>
+     * Only directive level errors and warnings (unknown, duplicate or deprecated
+     * directives and the like) are reported; problems with individual values of the
+     * lazily built directives are not. Use
+     * {@link #parseSerializedCSP(String, PolicyErrorConsumer)} to validate a policy.
+     * </p>
+     *
+     * @param serialized the serialized CSP to parse (must not contain commas)
+     * @param policyErrorConsumer a consumer that receives the directive level errors
+     *        and warnings encountered during parsing
+     * @return the parsed {@link Policy}
+     * @throws IllegalArgumentException if {@code serialized} contains non-ASCII characters
+     *         or contains a comma
+     */
+    public static Policy parseSerializedCSPLazily(final CharSequence serialized,
+            final PolicyErrorConsumer policyErrorConsumer) {
+        // the input is retained, make sure it can not change
+        final PolicyTokenizer tokenizer = PolicyTokenizer.tokenizePolicy(serialized.toString());
+        if (tokenizer.getPolicyCount() == 0) {
+            return new Policy(false);
         }
+        return fromTokenizer(tokenizer, 0, policyErrorConsumer, false, true);
+    }
+
+    /**
+     * Parses a serialized CSP list into a {@link PolicyList} whose policies build
+     * their directives lazily.
+     * <p>
+     * See {@link #parseSerializedCSPLazily(CharSequence, PolicyErrorConsumer)} for
+     * the details and the limitations of the error reporting.
+     * </p>
+     *
+     * @param serialized the comma-separated serialized CSP list to parse
+     * @param policyListErrorConsumer a consumer that receives the directive level errors
+     *        and warnings encountered during parsing
+     * @return the parsed {@link PolicyList}
+     * @throws IllegalArgumentException if {@code serialized} contains non-ASCII characters
+     */
+    public static PolicyList parseSerializedCSPListLazily(final CharSequence serialized,
+                        final PolicyListErrorConsumer policyListErrorConsumer) {
+        // the input is retained, make sure it can not change
+        return listFromTokenizer(PolicyTokenizer.tokenizeList(serialized.toString()), policyListErrorConsumer, true);
+    }
 
-        // java's lambdas are dumb
-        final int[] index = {0};
+    private static Policy fromTokenizer(final PolicyTokenizer tokenizer, final int policyNumber,
+            final PolicyErrorConsumer policyErrorConsumer, final boolean deliveredViaMeta, final boolean lazy) {
+        final DirectiveIndexingConsumer indexing = policyErrorConsumer == PolicyErrorConsumer.ignored
+                ? null
+                : new DirectiveIndexingConsumer(policyErrorConsumer);
         final Directive.DirectiveErrorConsumer directiveErrorConsumer =
-                (Severity severity, String message, int valueIndex) ->
-                        policyErrorConsumer.add(severity, message, index[0], valueIndex);
+                indexing == null ? Directive.DirectiveErrorConsumer.ignored : indexing;
 
-        final Policy policy = new Policy(deliveredViaMeta);
+        final Policy policy = lazy ? new Policy(deliveredViaMeta, tokenizer) : new Policy(deliveredViaMeta);
 
         // https://infra.spec.whatwg.org/#strictly-split
-        for (final String token : serialized.split(";")) {
-            final String trimmedLeadingAndTrailingWhitespace = Utils.trimAsciiWhitespace(token);
-            if (trimmedLeadingAndTrailingWhitespace.isEmpty()) {
-                ++index[0];
-                continue;
+        final int first = tokenizer.getFirstDirective(policyNumber);
+        final int end = first + tokenizer.getDirectiveCount(policyNumber);
+        for (int i = first; i < end; i++) {
+            if (indexing != null) {
+                indexing.directiveIndex_ = tokenizer.getDirectiveIndex(i);
             }
-            final String directiveName = Utils.extractLeadingToken(trimmedLeadingAndTrailingWhitespace);
 
             // Note: we do not lowercase directive names or
             // skip duplicates during parsing, to allow round-tripping even invalid policies
+            if (lazy) {
+                policy.add(tokenizer.getName(i), null, null, i, directiveErrorConsumer);
+            }
+            else {
+                policy.add(tokenizer.getName(i), tokenizer.getValues(i), directiveErrorConsumer);
+            }
+        }
 
-            final String remainingToken = trimmedLeadingAndTrailingWhitespace.substring(directiveName.length());
+        if (lazy) {
+            // publishes the pending directives, see materialize()
+            policy.materializedSlots_ = 0;
+        }
+        return policy;
+    }
 
-            final List<String> directiveValues = Utils.splitOnAsciiWhitespace(remainingToken);
+    // Adds the index of the current policy to the diagnostics of a policy list
+    private static final class PolicyIndexingConsumer implements PolicyErrorConsumer {
+        private final PolicyListErrorConsumer target_;
+        private int policyIndex_;
 
-            policy.add(directiveName, directiveValues, directiveErrorConsumer);
+        PolicyIndexingConsumer(final PolicyListErrorConsumer target) {
+            target_ = target;
+        }
 
-            ++index[0];
+        @Override
+        public void add(final Severity severity, final String message,
+                final int directiveIndex, final int valueIndex) {
+            target_.add(severity, message, policyIndex_, directiveIndex, valueIndex);
         }
 
-        return policy;
+        @Override
+        public void report(final DiagnosticCode code, final int directiveIndex, final int valueIndex,
+                final Object arg0, final Object arg1, final Object arg2) {
+            target_.report(code, policyIndex_, directiveIndex, valueIndex, arg0, arg1, arg2);
+        }
+    }
+
+    // Adds the index of the current directive to the diagnostics of a policy
+    private static final class DirectiveIndexingConsumer implements Directive.DirectiveErrorConsumer {
+        private final PolicyErrorConsumer target_;
+        private int directiveIndex_;
+
+        DirectiveIndexingConsumer(final PolicyErrorConsumer target) {
+            target_ = target;
+        }
+
+        @Override
+        public void add(final Severity severity, final String message, final int valueIndex) {
+            target_.add(severity, message, directiveIndex_, valueIndex);
+        }
+
+        @Override
+        public void report(final DiagnosticCode code, final int valueIndex,
+                final Object arg0, final Object arg1, final Object arg2) {
+            target_.report(code, directiveIndex_, valueIndex, arg0, arg1, arg2);
+        }
     }
 
     // We do not provide a generic method for updating an existing directive in-place.
     // Just remove the existing one and add it back.
-    private Directive add(final String name, final List<String> values,
+    Directive add(final String name, final List<String> values,
+                            final Directive.DirectiveErrorConsumer directiveErrorConsumer) {
+        return add(name, values, null, -1, directiveErrorConsumer);
+    }
+
+    // Adds a directive whose values are parsed already, as far as parsed holds a value object for them;
+    // used by PolicyBuilder and PolicyCodec. See DirectiveAccess for the directives that take parsed values.
+    Directive add(final String name, final List<String> values, final List<?> parsed,
                             final Directive.DirectiveErrorConsumer directiveErrorConsumer) {
+        return add(name, values, parsed, -1, directiveErrorConsumer);
+    }
+
+    // When lazyDirective is not -1 it is the number of the tokenized directive; values is null in this case
+    // and the directive objects for the slots are only built on first use (see materialize).
+    private Directive add(final String name, final List<String> values, final List<?> parsed,
+                            final int lazyDirective, final Directive.DirectiveErrorConsumer directiveErrorConsumer) {
         enforceAscii(name);
 
         // the parser will never hit these errors by construction, but use of the manipulation APIs can
@@ -252,247 +534,368 @@ private Directive add(final String name, final List<String> values,
 
         boolean wasDupe = false;
         final Directive newDirective;
-        final String lowercaseDirectiveName = name.toLowerCase(Locale.ROOT);
-        switch (lowercaseDirectiveName) {
-            case "base-uri":
+        final DirectiveName directiveName = DirectiveName.lookup(name);
+        // the lowercase name is only needed for the duplicate message; for known directives it is the repr
+        String lowercaseDirectiveName = directiveName.getRepr();
+        switch (directiveName) {
+            case BaseUri:
                 // https://w3c.github.io/webappsec-csp/#directive-base-uri
-                final SourceExpressionDirective baseUriDirective
-                        = new SourceExpressionDirective(values, directiveErrorConsumer);
-                if (baseUri_ == null) {
-                    baseUri_ = baseUriDirective;
-                }
-                else {
-                    wasDupe = true;
-                }
-                newDirective = baseUriDirective;
+                wasDupe = hasSlot(SLOT_BASE_URI);
+                newDirective = addToSlot(SLOT_BASE_URI, wasDupe, values, parsed, lazyDirective, directiveErrorConsumer);
                 break;
 
-            case "block-all-mixed-content":
+            case BlockAllMixedContent:
                 // https://www.w3.org/TR/mixed-content/#strict-opt-in
+                final List<String> blockAllMixedContentValues = values(values, lazyDirective);
                 if (blockAllMixedContent_) {
                     wasDupe = true;
                 }
                 else {
-                    if (!values.isEmpty()) {
-                        directiveErrorConsumer.add(Severity.Error,
-                                        "The block-all-mixed-content directive does not support values", 0);
+                    if (!blockAllMixedContentValues.isEmpty()) {
+                        directiveErrorConsumer.report(DiagnosticCode.DirectiveDoesNotSupportValues, 0,
+                                        "block-all-mixed-content");
                     }
                     blockAllMixedContent_ = true;
                 }
-                newDirective = new Directive(values);
+                newDirective = new Directive(blockAllMixedContentValues);
                 break;
 
-            case "form-action":
+            case FormAction:
                 // https://w3c.github.io/webappsec-csp/#directive-form-action
-                final SourceExpressionDirective formActionDirective
-                        = new SourceExpressionDirective(values, directiveErrorConsumer);
-                if (formAction_ == null) {
-                    formAction_ = formActionDirective;
-                }
-                else {
-                    wasDupe = true;
-                }
-                newDirective = formActionDirective;
+                wasDupe = hasSlot(SLOT_FORM_ACTION);
+                newDirective = addToSlot(SLOT_FORM_ACTION, wasDupe,
+                                    values, parsed, lazyDirective, directiveErrorConsumer);
                 break;
 
-            case "frame-ancestors":
+            case FrameAncestors:
                 // https://w3c.github.io/webappsec-csp/#directive-frame-ancestors
                 // TODO contemplate warning for paths, which are always ignored: frame-ancestors only matches
                 // against origins: https://w3c.github.io/webappsec-csp/#frame-ancestors-navigation-response
                 if (deliveredViaMeta_) {
-                    directiveErrorConsumer.add(Severity.Warning,
-                            "The frame-ancestors directive is ignored when delivered via a meta element", -1);
-                }
-                final FrameAncestorsDirective frameAncestorsDirective
-                        = new FrameAncestorsDirective(values, directiveErrorConsumer);
-                if (frameAncestors_ == null) {
-                    frameAncestors_ = frameAncestorsDirective;
+                    directiveErrorConsumer.report(DiagnosticCode.DirectiveIgnoredInMeta, -1, "frame-ancestors");
                 }
-                else {
-                    wasDupe = true;
-                }
-                newDirective = frameAncestorsDirective;
+                wasDupe = hasSlot(SLOT_FRAME_ANCESTORS);
+                newDirective = addToSlot(SLOT_FRAME_ANCESTORS, wasDupe,
+                                    values, parsed, lazyDirective, directiveErrorConsumer);
                 break;
 
-            case "navigate-to":
+            case NavigateTo:
                 // https://w3c.github.io/webappsec-csp/#directive-navigate-to
                 // For some ungodly reason "navigate-to" is a list of source expressions while "frame-ancestors" is not
                 // There is no logic here
-                final SourceExpressionDirective navigateToDirective
-                        = new SourceExpressionDirective(values, directiveErrorConsumer);
-                if (navigateTo_ == null) {
-                    navigateTo_ = navigateToDirective;
-                }
-                else {
-                    wasDupe = true;
-                }
-                newDirective = navigateToDirective;
+                wasDupe = hasSlot(SLOT_NAVIGATE_TO);
+                newDirective = addToSlot(SLOT_NAVIGATE_TO, wasDupe,
+                                    values, parsed, lazyDirective, directiveErrorConsumer);
                 break;
 
-            case "plugin-types":
+            case PluginTypes:
                 // https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Content-Security-Policy/plugin-types
-                directiveErrorConsumer.add(Severity.Warning, "The plugin-types directive has been deprecated", -1);
-                final PluginTypesDirective pluginTypesDirective
-                        = new PluginTypesDirective(values, directiveErrorConsumer);
-                if (pluginTypes_ == null) {
-                    pluginTypes_ = pluginTypesDirective;
-                }
-                else {
-                    wasDupe = true;
-                }
-                newDirective = pluginTypesDirective;
+                directiveErrorConsumer.report(DiagnosticCode.DeprecatedDirective, -1, "plugin-types");
+                wasDupe = hasSlot(SLOT_PLUGIN_TYPES);
+                newDirective = addToSlot(SLOT_PLUGIN_TYPES, wasDupe,
+                                    values, parsed, lazyDirective, directiveErrorConsumer);
                 break;
 
-            case "report-to":
+            case ReportTo:
                 // https://w3c.github.io/webappsec-csp/#directive-report-to
+                final List<String> reportToValues = values(values, lazyDirective);
                 if (reportTo_ == null) {
-                    if (values.isEmpty()) {
-                        directiveErrorConsumer.add(Severity.Error, "The report-to directive requires a value", -1);
+                    if (reportToValues.isEmpty()) {
+                        directiveErrorConsumer.report(DiagnosticCode.DirectiveRequiresValue, -1, "report-to");
                     }
-                    else if (values.size() == 1) {
-                        final String token = values.get(0);
+                    else if (reportToValues.size() == 1) {
+                        final String token = reportToValues.get(0);
                         final Optional<RFC7230Token> matched = RFC7230Token.parseRFC7230Token(token);
                         if (matched.isPresent()) {
                             reportTo_ = matched.get();
                         }
                         else {
-                            directiveErrorConsumer.add(Severity.Error,
-                                                        "Expecting RFC 7230 token but found \"" + token + "\"", 0);
+                            directiveErrorConsumer.report(DiagnosticCode.ExpectedRFC7230Token, 0, token);
                         }
                     }
                     else {
-                        directiveErrorConsumer.add(Severity.Error,
-                                "The report-to directive requires exactly one value (found " + values.size() + ")", 1);
+                        directiveErrorConsumer.report(DiagnosticCode.ReportToRequiresOneValue, 1,
+                                reportToValues.size());
                     }
                 }
                 else {
                     wasDupe = true;
                 }
-                newDirective = new Directive(values);
+                newDirective = new Directive(reportToValues);
                 break;
 
-            case "referrer":
+            case Referrer:
                 // https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Content-Security-Policy/referrer
-                directiveErrorConsumer.add(Severity.Warning,
-                        "The referrer directive has been deprecated in favor of the Referrer-Policy header",
-                        -1);
+                directiveErrorConsumer.report(DiagnosticCode.ReferrerDeprecated, -1);
                 // We don't currently handle it further than this.
                 newDirective = new Directive(Collections.emptyList());
                 break;
 
-            case "report-uri":
+            case ReportUri:
                 // https://w3c.github.io/webappsec-csp/#directive-report-uri
-                directiveErrorConsumer.add(Severity.Warning,
-                        "The report-uri directive has been deprecated in favor of the new report-to directive", -1);
+                directiveErrorConsumer.report(DiagnosticCode.ReportUriDeprecated, -1);
                 if (deliveredViaMeta_) {
-                    directiveErrorConsumer.add(Severity.Warning,
-                            "The report-uri directive is ignored when delivered via a meta element", -1);
-                }
-
-                final ReportUriDirective reportUriDirective = new ReportUriDirective(values, directiveErrorConsumer);
-                if (reportUri_ == null) {
-                    reportUri_ = reportUriDirective;
+                    directiveErrorConsumer.report(DiagnosticCode.DirectiveIgnoredInMeta, -1, "report-uri");
                 }
-                else {
-                    wasDupe = true;
-                }
-                newDirective = reportUriDirective;
+                wasDupe = hasSlot(SLOT_REPORT_URI);
+                newDirective = addToSlot(SLOT_REPORT_URI, wasDupe,
+                                    values, parsed, lazyDirective, directiveErrorConsumer);
                 break;
 
-            case "sandbox":
+            case Sandbox:
                 // https://w3c.github.io/webappsec-csp/#directive-sandbox
                 if (deliveredViaMeta_) {
-                    directiveErrorConsumer.add(Severity.Warning,
-                            "The sandbox directive is ignored when delivered via a meta element", -1);
-                }
-                final SandboxDirective sandboxDirective = new SandboxDirective(values, directiveErrorConsumer);
-                if (sandbox_ == null) {
-                    sandbox_ = sandboxDirective;
+                    directiveErrorConsumer.report(DiagnosticCode.DirectiveIgnoredInMeta, -1, "sandbox");
                 }
-                else {
-                    wasDupe = true;
-                }
-                newDirective = sandboxDirective;
+                wasDupe = hasSlot(SLOT_SANDBOX);
+                newDirective = addToSlot(SLOT_SANDBOX, wasDupe, values, parsed, lazyDirective, directiveErrorConsumer);
                 break;
 
-            case "trusted-types":
+            case TrustedTypes:
                 // https://w3c.github.io/trusted-types/dist/spec/#trusted-types-csp-directive
-                final TrustedTypesDirective trustedTypesDirective =
-                        new TrustedTypesDirective(values, directiveErrorConsumer);
-                if (trustedTypes_ == null) {
-                    trustedTypes_ = trustedTypesDirective;
-                }
-                else {
-                    wasDupe = true;
-                }
-                newDirective = trustedTypesDirective;
+                wasDupe = hasSlot(SLOT_TRUSTED_TYPES);
+                newDirective = addToSlot(SLOT_TRUSTED_TYPES, wasDupe,
+                                    values, parsed, lazyDirective, directiveErrorConsumer);
                 break;
 
-            case "require-trusted-types-for":
+            case RequireTrustedTypesFor:
                 // https://w3c.github.io/trusted-types/dist/spec/#require-trusted-types-for-csp-directive
-                final RequireTrustedTypesForDirective requireTrustedTypesForDirective =
-                        new RequireTrustedTypesForDirective(values, directiveErrorConsumer);
-                if (requireTrustedTypesFor_ == null) {
-                    requireTrustedTypesFor_ = requireTrustedTypesForDirective;
-                }
-                else {
-                    wasDupe = true;
-                }
-                newDirective = requireTrustedTypesForDirective;
+                wasDupe = hasSlot(SLOT_REQUIRE_TRUSTED_TYPES_FOR);
+                newDirective = addToSlot(SLOT_REQUIRE_TRUSTED_TYPES_FOR, wasDupe,
+                                    values, parsed, lazyDirective, directiveErrorConsumer);
                 break;
 
-            case "upgrade-insecure-requests":
+            case UpgradeInsecureRequests:
                 // https://www.w3.org/TR/upgrade-insecure-requests/#delivery
+                final List<String> upgradeInsecureRequestsValues = values(values, lazyDirective);
                 if (upgradeInsecureRequests_) {
                     wasDupe = true;
                 }
                 else {
-                    if (!values.isEmpty()) {
-                        directiveErrorConsumer.add(Severity.Error,
-                                "The upgrade-insecure-requests directive does not support values", 0);
+                    if (!upgradeInsecureRequestsValues.isEmpty()) {
+                        directiveErrorConsumer.report(DiagnosticCode.DirectiveDoesNotSupportValues, 0,
+                                "upgrade-insecure-requests");
                     }
                     upgradeInsecureRequests_ = true;
                 }
-                newDirective = new Directive(values);
+                newDirective = new Directive(upgradeInsecureRequestsValues);
                 break;
 
             default:
                 if (!Directive.IS_DIRECTIVE_NAME.test(name)) {
-                    directiveErrorConsumer.add(Severity.Error,
-                                    "Directive name " + name
-                                        + " contains characters outside the range ALPHA / DIGIT / \"-\"", -1);
-                    newDirective = new Directive(values);
+                    directiveErrorConsumer.report(DiagnosticCode.InvalidDirectiveName, -1, name);
+                    newDirective = new Directive(values(values, lazyDirective));
                     break;
                 }
-                final FetchDirectiveKind fetchDirectiveKind = FetchDirectiveKind.fromString(lowercaseDirectiveName);
+                final FetchDirectiveKind fetchDirectiveKind = FetchDirectiveKind.lookupIgnoreCase(name);
                 if (fetchDirectiveKind != null) {
+                    lowercaseDirectiveName = fetchDirectiveKind.getRepr();
                     if (FetchDirectiveKind.PrefetchSrc == fetchDirectiveKind) {
-                        directiveErrorConsumer.add(Severity.Warning,
-                                                    "The prefetch-src directive has been deprecated", -1);
-                    }
-                    final SourceExpressionDirective thisDirective
-                                = new SourceExpressionDirective(values, directiveErrorConsumer);
-                    if (fetchDirectives_.containsKey(fetchDirectiveKind)) {
-                        wasDupe = true;
-                    }
-                    else {
-                        fetchDirectives_.put(fetchDirectiveKind, thisDirective);
+                        directiveErrorConsumer.report(DiagnosticCode.DeprecatedDirective, -1, "prefetch-src");
                     }
-                    newDirective = thisDirective;
+                    final int slot = fetchDirectiveKind.ordinal();
+                    wasDupe = hasSlot(slot);
+                    newDirective = addToSlot(slot, wasDupe, values, parsed, lazyDirective, directiveErrorConsumer);
                     break;
                 }
-                directiveErrorConsumer.add(Severity.Warning, "Unrecognized directive " + lowercaseDirectiveName, -1);
-                newDirective = new Directive(values);
+                directiveErrorConsumer.report(DiagnosticCode.UnrecognizedDirective, -1, name);
+                newDirective = new Directive(values(values, lazyDirective));
                 break;
         }
 
-        directives_.add(new NamedDirective(name, newDirective));
+        directives_.add(new NamedDirective(name, newDirective, newDirective == null ? lazyDirective : -1));
         if (wasDupe) {
-            directiveErrorConsumer.add(Severity.Warning, "Duplicate directive " + lowercaseDirectiveName, -1);
+            directiveErrorConsumer.report(DiagnosticCode.DuplicateDirective, -1, lowercaseDirectiveName);
         }
         return newDirective;
     }
 
+    private List<String> values(final List<String> values, final int lazyDirective) {
+        return lazyDirective == -1 ? values : lazySource_.getValues(lazyDirective);
+    }
+
+    // Returns null if the directive is not built yet because this policy is parsed lazily.
+    private Directive addToSlot(final int slot, final boolean wasDupe, final List<String> values,
+                            final List<?> parsed, final int lazyDirective,
+                            final Directive.DirectiveErrorConsumer directiveErrorConsumer) {
+        if (lazyDirective != -1) {
+            if (!wasDupe) {
+                pendingDirectives_[slot] = lazyDirective;
+            }
+            return null;
+        }
+
+        final Directive directive = createDirective(slot, values, parsed, directiveErrorConsumer);
+        if (!wasDupe) {
+            setSlot(slot, directive);
+        }
+        return directive;
+    }
+
+    // parsed may hold the value objects of frame-ancestors and the source-expression directives
+    private static Directive createDirective(final int slot, final List<String> values, final List<?> parsed,
+                            final Directive.DirectiveErrorConsumer directiveErrorConsumer) {
+        if (slot == SLOT_FRAME_ANCESTORS) {
+            return DIRECTIVES.newFrameAncestorsDirective(values, parsed, directiveErrorConsumer);
+        }
+        if (slot == SLOT_PLUGIN_TYPES) {
+            return new PluginTypesDirective(values, directiveErrorConsumer);
+        }
+        if (slot == SLOT_REPORT_URI) {
+            return new ReportUriDirective(values, directiveErrorConsumer);
+        }
+        if (slot == SLOT_SANDBOX) {
+            return new SandboxDirective(values, directiveErrorConsumer);
+        }
+        if (slot == SLOT_TRUSTED_TYPES) {
+            return new TrustedTypesDirective(values, directiveErrorConsumer);
+        }
+        if (slot == SLOT_REQUIRE_TRUSTED_TYPES_FOR) {
+            return new RequireTrustedTypesForDirective(values, directiveErrorConsumer);
+        }
+        // the fetch directives, base-uri, form-action and navigate-to
+        return DIRECTIVES.newSourceExpressionDirective(values, parsed, directiveErrorConsumer);
+    }
+
+    private boolean hasSlot(final int slot) {
+        return getSlot(slot) != null || pendingDirectives_ != null && pendingDirectives_[slot] != -1;
+    }
+
+    private Directive getSlot(final int slot) {
+        if (slot < SLOT_BASE_URI) {
+            return fetchDirectives_.get(FETCH_DIRECTIVE_KINDS[slot]);
+        }
+        if (slot == SLOT_BASE_URI) {
+            return baseUri_;
+        }
+        if (slot == SLOT_FORM_ACTION) {
+            return formAction_;
+        }
+        if (slot == SLOT_FRAME_ANCESTORS) {
+            return frameAncestors_;
+        }
+        if (slot == SLOT_NAVIGATE_TO) {
+            return navigateTo_;
+        }
+        if (slot == SLOT_PLUGIN_TYPES) {
+            return pluginTypes_;
+        }
+        if (slot == SLOT_REPORT_URI) {
+            return reportUri_;
+        }
+        if (slot == SLOT_SANDBOX) {
+            return sandbox_;
+        }
+        if (slot == SLOT_TRUSTED_TYPES) {
+            return trustedTypes_;
+        }
+        return requireTrustedTypesFor_;
+    }
+
+    private void setSlot(final int slot, final Directive directive) {
+        if (slot < SLOT_BASE_URI) {
+            fetchDirectives_.put(FETCH_DIRECTIVE_KINDS[slot], (SourceExpressionDirective) directive);
+        }
+        else if (slot == SLOT_BASE_URI) {
+            baseUri_ = (SourceExpressionDirective) directive;
+        }
+        else if (slot == SLOT_FORM_ACTION) {
+            formAction_ = (SourceExpressionDirective) directive;
+        }
+        else if (slot == SLOT_FRAME_ANCESTORS) {
+            frameAncestors_ = (FrameAncestorsDirective) directive;
+        }
+        else if (slot == SLOT_NAVIGATE_TO) {
+            navigateTo_ = (SourceExpressionDirective) directive;
+        }
+        else if (slot == SLOT_PLUGIN_TYPES) {
+            pluginTypes_ = (PluginTypesDirective) directive;
+        }
+        else if (slot == SLOT_REPORT_URI) {
+            reportUri_ = (ReportUriDirective) directive;
+        }
+        else if (slot == SLOT_SANDBOX) {
+            sandbox_ = (SandboxDirective) directive;
+        }
+        else if (slot == SLOT_TRUSTED_TYPES) {
+            trustedTypes_ = (TrustedTypesDirective) directive;
+        }
+        else {
+            requireTrustedTypesFor_ = (RequireTrustedTypesForDirective) directive;
+        }
+    }
+
+    // Builds the directive object of a lazily parsed policy on first use. Every slot is built
+    // at most once; the directive fields are only written while holding the lock and become
+    // visible to other threads through the volatile materializedSlots_.
+    private void materialize(final int slot) {
+        if (lazySource_ == null) {
+            return;
+        }
+        final int bit = 1 << slot;
+        if ((materializedSlots_ & bit) != 0 || pendingDirectives_[slot] == -1) {
+            return;
+        }
+        synchronized (this) {
+            if ((materializedSlots_ & bit) == 0) {
+                // value level errors and warnings are not reported in lazy mode
+                setSlot(slot, createDirective(slot, lazySource_.getValues(pendingDirectives_[slot]), null,
+                                                Directive.DirectiveErrorConsumer.ignored));
+                materializedSlots_ |= bit;
+            }
+        }
+    }
+
+    private SourceExpressionDirective fetchDirective(final FetchDirectiveKind kind) {
+        materialize(kind.ordinal());
+        return fetchDirectives_.get(kind);
+    }
+
+    private SourceExpressionDirective baseUriDirective() {
+        materialize(SLOT_BASE_URI);
+        return baseUri_;
+    }
+
+    private SourceExpressionDirective formActionDirective() {
+        materialize(SLOT_FORM_ACTION);
+        return formAction_;
+    }
+
+    private FrameAncestorsDirective frameAncestorsDirective() {
+        materialize(SLOT_FRAME_ANCESTORS);
+        return frameAncestors_;
+    }
+
+    private SourceExpressionDirective navigateToDirective() {
+        materialize(SLOT_NAVIGATE_TO);
+        return navigateTo_;
+    }
+
+    private PluginTypesDirective pluginTypesDirective() {
+        materialize(SLOT_PLUGIN_TYPES);
+        return pluginTypes_;
+    }
+
+    private ReportUriDirective reportUriDirective() {
+        materialize(SLOT_REPORT_URI);
+        return reportUri_;
+    }
+
+    private SandboxDirective sandboxDirective() {
+        materialize(SLOT_SANDBOX);
+        return sandbox_;
+    }
+
+    private TrustedTypesDirective trustedTypesDirective() {
+        materialize(SLOT_TRUSTED_TYPES);
+        return trustedTypes_;
+    }
+
+    private RequireTrustedTypesForDirective requireTrustedTypesForDirective() {
+        materialize(SLOT_REQUIRE_TRUSTED_TYPES_FOR);
+        return requireTrustedTypesFor_;
+    }
+
     /**
      * Serializes this policy back to its string representation.
      * <p>
@@ -501,22 +904,127 @@ else if (values.size() == 1) {
      * </p>
      *
      * @return the serialized CSP string
+     * @see #appendTo(Appendable)
+     * @see #writeTo(ByteBuffer)
      */
     @Override
     public String toString() {
-        final StringBuilder out = new StringBuilder();
+        final StringBuilder out = new StringBuilder(getSerializedLength());
+        try {
+            appendTo(out);
+        }
+        catch (final IOException e) {
+            // a StringBuilder does not throw
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Returns the length of the serialized form, i.e. of {@link #toString()} and of the
+     * bytes {@link #writeTo(ByteBuffer)} writes.
+     *
+     * @return the number of characters of the serialized form
+     */
+    public int getSerializedLength() {
+        // the separators "; " and the spaces before the values
+        int length = directives_.isEmpty() ? 0 : 2 * (directives_.size() - 1);
+        for (final NamedDirective directive : directives_) {
+            length += directive.name_.length();
+            for (final String value : values(directive)) {
+                length += 1 + value.length();
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes the serialized form, the same as {@link #toString()}, to the given
+     * {@link Appendable} without building the string first.
+     *
+     * @param out the target, e.g. a {@link StringBuilder} or a {@link java.io.Writer}
+     * @throws IOException if the target throws
+     */
+    public void appendTo(final Appendable out) throws IOException {
+        boolean first = true;
+        for (final NamedDirective directive : directives_) {
+            if (!first) {
+                out.append("; "); // The whitespace is not strictly necessary but is probably valuable
+            }
+            first = false;
+            out.append(directive.name_);
+            for (final String value : values(directive)) {
+                out.append(' ').append(value);
+            }
+        }
+    }
+
+    /**
+     * Writes the serialized form, the same as {@link #toString()}, as ASCII bytes
+     * to the given buffer, starting at its position.
+     * <p>
+     * The position is advanced by {@link #getSerializedLength()}. Nothing is written
+     * if the buffer has not enough space left. To write the same policy often, use the
+     * bytes cached by {@link CompiledPolicy#writeTo(ByteBuffer)}.
+     * </p>
+     *
+     * @param out the target buffer
+     * @throws BufferOverflowException if the buffer has less than
+     *         {@link #getSerializedLength()} bytes remaining
+     * @throws java.nio.ReadOnlyBufferException if the buffer is read-only
+     */
+    public void writeTo(final ByteBuffer out) {
+        if (out.remaining() < getSerializedLength()) {
+            throw new BufferOverflowException();
+        }
+        writeUnchecked(out);
+    }
+
+    // writeTo without the check of the space left
+    void writeUnchecked(final ByteBuffer out) {
+        int position = out.position();
         boolean first = true;
         for (final NamedDirective directive : directives_) {
             if (!first) {
-                out.append("; "); // The whitespace is not strictly necessary but is probably valuable
+                out.put(position++, (byte) ';');
+                out.put(position++, (byte) ' ');
             }
             first = false;
-            out.append(directive.name_);
-            for (final String value : directive.directive_.getValues()) {
-                out.append(' ').append(value);
+            position = put(out, position, directive.name_);
+            for (final String value : values(directive)) {
+                out.put(position++, (byte) ' ');
+                position = put(out, position, value);
             }
         }
-        return out.toString();
+        out.position(position);
+    }
+
+    // names and values are ASCII, see enforceAscii
+    static int put(final ByteBuffer out, final int position, final String ascii) {
+        int index = position;
+        for (int i = 0; i < ascii.length(); i++) {
+            out.put(index++, (byte) ascii.charAt(i));
+        }
+        return index;
+    }
+
+    private List<String> values(final NamedDirective directive) {
+        return directive.directive_ == null
+                ? lazySource_.getValues(directive.lazyDirective_)
+                : directive.directive_.values();
+    }
+
+    // The directives in order, as toString() writes them; used by PolicyCodec
+    int getDirectiveCount() {
+        return directives_.size();
+    }
+
+    String getDirectiveName(final int index) {
+        return directives_.get(index).name_;
+    }
+
+    List<String> getDirectiveValues(final int index) {
+        return values(directives_.get(index));
     }
 
     // Accessors
@@ -529,7 +1037,7 @@ public String toString() {
      * @see <a href="https://w3c.github.io/webappsec-csp/#directive-base-uri">base-uri directive</a>
      */
     public Optional<SourceExpressionDirective> baseUri() {
-        return Optional.ofNullable(baseUri_);
+        return Optional.ofNullable(baseUriDirective());
     }
 
     /**
@@ -562,7 +1070,7 @@ public boolean deliveredViaMeta() {
      * @see <a href="https://w3c.github.io/webappsec-csp/#directive-form-action">form-action directive</a>
      */
     public Optional<SourceExpressionDirective> formAction() {
-        return Optional.ofNullable(formAction_);
+        return Optional.ofNullable(formActionDirective());
     }
 
     /**
@@ -573,7 +1081,7 @@ public Optional<SourceExpressionDirective> formAction() {
      * @see <a href="https://w3c.github.io/webappsec-csp/#directive-frame-ancestors">frame-ancestors directive</a>
      */
     public Optional<FrameAncestorsDirective> frameAncestors() {
-        return Optional.ofNullable(frameAncestors_);
+        return Optional.ofNullable(frameAncestorsDirective());
     }
 
     /**
@@ -584,7 +1092,7 @@ public Optional<FrameAncestorsDirective> frameAncestors() {
      * @see <a href="https://w3c.github.io/webappsec-csp/#directive-navigate-to">navigate-to directive</a>
      */
     public Optional<SourceExpressionDirective> navigateTo() {
-        return Optional.ofNullable(navigateTo_);
+        return Optional.ofNullable(navigateToDirective());
     }
 
     /**
@@ -595,7 +1103,7 @@ public Optional<SourceExpressionDirective> navigateTo() {
      *         or empty if the directive was not specified
      */
     public Optional<PluginTypesDirective> pluginTypes() {
-        return Optional.ofNullable(pluginTypes_);
+        return Optional.ofNullable(pluginTypesDirective());
     }
 
     /**
@@ -619,7 +1127,7 @@ public Optional<RFC7230Token> reportTo() {
      * @see <a href="https://w3c.github.io/webappsec-csp/#directive-report-uri">report-uri directive</a>
      */
     public Optional<ReportUriDirective> reportUri() {
-        return Optional.ofNullable(reportUri_);
+        return Optional.ofNullable(reportUriDirective());
     }
 
     /**
@@ -630,7 +1138,7 @@ public Optional<ReportUriDirective> reportUri() {
      * @see <a href="https://w3c.github.io/webappsec-csp/#directive-sandbox">sandbox directive</a>
      */
     public Optional<SandboxDirective> sandbox() {
-        return Optional.ofNullable(sandbox_);
+        return Optional.ofNullable(sandboxDirective());
     }
 
     /**
@@ -642,7 +1150,7 @@ public Optional<SandboxDirective> sandbox() {
      *      trusted-types directive</a>
      */
     public Optional<TrustedTypesDirective> trustedTypes() {
-        return Optional.ofNullable(trustedTypes_);
+        return Optional.ofNullable(trustedTypesDirective());
     }
 
     /**
@@ -652,7 +1160,8 @@ public Optional<TrustedTypesDirective> trustedTypes() {
      * @return true if wildcard policy names (*) are permitted, false if not present or not permitted
      */
     public boolean allowsWildcardPolicyNames() {
-        return trustedTypes_ != null && trustedTypes_.allowsWildcardPolicyNames();
+        final TrustedTypesDirective trustedTypes = trustedTypesDirective();
+        return trustedTypes != null && trustedTypes.allowsWildcardPolicyNames();
     }
 
     /**
@@ -664,7 +1173,7 @@ public boolean allowsWildcardPolicyNames() {
      *      require-trusted-types-for directive</a>
      */
     public Optional<RequireTrustedTypesForDirective> requireTrustedTypesFor() {
-        return Optional.ofNullable(requireTrustedTypesFor_);
+        return Optional.ofNullable(requireTrustedTypesForDirective());
     }
 
     /**
@@ -692,7 +1201,7 @@ public boolean upgradeInsecureRequests() {
      *         requested fetch directive, or empty if not present
      */
     public Optional<SourceExpressionDirective> getFetchDirective(final FetchDirectiveKind kind) {
-        return Optional.ofNullable(fetchDirectives_.get(kind));
+        return Optional.ofNullable(fetchDirective(kind));
     }
 
     // High-level querying
@@ -728,26 +1237,28 @@ public boolean allowsExternalScript(
             final Optional<? extends URLWithScheme> scriptUrl,
             final Optional<Boolean> parserInserted,
             final Optional<? extends URLWithScheme> origin) {
-        if (sandbox_ != null && !sandbox_.allowScripts()) {
+        return allowsExternalScript(nonce.orElse(null), integrity.orElse(null), scriptUrl.orElse(null),
+                parserInserted.orElse(null), origin.orElse(null));
+    }
+
+    private boolean allowsExternalScript(final String nonce, final String integrity, final URLWithScheme scriptUrl,
+            final Boolean parserInserted, final URLWithScheme origin) {
+        final SandboxDirective sandbox = sandboxDirective();
+        if (sandbox != null && !sandbox.allowScripts()) {
             return false;
         }
 
         // Effective directive is "script-src-elem" per
         // https://w3c.github.io/webappsec-csp/#effective-directive-for-a-request
-        final SourceExpressionDirective directive =
-                getGoverningDirectiveForEffectiveDirective(FetchDirectiveKind.ScriptSrcElem).orElse(null);
+        final SourceExpressionDirective directive = governingDirective(FetchDirectiveKind.ScriptSrcElem);
         if (directive == null) {
             return true;
         }
-        if (nonce.isPresent()) {
-            final String actualNonce = nonce.get();
-            if (actualNonce.length() > 0
-                    && directive.getNonces().stream().anyMatch(n -> n.base64ValuePart().equals(actualNonce))) {
-                return true;
-            }
+        if (nonce != null && directive.matchesNonce(nonce)) {
+            return true;
         }
-        if (integrity.isPresent() && !directive.getHashes().isEmpty()) {
-            final String integritySources = integrity.get();
+        if (integrity != null && !directive.getHashes().isEmpty()) {
+            final String integritySources = integrity;
             boolean bypassDueToIntegrityMatch = true;
             boolean atLeastOneValidIntegrity = false;
             // https://www.w3.org/TR/SRI/#parse-metadata
@@ -768,10 +1279,9 @@ public boolean allowsExternalScript(
         }
         if (directive.strictDynamic()) {
             // if not the parameter is not supplied, we have to assume the worst case
-            return !parserInserted.orElse(true);
+            return parserInserted != null && !parserInserted;
         }
-        return scriptUrl.filter(urlWithScheme ->
-                doesUrlMatchSourceListInOrigin(urlWithScheme, directive, origin)).isPresent();
+        return scriptUrl != null && doesUrlMatchSourceListInOrigin(scriptUrl, directive, origin);
     }
 
     /**
@@ -787,10 +1297,105 @@ public boolean allowsExternalScript(
      */
     public boolean allowsInlineScript(final Optional<String> nonce,
             final Optional<String> source, final Optional<Boolean> parserInserted) {
-        if (sandbox_ != null && !sandbox_.allowScripts()) {
+        return allowsInlineScript(nonce.orElse(null), source.orElse(null), null, null, parserInserted.orElse(null));
+    }
+
+    /**
+     * Determines whether this policy allows an inline {@code <script>} element, hashing
+     * its content without copying it into a {@link String}.
+     *
+     * @param nonce the nonce attribute value of the script element, if any
+     * @param source the text content of the inline script
+     * @param parserInserted whether the script element is parser-inserted;
+     *        {@link Optional#empty()} if unknown
+     * @return {@code true} if this policy allows the inline script
+     * @see #allowsInlineScript(Optional, Optional, Optional)
+     */
+    public boolean allowsInlineScript(final Optional<String> nonce,
+            final CharSequence source, final Optional<Boolean> parserInserted) {
+        return allowsInlineScript(nonce.orElse(null), null, null, charsMatcher(source), parserInserted.orElse(null));
+    }
+
+    /**
+     * Determines whether this policy allows an inline {@code <script>} element, reading
+     * its content from the given reader. The content is only read if hash-sources have
+     * to be checked; the reader is not closed.
+     *
+     * @param nonce the nonce attribute value of the script element, if any
+     * @param source the text content of the inline script
+     * @param parserInserted whether the script element is parser-inserted;
+     *        {@link Optional#empty()} if unknown
+     * @return {@code true} if this policy allows the inline script
+     * @throws IOException if reading the content fails
+     * @see #allowsInlineScript(Optional, Optional, Optional)
+     */
+    public boolean allowsInlineScript(final Optional<String> nonce,
+            final Reader source, final Optional<Boolean> parserInserted) throws IOException {
+        try {
+            return allowsInlineScript(nonce.orElse(null), null, null, readerMatcher(source),
+                    parserInserted.orElse(null));
+        }
+        catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Determines whether this policy allows an inline {@code <script>} element whose
+     * content is given as chunks of UTF-8 encoded bytes. The chunks are only consumed
+     * if hash-sources have to be checked.
+     *
+     * @param nonce the nonce attribute value of the script element, if any
+     * @param source the text content of the inline script, encoded in UTF-8
+     * @param parserInserted whether the script element is parser-inserted;
+     *        {@link Optional#empty()} if unknown
+     * @return {@code true} if this policy allows the inline script
+     * @see #allowsInlineScript(Optional, Optional, Optional)
+     */
+    public boolean allowsInlineScript(final Optional<String> nonce,
+            final Iterable<ByteBuffer> source, final Optional<Boolean> parserInserted) {
+        return allowsInlineScript(nonce.orElse(null), null, null, bytesMatcher(source), parserInserted.orElse(null));
+    }
+
+    /**
+     * Determines whether this policy allows an inline {@code <script>} element whose
+     * content has been fed to the given digest.
+     *
+     * @param nonce the nonce attribute value of the script element, if any
+     * @param source the digest of the text content of the inline script,
+     *        e.g. created with {@link #newInlineScriptDigest()}
+     * @param parserInserted whether the script element is parser-inserted;
+     *        {@link Optional#empty()} if unknown
+     * @return {@code true} if this policy allows the inline script
+     * @throws IllegalArgumentException if the digest does not compute an algorithm
+     *         of the hash-sources to check
+     * @see #allowsInlineScript(Optional, Optional, Optional)
+     */
+    public boolean allowsInlineScript(final Optional<String> nonce,
+            final InlineContentDigest source, final Optional<Boolean> parserInserted) {
+        return allowsInlineScript(nonce.orElse(null), null, null, hashSources -> hashSources.matches(source),
+                parserInserted.orElse(null));
+    }
+
+    private boolean allowsInlineScript(final String nonce, final String source, final InlineDigestCache digestCache,
+            final Predicate<HashSourceSet> sourceMatcher, final Boolean parserInserted) {
+        final SandboxDirective sandbox = sandboxDirective();
+        if (sandbox != null && !sandbox.allowScripts()) {
             return false;
         }
-        return doesElementMatchSourceListForTypeAndSource(InlineType.Script, nonce, source, parserInserted);
+        return doesElementMatchSourceListForTypeAndSource(InlineType.Script, nonce, source, digestCache, sourceMatcher,
+                parserInserted);
+    }
+
+    /**
+     * Creates a digest for the content of an inline {@code <script>} element, computing
+     * the algorithms of the hash-sources this policy checks the content against.
+     *
+     * @return a digest to feed the content to, computing no algorithm if no hash-source applies
+     * @see #allowsInlineScript(Optional, InlineContentDigest, Optional)
+     */
+    public InlineContentDigest newInlineScriptDigest() {
+        return newInlineDigest(InlineType.Script);
     }
 
     /**
@@ -804,11 +1409,16 @@ public boolean allowsInlineScript(final Optional<String> nonce,
      *      should block inline check (script-src-attr)</a>
      */
     public boolean allowsScriptAsAttribute(final Optional<String> source) {
-        if (sandbox_ != null && !sandbox_.allowScripts()) {
+        return allowsScriptAsAttribute(source.orElse(null), null);
+    }
+
+    private boolean allowsScriptAsAttribute(final String source, final InlineDigestCache digestCache) {
+        final SandboxDirective sandbox = sandboxDirective();
+        if (sandbox != null && !sandbox.allowScripts()) {
             return false;
         }
-        return doesElementMatchSourceListForTypeAndSource(
-                InlineType.ScriptAttribute, Optional.empty(), source, Optional.empty());
+        return doesElementMatchSourceListForTypeAndSource(InlineType.ScriptAttribute, null, source, digestCache,
+                null, null);
     }
 
     /**
@@ -827,10 +1437,9 @@ public boolean allowsScriptAsAttribute(final Optional<String> source) {
     public boolean allowsEval() {
         // This is done in prose, not in a table
         final FetchDirectiveKind governingDirective =
-                fetchDirectives_
-                    .containsKey(FetchDirectiveKind.ScriptSrc)
+                fetchDirective(FetchDirectiveKind.ScriptSrc) != null
                         ? FetchDirectiveKind.ScriptSrc : FetchDirectiveKind.DefaultSrc;
-        final SourceExpressionDirective sourceList = fetchDirectives_.get(governingDirective);
+        final SourceExpressionDirective sourceList = fetchDirective(governingDirective);
         return sourceList == null || sourceList.unsafeEval();
     }
 
@@ -859,35 +1468,42 @@ public boolean allowsNavigation(
             final Optional<Boolean> redirected,
             final Optional<? extends URLWithScheme> redirectedTo,
             final Optional<? extends URLWithScheme> origin) {
-        if (navigateTo_ == null) {
+        return allowsNavigation(to.orElse(null), redirected.orElse(null), redirectedTo.orElse(null),
+                origin.orElse(null));
+    }
+
+    private boolean allowsNavigation(final URLWithScheme to, final Boolean redirected,
+            final URLWithScheme redirectedTo, final URLWithScheme origin) {
+        final SourceExpressionDirective navigateTo = navigateToDirective();
+        if (navigateTo == null) {
             return true;
         }
-        if (navigateTo_.unsafeAllowRedirects()) {
+        if (navigateTo.unsafeAllowRedirects()) {
             // if unsafe-allow-redirects is present, check `to` in non-redirect or maybe-non-redirect cases
-            if (!redirected.orElse(false)) {
-                if (to.isEmpty()) {
+            if (redirected == null || !redirected) {
+                if (to == null) {
                     return false;
                 }
-                if (!doesUrlMatchSourceListInOrigin(to.get(), navigateTo_, origin)) {
+                if (!doesUrlMatchSourceListInOrigin(to, navigateTo, origin)) {
                     return false;
                 }
             }
             // if unsafe-allow-redirects is present, check `redirectedTo` in redirect or maybe-redirect cases
-            if (redirected.orElse(true)) {
-                if (redirectedTo.isEmpty()) {
+            if (redirected == null || redirected) {
+                if (redirectedTo == null) {
                     return false;
                 }
-                if (!doesUrlMatchSourceListInOrigin(redirectedTo.get(), navigateTo_, origin)) {
+                if (!doesUrlMatchSourceListInOrigin(redirectedTo, navigateTo, origin)) {
                     return false;
                 }
             }
         }
         else {
             // if unsafe-allow-redirects is absent, always and only check `to`
-            if (to.isEmpty()) {
+            if (to == null) {
                 return false;
             }
-            if (!doesUrlMatchSourceListInOrigin(to.get(), navigateTo_, origin)) {
+            if (!doesUrlMatchSourceListInOrigin(to, navigateTo, origin)) {
                 return false;
             }
         }
@@ -917,14 +1533,22 @@ public boolean allowsFormAction(
             final Optional<Boolean> redirected,
             final Optional<? extends URLWithScheme> redirectedTo,
             final Optional<? extends URLWithScheme> origin) {
-        if (sandbox_ != null && !sandbox_.allowForms()) {
+        return allowsFormAction(to.orElse(null), redirected.orElse(null), redirectedTo.orElse(null),
+                origin.orElse(null));
+    }
+
+    private boolean allowsFormAction(final URLWithScheme to, final Boolean redirected,
+            final URLWithScheme redirectedTo, final URLWithScheme origin) {
+        final SandboxDirective sandbox = sandboxDirective();
+        if (sandbox != null && !sandbox.allowForms()) {
             return false;
         }
-        if (formAction_ != null) {
-            if (to.isEmpty()) {
+        final SourceExpressionDirective formAction = formActionDirective();
+        if (formAction != null) {
+            if (to == null) {
                 return false;
             }
-            if (!doesUrlMatchSourceListInOrigin(to.get(), formAction_, origin)) {
+            if (!doesUrlMatchSourceListInOrigin(to, formAction, origin)) {
                 return false;
             }
             return true;
@@ -948,14 +1572,14 @@ public boolean allowsFormAction(
     public boolean allowsJavascriptUrlNavigation(
             final Optional<String> source,
             final Optional<? extends URLWithScheme> origin) {
-        return allowsNavigation(
-                Optional.of(
-                            new GUID("javascript", source.orElse(""))),
-                Optional.of(false), Optional.empty(), origin)
-                &&
-                    doesElementMatchSourceListForTypeAndSource(
-                                InlineType.Navigation, Optional.empty(),
-                                            source.map(s -> "javascript:" + s), Optional.of(false));
+        return allowsJavascriptUrlNavigation(source.orElse(null), null, origin.orElse(null));
+    }
+
+    private boolean allowsJavascriptUrlNavigation(final String source, final InlineDigestCache digestCache,
+            final URLWithScheme origin) {
+        return allowsNavigation(JAVASCRIPT_URL, Boolean.FALSE, null, origin)
+                && doesElementMatchSourceListForTypeAndSource(InlineType.Navigation, null, source, digestCache, null,
+                        Boolean.FALSE);
     }
 
     /**
@@ -977,23 +1601,22 @@ public boolean allowsExternalStyle(
             final Optional<String> nonce,
             final Optional<? extends URLWithScheme> styleUrl,
             final Optional<? extends URLWithScheme> origin) {
+        return allowsExternalStyle(nonce.orElse(null), styleUrl.orElse(null), origin.orElse(null));
+    }
+
+    private boolean allowsExternalStyle(final String nonce, final URLWithScheme styleUrl,
+            final URLWithScheme origin) {
         // Effective directive is "style-src-elem" per
         // https://w3c.github.io/webappsec-csp/#effective-directive-for-a-request
-        final SourceExpressionDirective directive
-                = getGoverningDirectiveForEffectiveDirective(FetchDirectiveKind.StyleSrcElem).orElse(null);
+        final SourceExpressionDirective directive = governingDirective(FetchDirectiveKind.StyleSrcElem);
         if (directive == null) {
             return true;
         }
-        if (nonce.isPresent()) {
-            final String actualNonce = nonce.get();
-            if (actualNonce.length() > 0
-                    && directive.getNonces().stream().anyMatch(n -> n.base64ValuePart().equals(actualNonce))) {
-                return true;
-            }
+        if (nonce != null && directive.matchesNonce(nonce)) {
+            return true;
         }
         // integrity is not used: https://github.com/w3c/webappsec-csp/issues/430
-        return styleUrl.filter(urlWithScheme ->
-                doesUrlMatchSourceListInOrigin(urlWithScheme, directive, origin)).isPresent();
+        return styleUrl != null && doesUrlMatchSourceListInOrigin(styleUrl, directive, origin);
     }
 
     /**
@@ -1004,7 +1627,122 @@ public boolean allowsExternalStyle(
      * @return {@code true} if this policy allows the inline style
      */
     public boolean allowsInlineStyle(final Optional<String> nonce, final Optional<String> source) {
-        return doesElementMatchSourceListForTypeAndSource(InlineType.Style, nonce, source, Optional.empty());
+        return doesElementMatchSourceListForTypeAndSource(InlineType.Style, nonce.orElse(null), source.orElse(null),
+                null, null, null);
+    }
+
+    /**
+     * Determines whether this policy allows an inline {@code <style>} element, hashing
+     * its content without copying it into a {@link String}.
+     *
+     * @param nonce the nonce attribute value of the style element, if any
+     * @param source the text content of the inline style
+     * @return {@code true} if this policy allows the inline style
+     * @see #allowsInlineStyle(Optional, Optional)
+     */
+    public boolean allowsInlineStyle(final Optional<String> nonce, final CharSequence source) {
+        return doesElementMatchSourceListForTypeAndSource(InlineType.Style, nonce.orElse(null), null, null,
+                charsMatcher(source), null);
+    }
+
+    /**
+     * Determines whether this policy allows an inline {@code <style>} element, reading
+     * its content from the given reader. The content is only read if hash-sources have
+     * to be checked; the reader is not closed.
+     *
+     * @param nonce the nonce attribute value of the style element, if any
+     * @param source the text content of the inline style
+     * @return {@code true} if this policy allows the inline style
+     * @throws IOException if reading the content fails
+     * @see #allowsInlineStyle(Optional, Optional)
+     */
+    public boolean allowsInlineStyle(final Optional<String> nonce, final Reader source) throws IOException {
+        try {
+            return doesElementMatchSourceListForTypeAndSource(InlineType.Style, nonce.orElse(null), null, null,
+                    readerMatcher(source), null);
+        }
+        catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Determines whether this policy allows an inline {@code <style>} element whose
+     * content is given as chunks of UTF-8 encoded bytes. The chunks are only consumed
+     * if hash-sources have to be checked.
+     *
+     * @param nonce the nonce attribute value of the style element, if any
+     * @param source the text content of the inline style, encoded in UTF-8
+     * @return {@code true} if this policy allows the inline style
+     * @see #allowsInlineStyle(Optional, Optional)
+     */
+    public boolean allowsInlineStyle(final Optional<String> nonce, final Iterable<ByteBuffer> source) {
+        return doesElementMatchSourceListForTypeAndSource(InlineType.Style, nonce.orElse(null), null, null,
+                bytesMatcher(source), null);
+    }
+
+    /**
+     * Determines whether this policy allows an inline {@code <style>} element whose
+     * content has been fed to the given digest.
+     *
+     * @param nonce the nonce attribute value of the style element, if any
+     * @param source the digest of the text content of the inline style,
+     *        e.g. created with {@link #newInlineStyleDigest()}
+     * @return {@code true} if this policy allows the inline style
+     * @throws IllegalArgumentException if the digest does not compute an algorithm
+     *         of the hash-sources to check
+     * @see #allowsInlineStyle(Optional, Optional)
+     */
+    public boolean allowsInlineStyle(final Optional<String> nonce, final InlineContentDigest source) {
+        return doesElementMatchSourceListForTypeAndSource(InlineType.Style, nonce.orElse(null), null, null,
+                hashSources -> hashSources.matches(source), null);
+    }
+
+    /**
+     * Creates a digest for the content of an inline {@code <style>} element, computing
+     * the algorithms of the hash-sources this policy checks the content against.
+     *
+     * @return a digest to feed the content to, computing no algorithm if no hash-source applies
+     * @see #allowsInlineStyle(Optional, InlineContentDigest)
+     */
+    public InlineContentDigest newInlineStyleDigest() {
+        return newInlineDigest(InlineType.Style);
+    }
+
+    private InlineContentDigest newInlineDigest(final InlineType type) {
+        final SourceExpressionDirective directive = governingDirective(type.effectiveDirective_);
+        if (directive == null) {
+            return InlineContentDigest.forAlgorithms(EnumSet.noneOf(Hash.Algorithm.class));
+        }
+        return InlineContentDigest.forAlgorithms(directive.getHashSourceSet().getAlgorithms());
+    }
+
+    // the content is only digested once the hash-sources to check are known
+    private static Predicate<HashSourceSet> charsMatcher(final CharSequence source) {
+        return hashSources -> hashSources.matches(
+                InlineContentDigest.forAlgorithms(hashSources.getAlgorithms()).update(source));
+    }
+
+    private static Predicate<HashSourceSet> readerMatcher(final Reader source) {
+        return hashSources -> {
+            try {
+                return hashSources.matches(
+                        InlineContentDigest.forAlgorithms(hashSources.getAlgorithms()).update(source));
+            }
+            catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    private static Predicate<HashSourceSet> bytesMatcher(final Iterable<ByteBuffer> source) {
+        return hashSources -> {
+            final InlineContentDigest digest = InlineContentDigest.forAlgorithms(hashSources.getAlgorithms());
+            for (final ByteBuffer chunk : source) {
+                digest.update(chunk);
+            }
+            return hashSources.matches(digest);
+        };
     }
 
     /**
@@ -1015,8 +1753,8 @@ public boolean allowsInlineStyle(final Optional<String> nonce, final Optional<St
      * @return {@code true} if this policy allows the style attribute
      */
     public boolean allowsStyleAsAttribute(final Optional<String> source) {
-        return doesElementMatchSourceListForTypeAndSource(
-                InlineType.StyleAttribute, Optional.empty(), source, Optional.empty());
+        return doesElementMatchSourceListForTypeAndSource(InlineType.StyleAttribute, null, source.orElse(null),
+                null, null, null);
     }
 
     /**
@@ -1031,13 +1769,7 @@ public boolean allowsStyleAsAttribute(final Optional<String> source) {
      */
     public boolean allowsFrame(final Optional<? extends URLWithScheme> source,
                                final Optional<? extends URLWithScheme> origin) {
-        final SourceExpressionDirective sourceList
-            = getGoverningDirectiveForEffectiveDirective(FetchDirectiveKind.FrameSrc).orElse(null);
-        if (sourceList == null) {
-            return true;
-        }
-        return source.filter(urlWithScheme ->
-                doesUrlMatchSourceListInOrigin(urlWithScheme, sourceList, origin)).isPresent();
+        return allowsFetch(FetchDirectiveKind.FrameSrc, source.orElse(null), origin.orElse(null));
     }
 
     /**
@@ -1054,11 +1786,15 @@ public boolean allowsFrame(final Optional<? extends URLWithScheme> source,
      */
     public boolean allowsFrameAncestor(final Optional<? extends URLWithScheme> source,
                                        final Optional<? extends URLWithScheme> origin) {
-        if (frameAncestors_ == null) {
+        return allowsFrameAncestor(source.orElse(null), origin.orElse(null));
+    }
+
+    private boolean allowsFrameAncestor(final URLWithScheme source, final URLWithScheme origin) {
+        final FrameAncestorsDirective frameAncestors = frameAncestorsDirective();
+        if (frameAncestors == null) {
             return true;
         }
-        return source.filter(urlWithScheme ->
-                        doesUrlMatchSourceListInOrigin(urlWithScheme, frameAncestors_, origin)).isPresent();
+        return source != null && doesUrlMatchSourceListInOrigin(source, frameAncestors, origin);
     }
 
     /**
@@ -1077,29 +1813,30 @@ public boolean allowsFrameAncestor(final Optional<? extends URLWithScheme> sourc
      */
     public boolean allowsConnection(final Optional<? extends URLWithScheme> source,
                                     final Optional<? extends URLWithScheme> origin) {
-        final SourceExpressionDirective sourceList
-                = getGoverningDirectiveForEffectiveDirective(FetchDirectiveKind.ConnectSrc).orElse(null);
+        return allowsConnection(source.orElse(null), origin.orElse(null));
+    }
+
+    private boolean allowsConnection(final URLWithScheme source, final URLWithScheme origin) {
+        final SourceExpressionDirective sourceList = governingDirective(FetchDirectiveKind.ConnectSrc);
         if (sourceList == null) {
             return true;
         }
-        if (source.isEmpty()) {
+        if (source == null) {
             return false;
         }
         // See https://fetch.spec.whatwg.org/#concept-websocket-establish
         // Also browsers don't implement this; see https://github.com/w3c/webappsec-csp/issues/429
-        final URLWithScheme actualSource = source.get();
-        final String scheme = actualSource.getScheme();
-        URLWithScheme usedSource = actualSource;
-        if (actualSource instanceof URI) {
+        String scheme = source.getScheme();
+        if (source instanceof URI) {
             if ("ws".equals(scheme)) {
-                usedSource = new URI("http", actualSource.getHost(), actualSource.getPort(), actualSource.getPath());
+                scheme = "http";
             }
             else if ("wss".equals(scheme)) {
-                usedSource = new URI("https", actualSource.getHost(), actualSource.getPort(), actualSource.getPath());
+                scheme = "https";
             }
         }
-
-        return doesUrlMatchSourceListInOrigin(usedSource, sourceList, origin);
+        return doesUrlMatchSourceListInOrigin(scheme, source.getHost(), source.getPort(), source.getPath(),
+                sourceList, origin);
     }
 
     /**
@@ -1111,13 +1848,7 @@ else if ("wss".equals(scheme)) {
      */
     public boolean allowsFont(final Optional<? extends URLWithScheme> source,
                               final Optional<? extends URLWithScheme> origin) {
-        final SourceExpressionDirective sourceList
-                = getGoverningDirectiveForEffectiveDirective(FetchDirectiveKind.FontSrc).orElse(null);
-        if (sourceList == null) {
-            return true;
-        }
-        return source.filter(urlWithScheme ->
-                        doesUrlMatchSourceListInOrigin(urlWithScheme, sourceList, origin)).isPresent();
+        return allowsFetch(FetchDirectiveKind.FontSrc, source.orElse(null), origin.orElse(null));
     }
 
     /**
@@ -1129,13 +1860,7 @@ public boolean allowsFont(final Optional<? extends URLWithScheme> source,
      */
     public boolean allowsImage(final Optional<? extends URLWithScheme> source,
                                final Optional<? extends URLWithScheme> origin) {
-        final SourceExpressionDirective sourceList
-                = getGoverningDirectiveForEffectiveDirective(FetchDirectiveKind.ImgSrc).orElse(null);
-        if (sourceList == null) {
-            return true;
-        }
-        return source.filter(urlWithScheme ->
-                        doesUrlMatchSourceListInOrigin(urlWithScheme, sourceList, origin)).isPresent();
+        return allowsFetch(FetchDirectiveKind.ImgSrc, source.orElse(null), origin.orElse(null));
     }
 
     /**
@@ -1147,13 +1872,7 @@ public boolean allowsImage(final Optional<? extends URLWithScheme> source,
      */
     public boolean allowsApplicationManifest(final Optional<? extends URLWithScheme> source,
                                              final Optional<? extends URLWithScheme> origin) {
-        final SourceExpressionDirective sourceList
-                = getGoverningDirectiveForEffectiveDirective(FetchDirectiveKind.ManifestSrc).orElse(null);
-        if (sourceList == null) {
-            return true;
-        }
-        return source.filter(urlWithScheme ->
-                        doesUrlMatchSourceListInOrigin(urlWithScheme, sourceList, origin)).isPresent();
+        return allowsFetch(FetchDirectiveKind.ManifestSrc, source.orElse(null), origin.orElse(null));
     }
 
     /**
@@ -1165,13 +1884,7 @@ public boolean allowsApplicationManifest(final Optional<? extends URLWithScheme>
      */
     public boolean allowsMedia(final Optional<? extends URLWithScheme> source,
                                final Optional<? extends URLWithScheme> origin) {
-        final SourceExpressionDirective sourceList
-                = getGoverningDirectiveForEffectiveDirective(FetchDirectiveKind.MediaSrc).orElse(null);
-        if (sourceList == null) {
-            return true;
-        }
-        return source.filter(urlWithScheme ->
-                        doesUrlMatchSourceListInOrigin(urlWithScheme, sourceList, origin)).isPresent();
+        return allowsFetch(FetchDirectiveKind.MediaSrc, source.orElse(null), origin.orElse(null));
     }
 
     /**
@@ -1183,13 +1896,7 @@ public boolean allowsMedia(final Optional<? extends URLWithScheme> source,
      */
     public boolean allowsObject(final Optional<? extends URLWithScheme> source,
                                 final Optional<? extends URLWithScheme> origin) {
-        final SourceExpressionDirective sourceList
-                = getGoverningDirectiveForEffectiveDirective(FetchDirectiveKind.ObjectSrc).orElse(null);
-        if (sourceList == null) {
-            return true;
-        }
-        return source.filter(urlWithScheme ->
-                        doesUrlMatchSourceListInOrigin(urlWithScheme, sourceList, origin)).isPresent();
+        return allowsFetch(FetchDirectiveKind.ObjectSrc, source.orElse(null), origin.orElse(null));
     }
 
     /**
@@ -1205,13 +1912,7 @@ public boolean allowsObject(final Optional<? extends URLWithScheme> source,
      */
     public boolean allowsPrefetch(final Optional<? extends URLWithScheme> source,
                                   final Optional<? extends URLWithScheme> origin) {
-        final SourceExpressionDirective sourceList
-                = getGoverningDirectiveForEffectiveDirective(FetchDirectiveKind.PrefetchSrc).orElse(null);
-        if (sourceList == null) {
-            return true;
-        }
-        return source.filter(urlWithScheme ->
-                        doesUrlMatchSourceListInOrigin(urlWithScheme, sourceList, origin)).isPresent();
+        return allowsFetch(FetchDirectiveKind.PrefetchSrc, source.orElse(null), origin.orElse(null));
     }
 
     /**
@@ -1224,13 +1925,7 @@ public boolean allowsPrefetch(final Optional<? extends URLWithScheme> source,
      */
     public boolean allowsWorker(final Optional<? extends URLWithScheme> source,
                                 final Optional<? extends URLWithScheme> origin) {
-        final SourceExpressionDirective sourceList
-                = getGoverningDirectiveForEffectiveDirective(FetchDirectiveKind.WorkerSrc).orElse(null);
-        if (sourceList == null) {
-            return true;
-        }
-        return source.filter(urlWithScheme ->
-                        doesUrlMatchSourceListInOrigin(urlWithScheme, sourceList, origin)).isPresent();
+        return allowsFetch(FetchDirectiveKind.WorkerSrc, source.orElse(null), origin.orElse(null));
     }
 
     /**
@@ -1244,10 +1939,68 @@ public boolean allowsWorker(final Optional<? extends URLWithScheme> source,
      * @return {@code true} if this policy allows the plugin type
      */
     public boolean allowsPlugin(final Optional<? extends MediaType> mediaType) {
-        if (pluginTypes_ == null) {
+        final PluginTypesDirective pluginTypes = pluginTypesDirective();
+        if (pluginTypes == null) {
+            return true;
+        }
+        return mediaType.filter(type -> pluginTypes.getMediaTypes().contains(type)).isPresent();
+    }
+
+    /**
+     * Determines whether this policy allows the described request, inline content or navigation.
+     * <p>
+     * Gives the same answer as the {@code allows*} method named by the
+     * {@linkplain CheckRequest#getDestination() destination}, with the fields of the request
+     * as arguments, but does not need any {@link Optional}. The digests of inline content are
+     * taken from the {@linkplain CheckRequest#getInlineDigestCache() cache of the request}, if any.
+     * </p>
+     *
+     * @param request the request to check
+     * @return {@code true} if this policy allows the request
+     * @throws IllegalArgumentException if the request has no destination
+     */
+    public boolean check(final CheckRequest request) {
+        final CheckRequest.Destination destination = request.getDestination();
+        if (destination == null) {
+            throw new IllegalArgumentException("The request has no destination");
+        }
+        final URLWithScheme url = request.getUrl();
+        final URLWithScheme origin = request.getOrigin();
+        final InlineDigestCache digestCache = request.getInlineDigestCache();
+        return switch (destination) {
+            case Script -> allowsExternalScript(request.getNonce(), request.getIntegrity(), url,
+                    request.getParserInserted(), origin);
+            case Style -> allowsExternalStyle(request.getNonce(), url, origin);
+            case Image -> allowsFetch(FetchDirectiveKind.ImgSrc, url, origin);
+            case Font -> allowsFetch(FetchDirectiveKind.FontSrc, url, origin);
+            case Media -> allowsFetch(FetchDirectiveKind.MediaSrc, url, origin);
+            case Object -> allowsFetch(FetchDirectiveKind.ObjectSrc, url, origin);
+            case Frame -> allowsFetch(FetchDirectiveKind.FrameSrc, url, origin);
+            case Worker -> allowsFetch(FetchDirectiveKind.WorkerSrc, url, origin);
+            case Manifest -> allowsFetch(FetchDirectiveKind.ManifestSrc, url, origin);
+            case Prefetch -> allowsFetch(FetchDirectiveKind.PrefetchSrc, url, origin);
+            case Connection -> allowsConnection(url, origin);
+            case Navigation -> allowsNavigation(url, request.getRedirected(), request.getRedirectedTo(), origin);
+            case FormAction -> allowsFormAction(url, request.getRedirected(), request.getRedirectedTo(), origin);
+            case FrameAncestor -> allowsFrameAncestor(url, origin);
+            case InlineScript -> allowsInlineScript(request.getNonce(), request.getSource(), digestCache, null,
+                    request.getParserInserted());
+            case InlineStyle -> doesElementMatchSourceListForTypeAndSource(InlineType.Style, request.getNonce(),
+                    request.getSource(), digestCache, null, null);
+            case ScriptAttribute -> allowsScriptAsAttribute(request.getSource(), digestCache);
+            case StyleAttribute -> doesElementMatchSourceListForTypeAndSource(InlineType.StyleAttribute, null,
+                    request.getSource(), digestCache, null, null);
+            case JavascriptUrl -> allowsJavascriptUrlNavigation(request.getSource(), digestCache, origin);
+        };
+    }
+
+    private boolean allowsFetch(final FetchDirectiveKind kind, final URLWithScheme source,
+            final URLWithScheme origin) {
+        final SourceExpressionDirective sourceList = governingDirective(kind);
+        if (sourceList == null) {
             return true;
         }
-        return mediaType.filter(type -> pluginTypes_.getMediaTypes().contains(type)).isPresent();
+        return source != null && doesUrlMatchSourceListInOrigin(source, sourceList, origin);
     }
 
     /**
@@ -1266,13 +2019,33 @@ public boolean allowsPlugin(final Optional<? extends MediaType> mediaType) {
      */
     public Optional<SourceExpressionDirective> getGoverningDirectiveForEffectiveDirective(
                                                 final FetchDirectiveKind kind) {
+        return Optional.ofNullable(governingDirective(kind));
+    }
+
+    private SourceExpressionDirective governingDirective(final FetchDirectiveKind kind) {
         for (final FetchDirectiveKind candidate : FetchDirectiveKind.getFetchDirectiveFallbackList(kind)) {
-            final SourceExpressionDirective list = fetchDirectives_.get(candidate);
+            final SourceExpressionDirective list = fetchDirective(candidate);
             if (list != null) {
-                return Optional.of(list);
+                return list;
             }
         }
-        return Optional.empty();
+        return null;
+    }
+
+    /**
+     * Compiles this policy into a form optimized for repeated querying.
+     * <p>
+     * The {@link CompiledPolicy} resolves the governing directive of every effective
+     * directive once and flattens the source lists into arrays; its query methods
+     * answer exactly like the ones of this policy. It is a snapshot: changes made to
+     * the directive objects afterwards are not reflected. Unlike this policy, it is deeply
+     * immutable and can be shared by threads without synchronization.
+     * </p>
+     *
+     * @return the compiled policy
+     */
+    public CompiledPolicy compile() {
+        return new CompiledPolicy(this);
     }
 
     // https://w3c.github.io/webappsec-csp/#directive-inline-check
@@ -1280,7 +2053,7 @@ public Optional<SourceExpressionDirective> getGoverningDirectiveForEffectiveDire
     // https://w3c.github.io/webappsec-csp/#should-block-navigation-request
     // specifies "navigation", used for `javascript:` urls
     // https://w3c.github.io/webappsec-csp/#effective-directive-for-inline-check
-    private enum InlineType {
+    enum InlineType {
         Script(FetchDirectiveKind.ScriptSrcElem),
         ScriptAttribute(FetchDirectiveKind.ScriptSrcAttr),
         Style(FetchDirectiveKind.StyleSrcElem),
@@ -1292,16 +2065,25 @@ private enum InlineType {
         InlineType(final FetchDirectiveKind effectiveDirective) {
             effectiveDirective_ = effectiveDirective;
         }
+
+        FetchDirectiveKind getEffectiveDirective() {
+            return effectiveDirective_;
+        }
     }
 
     // Note: this assumes the element is nonceable. See https://w3c.github.io/webappsec-csp/#is-element-nonceable
     // https://w3c.github.io/webappsec-csp/#match-element-to-source-list
+    // The content is either given as 'source' or, for streamed content, as 'sourceMatcher', which tells
+    // whether it matches the hash-sources and is only called if they are checked; both are null if the
+    // content is unknown. For Navigation, 'source' is the code of a javascript: URL. The digests of
+    // 'source' are looked up in 'digestCache', if any.
     private boolean doesElementMatchSourceListForTypeAndSource(final InlineType type,
-                        final Optional<String> nonce,
-                        final Optional<String> source,
-                        final Optional<Boolean> parserInserted) {
-        final SourceExpressionDirective directive
-                = getGoverningDirectiveForEffectiveDirective(type.effectiveDirective_).orElse(null);
+                        final String nonce,
+                        final String source,
+                        final InlineDigestCache digestCache,
+                        final Predicate<HashSourceSet> sourceMatcher,
+                        final Boolean parserInserted) {
+        final SourceExpressionDirective directive = governingDirective(type.effectiveDirective_);
         if (directive == null) {
             return true;
         }
@@ -1317,70 +2099,33 @@ private boolean doesElementMatchSourceListForTypeAndSource(final InlineType type
         if (allowAllInline) {
             return true;
         }
-        if (nonce.isPresent()) {
-            final String actualNonce = nonce.get();
-            if (actualNonce.length() > 0
-                    && directive.getNonces().stream().anyMatch(n -> n.base64ValuePart().equals(actualNonce))) {
-                return true;
-            }
+        if (nonce != null && directive.matchesNonce(nonce)) {
+            return true;
         }
-        if (source.isPresent()
-                && !directive.getHashes().isEmpty()
-                && (type == InlineType.Script || type == InlineType.Style || directive.unsafeHashes())) {
-            final byte[] actualSource = source.get().getBytes(StandardCharsets.UTF_8);
-            final Base64.Encoder base64encoder = Base64.getEncoder();
-            String actualSha256 = null;
-            String actualSha384 = null;
-            String actualSha512 = null;
-            try {
-                for (final Hash hash : directive.getHashes()) {
-                    switch (hash.getAlgorithm()) {
-                        case SHA256:
-                            if (actualSha256 == null) {
-                                actualSha256 = base64encoder.encodeToString(
-                                                    MessageDigest.getInstance("SHA-256").digest(actualSource));
-                            }
-                            if (actualSha256.equals(normalizeBase64Url(hash.getBase64ValuePart()))) {
-                                return true;
-                            }
-                            break;
-                        case SHA384:
-                            if (actualSha384 == null) {
-                                actualSha384 = base64encoder.encodeToString(
-                                                    MessageDigest.getInstance("SHA-384").digest(actualSource));
-                            }
-                            if (actualSha384.equals(normalizeBase64Url(hash.getBase64ValuePart()))) {
-                                return true;
-                            }
-                            break;
-                        case SHA512:
-                            if (actualSha512 == null) {
-                                actualSha512 = base64encoder.encodeToString(
-                                                    MessageDigest.getInstance("SHA-512").digest(actualSource));
-                            }
-                            if (actualSha512.equals(normalizeBase64Url(hash.getBase64ValuePart()))) {
-                                return true;
-                            }
-                            break;
-                        default:
-                            throw new IllegalArgumentException("Unknown hash algorithm " + hash.getAlgorithm());
-                    }
+        final HashSourceSet hashSources = directive.getHashSourceSet();
+        if ((source != null || sourceMatcher != null)
+                && (type == InlineType.Script || type == InlineType.Style || directive.unsafeHashes())
+                && !hashSources.isEmpty()) {
+            if (source == null) {
+                if (sourceMatcher.test(hashSources)) {
+                    return true;
                 }
             }
-            catch (final NoSuchAlgorithmException e) {
-                throw new RuntimeException(e);
+            else if (hashSources.matches(type == InlineType.Navigation ? "javascript:" + source : source,
+                    digestCache)) {
+                return true;
             }
         }
 
         // This is not per spec, but matches implementations and the spec
         // author's intent: https://github.com/w3c/webappsec-csp/issues/426
-        if (type == InlineType.Script && directive.strictDynamic() && !parserInserted.orElse(true)) {
+        if (type == InlineType.Script && directive.strictDynamic() && parserInserted != null && !parserInserted) {
             return true;
         }
         return false;
     }
 
-    private static String normalizeBase64Url(final String input) {
+    static String normalizeBase64Url(final String input) {
         return input.replace('-', '+').replace('_', '/');
     }
 
@@ -1401,7 +2146,18 @@ private static String normalizeBase64Url(final String input) {
     public static boolean doesUrlMatchSourceListInOrigin(final URLWithScheme url,
             final HostSourceDirective list,
             final Optional<? extends URLWithScheme> origin) {
-        final String urlScheme = url.getScheme();
+        return doesUrlMatchSourceListInOrigin(url, list, origin.orElse(null));
+    }
+
+    static boolean doesUrlMatchSourceListInOrigin(final URLWithScheme url, final HostSourceDirective list,
+            final URLWithScheme origin) {
+        return doesUrlMatchSourceListInOrigin(url.getScheme(), url.getHost(), url.getPort(), url.getPath(),
+                list, origin);
+    }
+
+    // the URL is given by its parts; host, port and path are null for URLs without host
+    private static boolean doesUrlMatchSourceListInOrigin(final String urlScheme, final String urlHost,
+            final Integer urlPort, final String urlPath, final HostSourceDirective list, final URLWithScheme origin) {
         if (list.star()) {
             // https://fetch.spec.whatwg.org/#network-scheme
             // Note that "ws" and "wss" are _not_ network schemes
@@ -1410,16 +2166,19 @@ public static boolean doesUrlMatchSourceListInOrigin(final URLWithScheme url,
                         || Objects.equals(urlScheme, "https")) {
                 return true;
             }
-            if (origin.isPresent() && Objects.equals(urlScheme, origin.get().getScheme())) {
+            if (origin != null && Objects.equals(urlScheme, origin.getScheme())) {
                 return true;
             }
         }
-        for (final Scheme scheme : list.getSchemes()) {
-            if (schemePartMatches(scheme.value(), urlScheme)) {
+        final List<Scheme> schemes = list.getSchemes();
+        for (int i = 0; i < schemes.size(); i++) {
+            if (schemePartMatches(schemes.get(i).value(), urlScheme)) {
                 return true;
             }
         }
-        for (final Host expression : list.getHosts()) {
+        final List<Host> hosts = list.getHosts();
+        for (int i = 0; i < hosts.size(); i++) {
+            final Host expression = hosts.get(i);
             final String scheme = expression.scheme();
             if (scheme != null) {
                 if (!schemePartMatches(scheme, urlScheme)) {
@@ -1427,34 +2186,35 @@ public static boolean doesUrlMatchSourceListInOrigin(final URLWithScheme url,
                 }
             }
             else {
-                if (origin.isEmpty() || !schemePartMatches(origin.get().getScheme(), urlScheme)) {
+                if (origin == null || !schemePartMatches(origin.getScheme(), urlScheme)) {
                     continue;
                 }
             }
-            if (url.getHost() == null) {
+            if (urlHost == null) {
                 continue;
             }
-            if (!hostPartMatches(expression.host(), url.getHost())) {
+            // https://w3c.github.io/webappsec-csp/#host-part-match
+            if (!DIRECTIVES.hostKind(list, i).matches(expression.host(), urlHost)) {
                 continue;
             }
-            // url.port is non-null whenever url.host is
-            if (!portPartMatches(expression.port(), url.getPort(), urlScheme)) {
+            // the port is non-null whenever the host is
+            if (!portPartMatches(expression.port(), urlPort, urlScheme)) {
                 continue;
             }
-            if (!pathPartMatches(expression.path(), url.getPath())) {
+            if (!pathPartMatches(DIRECTIVES.hostPath(list, i), urlPath)) {
                 continue;
             }
             return true;
         }
         if (list.self()) {
-            if (origin.isPresent()) {
-                final URLWithScheme actualOrigin = origin.get();
-                final String originScheme = actualOrigin.getScheme();
+            if (origin != null) {
+                final String originScheme = origin.getScheme();
+                final Integer originPort = origin.getPort();
                 if (
-                        Objects.equals(actualOrigin.getHost(), url.getHost())
-                        && (Objects.equals(actualOrigin.getPort(), url.getPort())
-                                    || Objects.equals(actualOrigin.getPort(), URI.defaultPortForProtocol(originScheme))
-                                    && Objects.equals(url.getPort(), URI.defaultPortForProtocol(urlScheme)))
+                        Objects.equals(origin.getHost(), urlHost)
+                        && (Objects.equals(originPort, urlPort)
+                                    || originPort != null && originPort == URI.defaultPortForProtocol(originScheme)
+                                    && urlPort != null && urlPort == URI.defaultPortForProtocol(urlScheme))
                         && ("https".equals(urlScheme)
                                 || "wss".equals(urlScheme)
                                 || "http".equals(originScheme)
@@ -1468,7 +2228,7 @@ public static boolean doesUrlMatchSourceListInOrigin(final URLWithScheme url,
     }
 
     // https://w3c.github.io/webappsec-csp/#scheme-part-match
-    private static boolean schemePartMatches(final String a, final String b) {
+    static boolean schemePartMatches(final String a, final String b) {
         // Assumes inputs are already lowercased
         return a.equals(b)
                 || "http".equals(a) && "https".equals(b)
@@ -1476,28 +2236,8 @@ private static boolean schemePartMatches(final String a, final String b) {
                 || "wss".equals(a) && "https".equals(b);
     }
 
-    // https://w3c.github.io/webappsec-csp/#host-part-match
-    private static boolean hostPartMatches(final String a, final String b) {
-        if (a.startsWith("*")) {
-            final String remaining = a.substring(1);
-            return b.toLowerCase(Locale.ROOT).endsWith(remaining.toLowerCase(Locale.ROOT));
-        }
-
-        if (!a.equalsIgnoreCase(b)) {
-            return false;
-        }
-
-        final Matcher ipv4Matcher = Constants.IPv4address.matcher(a);
-        final Matcher ipv6Matcher = Constants.IPv6addressWithOptionalBracket.matcher(a);
-        final Matcher ipv6LoopbackMatcher = Constants.IPV6loopback.matcher(a);
-        if ((ipv4Matcher.find() && !"127.0.0.1".equals(a)) || ipv6Matcher.find() || ipv6LoopbackMatcher.find()) {
-            return false;
-        }
-        return true;
-    }
-
     // https://w3c.github.io/webappsec-csp/#port-part-matches
-    private static boolean portPartMatches(final int a, final int portB, final String schemeB) {
+    static boolean portPartMatches(final int a, final int portB, final String schemeB) {
         if (a == Constants.EMPTY_PORT) {
             return portB == URI.defaultPortForProtocol(schemeB);
         }
@@ -1514,61 +2254,21 @@ private static boolean portPartMatches(final int a, final int portB, final Strin
     }
 
     // https://w3c.github.io/webappsec-csp/#path-part-match
-    private static boolean pathPartMatches(String pathA, String pathB) {
-        if (pathA == null) {
-            pathA = "";
-        }
-        if (pathB == null) {
-            pathB = "";
-        }
-
-        if (pathA.isEmpty()) {
-            return true;
-        }
-
-        if ("/".equals(pathA) && pathB.isEmpty()) {
-            return true;
-        }
-
-        final boolean exactMatch = !pathA.endsWith("/");
-
-        final List<String> pathListA = Utils.strictlySplit(pathA, '/');
-        final List<String> pathListB = Utils.strictlySplit(pathB, '/');
-
-        if (pathListA.size() > pathListB.size()) {
-            return false;
-        }
-
-        if (exactMatch && pathListA.size() != pathListB.size()) {
-            return false;
-        }
-
-        if (!exactMatch) {
-            pathListA.remove(pathListA.size() - 1);
-        }
-
-        final Iterator<String> it1 = pathListA.iterator();
-        final Iterator<String> it2 = pathListB.iterator();
-
-        while (it1.hasNext()) {
-            final String a = Utils.decodeString(it1.next());
-            final String b = Utils.decodeString(it2.next());
-            if (!a.equals(b)) {
-                return false;
-            }
-        }
-        return true;
+    static boolean pathPartMatches(final PathSegments pathA, final String pathB) {
+        return pathA == null || pathA.matches(pathB);
     }
 
     // Utilities and helper classes
 
     static void enforceAscii(final String s) {
-        if (!StandardCharsets.US_ASCII.newEncoder().canEncode(s)) {
-            throw new IllegalArgumentException("string is not ascii: \"" + s + "\"");
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 0x80) {
+                throw PolicyTokenizer.notAscii(s);
+            }
         }
     }
 
-    private record NamedDirective(String name_, Directive directive_) {
+    private record NamedDirective(String name_, Directive directive_, int lazyDirective_) {
     }
 
     /**
@@ -1598,8 +2298,20 @@ public enum Severity {
      */
     @FunctionalInterface
     public interface PolicyErrorConsumer {
-        /** PolicyErrorConsumer ignored. */
-        PolicyErrorConsumer ignored = (severity, message, directiveIndex, valueIndex) -> { };
+        /** PolicyErrorConsumer ignored; no messages are rendered. */
+        PolicyErrorConsumer ignored = new PolicyErrorConsumer() {
+            @Override
+            public void add(final Severity severity, final String message,
+                    final int directiveIndex, final int valueIndex) {
+                // ignore
+            }
+
+            @Override
+            public void report(final DiagnosticCode code, final int directiveIndex, final int valueIndex,
+                    final Object arg0, final Object arg1, final Object arg2) {
+                // ignore
+            }
+        };
 
         /**
          * Called when a parsing error or warning is encountered.
@@ -1611,6 +2323,23 @@ public interface PolicyErrorConsumer {
          *        or {@code -1} if the issue does not pertain to a specific value
          */
         void add(Severity severity, String message, int directiveIndex, int valueIndex);
+
+        /**
+         * Called when a parsing error or warning is encountered. The default implementation
+         * renders the message and passes it to {@link #add(Severity, String, int, int)}.
+         *
+         * @param code the kind of issue
+         * @param directiveIndex the zero-based index of the directive within the policy
+         * @param valueIndex the zero-based index of the value within the directive,
+         *        or {@code -1} if the issue does not pertain to a specific value
+         * @param arg0 the first argument of the code, or {@code null}
+         * @param arg1 the second argument of the code, or {@code null}
+         * @param arg2 the third argument of the code, or {@code null}
+         */
+        default void report(final DiagnosticCode code, final int directiveIndex, final int valueIndex,
+                final Object arg0, final Object arg1, final Object arg2) {
+            add(code.getSeverity(), code.format(arg0, arg1, arg2), directiveIndex, valueIndex);
+        }
     }
 
     /**
@@ -1623,8 +2352,20 @@ public interface PolicyErrorConsumer {
      */
     @FunctionalInterface
     public interface PolicyListErrorConsumer {
-        /** PolicyListErrorConsumer ignored. */
-        PolicyListErrorConsumer ignored = (severity, message, policyIndex, directiveIndex, valueIndex) -> { };
+        /** PolicyListErrorConsumer ignored; no messages are rendered. */
+        PolicyListErrorConsumer ignored = new PolicyListErrorConsumer() {
+            @Override
+            public void add(final Severity severity, final String message,
+                    final int policyIndex, final int directiveIndex, final int valueIndex) {
+                // ignore
+            }
+
+            @Override
+            public void report(final DiagnosticCode code, final int policyIndex, final int directiveIndex,
+                    final int valueIndex, final Object arg0, final Object arg1, final Object arg2) {
+                // ignore
+            }
+        };
 
         /**
          * Called when a parsing error or warning is encountered.
@@ -1637,5 +2378,23 @@ public interface PolicyListErrorConsumer {
          *        or {@code -1} if the issue does not pertain to a specific value
          */
         void add(Severity severity, String message, int policyIndex, int directiveIndex, int valueIndex);
+
+        /**
+         * Called when a parsing error or warning is encountered. The default implementation
+         * renders the message and passes it to {@link #add(Severity, String, int, int, int)}.
+         *
+         * @param code the kind of issue
+         * @param policyIndex the zero-based index of the policy within the comma-separated list
+         * @param directiveIndex the zero-based index of the directive within that policy
+         * @param valueIndex the zero-based index of the value within the directive,
+         *        or {@code -1} if the issue does not pertain to a specific value
+         * @param arg0 the first argument of the code, or {@code null}
+         * @param arg1 the second argument of the code, or {@code null}
+         * @param arg2 the third argument of the code, or {@code null}
+         */
+        default void report(final DiagnosticCode code, final int policyIndex, final int directiveIndex,
+                final int valueIndex, final Object arg0, final Object arg1, final Object arg2) {
+            add(code.getSeverity(), code.format(arg0, arg1, arg2), policyIndex, directiveIndex, valueIndex);
+        }
     }
 }
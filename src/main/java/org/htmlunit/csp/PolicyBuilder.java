@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Optional;
+
+import org.htmlunit.csp.value.Hash;
+import org.htmlunit.csp.value.Host;
+import org.htmlunit.csp.value.Nonce;
+import org.htmlunit.csp.value.Scheme;
+
+/**
+ * Builds {@link Policy} instances from parsed values, without serializing them to a string
+ * and parsing that again.
+ * <p>
+ * Source expressions are added per {@link FetchDirectiveKind} as keywords or as
+ * {@link Scheme}, {@link Host}, {@link Nonce} and {@link Hash} values; the directives
+ * appear in the order their first source expression was added. The value instances are
+ * put into the directives as they are and are validated when they are added. Values shared
+ * by many policies (e.g. the hosts of a site) are therefore added once to a base builder,
+ * and every policy is built from a {@link #copy()} of it, to which only the per-request
+ * parts (e.g. a nonce) are added. Other directives are added by name and values and parsed
+ * as usual.
+ * </p>
+ * <p>
+ * The resulting policy has the same object model as the one
+ * {@link Policy#parseSerializedCSP(String, Policy.PolicyErrorConsumer)} creates from its
+ * {@link Policy#toString() serialization}. A builder can be used for any number of
+ * policies; each {@link #build()} creates new directive objects. Instances are not
+ * thread-safe.
+ * </p>
+ */
+public final class PolicyBuilder {
+    private static final String NONE = "'none'";
+
+    // rejects what the parser reports as an error; warnings are of no use here
+    private static final Directive.DirectiveErrorConsumer REJECT_ERRORS = (severity, message, valueIndex) -> {
+        if (severity == Policy.Severity.Error) {
+            throw new IllegalArgumentException(message);
+        }
+    };
+
+    private final List<PendingDirective> directives_ = new ArrayList<>();
+    private final EnumMap<FetchDirectiveKind, PendingDirective> fetchDirectives_ =
+            new EnumMap<>(FetchDirectiveKind.class);
+
+    /**
+     * Adds {@code 'none'}, which cannot be combined with other source expressions.
+     *
+     * @param kind the fetch directive
+     * @return this builder
+     * @throws IllegalArgumentException if the directive has other source expressions
+     */
+    public PolicyBuilder addNone(final FetchDirectiveKind kind) {
+        return add(kind, NONE, null);
+    }
+
+    /**
+     * Adds {@code 'self'}.
+     *
+     * @param kind the fetch directive
+     * @return this builder
+     */
+    public PolicyBuilder addSelf(final FetchDirectiveKind kind) {
+        return add(kind, "'self'", null);
+    }
+
+    /**
+     * Adds {@code *}.
+     *
+     * @param kind the fetch directive
+     * @return this builder
+     */
+    public PolicyBuilder addStar(final FetchDirectiveKind kind) {
+        return add(kind, "*", null);
+    }
+
+    /**
+     * Adds {@code 'unsafe-inline'}.
+     *
+     * @param kind the fetch directive
+     * @return this builder
+     */
+    public PolicyBuilder addUnsafeInline(final FetchDirectiveKind kind) {
+        return add(kind, "'unsafe-inline'", null);
+    }
+
+    /**
+     * Adds {@code 'unsafe-eval'}.
+     *
+     * @param kind the fetch directive
+     * @return this builder
+     */
+    public PolicyBuilder addUnsafeEval(final FetchDirectiveKind kind) {
+        return add(kind, "'unsafe-eval'", null);
+    }
+
+    /**
+     * Adds {@code 'wasm-unsafe-eval'}.
+     *
+     * @param kind the fetch directive
+     * @return this builder
+     */
+    public PolicyBuilder addWasmUnsafeEval(final FetchDirectiveKind kind) {
+        return add(kind, "'wasm-unsafe-eval'", null);
+    }
+
+    /**
+     * Adds {@code 'strict-dynamic'}.
+     *
+     * @param kind the fetch directive
+     * @return this builder
+     */
+    public PolicyBuilder addStrictDynamic(final FetchDirectiveKind kind) {
+        return add(kind, "'strict-dynamic'", null);
+    }
+
+    /**
+     * Adds {@code 'unsafe-hashes'}.
+     *
+     * @param kind the fetch directive
+     * @return this builder
+     */
+    public PolicyBuilder addUnsafeHashes(final FetchDirectiveKind kind) {
+        return add(kind, "'unsafe-hashes'", null);
+    }
+
+    /**
+     * Adds {@code 'report-sample'}.
+     *
+     * @param kind the fetch directive
+     * @return this builder
+     */
+    public PolicyBuilder addReportSample(final FetchDirectiveKind kind) {
+        return add(kind, "'report-sample'", null);
+    }
+
+    /**
+     * Adds a scheme-source.
+     *
+     * @param kind the fetch directive
+     * @param scheme the scheme-source
+     * @return this builder
+     * @throws IllegalArgumentException if the serialization of {@code scheme} is not a single token
+     *         that parses back to an equal value
+     */
+    public PolicyBuilder addScheme(final FetchDirectiveKind kind, final Scheme scheme) {
+        final String value = scheme.toString();
+        return add(kind, value, checkRoundTrip(value, scheme, Scheme.parseScheme(value)));
+    }
+
+    /**
+     * Adds a host-source.
+     *
+     * @param kind the fetch directive
+     * @param host the host-source
+     * @return this builder
+     * @throws IllegalArgumentException if the serialization of {@code host} is not a single token
+     *         that parses back to an equal value
+     */
+    public PolicyBuilder addHost(final FetchDirectiveKind kind, final Host host) {
+        final String value = host.toString();
+        return add(kind, value, checkRoundTrip(value, host, Host.parseHost(value)));
+    }
+
+    /**
+     * Adds a nonce-source.
+     *
+     * @param kind the fetch directive
+     * @param nonce the nonce-source
+     * @return this builder
+     * @throws IllegalArgumentException if the serialization of {@code nonce} is not a single token
+     *         that parses back to an equal value
+     */
+    public PolicyBuilder addNonce(final FetchDirectiveKind kind, final Nonce nonce) {
+        final String value = nonce.toString();
+        return add(kind, value, checkRoundTrip(value, nonce, Nonce.parseNonce(value)));
+    }
+
+    /**
+     * Adds a hash-source.
+     *
+     * @param kind the fetch directive
+     * @param hash the hash-source
+     * @return this builder
+     * @throws IllegalArgumentException if the serialization of {@code hash} is not a single token
+     *         that parses back to an equal value
+     */
+    public PolicyBuilder addHash(final FetchDirectiveKind kind, final Hash hash) {
+        final String value = hash.toString();
+        return add(kind, value, checkRoundTrip(value, hash, Hash.parseHash(value)));
+    }
+
+    /**
+     * Adds a directive that is not a fetch directive, e.g. {@code frame-ancestors},
+     * {@code sandbox} or {@code upgrade-insecure-requests}. Its values are parsed
+     * when the policy is built.
+     *
+     * @param name the directive name
+     * @param values the directive values
+     * @return this builder
+     * @throws IllegalArgumentException if the name is a fetch directive or not a valid directive name
+     */
+    public PolicyBuilder addDirective(final String name, final String... values) {
+        if (FetchDirectiveKind.lookupIgnoreCase(name) != null) {
+            throw new IllegalArgumentException("Fetch directives are built from source expressions: " + name);
+        }
+        if (name.isEmpty() || !Directive.IS_DIRECTIVE_NAME.test(name)) {
+            throw new IllegalArgumentException("Not a directive name: " + name);
+        }
+        directives_.add(new PendingDirective(name, Arrays.asList(values), null));
+        return this;
+    }
+
+    /**
+     * Creates a builder with the directives and source expressions added to this one so far.
+     * The values are not validated again; adding to the copy does not change this builder.
+     *
+     * @return the new builder
+     */
+    public PolicyBuilder copy() {
+        final PolicyBuilder copy = new PolicyBuilder();
+        for (final PendingDirective directive : directives_) {
+            if (directive.parsed_ == null) {
+                // the values of directives added by name are never changed
+                copy.directives_.add(directive);
+                continue;
+            }
+            final PendingDirective copied = new PendingDirective(directive.name_,
+                    new ArrayList<>(directive.values_), new ArrayList<>(directive.parsed_));
+            copy.directives_.add(copied);
+            copy.fetchDirectives_.put(FetchDirectiveKind.lookupIgnoreCase(directive.name_), copied);
+        }
+        return copy;
+    }
+
+    /**
+     * Creates a policy with the directives added so far.
+     *
+     * @return the new policy
+     * @throws IllegalArgumentException if the values of a directive added by name contain errors
+     */
+    public Policy build() {
+        final Policy policy = new Policy(false);
+        for (final PendingDirective directive : directives_) {
+            policy.add(directive.name_, directive.values_, directive.parsed_, REJECT_ERRORS);
+        }
+        return policy;
+    }
+
+    // the value objects are put into the directives as they are, so they have to be what the parser
+    // creates from their serialization as a single token; e.g. a Host whose host is 'unsafe-inline'
+    // would turn into a keyword when the policy is serialized and parsed again
+    private static Object checkRoundTrip(final String value, final Object parsed, final Optional<?> reparsed) {
+        Policy.enforceAscii(value);
+        if (Directive.containsNonDirectiveCharacter(value)) {
+            throw new IllegalArgumentException("values must not contain whitespace, ',', or ';'");
+        }
+        if (reparsed.isEmpty() || !reparsed.get().equals(parsed)) {
+            throw new IllegalArgumentException("Not in the form the parser creates: " + value);
+        }
+        return parsed;
+    }
+
+    private PolicyBuilder add(final FetchDirectiveKind kind, final String value, final Object parsed) {
+        PendingDirective directive = fetchDirectives_.get(kind);
+        if (directive == null) {
+            directive = new PendingDirective(kind.getRepr(), new ArrayList<>(), new ArrayList<>());
+            fetchDirectives_.put(kind, directive);
+            directives_.add(directive);
+        }
+        else if (directive.values_.contains(value)) {
+            return this;
+        }
+        else if (NONE.equals(value) || directive.values_.contains(NONE)) {
+            throw new IllegalArgumentException("'none' cannot be combined with other source expressions in "
+                    + kind.getRepr());
+        }
+        directive.values_.add(value);
+        directive.parsed_.add(parsed);
+        return this;
+    }
+
+    // parsed_ is null for directives added by name
+    private record PendingDirective(String name_, List<String> values_, List<Object> parsed_) {
+    }
+}
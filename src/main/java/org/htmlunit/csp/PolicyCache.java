@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import org.htmlunit.csp.Policy.PolicyListErrorConsumer;
+
+/**
+ * A size bounded cache of parsed {@link PolicyList}s keyed by the raw serialized
+ * header value.
+ * <p>
+ * Real traffic tends to reuse a small number of distinct
+ * {@code Content-Security-Policy} header values, so parsing each distinct value
+ * once and sharing the result saves most of the parsing work. The cache is safe
+ * to use from many threads; entries are spread over independently locked
+ * segments and evicted least-recently-used once {@code maxSize} is exceeded.
+ * </p>
+ * <p>
+ * Parsing happens outside of any lock. If two threads miss on the same header
+ * at the same time, both parse it and the first result stored wins.
+ * </p>
+ * <p>
+ * By default, errors and warnings are only reported to the consumer passed
+ * with the call that actually parses a header. When the cache is created with
+ * {@code captureDiagnostics} set, the diagnostics are stored together with the
+ * policies and replayed to the consumer on every cache hit.
+ * </p>
+ * <p>
+ * The returned {@link PolicyList}s are shared between all callers and must not be
+ * modified; a change made through one of the public setters of the directives
+ * (e.g. {@link org.htmlunit.csp.directive.TrustedTypesDirective#setNone(boolean)})
+ * would be seen by every other caller that gets the same entry. Use
+ * {@link Policy#compile()} to get a frozen snapshot when in doubt.
+ * </p>
+ */
+public final class PolicyCache {
+    private final BoundedCache<String, Entry> cache_;
+    private final boolean captureDiagnostics_;
+
+    /**
+     * Creates a new cache that does not capture diagnostics.
+     *
+     * @param maxSize the maximum number of distinct header values to keep
+     * @throws IllegalArgumentException if {@code maxSize} is not positive
+     */
+    public PolicyCache(final int maxSize) {
+        this(maxSize, false);
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize the maximum number of distinct header values to keep
+     * @param captureDiagnostics {@code true} to store the parse errors and warnings
+     *        with each entry and replay them on cache hits
+     * @throws IllegalArgumentException if {@code maxSize} is not positive
+     */
+    public PolicyCache(final int maxSize, final boolean captureDiagnostics) {
+        cache_ = new BoundedCache<>(maxSize);
+        captureDiagnostics_ = captureDiagnostics;
+    }
+
+    /**
+     * Returns the parsed {@link PolicyList} for the given serialized CSP list,
+     * parsing it via {@link Policy#parseSerializedCSPList(String, PolicyListErrorConsumer)}
+     * if it is not cached yet.
+     *
+     * @param serialized the comma-separated serialized CSP list
+     * @param policyListErrorConsumer a consumer that receives any errors or warnings;
+     *        on cache hits only if this cache captures diagnostics
+     * @return the (possibly shared) parsed {@link PolicyList}
+     * @throws IllegalArgumentException if {@code serialized} contains non-ASCII characters
+     */
+    public PolicyList parseSerializedCSPList(final String serialized,
+                        final PolicyListErrorConsumer policyListErrorConsumer) {
+        final Entry cached = cache_.get(serialized);
+        if (cached != null) {
+            cached.replay(policyListErrorConsumer);
+            return cached.policyList_;
+        }
+
+        if (!captureDiagnostics_) {
+            final PolicyList policyList = Policy.parseSerializedCSPList(serialized, policyListErrorConsumer);
+            return cache_.putIfAbsent(serialized, new Entry(policyList, null)).policyList_;
+        }
+
+        final DiagnosticCollector diagnostics = new DiagnosticCollector();
+        final PolicyList policyList = Policy.parseSerializedCSPList(serialized, diagnostics);
+        diagnostics.replay(policyListErrorConsumer);
+        final DiagnosticCollector stored = diagnostics.isEmpty() ? null : diagnostics;
+        return cache_.putIfAbsent(serialized, new Entry(policyList, stored)).policyList_;
+    }
+
+    /**
+     * Returns {@code true} if diagnostics are stored with the entries and replayed on cache hits.
+     *
+     * @return {@code true} if diagnostics are stored with the entries and replayed on cache hits
+     */
+    public boolean capturesDiagnostics() {
+        return captureDiagnostics_;
+    }
+
+    /**
+     * Returns the maximum number of entries.
+     *
+     * @return the maximum number of entries
+     */
+    public int getMaxSize() {
+        return cache_.getMaxSize();
+    }
+
+    /**
+     * Returns the current number of entries.
+     *
+     * @return the current number of entries
+     */
+    public int size() {
+        return cache_.size();
+    }
+
+    /**
+     * Removes all entries. The statistics are not reset.
+     */
+    public void clear() {
+        cache_.clear();
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     *
+     * @return the number of lookups answered from the cache
+     */
+    public long getHitCount() {
+        return cache_.getHitCount();
+    }
+
+    /**
+     * Returns the number of lookups that required parsing.
+     *
+     * @return the number of lookups that required parsing
+     */
+    public long getMissCount() {
+        return cache_.getMissCount();
+    }
+
+    /**
+     * Returns the number of entries evicted to respect the size bound.
+     *
+     * @return the number of entries evicted to respect the size bound
+     */
+    public long getEvictionCount() {
+        return cache_.getEvictionCount();
+    }
+
+    private static final class Entry {
+        private final PolicyList policyList_;
+        private final DiagnosticCollector diagnostics_;
+
+        Entry(final PolicyList policyList, final DiagnosticCollector diagnostics) {
+            policyList_ = policyList;
+            diagnostics_ = diagnostics;
+        }
+
+        void replay(final PolicyListErrorConsumer policyListErrorConsumer) {
+            if (diagnostics_ != null) {
+                diagnostics_.replay(policyListErrorConsumer);
+            }
+        }
+    }
+}
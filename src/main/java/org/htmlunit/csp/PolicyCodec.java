@@ -0,0 +1,540 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.htmlunit.csp.internal.Lexer;
+import org.htmlunit.csp.value.Hash;
+import org.htmlunit.csp.value.Host;
+import org.htmlunit.csp.value.Nonce;
+import org.htmlunit.csp.value.Scheme;
+
+/**
+ * A compact, versioned binary encoding of parsed {@link Policy} and {@link PolicyList}
+ * instances, for storing them or shipping them to other processes instead of the header text.
+ * <p>
+ * The encoding keeps the directive names and values in order, so the decoded policies
+ * serialize to the same string ({@link Policy#toString()}) as the encoded ones and give the
+ * same answers. Known directive names and keywords, e.g. {@code 'self'} or the sandbox
+ * flags, are stored as a single byte; nonces, hashes, schemes and hosts of the
+ * source-expression directives and {@code frame-ancestors} are stored as their text tagged
+ * with their type. Decoding therefore does not tokenize the text, only checks the tagged
+ * values with the scanners of their grammar, and skips the checks for duplicate values.
+ * Values the encoding has no parsed form for, e.g. unrecognized ones, are stored as text
+ * and parsed as usual when decoded. Diagnostics are not part of the encoding.
+ * </p>
+ * <p>
+ * The format starts with a header holding the format {@link #VERSION}; decoding data of
+ * another version fails. All methods are thread-safe.
+ * </p>
+ */
+public final class PolicyCodec {
+
+    /** The version of the format written by the {@code encode} methods. */
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = {'C', 'S', 'P'};
+
+    private static final int FLAG_DELIVERED_VIA_META = 1;
+
+    // the first byte of a value; higher values are indexes into KEYWORDS
+    private static final int TEXT = 0;
+    private static final int NONCE = 1;
+    private static final int HASH = 2;
+    private static final int SCHEME = 3;
+    private static final int HOST = 4;
+    private static final int FIRST_KEYWORD = 16;
+
+    // the directive names and keywords that are stored as a single byte; append only,
+    // changing the order requires a new VERSION
+    private static final String[] NAMES;
+    private static final String[] KEYWORDS = {
+        "'self'", "'none'", "*", "'unsafe-inline'", "'unsafe-eval'", "'strict-dynamic'", "'unsafe-hashes'",
+        "'wasm-unsafe-eval'", "'report-sample'", "'unsafe-allow-redirects'", "'script'", "'allow-duplicates'",
+        "allow-downloads", "allow-forms", "allow-modals", "allow-orientation-lock", "allow-pointer-lock",
+        "allow-popups", "allow-popups-to-escape-sandbox", "allow-presentation", "allow-same-origin",
+        "allow-scripts", "allow-storage-access-by-user-activation", "allow-top-navigation",
+        "allow-top-navigation-by-user-activation",
+    };
+    private static final Hash.Algorithm[] ALGORITHMS = Hash.Algorithm.values();
+
+    private static final Map<String, Integer> NAME_CODES = new HashMap<>();
+    private static final Map<String, Integer> KEYWORD_CODES = new HashMap<>();
+
+    static {
+        final List<String> names = new ArrayList<>();
+        for (final FetchDirectiveKind kind : FetchDirectiveKind.values()) {
+            names.add(kind.getRepr());
+        }
+        for (final DirectiveName name : DirectiveName.values()) {
+            if (name.getRepr() != null) {
+                names.add(name.getRepr());
+            }
+        }
+        NAMES = names.toArray(new String[0]);
+        // code 0 is a name stored as text
+        for (int i = 0; i < NAMES.length; i++) {
+            NAME_CODES.put(NAMES[i], i + 1);
+        }
+        for (int i = 0; i < KEYWORDS.length; i++) {
+            KEYWORD_CODES.put(KEYWORDS[i], FIRST_KEYWORD + i);
+        }
+    }
+
+    private PolicyCodec() {
+    }
+
+    /**
+     * Encodes a policy.
+     *
+     * @param policy the policy
+     * @return the encoded policy, to be decoded with {@link #decodePolicy(ByteBuffer)}
+     */
+    public static byte[] encode(final Policy policy) {
+        final Output out = header(1);
+        encode(policy, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes a policy list.
+     *
+     * @param policyList the policy list
+     * @return the encoded policy list, to be decoded with {@link #decodePolicyList(ByteBuffer)}
+     */
+    public static byte[] encode(final PolicyList policyList) {
+        final Output out = header(policyList.size());
+        for (int i = 0; i < policyList.size(); i++) {
+            encode(policyList.getPolicy(i), out);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a policy written by {@link #encode(Policy)}.
+     * <p>
+     * Reading starts at the position of the buffer, which is advanced to the end of
+     * the encoded policy.
+     * </p>
+     *
+     * @param in the buffer holding the encoded policy
+     * @return the decoded policy
+     * @throws IllegalArgumentException if the buffer does not hold an encoded policy
+     *         of this {@link #VERSION}
+     */
+    public static Policy decodePolicy(final ByteBuffer in) {
+        try {
+            final int count = readHeader(in);
+            if (count != 1) {
+                throw new IllegalArgumentException("Expected one encoded policy but found " + count);
+            }
+            return decode(in, new Input(in));
+        }
+        catch (final BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated policy encoding", e);
+        }
+    }
+
+    /**
+     * Decodes a policy list written by {@link #encode(PolicyList)}.
+     * <p>
+     * Reading starts at the position of the buffer, which is advanced to the end of
+     * the encoded policy list.
+     * </p>
+     *
+     * @param in the buffer holding the encoded policy list
+     * @return the decoded policy list
+     * @throws IllegalArgumentException if the buffer does not hold an encoded policy list
+     *         of this {@link #VERSION}
+     */
+    public static PolicyList decodePolicyList(final ByteBuffer in) {
+        try {
+            final int count = readHeader(in);
+            if (count < 0) {
+                throw new IllegalArgumentException("Malformed policy encoding");
+            }
+            final Input input = new Input(in);
+            final List<Policy> policies = new ArrayList<>(Math.min(count, in.remaining()));
+            for (int i = 0; i < count; i++) {
+                policies.add(decode(in, input));
+            }
+            return new PolicyList(policies);
+        }
+        catch (final BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated policy encoding", e);
+        }
+    }
+
+    private static Output header(final int policyCount) {
+        final Output out = new Output();
+        out.write(MAGIC);
+        out.writeVarInt(VERSION);
+        out.writeVarInt(policyCount);
+        return out;
+    }
+
+    private static int readHeader(final ByteBuffer in) {
+        for (final byte b : MAGIC) {
+            if (in.get() != b) {
+                throw new IllegalArgumentException("Not an encoded policy");
+            }
+        }
+        final int version = readVarInt(in);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported policy encoding version " + version);
+        }
+        return readVarInt(in);
+    }
+
+    private static void encode(final Policy policy, final Output out) {
+        out.write(policy.deliveredViaMeta() ? FLAG_DELIVERED_VIA_META : 0);
+        final int directiveCount = policy.getDirectiveCount();
+        out.writeVarInt(directiveCount);
+        for (int i = 0; i < directiveCount; i++) {
+            final String name = policy.getDirectiveName(i);
+            final Integer nameCode = NAME_CODES.get(name);
+            if (nameCode == null) {
+                out.write(0);
+                out.writeString(name);
+            }
+            else {
+                out.write(nameCode);
+            }
+
+            final List<String> values = policy.getDirectiveValues(i);
+            out.writeVarInt(values.size());
+            final int kind = valueKind(name);
+            final Set<Object> seen = kind == TEXT ? null : new HashSet<>();
+            for (final String value : values) {
+                encodeValue(value, kind, seen, out);
+            }
+        }
+    }
+
+    // which parsed values the directive keeps: NONCE for all of source expressions, SCHEME for
+    // schemes and hosts only (frame-ancestors) and TEXT for none
+    private static int valueKind(final String name) {
+        if (FetchDirectiveKind.lookupIgnoreCase(name) != null) {
+            return NONCE;
+        }
+        return switch (DirectiveName.lookup(name)) {
+            case BaseUri, FormAction, NavigateTo -> NONCE;
+            case FrameAncestors -> SCHEME;
+            default -> TEXT;
+        };
+    }
+
+    // Values are only stored as parsed if the directive would parse them to exactly that object,
+    // the object serializes to the same string again and it is not a duplicate (see
+    // SourceExpressionDirective(List, List, DirectiveErrorConsumer)). With the tag, decoding only has to
+    // check the text against the grammar of that one type.
+    private static void encodeValue(final String value, final int kind, final Set<Object> seen, final Output out) {
+        final Integer keywordCode = KEYWORD_CODES.get(value);
+        if (keywordCode != null) {
+            out.write(keywordCode);
+            return;
+        }
+        final Object parsed = kind == TEXT ? null : parse(value, kind);
+        if (parsed == null || !seen.add(parsed) || !parsed.toString().equals(value)) {
+            out.write(TEXT);
+            out.writeString(value);
+        }
+        else if (parsed instanceof Nonce) {
+            out.write(NONCE);
+            out.writeString(value);
+        }
+        else if (parsed instanceof Hash hash) {
+            out.write(HASH);
+            out.write(hash.algorithm().ordinal());
+            out.writeString(value);
+        }
+        else if (parsed instanceof Scheme) {
+            out.write(SCHEME);
+            out.writeString(value);
+        }
+        else {
+            out.write(HOST);
+            out.writeString(value);
+        }
+    }
+
+    // the value as the directive parses it, see HostSourceDirective.addHostOrSchemeDuringConstruction
+    private static Object parse(final String value, final int kind) {
+        if (value.startsWith("'")) {
+            if (kind != NONCE) {
+                return null;
+            }
+            final Optional<Nonce> nonce = Nonce.parseNonce(value);
+            if (nonce.isPresent()) {
+                return nonce.get();
+            }
+            return Hash.parseHash(value).orElse(null);
+        }
+        if ("*".equals(value)) {
+            return null;
+        }
+        final Optional<Scheme> scheme = Scheme.parseScheme(value);
+        if (scheme.isPresent()) {
+            return scheme.get();
+        }
+        return Host.parseHost(value).orElse(null);
+    }
+
+    private static Policy decode(final ByteBuffer in, final Input input) {
+        final int[] bounds = new int[Lexer.HOST_SOURCE_BOUNDS];
+        final Policy policy = new Policy((in.get() & FLAG_DELIVERED_VIA_META) != 0);
+        final int directiveCount = readVarInt(in);
+        for (int i = 0; i < directiveCount; i++) {
+            final int nameCode = in.get() & 0xff;
+            final String name;
+            if (nameCode == 0) {
+                name = input.readString();
+            }
+            else if (nameCode <= NAMES.length) {
+                name = NAMES[nameCode - 1];
+            }
+            else {
+                throw new IllegalArgumentException("Unknown directive code " + nameCode);
+            }
+
+            final int valueCount = readVarInt(in);
+            // every value takes at least one byte
+            if (valueCount < 0 || valueCount > in.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            final int kind = valueKind(name);
+            final String[] values = new String[valueCount];
+            Object[] parsed = null;
+            for (int j = 0; j < valueCount; j++) {
+                final int tag = in.get() & 0xff;
+                if (tag >= FIRST_KEYWORD) {
+                    if (tag - FIRST_KEYWORD >= KEYWORDS.length) {
+                        throw new IllegalArgumentException("Unknown value code " + tag);
+                    }
+                    values[j] = KEYWORDS[tag - FIRST_KEYWORD];
+                    continue;
+                }
+
+                final Hash.Algorithm algorithm = tag == HASH ? readAlgorithm(in) : null;
+                final String value = input.readString();
+                if (value.isEmpty() || Directive.containsNonDirectiveCharacter(value)) {
+                    throw new IllegalArgumentException("Malformed value in policy encoding");
+                }
+                values[j] = value;
+                if (tag == TEXT) {
+                    continue;
+                }
+                // the directive casts what it gets to the values it keeps, see valueKind()
+                if (kind == TEXT || kind == SCHEME && (tag == NONCE || tag == HASH)) {
+                    throw new IllegalArgumentException("Value code " + tag + " is not allowed in " + name);
+                }
+                if (parsed == null) {
+                    parsed = new Object[valueCount];
+                }
+                parsed[j] = switch (tag) {
+                    case NONCE -> nonceOf(value);
+                    case HASH -> hashOf(algorithm, value);
+                    case SCHEME -> schemeOf(value);
+                    case HOST -> hostOf(value, bounds);
+                    default -> throw new IllegalArgumentException("Unknown value code " + tag);
+                };
+            }
+            policy.add(name, Arrays.asList(values), parsed == null ? null : Arrays.asList(parsed),
+                    Directive.DirectiveErrorConsumer.ignored);
+        }
+        return policy;
+    }
+
+    private static Hash.Algorithm readAlgorithm(final ByteBuffer in) {
+        final int ordinal = in.get() & 0xff;
+        if (ordinal >= ALGORITHMS.length) {
+            throw new IllegalArgumentException("Unknown hash algorithm " + ordinal);
+        }
+        return ALGORITHMS[ordinal];
+    }
+
+    // The value objects are put into the directives as they are, so they have to be what the parser creates
+    // from the text; the value grammars are checked with the scanners only, as the parser does, without
+    // lowercasing or cutting the text into tokens. The checks reject crafted input, as the encoder only
+    // tags values that serialize to the text.
+
+    // "'nonce-" base64-value "'"
+    private static Nonce nonceOf(final String value) {
+        final int end = value.length() - 1;
+        if (end < 7 || !value.startsWith("'nonce-") || value.charAt(end) != '\''
+                || !Lexer.containsBase64Value(value, 7, end)) {
+            throw new IllegalArgumentException("Malformed nonce-source " + value);
+        }
+        return new Nonce(value.substring(7, end));
+    }
+
+    // "'" hash-algorithm "-" base64-value "'"; all algorithm names have six characters
+    private static Hash hashOf(final Hash.Algorithm algorithm, final String value) {
+        final int end = value.length() - 1;
+        if (end < 8 || value.charAt(0) != '\'' || !value.startsWith(algorithm.toString(), 1)
+                || value.charAt(7) != '-' || value.charAt(end) != '\''
+                || !Lexer.containsBase64Value(value, 8, end)) {
+            throw new IllegalArgumentException("Malformed hash-source " + value);
+        }
+        return new Hash(algorithm, value.substring(8, end));
+    }
+
+    // scheme ":", lowercase
+    private static Scheme schemeOf(final String value) {
+        if (!Lexer.isSchemeSource(value, 0, value.length()) || !isLowercase(value, 0, value.length())) {
+            throw new IllegalArgumentException("Malformed scheme-source " + value);
+        }
+        return new Scheme(value.substring(0, value.length() - 1));
+    }
+
+    // [scheme "://"] host [":" port] [path] with lowercase scheme and host, serializing to the value;
+    // a lone * is the keyword
+    private static Host hostOf(final String value, final int[] bounds) {
+        if ("*".equals(value) || !Lexer.scanHostSource(value, 0, value.length(), bounds)
+                || !isLowercase(value, bounds[Lexer.SCHEME_START], bounds[Lexer.SCHEME_END])
+                || !isLowercase(value, bounds[Lexer.HOST_START], bounds[Lexer.HOST_END])) {
+            throw new IllegalArgumentException("Malformed host-source " + value);
+        }
+        final String scheme = bounds[Lexer.SCHEME_START] == -1
+                ? null
+                : value.substring(bounds[Lexer.SCHEME_START], bounds[Lexer.SCHEME_END]);
+        // a NumberFormatException is an IllegalArgumentException
+        final int port = Lexer.parsePort(value, bounds, Constants.EMPTY_PORT);
+        final String path = bounds[Lexer.PATH_START] == -1
+                ? null
+                : value.substring(bounds[Lexer.PATH_START], bounds[Lexer.PATH_END]);
+        final Host host = new Host(scheme, value.substring(bounds[Lexer.HOST_START], bounds[Lexer.HOST_END]),
+                port, path);
+        // e.g. a default port is not serialized
+        if (!host.toString().equals(value)) {
+            throw new IllegalArgumentException("Malformed host-source " + value);
+        }
+        return host;
+    }
+
+    // true for empty ranges and for ranges starting at -1
+    private static boolean isLowercase(final String value, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            final char c = value.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readVarInt(final ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final byte b = in.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed policy encoding");
+    }
+
+    // Reads the ASCII strings of one decoding call, using the array of heap buffers directly.
+    private static final class Input {
+        private final ByteBuffer in_;
+        private byte[] scratch_;
+
+        Input(final ByteBuffer in) {
+            in_ = in;
+        }
+
+        String readString() {
+            final int length = readVarInt(in_);
+            if (length < 0 || length > in_.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            final byte[] bytes;
+            final int offset;
+            if (in_.hasArray()) {
+                bytes = in_.array();
+                offset = in_.arrayOffset() + in_.position();
+                in_.position(in_.position() + length);
+            }
+            else {
+                if (scratch_ == null || scratch_.length < length) {
+                    scratch_ = new byte[Math.max(length, 64)];
+                }
+                in_.get(scratch_, 0, length);
+                bytes = scratch_;
+                offset = 0;
+            }
+            for (int i = offset; i < offset + length; i++) {
+                if (bytes[i] < 0) {
+                    throw new IllegalArgumentException("Non-ASCII character in policy encoding");
+                }
+            }
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private static final class Output {
+        private byte[] bytes_ = new byte[256];
+        private int size_;
+
+        void write(final int b) {
+            if (size_ == bytes_.length) {
+                bytes_ = Arrays.copyOf(bytes_, size_ * 2);
+            }
+            bytes_[size_++] = (byte) b;
+        }
+
+        void write(final byte[] b) {
+            for (final byte value : b) {
+                write(value);
+            }
+        }
+
+        void writeVarInt(final int value) {
+            int rest = value;
+            while ((rest & ~0x7f) != 0) {
+                write((rest & 0x7f) | 0x80);
+                rest >>>= 7;
+            }
+            write(rest);
+        }
+
+        void writeString(final String value) {
+            writeVarInt(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                if (c > 0x7f) {
+                    throw new IllegalArgumentException("Non-ASCII character in " + value);
+                }
+                write(c);
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes_, size_);
+        }
+    }
+}
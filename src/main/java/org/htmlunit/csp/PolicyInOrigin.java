@@ -14,9 +14,19 @@
  */
 package org.htmlunit.csp;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import org.htmlunit.csp.CheckRequest.Destination;
+import org.htmlunit.csp.directive.HostSourceDirective;
 import org.htmlunit.csp.url.URLWithScheme;
+import org.htmlunit.csp.value.Host;
 
 /**
  * A convenience wrapper that pairs a {@link Policy} with its
@@ -29,11 +39,29 @@
  * applicable to the simplified query (such as nonce, integrity, or
  * redirect information).
  * </p>
+ * <p>
+ * During a page load the same kinds of requests go to the same few origins over and
+ * over. A wrapper created with {@link #PolicyInOrigin(Policy, URLWithScheme, int)}
+ * remembers the decisions of the URL based queries in a size bounded table, keyed by
+ * the kind of request and the scheme, host and port of the URL. The path is part of the
+ * key only if the directives consulted for that kind of request have host-sources with
+ * a path. The table is safe to use from many threads; its entries are spread over
+ * independently locked segments and evicted least-recently-used.
+ * </p>
+ * <p>
+ * {@link #checkAll(List, List, boolean)} checks all subresources of a document at once;
+ * URLs that cannot be told apart by the policy are grouped and checked only once.
+ * </p>
  */
 public class PolicyInOrigin {
     private final Policy policy_;
     private final URLWithScheme origin_;
 
+    // null if decisions are not memoized
+    private final BoundedCache<MemoKey, Boolean> memo_;
+    // per destination ordinal, whether the path of the URL can change the decision
+    private final boolean[] pathSensitive_;
+
     /**
      * Ctor.
      *
@@ -43,6 +71,26 @@ public class PolicyInOrigin {
     public PolicyInOrigin(final Policy policy, final URLWithScheme origin) {
         policy_ = policy;
         origin_ = origin;
+        memo_ = null;
+        pathSensitive_ = null;
+    }
+
+    /**
+     * Ctor for a wrapper that memoizes the decisions of its URL based queries.
+     * <p>
+     * The policy must not be modified while the wrapper is in use.
+     * </p>
+     *
+     * @param policy the Content Security Policy to query against
+     * @param origin the origin of the protected resource
+     * @param memoSize the maximum number of decisions to remember
+     * @throws IllegalArgumentException if {@code memoSize} is not positive
+     */
+    public PolicyInOrigin(final Policy policy, final URLWithScheme origin, final int memoSize) {
+        policy_ = policy;
+        origin_ = origin;
+        memo_ = new BoundedCache<>(memoSize);
+        pathSensitive_ = pathSensitivity(policy);
     }
 
     /**
@@ -76,8 +124,7 @@ public URLWithScheme getOrigin() {
      * @return {@code true} if the policy allows the script from the given source
      */
     public boolean allowsScriptFromSource(final URLWithScheme url) {
-        return policy_.allowsExternalScript(Optional.empty(),
-                Optional.empty(), Optional.of(url), Optional.empty(), Optional.of(origin_));
+        return allows(Destination.Script, url);
     }
 
     /**
@@ -90,7 +137,7 @@ public boolean allowsScriptFromSource(final URLWithScheme url) {
      * @return {@code true} if the policy allows the style from the given source
      */
     public boolean allowsStyleFromSource(final URLWithScheme url) {
-        return policy_.allowsExternalStyle(Optional.empty(), Optional.of(url), Optional.of(origin_));
+        return allows(Destination.Style, url);
     }
 
     /**
@@ -103,7 +150,7 @@ public boolean allowsStyleFromSource(final URLWithScheme url) {
      * @return {@code true} if the policy allows the image from the given source
      */
     public boolean allowsImageFromSource(final URLWithScheme url) {
-        return policy_.allowsImage(Optional.of(url), Optional.of(origin_));
+        return allows(Destination.Image, url);
     }
 
     /**
@@ -116,7 +163,7 @@ public boolean allowsImageFromSource(final URLWithScheme url) {
      * @return {@code true} if the policy allows the frame from the given source
      */
     public boolean allowsFrameFromSource(final URLWithScheme url) {
-        return policy_.allowsFrame(Optional.of(url), Optional.of(origin_));
+        return allows(Destination.Frame, url);
     }
 
     /**
@@ -129,7 +176,7 @@ public boolean allowsFrameFromSource(final URLWithScheme url) {
      * @return {@code true} if the policy allows the worker from the given source
      */
     public boolean allowsWorkerFromSource(final URLWithScheme url) {
-        return policy_.allowsWorker(Optional.of(url), Optional.of(origin_));
+        return allows(Destination.Worker, url);
     }
 
     /**
@@ -142,7 +189,7 @@ public boolean allowsWorkerFromSource(final URLWithScheme url) {
      * @return {@code true} if the policy allows the font from the given source
      */
     public boolean allowsFontFromSource(final URLWithScheme url) {
-        return policy_.allowsFont(Optional.of(url), Optional.of(origin_));
+        return allows(Destination.Font, url);
     }
 
     /**
@@ -155,7 +202,7 @@ public boolean allowsFontFromSource(final URLWithScheme url) {
      * @return {@code true} if the policy allows the object from the given source
      */
     public boolean allowsObjectFromSource(final URLWithScheme url) {
-        return policy_.allowsObject(Optional.of(url), Optional.of(origin_));
+        return allows(Destination.Object, url);
     }
 
     /**
@@ -168,7 +215,7 @@ public boolean allowsObjectFromSource(final URLWithScheme url) {
      * @return {@code true} if the policy allows the media from the given source
      */
     public boolean allowsMediaFromSource(final URLWithScheme url) {
-        return policy_.allowsMedia(Optional.of(url), Optional.of(origin_));
+        return allows(Destination.Media, url);
     }
 
     /**
@@ -181,7 +228,7 @@ public boolean allowsMediaFromSource(final URLWithScheme url) {
      * @return {@code true} if the policy allows the manifest from the given source
      */
     public boolean allowsManifestFromSource(final URLWithScheme url) {
-        return policy_.allowsApplicationManifest(Optional.of(url), Optional.of(origin_));
+        return allows(Destination.Manifest, url);
     }
 
     /**
@@ -194,7 +241,7 @@ public boolean allowsManifestFromSource(final URLWithScheme url) {
      * @return {@code true} if the policy allows the prefetch from the given source
      */
     public boolean allowsPrefetchFromSource(final URLWithScheme url) {
-        return policy_.allowsPrefetch(Optional.of(url), Optional.of(origin_));
+        return allows(Destination.Prefetch, url);
     }
 
     /**
@@ -235,7 +282,7 @@ public boolean allowsUnsafeInlineStyle() {
      * @return {@code true} if the policy allows the connection to the given source
      */
     public boolean allowsConnection(final URLWithScheme url) {
-        return policy_.allowsConnection(Optional.of(url), Optional.of(origin_));
+        return allows(Destination.Connection, url);
     }
 
     /**
@@ -249,8 +296,7 @@ public boolean allowsConnection(final URLWithScheme url) {
      * @return {@code true} if the policy allows navigation to the given URL
      */
     public boolean allowsNavigation(final URLWithScheme url) {
-        return policy_.allowsNavigation(Optional.of(url),
-                Optional.empty(), Optional.empty(), Optional.of(origin_));
+        return allows(Destination.Navigation, url);
     }
 
     /**
@@ -263,7 +309,7 @@ public boolean allowsNavigation(final URLWithScheme url) {
      * @return {@code true} if the policy allows the frame ancestor
      */
     public boolean allowsFrameAncestor(final URLWithScheme url) {
-        return policy_.allowsFrameAncestor(Optional.of(url), Optional.of(origin_));
+        return allows(Destination.FrameAncestor, url);
     }
 
     /**
@@ -277,7 +323,251 @@ public boolean allowsFrameAncestor(final URLWithScheme url) {
      * @return {@code true} if the policy allows the form action to the given URL
      */
     public boolean allowsFormAction(final URLWithScheme url) {
-        return policy_.allowsFormAction(Optional.of(url),
-                Optional.empty(), Optional.empty(), Optional.of(origin_));
+        return allows(Destination.FormAction, url);
+    }
+
+    /**
+     * Returns whether this wrapper memoizes decisions.
+     *
+     * @return {@code true} if this wrapper was created with a memo size
+     */
+    public boolean isMemoizing() {
+        return memo_ != null;
+    }
+
+    /**
+     * Returns the current number of memoized decisions.
+     *
+     * @return the current number of memoized decisions, {@code 0} if this wrapper does not memoize
+     */
+    public int getMemoSize() {
+        return memo_ == null ? 0 : memo_.size();
+    }
+
+    /**
+     * Forgets all memoized decisions. The statistics are not reset.
+     */
+    public void clearMemo() {
+        if (memo_ != null) {
+            memo_.clear();
+        }
+    }
+
+    /**
+     * Returns the number of queries answered from the memo.
+     *
+     * @return the number of queries answered from the memo
+     */
+    public long getMemoHitCount() {
+        return memo_ == null ? 0 : memo_.getHitCount();
+    }
+
+    /**
+     * Returns the number of queries that had to be evaluated by the policy.
+     *
+     * @return the number of queries that had to be evaluated by the policy,
+     *         {@code 0} if this wrapper does not memoize
+     */
+    public long getMemoMissCount() {
+        return memo_ == null ? 0 : memo_.getMissCount();
+    }
+
+    /**
+     * Returns the share of queries answered from the memo.
+     *
+     * @return the hit rate between {@code 0.0} and {@code 1.0}, {@code 0.0} if there were no queries
+     */
+    public double getMemoHitRate() {
+        final long hits = getMemoHitCount();
+        final long lookups = hits + getMemoMissCount();
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    /**
+     * Determines for each URL whether the policy allows loading it as the given destination.
+     *
+     * @param destination the kind of request, one of the URL based destinations
+     * @param urls the URLs to check
+     * @return the indices of the allowed URLs
+     * @throws IllegalArgumentException if the destination is not URL based
+     * @see #checkAll(List, List, boolean)
+     */
+    public BitSet checkAll(final Destination destination, final List<? extends URLWithScheme> urls) {
+        return checkAll(Collections.nCopies(urls.size(), destination), urls, false);
+    }
+
+    /**
+     * Determines for each URL whether the policy allows loading it as the corresponding destination.
+     * <p>
+     * The answers are the same as the ones of the single URL methods, e.g.
+     * {@link #allowsImageFromSource(URLWithScheme)} for {@link Destination#Image}. URLs with the
+     * same destination, scheme, host and port (and path, if the source list has paths) are
+     * grouped and the policy is queried once per group. In parallel mode, large batches spread
+     * the groups over the common {@link java.util.concurrent.ForkJoinPool}.
+     * </p>
+     *
+     * @param destinations the kind of request per URL, each one a URL based destination
+     * @param urls the URLs to check
+     * @param parallel whether large batches may be checked by several threads
+     * @return the indices of the allowed URLs
+     * @throws IllegalArgumentException if the lists differ in size or a destination is not URL based
+     */
+    public BitSet checkAll(final List<Destination> destinations, final List<? extends URLWithScheme> urls,
+            final boolean parallel) {
+        final int size = urls.size();
+        if (destinations.size() != size) {
+            throw new IllegalArgumentException("There are " + destinations.size()
+                    + " destinations for " + size + " URLs");
+        }
+        final boolean[] pathSensitive = pathSensitive_ == null ? pathSensitivity(policy_) : pathSensitive_;
+
+        final Map<MemoKey, Group> groupsByKey = new HashMap<>();
+        final List<Group> groups = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            final Destination destination = destinations.get(i);
+            if (!URL_BASED[destination.ordinal()]) {
+                throw new IllegalArgumentException(destination + " is not a URL based destination");
+            }
+            final URLWithScheme url = urls.get(i);
+            final MemoKey key = memoKey(destination, url, pathSensitive);
+            Group group = groupsByKey.get(key);
+            if (group == null) {
+                group = new Group(destination, url);
+                groupsByKey.put(key, group);
+                groups.add(group);
+            }
+            group.add(i);
+        }
+
+        if (parallel && groups.size() >= PARALLEL_THRESHOLD) {
+            groups.parallelStream().forEach(group -> group.allowed_ = allows(group.destination_, group.url_));
+        }
+        else {
+            for (final Group group : groups) {
+                group.allowed_ = allows(group.destination_, group.url_);
+            }
+        }
+
+        final BitSet allowed = new BitSet(size);
+        for (final Group group : groups) {
+            if (group.allowed_) {
+                for (int i = 0; i < group.size_; i++) {
+                    allowed.set(group.indices_[i]);
+                }
+            }
+        }
+        return allowed;
+    }
+
+    private boolean allows(final Destination destination, final URLWithScheme url) {
+        if (memo_ == null || url == null) {
+            return evaluate(destination, url);
+        }
+        final MemoKey key = memoKey(destination, url, pathSensitive_);
+        final Boolean memoized = memo_.get(key);
+        if (memoized != null) {
+            return memoized;
+        }
+        final boolean allowed = evaluate(destination, url);
+        memo_.put(key, allowed);
+        return allowed;
+    }
+
+    private boolean evaluate(final Destination destination, final URLWithScheme url) {
+        return policy_.check(new CheckRequest(destination).setUrl(url).setOrigin(origin_));
+    }
+
+    private static MemoKey memoKey(final Destination destination, final URLWithScheme url,
+            final boolean[] pathSensitive) {
+        if (url == null) {
+            return new MemoKey(destination, null, null, null, null);
+        }
+        // without a host, only the scheme is matched
+        final boolean withPath = pathSensitive[destination.ordinal()] && url.getHost() != null;
+        return new MemoKey(destination, url.getScheme(), url.getHost(), url.getPort(),
+                withPath ? url.getPath() : null);
+    }
+
+    // the URL based destinations
+    private static final boolean[] URL_BASED = new boolean[Destination.values().length];
+
+    // the number of groups from which on a batch is worth splitting
+    private static final int PARALLEL_THRESHOLD = 256;
+
+    static {
+        for (final Destination destination : Arrays.asList(Destination.Script, Destination.Style,
+                Destination.Image, Destination.Font, Destination.Media, Destination.Object, Destination.Frame,
+                Destination.Worker, Destination.Manifest, Destination.Prefetch, Destination.Connection,
+                Destination.Navigation, Destination.FormAction, Destination.FrameAncestor)) {
+            URL_BASED[destination.ordinal()] = true;
+        }
+    }
+
+    // per destination ordinal, whether the path of the URL can change the decision
+    private static boolean[] pathSensitivity(final Policy policy) {
+        final boolean[] pathSensitive = new boolean[URL_BASED.length];
+        for (final Destination destination : Destination.values()) {
+            pathSensitive[destination.ordinal()] = switch (destination) {
+                case Script -> hasPaths(policy.getGoverningDirectiveForEffectiveDirective(
+                        FetchDirectiveKind.ScriptSrcElem));
+                case Style -> hasPaths(policy.getGoverningDirectiveForEffectiveDirective(
+                        FetchDirectiveKind.StyleSrcElem));
+                case Image -> hasPaths(policy.getGoverningDirectiveForEffectiveDirective(FetchDirectiveKind.ImgSrc));
+                case Font -> hasPaths(policy.getGoverningDirectiveForEffectiveDirective(FetchDirectiveKind.FontSrc));
+                case Media -> hasPaths(policy.getGoverningDirectiveForEffectiveDirective(FetchDirectiveKind.MediaSrc));
+                case Object -> hasPaths(policy.getGoverningDirectiveForEffectiveDirective(
+                        FetchDirectiveKind.ObjectSrc));
+                case Frame -> hasPaths(policy.getGoverningDirectiveForEffectiveDirective(FetchDirectiveKind.FrameSrc));
+                case Worker -> hasPaths(policy.getGoverningDirectiveForEffectiveDirective(
+                        FetchDirectiveKind.WorkerSrc));
+                case Manifest -> hasPaths(policy.getGoverningDirectiveForEffectiveDirective(
+                        FetchDirectiveKind.ManifestSrc));
+                case Prefetch -> hasPaths(policy.getGoverningDirectiveForEffectiveDirective(
+                        FetchDirectiveKind.PrefetchSrc));
+                case Connection -> hasPaths(policy.getGoverningDirectiveForEffectiveDirective(
+                        FetchDirectiveKind.ConnectSrc));
+                case Navigation -> hasPaths(policy.navigateTo());
+                case FrameAncestor -> hasPaths(policy.frameAncestors());
+                // form-action falls back to navigate-to
+                case FormAction -> hasPaths(policy.formAction()) || hasPaths(policy.navigateTo());
+                default -> false;
+            };
+        }
+        return pathSensitive;
+    }
+
+    private static boolean hasPaths(final Optional<? extends HostSourceDirective> directive) {
+        if (directive.isPresent()) {
+            for (final Host host : directive.get().getHosts()) {
+                if (host.path() != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private record MemoKey(Destination destination, String scheme, String host, Integer port, String path) {
+    }
+
+    // the indices of the URLs of a batch that share a decision
+    private static final class Group {
+        private final Destination destination_;
+        private final URLWithScheme url_;
+        private int[] indices_ = new int[4];
+        private int size_;
+        private boolean allowed_;
+
+        Group(final Destination destination, final URLWithScheme url) {
+            destination_ = destination;
+            url_ = url;
+        }
+
+        void add(final int index) {
+            if (size_ == indices_.length) {
+                indices_ = Arrays.copyOf(indices_, size_ * 2);
+            }
+            indices_[size_++] = index;
+        }
     }
 }
@@ -14,8 +14,21 @@
  */
 package org.htmlunit.csp;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.htmlunit.csp.CheckRequest.Destination;
+import org.htmlunit.csp.directive.HostSourceDirective;
+import org.htmlunit.csp.directive.SandboxDirective;
+import org.htmlunit.csp.url.URLWithScheme;
+import org.htmlunit.csp.value.MediaType;
 
 /**
  * Represents a list of Content Security Policies parsed from a comma-separated
@@ -31,11 +44,39 @@
  * {@link Policy#parseSerializedCSPList(String, Policy.PolicyListErrorConsumer)}.
  * Empty policies (those with no directives) are omitted during parsing.
  * </p>
+ * <p>
+ * The {@code allows*} methods and {@link #check(CheckRequest)} enforce all policies at once
+ * without copying the list. For each kind of check, the policies are tried in the order of
+ * how likely they are to block, so that a blocked request usually stops at the first policy:
+ * policies that block the request outright (a {@code 'none'} governing directive, a sandbox
+ * without scripts or forms) come first and policies without a governing directive last.
+ * {@link #indexOfBlockingPolicy(CheckRequest)} tells which policy blocked a request.
+ * </p>
+ * <p>
+ * Before that, the policies are merged per kind of check into the fewest that decide it:
+ * policies whose directives cannot block it are left out, and so are policies with the same
+ * directives as another one. For plain URL checks such as images, a source list that allows
+ * all URLs another source list allows (all its source expressions appear in the other one)
+ * is left out, too. Source lists with nonces, hashes or {@code 'strict-dynamic'} are not
+ * merged but evaluated per policy unless they are identical. In the common case of several
+ * policies of which only one restricts a kind of request, a check then costs one evaluation.
+ * The merged form is computed once per kind of check, on first use, or for all of them
+ * by {@link #merge()}.
+ * </p>
  *
  * @see Policy#parseSerializedCSPList(String, Policy.PolicyListErrorConsumer)
  */
 public class PolicyList {
+    private static final Destination[] DESTINATIONS = Destination.values();
+
+    // the order of evaluation of the policies
+    private static final int BLOCKS = 0;
+    private static final int RESTRICTS = 1;
+    private static final int UNRESTRICTED = 2;
+
     private final List<Policy> policies_;
+    // per destination ordinal, the indices of the policies to evaluate in order; computed on first use
+    private final AtomicReferenceArray<int[]> plans_ = new AtomicReferenceArray<>(DESTINATIONS.length);
 
     /**
      * Ctor.
@@ -59,6 +100,560 @@ public List<Policy> getPolicies() {
         return new ArrayList<Policy>(policies_);
     }
 
+    /**
+     * Returns the number of policies.
+     *
+     * @return the number of policies
+     */
+    public int size() {
+        return policies_.size();
+    }
+
+    /**
+     * Returns the policy at the given index, without copying the list.
+     *
+     * @param index the index of the policy
+     * @return the policy
+     * @throws IndexOutOfBoundsException if there is no policy at the index
+     */
+    public Policy getPolicy(final int index) {
+        return policies_.get(index);
+    }
+
+    /**
+     * Determines whether all policies allow the request.
+     *
+     * @param request the request to check
+     * @return {@code true} if no policy blocks the request
+     * @throws IllegalArgumentException if the request has no destination
+     * @see Policy#check(CheckRequest)
+     */
+    public boolean check(final CheckRequest request) {
+        return indexOfBlockingPolicy(request) < 0;
+    }
+
+    /**
+     * Determines which policy blocks the request.
+     * <p>
+     * If several policies block the request, the one that is checked first is returned.
+     * </p>
+     *
+     * @param request the request to check
+     * @return the index of a policy blocking the request, or {@code -1} if all policies allow it
+     * @throws IllegalArgumentException if the request has no destination
+     */
+    public int indexOfBlockingPolicy(final CheckRequest request) {
+        final Destination destination = request.getDestination();
+        if (destination == null) {
+            throw new IllegalArgumentException("The request has no destination");
+        }
+        for (final int index : plan(destination)) {
+            if (!policies_.get(index).check(request)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Computes the merged form of this list for all kinds of checks now instead of on first use,
+     * e.g. before the list is shared by the threads serving a document.
+     *
+     * @return this list
+     */
+    public PolicyList merge() {
+        for (final Destination destination : DESTINATIONS) {
+            plan(destination);
+        }
+        return this;
+    }
+
+    /**
+     * Returns how many policies a check of the destination evaluates at most, once the
+     * policies are merged.
+     *
+     * @param destination the kind of check
+     * @return the number of policies that decide the check, {@code 0} if all requests are allowed
+     */
+    public int getEvaluationCount(final Destination destination) {
+        return plan(destination).length;
+    }
+
+    /**
+     * Determines whether all policies allow loading an external script.
+     *
+     * @param nonce the nonce attribute value of the script element, if any
+     * @param integrity the integrity attribute value (SRI metadata), if any
+     * @param scriptUrl the URL of the external script, if known
+     * @param parserInserted whether the script element is parser-inserted;
+     *        {@link Optional#empty()} if unknown
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if no policy blocks the external script
+     * @see Policy#allowsExternalScript(Optional, Optional, Optional, Optional, Optional)
+     */
+    public boolean allowsExternalScript(
+            final Optional<String> nonce,
+            final Optional<String> integrity,
+            final Optional<? extends URLWithScheme> scriptUrl,
+            final Optional<Boolean> parserInserted,
+            final Optional<? extends URLWithScheme> origin) {
+        return check(new CheckRequest(Destination.Script)
+                .setNonce(nonce.orElse(null))
+                .setIntegrity(integrity.orElse(null))
+                .setUrl(scriptUrl.orElse(null))
+                .setParserInserted(parserInserted.orElse(null))
+                .setOrigin(origin.orElse(null)));
+    }
+
+    /**
+     * Determines whether all policies allow an inline {@code <script>} element.
+     *
+     * @param nonce the nonce attribute value of the script element, if any
+     * @param source the text content of the inline script, if known (used for hash matching)
+     * @param parserInserted whether the script element is parser-inserted;
+     *        {@link Optional#empty()} if unknown
+     * @return {@code true} if no policy blocks the inline script
+     * @see Policy#allowsInlineScript(Optional, Optional, Optional)
+     */
+    public boolean allowsInlineScript(final Optional<String> nonce,
+            final Optional<String> source, final Optional<Boolean> parserInserted) {
+        return check(new CheckRequest(Destination.InlineScript)
+                .setNonce(nonce.orElse(null))
+                .setSource(source.orElse(null))
+                .setParserInserted(parserInserted.orElse(null)));
+    }
+
+    /**
+     * Determines whether all policies allow a script provided as an inline event handler attribute.
+     *
+     * @param source the text content of the event handler attribute, if known
+     * @return {@code true} if no policy blocks the script attribute
+     * @see Policy#allowsScriptAsAttribute(Optional)
+     */
+    public boolean allowsScriptAsAttribute(final Optional<String> source) {
+        return check(new CheckRequest(Destination.ScriptAttribute).setSource(source.orElse(null)));
+    }
+
+    /**
+     * Determines whether all policies allow the use of {@code eval()} and similar
+     * string-to-code mechanisms.
+     *
+     * @return {@code true} if no policy blocks eval
+     * @see Policy#allowsEval()
+     */
+    public boolean allowsEval() {
+        for (final Policy policy : policies_) {
+            if (!policy.allowsEval()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines whether all policies allow a navigation to the given URL.
+     *
+     * @param to the initial navigation target URL, if known
+     * @param redirected whether the navigation is a redirect; {@link Optional#empty()} if unknown
+     * @param redirectedTo the final URL after redirect, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if no policy blocks the navigation
+     * @see Policy#allowsNavigation(Optional, Optional, Optional, Optional)
+     */
+    public boolean allowsNavigation(
+            final Optional<? extends URLWithScheme> to,
+            final Optional<Boolean> redirected,
+            final Optional<? extends URLWithScheme> redirectedTo,
+            final Optional<? extends URLWithScheme> origin) {
+        return check(navigation(Destination.Navigation, to, redirected, redirectedTo, origin));
+    }
+
+    /**
+     * Determines whether all policies allow a form submission to the given URL.
+     *
+     * @param to the form action target URL, if known
+     * @param redirected whether the form submission results in a redirect;
+     *        {@link Optional#empty()} if unknown
+     * @param redirectedTo the final URL after redirect, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if no policy blocks the form action
+     * @see Policy#allowsFormAction(Optional, Optional, Optional, Optional)
+     */
+    public boolean allowsFormAction(
+            final Optional<? extends URLWithScheme> to,
+            final Optional<Boolean> redirected,
+            final Optional<? extends URLWithScheme> redirectedTo,
+            final Optional<? extends URLWithScheme> origin) {
+        return check(navigation(Destination.FormAction, to, redirected, redirectedTo, origin));
+    }
+
+    /**
+     * Determines whether all policies allow a {@code javascript:} URL navigation.
+     *
+     * @param source the JavaScript source code after the {@code javascript:} prefix, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if no policy blocks the {@code javascript:} URL navigation
+     * @see Policy#allowsJavascriptUrlNavigation(Optional, Optional)
+     */
+    public boolean allowsJavascriptUrlNavigation(
+            final Optional<String> source,
+            final Optional<? extends URLWithScheme> origin) {
+        return check(new CheckRequest(Destination.JavascriptUrl)
+                .setSource(source.orElse(null))
+                .setOrigin(origin.orElse(null)));
+    }
+
+    /**
+     * Determines whether all policies allow loading an external stylesheet.
+     *
+     * @param nonce the nonce attribute value of the link element, if any
+     * @param styleUrl the URL of the external stylesheet, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if no policy blocks the external style
+     * @see Policy#allowsExternalStyle(Optional, Optional, Optional)
+     */
+    public boolean allowsExternalStyle(
+            final Optional<String> nonce,
+            final Optional<? extends URLWithScheme> styleUrl,
+            final Optional<? extends URLWithScheme> origin) {
+        return check(new CheckRequest(Destination.Style)
+                .setNonce(nonce.orElse(null))
+                .setUrl(styleUrl.orElse(null))
+                .setOrigin(origin.orElse(null)));
+    }
+
+    /**
+     * Determines whether all policies allow an inline {@code <style>} element.
+     *
+     * @param nonce the nonce attribute value of the style element, if any
+     * @param source the text content of the inline style, if known (used for hash matching)
+     * @return {@code true} if no policy blocks the inline style
+     * @see Policy#allowsInlineStyle(Optional, Optional)
+     */
+    public boolean allowsInlineStyle(final Optional<String> nonce, final Optional<String> source) {
+        return check(new CheckRequest(Destination.InlineStyle)
+                .setNonce(nonce.orElse(null))
+                .setSource(source.orElse(null)));
+    }
+
+    /**
+     * Determines whether all policies allow an inline style attribute.
+     *
+     * @param source the text content of the style attribute, if known
+     * @return {@code true} if no policy blocks the style attribute
+     * @see Policy#allowsStyleAsAttribute(Optional)
+     */
+    public boolean allowsStyleAsAttribute(final Optional<String> source) {
+        return check(new CheckRequest(Destination.StyleAttribute).setSource(source.orElse(null)));
+    }
+
+    /**
+     * Determines whether all policies allow loading a frame from the given source.
+     *
+     * @param source the URL of the framed resource, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if no policy blocks the frame
+     * @see Policy#allowsFrame(Optional, Optional)
+     */
+    public boolean allowsFrame(final Optional<? extends URLWithScheme> source,
+                               final Optional<? extends URLWithScheme> origin) {
+        return check(fetch(Destination.Frame, source, origin));
+    }
+
+    /**
+     * Determines whether all policies allow being framed by the given ancestor.
+     *
+     * @param source the URL of the ancestor frame, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if no policy blocks the frame ancestor
+     * @see Policy#allowsFrameAncestor(Optional, Optional)
+     */
+    public boolean allowsFrameAncestor(final Optional<? extends URLWithScheme> source,
+                                       final Optional<? extends URLWithScheme> origin) {
+        return check(fetch(Destination.FrameAncestor, source, origin));
+    }
+
+    /**
+     * Determines whether all policies allow a connection to the given source.
+     *
+     * @param source the URL to connect to, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if no policy blocks the connection
+     * @see Policy#allowsConnection(Optional, Optional)
+     */
+    public boolean allowsConnection(final Optional<? extends URLWithScheme> source,
+                                    final Optional<? extends URLWithScheme> origin) {
+        return check(fetch(Destination.Connection, source, origin));
+    }
+
+    /**
+     * Determines whether all policies allow loading a font from the given source.
+     *
+     * @param source the URL of the font resource, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if no policy blocks the font
+     * @see Policy#allowsFont(Optional, Optional)
+     */
+    public boolean allowsFont(final Optional<? extends URLWithScheme> source,
+                              final Optional<? extends URLWithScheme> origin) {
+        return check(fetch(Destination.Font, source, origin));
+    }
+
+    /**
+     * Determines whether all policies allow loading an image from the given source.
+     *
+     * @param source the URL of the image resource, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if no policy blocks the image
+     * @see Policy#allowsImage(Optional, Optional)
+     */
+    public boolean allowsImage(final Optional<? extends URLWithScheme> source,
+                               final Optional<? extends URLWithScheme> origin) {
+        return check(fetch(Destination.Image, source, origin));
+    }
+
+    /**
+     * Determines whether all policies allow loading an application manifest from the given source.
+     *
+     * @param source the URL of the manifest resource, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if no policy blocks the manifest
+     * @see Policy#allowsApplicationManifest(Optional, Optional)
+     */
+    public boolean allowsApplicationManifest(final Optional<? extends URLWithScheme> source,
+                                             final Optional<? extends URLWithScheme> origin) {
+        return check(fetch(Destination.Manifest, source, origin));
+    }
+
+    /**
+     * Determines whether all policies allow loading media from the given source.
+     *
+     * @param source the URL of the media resource, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if no policy blocks the media
+     * @see Policy#allowsMedia(Optional, Optional)
+     */
+    public boolean allowsMedia(final Optional<? extends URLWithScheme> source,
+                               final Optional<? extends URLWithScheme> origin) {
+        return check(fetch(Destination.Media, source, origin));
+    }
+
+    /**
+     * Determines whether all policies allow loading an object from the given source.
+     *
+     * @param source the URL of the object resource, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if no policy blocks the object
+     * @see Policy#allowsObject(Optional, Optional)
+     */
+    public boolean allowsObject(final Optional<? extends URLWithScheme> source,
+                                final Optional<? extends URLWithScheme> origin) {
+        return check(fetch(Destination.Object, source, origin));
+    }
+
+    /**
+     * Determines whether all policies allow prefetching from the given source.
+     *
+     * @param source the URL of the prefetched resource, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if no policy blocks the prefetch
+     * @see Policy#allowsPrefetch(Optional, Optional)
+     */
+    public boolean allowsPrefetch(final Optional<? extends URLWithScheme> source,
+                                  final Optional<? extends URLWithScheme> origin) {
+        return check(fetch(Destination.Prefetch, source, origin));
+    }
+
+    /**
+     * Determines whether all policies allow loading a worker from the given source.
+     *
+     * @param source the URL of the worker script, if known
+     * @param origin the origin of the protected resource, if known
+     * @return {@code true} if no policy blocks the worker
+     * @see Policy#allowsWorker(Optional, Optional)
+     */
+    public boolean allowsWorker(final Optional<? extends URLWithScheme> source,
+                                final Optional<? extends URLWithScheme> origin) {
+        return check(fetch(Destination.Worker, source, origin));
+    }
+
+    /**
+     * Determines whether all policies allow a plugin of the given media type.
+     *
+     * @param mediaType the media type of the plugin content, if known
+     * @return {@code true} if no policy blocks the plugin
+     * @see Policy#allowsPlugin(Optional)
+     */
+    public boolean allowsPlugin(final Optional<? extends MediaType> mediaType) {
+        for (final Policy policy : policies_) {
+            if (!policy.allowsPlugin(mediaType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static CheckRequest fetch(final Destination destination, final Optional<? extends URLWithScheme> source,
+            final Optional<? extends URLWithScheme> origin) {
+        return new CheckRequest(destination).setUrl(source.orElse(null)).setOrigin(origin.orElse(null));
+    }
+
+    private static CheckRequest navigation(final Destination destination,
+            final Optional<? extends URLWithScheme> to,
+            final Optional<Boolean> redirected,
+            final Optional<? extends URLWithScheme> redirectedTo,
+            final Optional<? extends URLWithScheme> origin) {
+        return new CheckRequest(destination)
+                .setUrl(to.orElse(null))
+                .setRedirected(redirected.orElse(null))
+                .setRedirectedTo(redirectedTo.orElse(null))
+                .setOrigin(origin.orElse(null));
+    }
+
+    private int[] plan(final Destination destination) {
+        int[] plan = plans_.get(destination.ordinal());
+        if (plan == null) {
+            plan = merge(destination);
+            plans_.set(destination.ordinal(), plan);
+        }
+        return plan;
+    }
+
+    private int[] merge(final Destination destination) {
+        final boolean urlOnly = isUrlOnly(destination);
+        final List<Integer> kept = new ArrayList<>();
+        final List<Key> keptKeys = new ArrayList<>();
+        for (int i = 0; i < policies_.size(); i++) {
+            final Key key = key(policies_.get(i), destination);
+            if (key.isUnrestricted() || keptKeys.contains(key)) {
+                continue;
+            }
+            if (urlOnly) {
+                boolean subsumed = false;
+                for (int j = keptKeys.size() - 1; j >= 0 && !subsumed; j--) {
+                    if (allowsNoMoreThan(keptKeys.get(j).sources_, key.sources_)) {
+                        subsumed = true;
+                    }
+                    else if (allowsNoMoreThan(key.sources_, keptKeys.get(j).sources_)) {
+                        kept.remove(j);
+                        keptKeys.remove(j);
+                    }
+                }
+                if (subsumed) {
+                    continue;
+                }
+            }
+            kept.add(i);
+            keptKeys.add(key);
+        }
+
+        final long[] ranked = new long[kept.size()];
+        for (int i = 0; i < ranked.length; i++) {
+            // stable: the rank in the high bits, the index in the low bits
+            final int index = kept.get(i);
+            ranked[i] = (long) rank(policies_.get(index), destination) << 32 | index;
+        }
+        Arrays.sort(ranked);
+        final int[] plan = new int[ranked.length];
+        for (int i = 0; i < plan.length; i++) {
+            plan[i] = (int) ranked[i];
+        }
+        return plan;
+    }
+
+    // whether the check only matches the URL against one source list
+    private static boolean isUrlOnly(final Destination destination) {
+        return switch (destination) {
+            case Image, Font, Media, Object, Frame, Worker, Manifest, Prefetch, Connection, FrameAncestor -> true;
+            default -> false;
+        };
+    }
+
+    // a source list allows no more URLs than another one if it is 'none' or all its values appear in the other one
+    private static boolean allowsNoMoreThan(final List<String> sources, final List<String> others) {
+        return sources.size() == 1 && "'none'".equalsIgnoreCase(sources.get(0)) || others.containsAll(sources);
+    }
+
+    // everything of a policy a check of the destination depends on; policies with equal keys decide alike
+    private static Key key(final Policy policy, final Destination destination) {
+        final Optional<SandboxDirective> sandbox = policy.sandbox();
+        final boolean noScripts = sandbox.isPresent() && !sandbox.get().allowScripts();
+        return switch (destination) {
+            case Script, InlineScript -> new Key(noScripts, values(policy, FetchDirectiveKind.ScriptSrcElem), null);
+            case ScriptAttribute -> new Key(noScripts, values(policy, FetchDirectiveKind.ScriptSrcAttr), null);
+            case Style, InlineStyle -> new Key(false, values(policy, FetchDirectiveKind.StyleSrcElem), null);
+            case StyleAttribute -> new Key(false, values(policy, FetchDirectiveKind.StyleSrcAttr), null);
+            case Image -> new Key(false, values(policy, FetchDirectiveKind.ImgSrc), null);
+            case Font -> new Key(false, values(policy, FetchDirectiveKind.FontSrc), null);
+            case Media -> new Key(false, values(policy, FetchDirectiveKind.MediaSrc), null);
+            case Object -> new Key(false, values(policy, FetchDirectiveKind.ObjectSrc), null);
+            case Frame -> new Key(false, values(policy, FetchDirectiveKind.FrameSrc), null);
+            case Worker -> new Key(false, values(policy, FetchDirectiveKind.WorkerSrc), null);
+            case Manifest -> new Key(false, values(policy, FetchDirectiveKind.ManifestSrc), null);
+            case Prefetch -> new Key(false, values(policy, FetchDirectiveKind.PrefetchSrc), null);
+            case Connection -> new Key(false, values(policy, FetchDirectiveKind.ConnectSrc), null);
+            case Navigation -> new Key(false, values(policy.navigateTo()), null);
+            case FormAction -> new Key(sandbox.isPresent() && !sandbox.get().allowForms(),
+                    values(policy.formAction()), values(policy.navigateTo()));
+            case FrameAncestor -> new Key(false, values(policy.frameAncestors()), null);
+            case JavascriptUrl -> new Key(false, values(policy, FetchDirectiveKind.ScriptSrcElem),
+                    values(policy.navigateTo()));
+        };
+    }
+
+    private static List<String> values(final Policy policy, final FetchDirectiveKind kind) {
+        return values(policy.getGoverningDirectiveForEffectiveDirective(kind));
+    }
+
+    private static List<String> values(final Optional<? extends Directive> directive) {
+        return directive.isPresent() ? List.copyOf(directive.get().getValues()) : null;
+    }
+
+    // the directives are null if absent
+    private record Key(boolean sandboxed_, List<String> sources_, List<String> otherSources_) {
+        boolean isUnrestricted() {
+            return !sandboxed_ && sources_ == null && otherSources_ == null;
+        }
+    }
+
+    // a cheap guess of how likely the policy is to block requests of the destination
+    private static int rank(final Policy policy, final Destination destination) {
+        final Optional<SandboxDirective> sandbox = policy.sandbox();
+        final boolean noScripts = sandbox.isPresent() && !sandbox.get().allowScripts();
+        return switch (destination) {
+            case Script, InlineScript, JavascriptUrl -> noScripts
+                    ? BLOCKS : rank(policy, FetchDirectiveKind.ScriptSrcElem);
+            case ScriptAttribute -> noScripts ? BLOCKS : rank(policy, FetchDirectiveKind.ScriptSrcAttr);
+            case Style, InlineStyle -> rank(policy, FetchDirectiveKind.StyleSrcElem);
+            case StyleAttribute -> rank(policy, FetchDirectiveKind.StyleSrcAttr);
+            case Image -> rank(policy, FetchDirectiveKind.ImgSrc);
+            case Font -> rank(policy, FetchDirectiveKind.FontSrc);
+            case Media -> rank(policy, FetchDirectiveKind.MediaSrc);
+            case Object -> rank(policy, FetchDirectiveKind.ObjectSrc);
+            case Frame -> rank(policy, FetchDirectiveKind.FrameSrc);
+            case Worker -> rank(policy, FetchDirectiveKind.WorkerSrc);
+            case Manifest -> rank(policy, FetchDirectiveKind.ManifestSrc);
+            case Prefetch -> rank(policy, FetchDirectiveKind.PrefetchSrc);
+            case Connection -> rank(policy, FetchDirectiveKind.ConnectSrc);
+            case Navigation -> rank(policy.navigateTo());
+            case FormAction -> sandbox.isPresent() && !sandbox.get().allowForms()
+                    ? BLOCKS : rank(policy.formAction().isPresent() ? policy.formAction() : policy.navigateTo());
+            case FrameAncestor -> rank(policy.frameAncestors());
+        };
+    }
+
+    private static int rank(final Policy policy, final FetchDirectiveKind kind) {
+        return rank(policy.getGoverningDirectiveForEffectiveDirective(kind));
+    }
+
+    private static int rank(final Optional<? extends HostSourceDirective> directive) {
+        if (directive.isEmpty()) {
+            return UNRESTRICTED;
+        }
+        // 'none' together with other sources is ignored
+        return directive.get().getNone() != null && directive.get().getValues().size() == 1 ? BLOCKS : RESTRICTS;
+    }
+
     /**
      * Serializes this policy list back to its string representation.
      * <p>
@@ -67,18 +662,79 @@ public List<Policy> getPolicies() {
      * </p>
      *
      * @return the comma-separated serialized CSP list string
+     * @see #appendTo(Appendable)
+     * @see #writeTo(ByteBuffer)
      */
     @Override
     public String toString() {
-        final StringBuilder out = new StringBuilder();
+        final StringBuilder out = new StringBuilder(getSerializedLength());
+        try {
+            appendTo(out);
+        }
+        catch (final IOException e) {
+            // a StringBuilder does not throw
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Returns the length of the serialized form, i.e. of {@link #toString()} and of the
+     * bytes {@link #writeTo(ByteBuffer)} writes.
+     *
+     * @return the number of characters of the serialized form
+     */
+    public int getSerializedLength() {
+        // the separators ", "
+        int length = policies_.isEmpty() ? 0 : 2 * (policies_.size() - 1);
+        for (final Policy policy : policies_) {
+            length += policy.getSerializedLength();
+        }
+        return length;
+    }
+
+    /**
+     * Writes the serialized form, the same as {@link #toString()}, to the given
+     * {@link Appendable} without building the string first.
+     *
+     * @param out the target, e.g. a {@link StringBuilder} or a {@link java.io.Writer}
+     * @throws IOException if the target throws
+     */
+    public void appendTo(final Appendable out) throws IOException {
         boolean first = true;
         for (final Policy policy : policies_) {
             if (!first) {
                 out.append(", "); // The whitespace is not strictly necessary but is probably valuable
             }
             first = false;
-            out.append(policy.toString());
+            policy.appendTo(out);
+        }
+    }
+
+    /**
+     * Writes the serialized form, the same as {@link #toString()}, as ASCII bytes
+     * to the given buffer, starting at its position.
+     * <p>
+     * The position is advanced by {@link #getSerializedLength()}. Nothing is written
+     * if the buffer has not enough space left.
+     * </p>
+     *
+     * @param out the target buffer
+     * @throws BufferOverflowException if the buffer has less than
+     *         {@link #getSerializedLength()} bytes remaining
+     * @throws java.nio.ReadOnlyBufferException if the buffer is read-only
+     */
+    public void writeTo(final ByteBuffer out) {
+        if (out.remaining() < getSerializedLength()) {
+            throw new BufferOverflowException();
+        }
+        boolean first = true;
+        for (final Policy policy : policies_) {
+            if (!first) {
+                out.put((byte) ',').put((byte) ' ');
+            }
+            first = false;
+            policy.writeUnchecked(out);
         }
-        return out.toString();
     }
 }
@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Single-pass tokenizer for serialized CSPs and serialized CSP lists.
+ * <p>
+ * The input is walked exactly once. ASCII validation, the comma check and the
+ * <a href="https://infra.spec.whatwg.org/#strictly-split">strict split</a> on
+ * {@code ';'} (and {@code ','} for lists) are fused into that pass. The result
+ * only records offsets into the original input; {@code String}s are created on
+ * demand for the directive names and values that are actually kept.
+ * </p>
+ * <p>
+ * Every non-empty directive is recorded as a sequence of tokens separated by
+ * ASCII whitespace; the first token is the directive name, the remaining ones
+ * are its values. Directives and policies remember the index of the segment
+ * they were found in, so error reporting stays compatible with
+ * {@code String.split} based parsing (empty segments still count).
+ * </p>
+ */
+final class PolicyTokenizer {
+    private final CharSequence input_;
+
+    // start/end offset pairs, one pair per token
+    private int[] tokens_ = new int[32];
+    private int tokenCount_;
+
+    // per directive: segment index inside the policy, first token, token count
+    private int[] directives_ = new int[24];
+    private int directiveCount_;
+
+    // per policy: segment index inside the list, first directive, directive count
+    private int[] policies_ = new int[6];
+    private int policyCount_;
+
+    private PolicyTokenizer(final CharSequence input) {
+        input_ = input;
+    }
+
+    /**
+     * Tokenizes a serialized CSP list; commas separate the policies.
+     *
+     * @param input the serialized CSP list
+     * @return the tokenized input
+     * @throws IllegalArgumentException if the input contains non-ASCII characters
+     */
+    static PolicyTokenizer tokenizeList(final CharSequence input) {
+        final PolicyTokenizer tokenizer = new PolicyTokenizer(input);
+        tokenizer.run(true);
+        return tokenizer;
+    }
+
+    /**
+     * Tokenizes a single serialized CSP.
+     *
+     * @param input the serialized CSP
+     * @return the tokenized input, containing at most one policy
+     * @throws IllegalArgumentException if the input contains non-ASCII characters
+     *         or contains a comma
+     */
+    static PolicyTokenizer tokenizePolicy(final CharSequence input) {
+        final PolicyTokenizer tokenizer = new PolicyTokenizer(input);
+        tokenizer.run(false);
+        return tokenizer;
+    }
+
+    private void run(final boolean list) {
+        final CharSequence input = input_;
+        final int length = input.length();
+
+        boolean sawComma = false;
+        int policySegment = 0;
+        int directiveSegment = 0;
+        int policyFirstDirective = 0;
+        int directiveFirstToken = 0;
+        int tokenStart = -1;
+
+        for (int i = 0; i < length; i++) {
+            final char c = input.charAt(i);
+            if (c >= 0x80) {
+                throw notAscii(input);
+            }
+
+            if (Constants.isAsciiWhitespace(c)) {
+                if (tokenStart != -1) {
+                    addToken(tokenStart, i);
+                    tokenStart = -1;
+                }
+            }
+            else if (c == ';') {
+                if (tokenStart != -1) {
+                    addToken(tokenStart, i);
+                    tokenStart = -1;
+                }
+                addDirective(directiveSegment, directiveFirstToken);
+                directiveFirstToken = tokenCount_;
+                ++directiveSegment;
+            }
+            else if (c == ',') {
+                if (!list) {
+                    // keep going, non-ASCII input is reported first
+                    sawComma = true;
+                    if (tokenStart == -1) {
+                        tokenStart = i;
+                    }
+                    continue;
+                }
+                if (tokenStart != -1) {
+                    addToken(tokenStart, i);
+                    tokenStart = -1;
+                }
+                addDirective(directiveSegment, directiveFirstToken);
+                directiveFirstToken = tokenCount_;
+                addPolicy(policySegment, policyFirstDirective);
+                policyFirstDirective = directiveCount_;
+                directiveSegment = 0;
+                ++policySegment;
+            }
+            else if (tokenStart == -1) {
+                tokenStart = i;
+            }
+        }
+
+        if (sawComma) {
+            throw new IllegalArgumentException(
+                    "Serialized CSPs cannot contain commas - you may have wanted parseSerializedCSPList");
+        }
+
+        if (tokenStart != -1) {
+            addToken(tokenStart, length);
+        }
+        addDirective(directiveSegment, directiveFirstToken);
+        addPolicy(policySegment, policyFirstDirective);
+    }
+
+    private void addToken(final int start, final int end) {
+        final int offset = tokenCount_ * 2;
+        if (offset + 2 > tokens_.length) {
+            tokens_ = Arrays.copyOf(tokens_, tokens_.length * 2);
+        }
+        tokens_[offset] = start;
+        tokens_[offset + 1] = end;
+        ++tokenCount_;
+    }
+
+    private void addDirective(final int segment, final int firstToken) {
+        final int count = tokenCount_ - firstToken;
+        if (count == 0) {
+            return;
+        }
+        final int offset = directiveCount_ * 3;
+        if (offset + 3 > directives_.length) {
+            directives_ = Arrays.copyOf(directives_, directives_.length * 2);
+        }
+        directives_[offset] = segment;
+        directives_[offset + 1] = firstToken;
+        directives_[offset + 2] = count;
+        ++directiveCount_;
+    }
+
+    private void addPolicy(final int segment, final int firstDirective) {
+        final int count = directiveCount_ - firstDirective;
+        if (count == 0) {
+            return;
+        }
+        final int offset = policyCount_ * 3;
+        if (offset + 3 > policies_.length) {
+            policies_ = Arrays.copyOf(policies_, policies_.length * 2);
+        }
+        policies_[offset] = segment;
+        policies_[offset + 1] = firstDirective;
+        policies_[offset + 2] = count;
+        ++policyCount_;
+    }
+
+    static IllegalArgumentException notAscii(final CharSequence input) {
+        return new IllegalArgumentException("string is not ascii: \"" + input + "\"");
+    }
+
+    /**
+     * Returns the tokenized input.
+     *
+     * @return the tokenized input
+     */
+    CharSequence getInput() {
+        return input_;
+    }
+
+    /**
+     * Returns the number of policies containing at least one directive.
+     *
+     * @return the number of policies containing at least one directive
+     */
+    int getPolicyCount() {
+        return policyCount_;
+    }
+
+    /**
+     * Returns the index of the comma separated segment the policy was found in.
+     *
+     * @param policy the policy number
+     * @return the index of the comma separated segment the policy was found in
+     */
+    int getPolicyIndex(final int policy) {
+        return policies_[policy * 3];
+    }
+
+    /**
+     * Returns the number of the first directive of the policy.
+     *
+     * @param policy the policy number
+     * @return the number of the first directive of the policy
+     */
+    int getFirstDirective(final int policy) {
+        return policies_[policy * 3 + 1];
+    }
+
+    /**
+     * Returns the number of directives of the policy.
+     *
+     * @param policy the policy number
+     * @return the number of directives of the policy
+     */
+    int getDirectiveCount(final int policy) {
+        return policies_[policy * 3 + 2];
+    }
+
+    /**
+     * Returns the index of the semicolon separated segment the directive was found in.
+     *
+     * @param directive the directive number
+     * @return the index of the semicolon separated segment the directive was found in
+     */
+    int getDirectiveIndex(final int directive) {
+        return directives_[directive * 3];
+    }
+
+    /**
+     * Returns the start offset of the directive name.
+     *
+     * @param directive the directive number
+     * @return the start offset of the directive name
+     */
+    int getNameStart(final int directive) {
+        return tokens_[directives_[directive * 3 + 1] * 2];
+    }
+
+    /**
+     * Returns the end offset (exclusive) of the directive name.
+     *
+     * @param directive the directive number
+     * @return the end offset (exclusive) of the directive name
+     */
+    int getNameEnd(final int directive) {
+        return tokens_[directives_[directive * 3 + 1] * 2 + 1];
+    }
+
+    /**
+     * Returns the number of values of the directive.
+     *
+     * @param directive the directive number
+     * @return the number of values of the directive
+     */
+    int getValueCount(final int directive) {
+        return directives_[directive * 3 + 2] - 1;
+    }
+
+    /**
+     * Returns the start offset of the value.
+     *
+     * @param directive the directive number
+     * @param value the value index
+     * @return the start offset of the value
+     */
+    int getValueStart(final int directive, final int value) {
+        return tokens_[(directives_[directive * 3 + 1] + 1 + value) * 2];
+    }
+
+    /**
+     * Returns the end offset (exclusive) of the value.
+     *
+     * @param directive the directive number
+     * @param value the value index
+     * @return the end offset (exclusive) of the value
+     */
+    int getValueEnd(final int directive, final int value) {
+        return tokens_[(directives_[directive * 3 + 1] + 1 + value) * 2 + 1];
+    }
+
+    /**
+     * Returns the directive name as it appears in the input.
+     *
+     * @param directive the directive number
+     * @return the directive name as it appears in the input
+     */
+    String getName(final int directive) {
+        return input_.subSequence(getNameStart(directive), getNameEnd(directive)).toString();
+    }
+
+    /**
+     * Returns a new list holding the values of the directive.
+     *
+     * @param directive the directive number
+     * @return a new list holding the values of the directive
+     */
+    List<String> getValues(final int directive) {
+        final int count = getValueCount(directive);
+        final List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(input_.subSequence(getValueStart(directive, i), getValueEnd(directive, i)).toString());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,1091 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.htmlunit.csp.Policy.PolicyErrorConsumer;
+import org.htmlunit.csp.Policy.PolicyListErrorConsumer;
+import org.htmlunit.csp.Policy.Severity;
+import org.htmlunit.csp.internal.KeywordTable;
+import org.htmlunit.csp.internal.Lexer;
+import org.htmlunit.csp.value.Hash;
+import org.htmlunit.csp.value.Host;
+import org.htmlunit.csp.value.MediaType;
+import org.htmlunit.csp.value.Nonce;
+import org.htmlunit.csp.value.Scheme;
+
+/**
+ * Checks serialized CSPs without building {@link Policy} objects.
+ * <p>
+ * The validator walks the input once, directive by directive, and applies the same
+ * grammar as {@link Policy#parseSerializedCSPList(String, PolicyListErrorConsumer)}.
+ * It reports exactly the diagnostics the parser would report, in the same order and
+ * with the same indices, but it keeps only offsets into the input: no directive,
+ * value or string objects are created unless a consumer asks for the diagnostics.
+ * </p>
+ * <p>
+ * Every call also records a summary, the highest severity and the number of
+ * diagnostics per {@link DiagnosticCode} and per {@link Severity}, which can be
+ * queried until the next call. Without a consumer, validating with a reused
+ * instance does not allocate at all for typical headers.
+ * </p>
+ * <p>
+ * Instances are not thread-safe; use one instance per thread.
+ * </p>
+ */
+public final class PolicyValidator {
+    private static final DiagnosticCode[] CODES = DiagnosticCode.values();
+    private static final Severity[] SEVERITIES = Severity.values();
+
+    // the fetch directives take the slots 0..16, the other directives follow
+    private static final int OTHER_SLOTS = FetchDirectiveKind.values().length;
+
+    // kinds of the values remembered to find duplicates
+    private static final int SCHEME = 0;
+    private static final int HOST = 1;
+    private static final int NONCE = 2;
+    private static final int HASH = 3;
+    private static final int MEDIA_TYPE = 4;
+    private static final int POLICY_NAME = 5;
+    private static final int REPORT_URI = 6;
+
+    // kind, hash code, start, end and the host-source bounds
+    private static final int ITEM = 4 + Lexer.HOST_SOURCE_BOUNDS;
+
+    private enum SourceKeyword {
+        None("'none'", true),
+        Self("'self'", true),
+        Star("*", true),
+        UnsafeInline("'unsafe-inline'", false),
+        UnsafeEval("'unsafe-eval'", false),
+        StrictDynamic("'strict-dynamic'", false),
+        UnsafeHashes("'unsafe-hashes'", false),
+        WasmUnsafeEval("'wasm-unsafe-eval'", false),
+        ReportSample("'report-sample'", false),
+        UnsafeAllowRedirects("'unsafe-allow-redirects'", false),
+        UnsafeRedirect("'unsafe-redirect'", false),
+        UnsafeHashedAttributes("'unsafe-hashed-attributes'", false),
+        Other(null, true);
+
+        private final String keyword_;
+        // also a keyword of ancestor-source lists
+        private final boolean ancestorSource_;
+
+        SourceKeyword(final String keyword, final boolean ancestorSource) {
+            keyword_ = keyword;
+            ancestorSource_ = ancestorSource;
+        }
+    }
+
+    private enum SandboxKeyword {
+        AllowDownloads("allow-downloads"),
+        AllowForms("allow-forms"),
+        AllowModals("allow-modals"),
+        AllowOrientationLock("allow-orientation-lock"),
+        AllowPointerLock("allow-pointer-lock"),
+        AllowPopups("allow-popups"),
+        AllowPopupsToEscapeSandbox("allow-popups-to-escape-sandbox"),
+        AllowPresentation("allow-presentation"),
+        AllowSameOrigin("allow-same-origin"),
+        AllowScripts("allow-scripts"),
+        AllowStorageAccessByUserActivation("allow-storage-access-by-user-activation"),
+        AllowTopNavigation("allow-top-navigation"),
+        AllowTopNavigationByUserActivation("allow-top-navigation-by-user-activation"),
+        Other(null);
+
+        private final String keyword_;
+
+        SandboxKeyword(final String keyword) {
+            keyword_ = keyword;
+        }
+    }
+
+    private enum TrustedTypesKeyword {
+        None("'none'"),
+        AllowDuplicates("'allow-duplicates'"),
+        Star("*"),
+        Other(null);
+
+        private final String keyword_;
+
+        TrustedTypesKeyword(final String keyword) {
+            keyword_ = keyword;
+        }
+    }
+
+    private enum RequireTrustedTypesForKeyword {
+        Script("'script'"),
+        Other(null);
+
+        private final String keyword_;
+
+        RequireTrustedTypesForKeyword(final String keyword) {
+            keyword_ = keyword;
+        }
+    }
+
+    private static final KeywordTable<SourceKeyword> SOURCE_KEYWORDS =
+            new KeywordTable<>(SourceKeyword.class, keyword -> keyword.keyword_, SourceKeyword.Other);
+    private static final KeywordTable<SandboxKeyword> SANDBOX_KEYWORDS =
+            new KeywordTable<>(SandboxKeyword.class, keyword -> keyword.keyword_, SandboxKeyword.Other);
+    private static final KeywordTable<TrustedTypesKeyword> TRUSTED_TYPES_KEYWORDS =
+            new KeywordTable<>(TrustedTypesKeyword.class, keyword -> keyword.keyword_, TrustedTypesKeyword.Other);
+    private static final KeywordTable<RequireTrustedTypesForKeyword> REQUIRE_TRUSTED_TYPES_FOR_KEYWORDS =
+            new KeywordTable<>(RequireTrustedTypesForKeyword.class, keyword -> keyword.keyword_,
+                    RequireTrustedTypesForKeyword.Other);
+
+    // summary of the last run
+    private final int[] codeCounts_ = new int[CODES.length];
+    private final int[] severityCounts_ = new int[SEVERITIES.length];
+
+    // state of the current run
+    private CharSequence input_;
+    private PolicyListErrorConsumer policyListErrorConsumer_;
+    private PolicyErrorConsumer policyErrorConsumer_;
+    private int policyIndex_;
+    private int directiveIndex_;
+
+    // start/end offset pairs of the current directive, the name comes first
+    private int[] tokens_ = new int[32];
+    private int tokenCount_;
+
+    // state of the current policy
+    private long seenSlots_;
+    private boolean blockAllMixedContent_;
+    private boolean upgradeInsecureRequests_;
+    private boolean reportTo_;
+    private boolean deliveredViaMeta_;
+
+    // values of the current directive, see ITEM, and an open addressing table of their numbers + 1
+    private int[] items_ = new int[16 * ITEM];
+    private int itemCount_;
+    private int[] table_ = new int[32];
+    private int tableMask_;
+    private final int[] bounds_ = new int[Lexer.HOST_SOURCE_BOUNDS];
+
+    /**
+     * Validates a serialized CSP list and records the summary.
+     *
+     * @param serialized the comma-separated serialized CSP list
+     * @return the highest severity of all diagnostics, or {@code null} if there are none
+     * @throws IllegalArgumentException if {@code serialized} contains non-ASCII characters
+     */
+    public Severity validateSerializedCSPList(final CharSequence serialized) {
+        return run(serialized, true, false, null, null);
+    }
+
+    /**
+     * Validates a serialized CSP list, passes the diagnostics to the consumer and records the summary.
+     * <p>
+     * The consumer receives the same diagnostics as from
+     * {@link Policy#parseSerializedCSPList(CharSequence, PolicyListErrorConsumer)}.
+     * </p>
+     *
+     * @param serialized the comma-separated serialized CSP list
+     * @param policyListErrorConsumer a consumer that receives any errors or warnings
+     * @return the highest severity of all diagnostics, or {@code null} if there are none
+     * @throws IllegalArgumentException if {@code serialized} contains non-ASCII characters
+     */
+    public Severity validateSerializedCSPList(final CharSequence serialized,
+            final PolicyListErrorConsumer policyListErrorConsumer) {
+        return run(serialized, true, false, policyListErrorConsumer, null);
+    }
+
+    /**
+     * Validates a serialized CSP list given as raw header bytes and records the summary.
+     *
+     * @param serialized the array holding the serialized CSP list
+     * @param offset the index of the first byte of the serialized CSP list
+     * @param length the number of bytes of the serialized CSP list
+     * @return the highest severity of all diagnostics, or {@code null} if there are none
+     * @throws IllegalArgumentException if the bytes contain non-ASCII characters
+     * @throws IndexOutOfBoundsException if {@code offset} or {@code length} is out of range
+     */
+    public Severity validateSerializedCSPList(final byte[] serialized, final int offset, final int length) {
+        return run(AsciiByteSequence.of(serialized, offset, length), true, false, null, null);
+    }
+
+    /**
+     * Validates a serialized CSP list given as raw header bytes and records the summary.
+     * The position of the buffer is not changed.
+     *
+     * @param serialized the buffer holding the serialized CSP list
+     * @return the highest severity of all diagnostics, or {@code null} if there are none
+     * @throws IllegalArgumentException if the bytes contain non-ASCII characters
+     */
+    public Severity validateSerializedCSPList(final ByteBuffer serialized) {
+        return run(AsciiByteSequence.of(serialized), true, false, null, null);
+    }
+
+    /**
+     * Validates a single serialized CSP and records the summary.
+     *
+     * @param serialized the serialized CSP (must not contain commas)
+     * @param deliveredViaMeta {@code true} if the policy was delivered via a {@code meta} element
+     * @return the highest severity of all diagnostics, or {@code null} if there are none
+     * @throws IllegalArgumentException if {@code serialized} contains non-ASCII characters
+     *         or contains a comma
+     */
+    public Severity validateSerializedCSP(final CharSequence serialized, final boolean deliveredViaMeta) {
+        return run(serialized, false, deliveredViaMeta, null, null);
+    }
+
+    /**
+     * Validates a single serialized CSP, passes the diagnostics to the consumer and records the summary.
+     * <p>
+     * The consumer receives the same diagnostics as from
+     * {@link Policy#parseSerializedCSP(String, PolicyErrorConsumer, boolean)}.
+     * </p>
+     *
+     * @param serialized the serialized CSP (must not contain commas)
+     * @param deliveredViaMeta {@code true} if the policy was delivered via a {@code meta} element
+     * @param policyErrorConsumer a consumer that receives any errors or warnings
+     * @return the highest severity of all diagnostics, or {@code null} if there are none
+     * @throws IllegalArgumentException if {@code serialized} contains non-ASCII characters
+     *         or contains a comma
+     */
+    public Severity validateSerializedCSP(final CharSequence serialized, final boolean deliveredViaMeta,
+            final PolicyErrorConsumer policyErrorConsumer) {
+        return run(serialized, false, deliveredViaMeta, null, policyErrorConsumer);
+    }
+
+    /**
+     * Returns the highest severity reported by the last validation, or {@code null} if there was none.
+     *
+     * @return the highest severity reported by the last validation, or {@code null} if there was none
+     */
+    public Severity getMaxSeverity() {
+        for (int i = SEVERITIES.length - 1; i >= 0; i--) {
+            if (severityCounts_[i] != 0) {
+                return SEVERITIES[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of diagnostics with the given code reported by the last validation.
+     *
+     * @param code the code
+     * @return the number of diagnostics with the given code reported by the last validation
+     */
+    public int getCount(final DiagnosticCode code) {
+        return codeCounts_[code.ordinal()];
+    }
+
+    /**
+     * Returns the number of diagnostics with the given severity reported by the last validation.
+     *
+     * @param severity the severity
+     * @return the number of diagnostics with the given severity reported by the last validation
+     */
+    public int getCount(final Severity severity) {
+        return severityCounts_[severity.ordinal()];
+    }
+
+    private Severity run(final CharSequence input, final boolean list, final boolean deliveredViaMeta,
+            final PolicyListErrorConsumer policyListErrorConsumer, final PolicyErrorConsumer policyErrorConsumer) {
+        Arrays.fill(codeCounts_, 0);
+        Arrays.fill(severityCounts_, 0);
+
+        policyListErrorConsumer_ = policyListErrorConsumer == PolicyListErrorConsumer.ignored
+                ? null : policyListErrorConsumer;
+        policyErrorConsumer_ = policyErrorConsumer == PolicyErrorConsumer.ignored ? null : policyErrorConsumer;
+        final int length = input.length();
+        if (policyListErrorConsumer_ != null || policyErrorConsumer_ != null) {
+            // like the parser, reject the input before reporting anything; without
+            // a consumer nothing is reported, so the main loop checks on the fly
+            for (int i = 0; i < length; i++) {
+                checkCharacter(input, input.charAt(i), list);
+            }
+        }
+
+        input_ = input;
+        deliveredViaMeta_ = deliveredViaMeta;
+        policyIndex_ = 0;
+        directiveIndex_ = 0;
+        tokenCount_ = 0;
+        startPolicy();
+        try {
+            int tokenStart = -1;
+            for (int i = 0; i < length; i++) {
+                final char c = input.charAt(i);
+                if (Constants.isAsciiWhitespace(c) || c == ';') {
+                    if (tokenStart != -1) {
+                        addToken(tokenStart, i);
+                        tokenStart = -1;
+                    }
+                    if (c == ';') {
+                        validateDirective();
+                        ++directiveIndex_;
+                    }
+                }
+                else if (c >= 0x80 || c == ',') {
+                    checkCharacter(input, c, list);
+                    if (tokenStart != -1) {
+                        addToken(tokenStart, i);
+                        tokenStart = -1;
+                    }
+                    validateDirective();
+                    startPolicy();
+                    directiveIndex_ = 0;
+                    ++policyIndex_;
+                }
+                else if (tokenStart == -1) {
+                    tokenStart = i;
+                }
+            }
+            if (tokenStart != -1) {
+                addToken(tokenStart, length);
+            }
+            validateDirective();
+        }
+        catch (final IllegalArgumentException e) {
+            Arrays.fill(codeCounts_, 0);
+            Arrays.fill(severityCounts_, 0);
+            throw e;
+        }
+        finally {
+            input_ = null;
+            policyListErrorConsumer_ = null;
+            policyErrorConsumer_ = null;
+        }
+        return getMaxSeverity();
+    }
+
+    // throws like PolicyTokenizer; non-ASCII input is reported in preference to commas
+    private static void checkCharacter(final CharSequence input, final char c, final boolean list) {
+        if (c >= 0x80) {
+            throw PolicyTokenizer.notAscii(input);
+        }
+        if (c == ',' && !list) {
+            for (int i = 0; i < input.length(); i++) {
+                if (input.charAt(i) >= 0x80) {
+                    throw PolicyTokenizer.notAscii(input);
+                }
+            }
+            throw new IllegalArgumentException(
+                    "Serialized CSPs cannot contain commas - you may have wanted parseSerializedCSPList");
+        }
+    }
+
+    private void addToken(final int start, final int end) {
+        final int offset = tokenCount_ * 2;
+        if (offset + 2 > tokens_.length) {
+            tokens_ = Arrays.copyOf(tokens_, tokens_.length * 2);
+        }
+        tokens_[offset] = start;
+        tokens_[offset + 1] = end;
+        ++tokenCount_;
+    }
+
+    private void startPolicy() {
+        seenSlots_ = 0;
+        blockAllMixedContent_ = false;
+        upgradeInsecureRequests_ = false;
+        reportTo_ = false;
+    }
+
+    // diagnostics
+
+    // Counts a diagnostic; returns true if it has to be passed on, the caller then supplies the arguments.
+    private boolean count(final DiagnosticCode code) {
+        codeCounts_[code.ordinal()]++;
+        severityCounts_[code.getSeverity().ordinal()]++;
+        return policyListErrorConsumer_ != null || policyErrorConsumer_ != null;
+    }
+
+    private void report(final DiagnosticCode code, final int valueIndex) {
+        report(code, valueIndex, null, null);
+    }
+
+    private void report(final DiagnosticCode code, final int valueIndex, final Object arg0) {
+        report(code, valueIndex, arg0, null);
+    }
+
+    private void report(final DiagnosticCode code, final int valueIndex, final Object arg0, final Object arg1) {
+        if (count(code)) {
+            emit(code, valueIndex, arg0, arg1, null);
+        }
+    }
+
+    private void emit(final DiagnosticCode code, final int valueIndex,
+            final Object arg0, final Object arg1, final Object arg2) {
+        if (policyListErrorConsumer_ != null) {
+            policyListErrorConsumer_.report(code, policyIndex_, directiveIndex_, valueIndex, arg0, arg1, arg2);
+        }
+        else {
+            policyErrorConsumer_.report(code, directiveIndex_, valueIndex, arg0, arg1, arg2);
+        }
+    }
+
+    // tokens
+
+    private int valueCount() {
+        return tokenCount_ - 1;
+    }
+
+    private int start(final int value) {
+        return tokens_[(value + 1) * 2];
+    }
+
+    private int end(final int value) {
+        return tokens_[(value + 1) * 2 + 1];
+    }
+
+    private String value(final int value) {
+        return input_.subSequence(start(value), end(value)).toString();
+    }
+
+    // directives, see Policy.add()
+
+    private void validateDirective() {
+        if (tokenCount_ == 0) {
+            return;
+        }
+
+        final CharSequence input = input_;
+        final int nameStart = tokens_[0];
+        final int nameEnd = tokens_[1];
+        boolean wasDupe = false;
+        String lowercaseDirectiveName = null;
+
+        final DirectiveName directiveName = DirectiveName.lookup(input, nameStart, nameEnd);
+        switch (directiveName) {
+            case BaseUri, FormAction, NavigateTo, TrustedTypes, RequireTrustedTypesFor:
+                wasDupe = seeSlot(directiveName);
+                validateValues(directiveName);
+                break;
+
+            case BlockAllMixedContent:
+                if (blockAllMixedContent_) {
+                    wasDupe = true;
+                }
+                else {
+                    if (valueCount() > 0) {
+                        report(DiagnosticCode.DirectiveDoesNotSupportValues, 0, "block-all-mixed-content");
+                    }
+                    blockAllMixedContent_ = true;
+                }
+                break;
+
+            case FrameAncestors:
+                if (deliveredViaMeta_) {
+                    report(DiagnosticCode.DirectiveIgnoredInMeta, -1, "frame-ancestors");
+                }
+                wasDupe = seeSlot(directiveName);
+                validateValues(directiveName);
+                break;
+
+            case PluginTypes:
+                report(DiagnosticCode.DeprecatedDirective, -1, "plugin-types");
+                wasDupe = seeSlot(directiveName);
+                validateValues(directiveName);
+                break;
+
+            case ReportTo:
+                if (reportTo_) {
+                    wasDupe = true;
+                }
+                else if (valueCount() == 0) {
+                    report(DiagnosticCode.DirectiveRequiresValue, -1, "report-to");
+                }
+                else if (valueCount() == 1) {
+                    final int end = Lexer.endIgnoringFinalLineTerminator(input, start(0), end(0));
+                    if (Lexer.isRFC7230Token(input, start(0), end)) {
+                        reportTo_ = true;
+                    }
+                    else if (count(DiagnosticCode.ExpectedRFC7230Token)) {
+                        emit(DiagnosticCode.ExpectedRFC7230Token, 0, value(0), null, null);
+                    }
+                }
+                else if (count(DiagnosticCode.ReportToRequiresOneValue)) {
+                    emit(DiagnosticCode.ReportToRequiresOneValue, 1, valueCount(), null, null);
+                }
+                break;
+
+            case Referrer:
+                report(DiagnosticCode.ReferrerDeprecated, -1);
+                break;
+
+            case ReportUri:
+                report(DiagnosticCode.ReportUriDeprecated, -1);
+                if (deliveredViaMeta_) {
+                    report(DiagnosticCode.DirectiveIgnoredInMeta, -1, "report-uri");
+                }
+                wasDupe = seeSlot(directiveName);
+                validateValues(directiveName);
+                break;
+
+            case Sandbox:
+                if (deliveredViaMeta_) {
+                    report(DiagnosticCode.DirectiveIgnoredInMeta, -1, "sandbox");
+                }
+                wasDupe = seeSlot(directiveName);
+                validateValues(directiveName);
+                break;
+
+            case UpgradeInsecureRequests:
+                if (upgradeInsecureRequests_) {
+                    wasDupe = true;
+                }
+                else {
+                    if (valueCount() > 0) {
+                        report(DiagnosticCode.DirectiveDoesNotSupportValues, 0, "upgrade-insecure-requests");
+                    }
+                    upgradeInsecureRequests_ = true;
+                }
+                break;
+
+            default:
+                if (!Lexer.isDirectiveName(input, nameStart,
+                        Lexer.endIgnoringFinalLineTerminator(input, nameStart, nameEnd))) {
+                    if (count(DiagnosticCode.InvalidDirectiveName)) {
+                        emit(DiagnosticCode.InvalidDirectiveName, -1, name(), null, null);
+                    }
+                    break;
+                }
+                final FetchDirectiveKind fetchDirectiveKind =
+                        FetchDirectiveKind.lookupIgnoreCase(input, nameStart, nameEnd);
+                if (fetchDirectiveKind != null) {
+                    lowercaseDirectiveName = fetchDirectiveKind.getRepr();
+                    if (FetchDirectiveKind.PrefetchSrc == fetchDirectiveKind) {
+                        report(DiagnosticCode.DeprecatedDirective, -1, "prefetch-src");
+                    }
+                    final long bit = 1L << fetchDirectiveKind.ordinal();
+                    wasDupe = (seenSlots_ & bit) != 0;
+                    seenSlots_ |= bit;
+                    validateSourceList(false);
+                    break;
+                }
+                if (count(DiagnosticCode.UnrecognizedDirective)) {
+                    emit(DiagnosticCode.UnrecognizedDirective, -1, name(), null, null);
+                }
+                break;
+        }
+
+        if (wasDupe) {
+            report(DiagnosticCode.DuplicateDirective, -1,
+                    lowercaseDirectiveName == null ? directiveName.getRepr() : lowercaseDirectiveName);
+        }
+        tokenCount_ = 0;
+    }
+
+    private String name() {
+        return input_.subSequence(tokens_[0], tokens_[1]).toString();
+    }
+
+    private boolean seeSlot(final DirectiveName directiveName) {
+        final long bit = 1L << (OTHER_SLOTS + directiveName.ordinal());
+        final boolean seen = (seenSlots_ & bit) != 0;
+        seenSlots_ |= bit;
+        return seen;
+    }
+
+    // like the parser, the values of duplicate directives are checked as well
+    private void validateValues(final DirectiveName directiveName) {
+        switch (directiveName) {
+            case FrameAncestors -> validateSourceList(true);
+            case PluginTypes -> validatePluginTypes();
+            case ReportUri -> validateReportUri();
+            case Sandbox -> validateSandbox();
+            case TrustedTypes -> validateTrustedTypes();
+            case RequireTrustedTypesFor -> validateRequireTrustedTypesFor();
+            default -> validateSourceList(false);
+        }
+    }
+
+    // source lists, see SourceExpressionDirective, FrameAncestorsDirective and HostSourceDirective
+
+    private void validateSourceList(final boolean ancestorSources) {
+        final CharSequence input = input_;
+        final String kind = ancestorSources ? "ancestor-source" : "source-expression";
+        final int count = valueCount();
+        startItems();
+        int seenKeywords = 0;
+        boolean none = false;
+
+        for (int index = 0; index < count; index++) {
+            final int start = start(index);
+            final int end = end(index);
+            SourceKeyword keyword = SOURCE_KEYWORDS.lookup(input, start, end);
+            if (ancestorSources && !keyword.ancestorSource_) {
+                keyword = SourceKeyword.Other;
+            }
+            switch (keyword) {
+                case None:
+                    none = true;
+                    break;
+                case UnsafeRedirect:
+                    report(DiagnosticCode.UnsafeRedirectRemoved, index);
+                    break;
+                case UnsafeHashedAttributes:
+                    report(DiagnosticCode.UnsafeHashedAttributesRenamed, index);
+                    break;
+                case Other:
+                    if (!ancestorSources && KeywordTable.startsWithIgnoreCase(input, start, end, "'nonce-")) {
+                        validateNonce(index, start, end);
+                    }
+                    else if (!ancestorSources && KeywordTable.startsWithIgnoreCase(input, start, end, "'sha")) {
+                        validateHash(index, start, end);
+                    }
+                    else {
+                        validateHostOrScheme(kind, index, start, end);
+                    }
+                    break;
+                default:
+                    final int bit = 1 << keyword.ordinal();
+                    if ((seenKeywords & bit) != 0) {
+                        report(DiagnosticCode.DuplicateSourceExpression, index, kind, keyword.keyword_);
+                    }
+                    seenKeywords |= bit;
+                    break;
+            }
+        }
+
+        if (none && count > 1) {
+            report(DiagnosticCode.NoneCombined, ancestorSources ? count : 1, kind);
+        }
+        if (count == 0) {
+            report(DiagnosticCode.EmptySourceList, -1, ancestorSources ? "Ancestor-source" : "Source-expression");
+        }
+    }
+
+    private void validateNonce(final int index, final int start, final int end) {
+        final CharSequence input = input_;
+        final int valueStart = start + 7;
+        final int valueEnd = end - 1;
+        if (valueEnd < valueStart || input.charAt(valueEnd) != '\''
+                || !Lexer.containsBase64Value(input, valueStart, valueEnd)) {
+            if (count(DiagnosticCode.UnrecognizedNonce)) {
+                emit(DiagnosticCode.UnrecognizedNonce, index, value(index), null, null);
+            }
+            return;
+        }
+        if (findItem(NONCE, hashCode(input, valueStart, valueEnd, false), valueStart, valueEnd)) {
+            if (count(DiagnosticCode.DuplicateNonce)) {
+                emit(DiagnosticCode.DuplicateNonce, index, Nonce.parseNonce(value(index)).get(), null, null);
+            }
+            return;
+        }
+        addItem(NONCE, hashCode(input, valueStart, valueEnd, false), valueStart, valueEnd);
+    }
+
+    private void validateHash(final int index, final int start, final int end) {
+        final CharSequence input = input_;
+        // the algorithm digits, then any character, then the value
+        final int valueStart = start + 8;
+        final int valueEnd = end - 1;
+        final Hash.Algorithm algorithm = valueEnd < valueStart ? null : algorithm(input, start + 4);
+        if (algorithm == null || input.charAt(valueEnd) != '\''
+                || !Lexer.containsBase64Value(input, valueStart, valueEnd)) {
+            report(DiagnosticCode.UnrecognizedHash, index);
+            return;
+        }
+        final int hash = 31 * algorithm.ordinal() + hashCode(input, valueStart, valueEnd, false);
+        if (findItem(HASH, hash, valueStart, valueEnd)) {
+            if (count(DiagnosticCode.DuplicateHash)) {
+                emit(DiagnosticCode.DuplicateHash, index, Hash.parseHash(value(index)).get(), null, null);
+            }
+            return;
+        }
+
+        final int length = valueEnd - valueStart;
+        if (length != algorithm.getLength() && count(DiagnosticCode.WrongHashLength)) {
+            emit(DiagnosticCode.WrongHashLength, index, algorithm, algorithm.getLength(), length);
+        }
+        for (int i = valueStart; i < valueEnd; i++) {
+            final char c = input.charAt(i);
+            if (c == '_' || c == '-') {
+                report(DiagnosticCode.HashNeverMatches, index);
+                break;
+            }
+        }
+        addItem(HASH, hash, valueStart, valueEnd);
+    }
+
+    private static Hash.Algorithm algorithm(final CharSequence input, final int start) {
+        final char first = input.charAt(start);
+        final char second = input.charAt(start + 1);
+        final char third = input.charAt(start + 2);
+        if (first == '2' && second == '5' && third == '6') {
+            return Hash.Algorithm.SHA256;
+        }
+        if (first == '3' && second == '8' && third == '4') {
+            return Hash.Algorithm.SHA384;
+        }
+        if (first == '5' && second == '1' && third == '2') {
+            return Hash.Algorithm.SHA512;
+        }
+        return null;
+    }
+
+    private void validateHostOrScheme(final String kind, final int index, final int start, final int end) {
+        final CharSequence input = input_;
+        if (Lexer.isSchemeSource(input, start, end)) {
+            final int hash = hashCode(input, start, end - 1, true);
+            if (findItem(SCHEME, hash, start, end)) {
+                if (count(DiagnosticCode.DuplicateScheme)) {
+                    emit(DiagnosticCode.DuplicateScheme, index, Scheme.parseScheme(value(index)).get(), null, null);
+                }
+                return;
+            }
+            addItem(SCHEME, hash, start, end);
+            return;
+        }
+
+        if (Lexer.isUnquotedKeyword(input, start, Lexer.endIgnoringFinalLineTerminator(input, start, end))
+                && count(DiagnosticCode.UnquotedKeyword)) {
+            emit(DiagnosticCode.UnquotedKeyword, index, value(index), null, null);
+        }
+
+        final int[] bounds = bounds_;
+        if (!Lexer.scanHostSource(input, start, end, bounds)) {
+            if (count(DiagnosticCode.UnrecognizedSource)) {
+                emit(DiagnosticCode.UnrecognizedSource, index, kind, value(index), null);
+            }
+            return;
+        }
+        // the parser fails on ports that do not fit into an int; so does the validator, with the same exception
+        Lexer.parsePort(input, bounds, Constants.EMPTY_PORT);
+        final int hash = hashCode(input, bounds[Lexer.HOST_START], bounds[Lexer.HOST_END], true);
+        if (findItem(HOST, hash, start, end)) {
+            if (count(DiagnosticCode.DuplicateHost)) {
+                emit(DiagnosticCode.DuplicateHost, index, Host.parseHost(value(index)).get(), null, null);
+            }
+            return;
+        }
+        addItem(HOST, hash, start, end);
+    }
+
+    // other directives
+
+    private void validatePluginTypes() {
+        final CharSequence input = input_;
+        startItems();
+        for (int index = 0; index < valueCount(); index++) {
+            final int start = start(index);
+            final int end = Lexer.endIgnoringFinalLineTerminator(input, start, end(index));
+            final int slash = Lexer.scanMediaType(input, start, end);
+            if (slash == -1) {
+                if (count(DiagnosticCode.ExpectedMediaType)) {
+                    emit(DiagnosticCode.ExpectedMediaType, index, value(index), null, null);
+                }
+                continue;
+            }
+            final int hash = hashCode(input, start, end, true);
+            if (findItem(MEDIA_TYPE, hash, start, end)) {
+                if (count(DiagnosticCode.DuplicateMediaType)) {
+                    emit(DiagnosticCode.DuplicateMediaType, index,
+                            MediaType.parseMediaType(value(index)).get(), null, null);
+                }
+                continue;
+            }
+            if (slash - start == 1 && input.charAt(start) == '*'
+                    || end - slash == 2 && input.charAt(slash + 1) == '*') {
+                report(DiagnosticCode.WildcardMediaType, index);
+            }
+            addItem(MEDIA_TYPE, hash, start, end);
+        }
+    }
+
+    private void validateReportUri() {
+        final CharSequence input = input_;
+        startItems();
+        for (int index = 0; index < valueCount(); index++) {
+            final int start = start(index);
+            final int end = end(index);
+            final int hash = hashCode(input, start, end, false);
+            if (findItem(REPORT_URI, hash, start, end)) {
+                report(DiagnosticCode.DuplicateReportUri, index);
+            }
+            addItem(REPORT_URI, hash, start, end);
+        }
+        if (valueCount() == 0) {
+            report(DiagnosticCode.ReportUriRequiresValue, -1);
+        }
+    }
+
+    private void validateSandbox() {
+        final CharSequence input = input_;
+        int seenKeywords = 0;
+        for (int index = 0; index < valueCount(); index++) {
+            final int start = start(index);
+            final SandboxKeyword keyword = SANDBOX_KEYWORDS.lookup(input, start, end(index));
+            if (keyword != SandboxKeyword.Other) {
+                final int bit = 1 << keyword.ordinal();
+                if ((seenKeywords & bit) != 0) {
+                    report(DiagnosticCode.DuplicateSandboxKeyword, index, keyword.keyword_);
+                }
+                seenKeywords |= bit;
+            }
+            else {
+                final DiagnosticCode code = input.charAt(start) == '\''
+                        ? DiagnosticCode.QuotedSandboxKeyword
+                        : DiagnosticCode.UnrecognizedSandboxKeyword;
+                if (count(code)) {
+                    emit(code, index, value(index), null, null);
+                }
+            }
+        }
+    }
+
+    private void validateTrustedTypes() {
+        final CharSequence input = input_;
+        startItems();
+        boolean none = false;
+        boolean allowDuplicates = false;
+        boolean star = false;
+        for (int index = 0; index < valueCount(); index++) {
+            final int start = start(index);
+            final int end = end(index);
+            switch (TRUSTED_TYPES_KEYWORDS.lookup(input, start, end)) {
+                case None:
+                    if (none) {
+                        report(DiagnosticCode.DuplicateKeyword, index, "'none'");
+                    }
+                    none = true;
+                    break;
+                case AllowDuplicates:
+                    if (allowDuplicates) {
+                        report(DiagnosticCode.DuplicateKeyword, index, "'allow-duplicates'");
+                    }
+                    allowDuplicates = true;
+                    break;
+                case Star:
+                    if (star) {
+                        report(DiagnosticCode.DuplicateWildcard, index);
+                    }
+                    else {
+                        star = true;
+                        report(DiagnosticCode.WildcardPolicyName, index);
+                    }
+                    break;
+                default:
+                    if (isQuoted(input, start, end)) {
+                        if (count(DiagnosticCode.UnrecognizedKeyword)) {
+                            emit(DiagnosticCode.UnrecognizedKeyword, index, "trusted-types", value(index), null);
+                        }
+                    }
+                    else if (Lexer.isTrustedTypesPolicyName(input, start, end)) {
+                        final int hash = hashCode(input, start, end, false);
+                        if (findItem(POLICY_NAME, hash, start, end)) {
+                            if (count(DiagnosticCode.DuplicatePolicyName)) {
+                                emit(DiagnosticCode.DuplicatePolicyName, index, value(index), null, null);
+                            }
+                        }
+                        else {
+                            addItem(POLICY_NAME, hash, start, end);
+                        }
+                    }
+                    else if (count(DiagnosticCode.InvalidPolicyName)) {
+                        emit(DiagnosticCode.InvalidPolicyName, index, value(index), null, null);
+                    }
+                    break;
+            }
+        }
+
+        final boolean policyNames = itemCount_ > 0;
+        if (valueCount() == 0) {
+            report(DiagnosticCode.EmptyTrustedTypes, -1);
+        }
+        if (none && (star || allowDuplicates || policyNames)) {
+            report(DiagnosticCode.NoneCombined, -1, "trusted-types expression");
+        }
+        if (star && policyNames) {
+            report(DiagnosticCode.RedundantPolicyNames, -1);
+        }
+        if (star && allowDuplicates) {
+            report(DiagnosticCode.RedundantAllowDuplicates, -1);
+        }
+        if (allowDuplicates && !star && !policyNames) {
+            report(DiagnosticCode.IneffectiveAllowDuplicates, -1);
+        }
+    }
+
+    private void validateRequireTrustedTypesFor() {
+        final CharSequence input = input_;
+        if (valueCount() == 0) {
+            report(DiagnosticCode.DirectiveRequiresValue, -1, "require-trusted-types-for");
+            return;
+        }
+        boolean script = false;
+        for (int index = 0; index < valueCount(); index++) {
+            final int start = start(index);
+            final int end = end(index);
+            if (REQUIRE_TRUSTED_TYPES_FOR_KEYWORDS.lookup(input, start, end) == RequireTrustedTypesForKeyword.Script) {
+                if (script) {
+                    report(DiagnosticCode.DuplicateKeyword, index, RequireTrustedTypesForKeyword.Script.keyword_);
+                }
+                script = true;
+            }
+            else if (isQuoted(input, start, end)) {
+                if (count(DiagnosticCode.UnrecognizedKeyword)) {
+                    emit(DiagnosticCode.UnrecognizedKeyword, index, "require-trusted-types-for", value(index), null);
+                }
+            }
+            else if (count(DiagnosticCode.UnquotedRequireTrustedTypesForValue)) {
+                emit(DiagnosticCode.UnquotedRequireTrustedTypesForValue, index, value(index), null, null);
+            }
+        }
+    }
+
+    // like token.startsWith("'") && token.endsWith("'"), a lone quote counts as well
+    private static boolean isQuoted(final CharSequence input, final int start, final int end) {
+        return input.charAt(start) == '\'' && input.charAt(end - 1) == '\'';
+    }
+
+    // values of the current directive
+
+    private void startItems() {
+        itemCount_ = 0;
+        int size = 32;
+        while (size < valueCount() * 2) {
+            size <<= 1;
+        }
+        if (table_.length < size) {
+            table_ = new int[size];
+        }
+        else {
+            Arrays.fill(table_, 0, size, 0);
+        }
+        tableMask_ = size - 1;
+    }
+
+    private void addItem(final int kind, final int hash, final int start, final int end) {
+        final int offset = itemCount_ * ITEM;
+        if (offset + ITEM > items_.length) {
+            items_ = Arrays.copyOf(items_, items_.length * 2);
+        }
+        items_[offset] = kind;
+        items_[offset + 1] = hash;
+        items_[offset + 2] = start;
+        items_[offset + 3] = end;
+        if (kind == HOST) {
+            System.arraycopy(bounds_, 0, items_, offset + 4, Lexer.HOST_SOURCE_BOUNDS);
+        }
+        ++itemCount_;
+
+        int slot = slot(hash);
+        while (table_[slot] != 0) {
+            slot = (slot + 1) & tableMask_;
+        }
+        table_[slot] = itemCount_;
+    }
+
+    private int slot(final int hash) {
+        return (hash ^ (hash >>> 16)) & tableMask_;
+    }
+
+    // Tests if an equal value was added before; for hosts bounds_ has to hold the bounds of the value.
+    private boolean findItem(final int kind, final int hash, final int start, final int end) {
+        final CharSequence input = input_;
+        for (int slot = slot(hash); table_[slot] != 0; slot = (slot + 1) & tableMask_) {
+            final int offset = (table_[slot] - 1) * ITEM;
+            if (items_[offset] != kind || items_[offset + 1] != hash) {
+                continue;
+            }
+            final int otherStart = items_[offset + 2];
+            final int otherEnd = items_[offset + 3];
+            final boolean equal = switch (kind) {
+                case SCHEME, MEDIA_TYPE -> regionEquals(input, start, end, otherStart, otherEnd, true);
+                case HOST -> hostEquals(input, offset + 4);
+                // the algorithm is part of the hash code; all algorithms have the same length
+                case HASH -> regionEquals(input, start, end, otherStart, otherEnd, false)
+                        && input.charAt(start - 4) == input.charAt(otherStart - 4)
+                        && input.charAt(start - 3) == input.charAt(otherStart - 3)
+                        && input.charAt(start - 2) == input.charAt(otherStart - 2);
+                default -> regionEquals(input, start, end, otherStart, otherEnd, false);
+            };
+            if (equal) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // compares like Host.equals(): lowercase scheme and host, numeric port and the path
+    private boolean hostEquals(final CharSequence input, final int otherBounds) {
+        final int[] bounds = bounds_;
+        final int[] items = items_;
+        return partEquals(input, bounds, items, otherBounds, Lexer.SCHEME_START, Lexer.SCHEME_END, true)
+                && partEquals(input, bounds, items, otherBounds, Lexer.HOST_START, Lexer.HOST_END, true)
+                && portEquals(input, bounds, items, otherBounds)
+                && partEquals(input, bounds, items, otherBounds, Lexer.PATH_START, Lexer.PATH_END, false);
+    }
+
+    private static boolean partEquals(final CharSequence input, final int[] bounds, final int[] items,
+            final int otherBounds, final int startIndex, final int endIndex, final boolean ignoreCase) {
+        final int start = bounds[startIndex];
+        final int otherStart = items[otherBounds + startIndex];
+        if (start == -1 || otherStart == -1) {
+            return start == otherStart;
+        }
+        return regionEquals(input, start, bounds[endIndex], otherStart, items[otherBounds + endIndex], ignoreCase);
+    }
+
+    private static boolean portEquals(final CharSequence input, final int[] bounds, final int[] items,
+            final int otherBounds) {
+        int start = bounds[Lexer.PORT_START];
+        int otherStart = items[otherBounds + Lexer.PORT_START];
+        if (start == -1 || otherStart == -1) {
+            return start == otherStart;
+        }
+        final int end = bounds[Lexer.PORT_END];
+        final int otherEnd = items[otherBounds + Lexer.PORT_END];
+        // "*" or digits; leading zeros do not change the number
+        while (start < end - 1 && input.charAt(start) == '0') {
+            start++;
+        }
+        while (otherStart < otherEnd - 1 && input.charAt(otherStart) == '0') {
+            otherStart++;
+        }
+        return regionEquals(input, start, end, otherStart, otherEnd, false);
+    }
+
+    private static boolean regionEquals(final CharSequence input, final int start, final int end,
+            final int otherStart, final int otherEnd, final boolean ignoreCase) {
+        if (end - start != otherEnd - otherStart) {
+            return false;
+        }
+        for (int i = 0; i < end - start; i++) {
+            char c = input.charAt(start + i);
+            char other = input.charAt(otherStart + i);
+            if (ignoreCase) {
+                c = toLowerCase(c);
+                other = toLowerCase(other);
+            }
+            if (c != other) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hashCode(final CharSequence input, final int start, final int end, final boolean ignoreCase) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            final char c = input.charAt(i);
+            hash = 31 * hash + (ignoreCase ? toLowerCase(c) : c);
+        }
+        return hash;
+    }
+
+    private static char toLowerCase(final char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
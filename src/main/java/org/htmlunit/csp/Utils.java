@@ -14,12 +14,11 @@
  */
 package org.htmlunit.csp;
 
-import java.net.URLDecoder;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Predicate;
-import java.util.regex.Pattern;
+
+import org.htmlunit.csp.internal.Lexer;
 
 /**
  * Internal utility methods and constants used by the CSP parser.
@@ -27,9 +26,7 @@
  * Provides string-manipulation helpers that follow the algorithms defined in
  * the <a href="https://infra.spec.whatwg.org/">Infra Standard</a>, including
  * <a href="https://infra.spec.whatwg.org/#split-on-ascii-whitespace">split on
- * ASCII whitespace</a> and
- * <a href="https://infra.spec.whatwg.org/#strictly-split">strictly split</a>,
- * as well as Base64 validation, URL-decoding, and token extraction.
+ * ASCII whitespace</a>, as well as Base64 validation and token extraction.
  * </p>
  */
 public final class Utils {
@@ -38,11 +35,12 @@ public final class Utils {
      * used in CSP nonce-sources and hash-sources.
      * <p>
      * Accepts characters {@code a-zA-Z0-9+/-_} followed by zero, one, or two
-     * padding {@code =} characters.
+     * padding {@code =} characters. The test searches the string like an unanchored
+     * pattern would, see {@link Lexer#containsBase64Value(CharSequence, int, int)}.
      * </p>
      */
     public static final Predicate<String> IS_BASE64_VALUE
-                            = Pattern.compile("[a-zA-Z0-9+/\\-_]+=?=?").asPredicate();
+                            = value -> Lexer.containsBase64Value(value, 0, value.length());
 
     // https://infra.spec.whatwg.org/#split-on-ascii-whitespace
     static List<String> splitOnAsciiWhitespace(final String input) {
@@ -78,24 +76,6 @@ else if (isWs && tokenStart != -1) {
         return result;
     }
 
-    // https://infra.spec.whatwg.org/#strictly-split
-    static List<String> strictlySplit(final String s, final char delim) {
-        int off = 0;
-        int next;
-        final ArrayList<String> list = new ArrayList<>();
-        while ((next = s.indexOf(delim, off)) != -1) {
-            list.add(s.substring(off, next));
-            off = next + 1;
-        }
-
-        list.add(s.substring(off));
-        return list;
-    }
-
-    static String decodeString(final String s) {
-        return URLDecoder.decode(s, StandardCharsets.UTF_8);
-    }
-
     /**
      * Trims leading and trailing ASCII whitespace ({@code \t}, {@code \n},
      * {@code \f}, {@code \r}, and space) from the given string.
@@ -15,9 +15,8 @@
 package org.htmlunit.csp.directive;
 
 import java.util.List;
-import java.util.Locale;
 
-import org.htmlunit.csp.Policy;
+import org.htmlunit.csp.DiagnosticCode;
 
 /**
  * Represents the {@code frame-ancestors} CSP directive.
@@ -47,21 +46,44 @@ public class FrameAncestorsDirective extends HostSourceDirective {
      * @param errors consumer that receives parsing errors and warnings
      */
     public FrameAncestorsDirective(final List<String> values, final DirectiveErrorConsumer errors) {
+        this(values, null, errors);
+    }
+
+    /**
+     * Creates a {@code frame-ancestors} directive from values that are parsed already.
+     * <p>
+     * For every value, {@code parsed} holds the {@link org.htmlunit.csp.value.Scheme} or
+     * {@link org.htmlunit.csp.value.Host} the value is the serialization of, or {@code null}
+     * for keywords and values to be parsed. The schemes and hosts in {@code parsed} must be
+     * distinct, they are not checked for duplicates.
+     * </p>
+     *
+     * @param values the raw string values for this directive
+     * @param parsed the parsed form per value, or {@code null} to parse all values
+     * @param errors consumer that receives parsing errors and warnings
+     */
+    FrameAncestorsDirective(final List<String> values, final List<?> parsed,
+            final DirectiveErrorConsumer errors) {
         super(values);
 
         int index = 0;
         for (final String token : values) {
-            final String lowercaseToken = token.toLowerCase(Locale.ROOT);
-            addHostOrSchemeDuringConstruction(token, lowercaseToken, "ancestor-source", index, errors);
+            final Object source = parsed == null ? null : parsed.get(index);
+            if (source == null) {
+                addHostOrSchemeDuringConstruction(token, "ancestor-source", index, errors);
+            }
+            else {
+                addSourceDuringConstruction(source);
+            }
             index++;
         }
 
         if (getNone() != null && values.size() > 1) {
-            errors.add(Policy.Severity.Error, "'none' must not be combined with any other ancestor-source", index);
+            errors.report(DiagnosticCode.NoneCombined, index, "ancestor-source");
         }
 
         if (values.isEmpty()) {
-            errors.add(Policy.Severity.Error, "Ancestor-source lists cannot be empty (use 'none' instead)", -1);
+            errors.report(DiagnosticCode.EmptySourceList, -1, "Ancestor-source");
         }
     }
 }
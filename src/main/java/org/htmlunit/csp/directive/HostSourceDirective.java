@@ -19,9 +19,12 @@
 import java.util.List;
 import java.util.Optional;
 
-import org.htmlunit.csp.Constants;
+import org.htmlunit.csp.DiagnosticCode;
 import org.htmlunit.csp.Directive;
-import org.htmlunit.csp.Policy;
+import org.htmlunit.csp.internal.HostKind;
+import org.htmlunit.csp.internal.KeywordTable;
+import org.htmlunit.csp.internal.Lexer;
+import org.htmlunit.csp.internal.PathSegments;
 import org.htmlunit.csp.value.Host;
 import org.htmlunit.csp.value.Scheme;
 
@@ -40,9 +43,31 @@
  */
 public abstract class HostSourceDirective extends Directive {
     private static final String NONE_SRC = "'none'";
-    private static final String SELF_SRC = "'self'";
+
+    private enum Keyword {
+        None(NONE_SRC),
+        Self("'self'"),
+        Star("*"),
+        Other(null);
+
+        private final String keyword_;
+
+        Keyword(final String keyword) {
+            keyword_ = keyword;
+        }
+    }
+
+    private static final KeywordTable<Keyword> KEYWORDS =
+            new KeywordTable<>(Keyword.class, keyword -> keyword.keyword_, Keyword.Other);
+
     private final List<Scheme> schemes_ = new ArrayList<>();
     private final List<Host> hosts_ = new ArrayList<>();
+    // parallel to hosts_, the kind and the decoded path (or null) of each host-source; matched on every query
+    private final List<HostKind> hostKinds_ = new ArrayList<>();
+    private final List<PathSegments> hostPaths_ = new ArrayList<>();
+    // views handed out by the getters, created once as they are queried on every match
+    private final List<Scheme> schemesView_ = Collections.unmodifiableList(schemes_);
+    private final List<Host> hostsView_ = Collections.unmodifiableList(hosts_);
     private boolean star_;
     private boolean self_;
 
@@ -86,27 +111,26 @@ protected void removeValueIgnoreCase(final String value) {
         }
     }
 
-    void addHostOrSchemeDuringConstruction(final String token,
-                final String lowercaseToken, final String kind, final int index,
+    void addHostOrSchemeDuringConstruction(final String token, final String kind, final int index,
                 final DirectiveErrorConsumer errors) {
-        switch (lowercaseToken) {
-            case NONE_SRC -> {
+        switch (KEYWORDS.lookup(token)) {
+            case None -> {
                 if (none_ == null) {
                     none_ = token;
                 }
             }
-            case "*" -> {
+            case Star -> {
                 // Technically this is just a specific kind of host-source, but it's worth handling explicitly
                 if (star_) {
-                    errors.add(Policy.Severity.Warning, "Duplicate " + kind + " *", index);
+                    errors.report(DiagnosticCode.DuplicateSourceExpression, index, kind, "*");
                 }
                 else {
                     star_ = true;
                 }
             }
-            case SELF_SRC -> {
+            case Self -> {
                 if (self_) {
-                    errors.add(Policy.Severity.Warning, "Duplicate " + kind + " 'self'", index);
+                    errors.report(DiagnosticCode.DuplicateSourceExpression, index, kind, "'self'");
                 }
                 else {
                     self_ = true;
@@ -118,10 +142,9 @@ void addHostOrSchemeDuringConstruction(final String token,
                     addScheme(asScheme.get(), index, errors);
                 }
                 else {
-                    if (Constants.UNQUOTED_KEYWORD_PATTERN.matcher(token).find()) {
-                        errors.add(Policy.Severity.Warning,
-                                "This host name is unusual, and likely meant to be a keyword "
-                                        + "that is missing the required quotes: '" + token + "'.", index);
+                    if (Lexer.isUnquotedKeyword(token, 0,
+                            Lexer.endIgnoringFinalLineTerminator(token, 0, token.length()))) {
+                        errors.report(DiagnosticCode.UnquotedKeyword, index, token);
                     }
 
                     final Optional<Host> asHost = Host.parseHost(token);
@@ -129,16 +152,27 @@ void addHostOrSchemeDuringConstruction(final String token,
                         addHostSource(asHost.get(), index, errors);
                     }
                     else {
-                        errors.add(Policy.Severity.Error, "Unrecognized " + kind + " " + token, index);
+                        errors.report(DiagnosticCode.UnrecognizedSource, index, kind, token);
                     }
                 }
             }
         }
     }
 
+    // a scheme-source or host-source that is parsed already; the caller ensures there are no duplicates,
+    // which spares the linear search per source
+    void addSourceDuringConstruction(final Object source) {
+        if (source instanceof Scheme scheme) {
+            schemes_.add(scheme);
+        }
+        else {
+            addHost((Host) source);
+        }
+    }
+
     private boolean addScheme(final Scheme scheme, final int index, final DirectiveErrorConsumer errors) {
         if (schemes_.contains(scheme)) {
-            errors.add(Policy.Severity.Warning, "Duplicate scheme " + scheme, index);
+            errors.report(DiagnosticCode.DuplicateScheme, index, scheme);
             return false;
         }
 
@@ -151,15 +185,31 @@ private boolean addScheme(final Scheme scheme, final int index, final DirectiveE
 
     private boolean addHostSource(final Host source, final int index, final DirectiveErrorConsumer errors) {
         if (hosts_.contains(source)) {
-            errors.add(Policy.Severity.Warning, "Duplicate host " + source.toString(), index);
+            errors.report(DiagnosticCode.DuplicateHost, index, source);
             return false;
         }
 
         // TODO check if this subsumes or is subsumed by any existing scheme/host
-        hosts_.add(source);
+        addHost(source);
         return true;
     }
 
+    private void addHost(final Host host) {
+        hosts_.add(host);
+        hostKinds_.add(HostKind.of(host.host()));
+        hostPaths_.add(host.path() == null ? null : PathSegments.of(host.path()));
+    }
+
+    // the kind of the host-source at the index of getHosts()
+    HostKind getHostKind(final int index) {
+        return hostKinds_.get(index);
+    }
+
+    // the decoded path of the host-source at the index of getHosts(), or null if it has none
+    PathSegments getHostPath(final int index) {
+        return hostPaths_.get(index);
+    }
+
     /**
      * Returns whether the wildcard ({@code *}) is present in this source list.
      * <p>
@@ -195,7 +245,7 @@ public boolean self() {
      * @return the list of parsed {@link Scheme} values
      */
     public List<Scheme> getSchemes() {
-        return Collections.unmodifiableList(schemes_);
+        return schemesView_;
     }
 
     /**
@@ -205,6 +255,6 @@ public List<Scheme> getSchemes() {
      * @return the list of parsed {@link Host} values
      */
     public List<Host> getHosts() {
-        return Collections.unmodifiableList(hosts_);
+        return hostsView_;
     }
 }
@@ -19,8 +19,8 @@
 import java.util.List;
 import java.util.Optional;
 
+import org.htmlunit.csp.DiagnosticCode;
 import org.htmlunit.csp.Directive;
-import org.htmlunit.csp.Policy;
 import org.htmlunit.csp.value.MediaType;
 
 /**
@@ -60,7 +60,7 @@ public PluginTypesDirective(final List<String> values, final DirectiveErrorConsu
                 addMediaType(type.get(), index, errors);
             }
             else {
-                errors.add(Policy.Severity.Error, "Expecting media-type but found \"" + token + "\"", index);
+                errors.report(DiagnosticCode.ExpectedMediaType, index, token);
             }
             index++;
         }
@@ -70,14 +70,12 @@ public PluginTypesDirective(final List<String> values, final DirectiveErrorConsu
 
     private boolean addMediaType(final MediaType type, final int index, final DirectiveErrorConsumer errors) {
         if (mediaTypes_.contains(type)) {
-            errors.add(Policy.Severity.Warning, "Duplicate media type " + type.toString(), index);
+            errors.report(DiagnosticCode.DuplicateMediaType, index, type);
             return false;
         }
 
         if ("*".equals(type.type()) || "*".equals(type.subtype())) {
-            errors.add(Policy.Severity.Warning,
-                        "Media types can only be matched literally. Make sure using `*` is not an oversight.",
-                        index);
+            errors.report(DiagnosticCode.WildcardMediaType, index);
         }
         mediaTypes_.add(type);
         return true;
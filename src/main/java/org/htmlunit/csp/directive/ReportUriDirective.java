@@ -18,8 +18,8 @@
 import java.util.Collections;
 import java.util.List;
 
+import org.htmlunit.csp.DiagnosticCode;
 import org.htmlunit.csp.Directive;
-import org.htmlunit.csp.Policy;
 
 /**
  * Represents the (deprecated) {@code report-uri} CSP directive.
@@ -59,7 +59,7 @@ public ReportUriDirective(final List<String> values, final DirectiveErrorConsume
         }
 
         if (getValues().isEmpty()) {
-            errors.add(Policy.Severity.Error, "The report-uri value requires at least one value", -1);
+            errors.report(DiagnosticCode.ReportUriRequiresValue, -1);
         }
     }
 
@@ -69,9 +69,7 @@ private void addUri(final String uri, final int index, final DirectiveErrorConsu
         if (uris_.contains(uri)) {
             // NB: we don't prevent you from having duplicates, because that
             // has actual semantic meaning - it will get each report twice (per spec)
-            errors.add(Policy.Severity.Info,
-                    "Duplicate report-to URI; are you sure you intend to get multiple copies of each report?",
-                    index);
+            errors.report(DiagnosticCode.DuplicateReportUri, index);
         }
         uris_.add(uri);
     }
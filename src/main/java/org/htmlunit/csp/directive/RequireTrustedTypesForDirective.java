@@ -15,10 +15,10 @@
 package org.htmlunit.csp.directive;
 
 import java.util.List;
-import java.util.Locale;
 
+import org.htmlunit.csp.DiagnosticCode;
 import org.htmlunit.csp.Directive;
-import org.htmlunit.csp.Policy;
+import org.htmlunit.csp.internal.KeywordTable;
 
 /**
  * Represents the {@code require-trusted-types-for} CSP directive.
@@ -37,6 +37,20 @@ public class RequireTrustedTypesForDirective extends Directive {
     // Currently only 'script' is defined
     private static final String SCRIPT = "'script'";
 
+    private enum Keyword {
+        Script(SCRIPT),
+        Other(null);
+
+        private final String keyword_;
+
+        Keyword(final String keyword) {
+            keyword_ = keyword;
+        }
+    }
+
+    private static final KeywordTable<Keyword> KEYWORDS =
+            new KeywordTable<>(Keyword.class, keyword -> keyword.keyword_, Keyword.Other);
+
     private boolean script_;
 
     /**
@@ -54,17 +68,16 @@ public RequireTrustedTypesForDirective(final List<String> values, final Directiv
         super(values);
 
         if (values.isEmpty()) {
-            errors.add(Policy.Severity.Error, "The require-trusted-types-for directive requires a value", -1);
+            errors.report(DiagnosticCode.DirectiveRequiresValue, -1, "require-trusted-types-for");
             return;
         }
 
         int index = 0;
         for (final String token : values) {
             // ABNF strings are case-insensitive
-            final String lowerCaseToken = token.toLowerCase(Locale.ROOT);
-            if ("'script'".equals(lowerCaseToken)) {
+            if (KEYWORDS.lookup(token) == Keyword.Script) {
                 if (script_) {
-                    errors.add(Policy.Severity.Warning, "Duplicate keyword 'script'", index);
+                    errors.report(DiagnosticCode.DuplicateKeyword, index, SCRIPT);
                 }
                 else {
                     script_ = true;
@@ -72,13 +85,10 @@ public RequireTrustedTypesForDirective(final List<String> values, final Directiv
             }
             else {
                 if (token.startsWith("'") && token.endsWith("'")) {
-                    errors.add(Policy.Severity.Error,
-                            "Unrecognized require-trusted-types-for keyword " + token, index);
+                    errors.report(DiagnosticCode.UnrecognizedKeyword, index, "require-trusted-types-for", token);
                 }
                 else {
-                    errors.add(Policy.Severity.Error,
-                            "Unrecognized require-trusted-types-for value " + token
-                                    + " - keywords must be wrapped in single quotes", index);
+                    errors.report(DiagnosticCode.UnquotedRequireTrustedTypesForValue, index, token);
                 }
             }
             ++index;
@@ -15,10 +15,10 @@
 package org.htmlunit.csp.directive;
 
 import java.util.List;
-import java.util.Locale;
 
+import org.htmlunit.csp.DiagnosticCode;
 import org.htmlunit.csp.Directive;
-import org.htmlunit.csp.Policy;
+import org.htmlunit.csp.internal.KeywordTable;
 
 /**
  * Represents the {@code sandbox} CSP directive.
@@ -35,7 +35,32 @@
  *      HTML sandbox attribute</a>
  */
 public class SandboxDirective extends Directive {
-    private static final String ALLOW_DOWNLOADS = "allow-downloads";
+    private enum Keyword {
+        AllowDownloads("allow-downloads"),
+        AllowForms("allow-forms"),
+        AllowModals("allow-modals"),
+        AllowOrientationLock("allow-orientation-lock"),
+        AllowPointerLock("allow-pointer-lock"),
+        AllowPopups("allow-popups"),
+        AllowPopupsToEscapeSandbox("allow-popups-to-escape-sandbox"),
+        AllowPresentation("allow-presentation"),
+        AllowSameOrigin("allow-same-origin"),
+        AllowScripts("allow-scripts"),
+        AllowStorageAccessByUserActivation("allow-storage-access-by-user-activation"),
+        AllowTopNavigation("allow-top-navigation"),
+        AllowTopNavigationByUserActivation("allow-top-navigation-by-user-activation"),
+        Other(null);
+
+        private final String keyword_;
+
+        Keyword(final String keyword) {
+            keyword_ = keyword;
+        }
+    }
+
+    private static final KeywordTable<Keyword> KEYWORDS =
+            new KeywordTable<>(Keyword.class, keyword -> keyword.keyword_, Keyword.Other);
+
     private boolean allowDownloads_;
     private boolean allowForms_;
     private boolean allowModals_;
@@ -68,110 +93,108 @@ public SandboxDirective(final List<String> values, final DirectiveErrorConsumer
         for (final String token : values) {
             // HTML attribute keywords are ascii-case-insensitive:
             // https://html.spec.whatwg.org/multipage/common-microsyntaxes.html#keywords-and-enumerated-attributes
-            final String lowercaseToken = token.toLowerCase(Locale.ROOT);
-            switch (lowercaseToken) {
-                case ALLOW_DOWNLOADS:
+            switch (KEYWORDS.lookup(token)) {
+                case AllowDownloads:
                     if (allowDownloads_) {
-                        errors.add(Policy.Severity.Warning, "Duplicate sandbox keyword allow-downloads", index);
+                        errors.report(DiagnosticCode.DuplicateSandboxKeyword, index, "allow-downloads");
                     }
                     else {
                         allowDownloads_ = true;
                     }
                     break;
-                case "allow-forms":
+                case AllowForms:
                     if (allowForms_) {
-                        errors.add(Policy.Severity.Warning, "Duplicate sandbox keyword allow-forms", index);
+                        errors.report(DiagnosticCode.DuplicateSandboxKeyword, index, "allow-forms");
                     }
                     else {
                         allowForms_ = true;
                     }
                     break;
-                case "allow-modals":
+                case AllowModals:
                     if (allowModals_) {
-                        errors.add(Policy.Severity.Warning, "Duplicate sandbox keyword allow-modals", index);
+                        errors.report(DiagnosticCode.DuplicateSandboxKeyword, index, "allow-modals");
                     }
                     else {
                         allowModals_ = true;
                     }
                     break;
-                case "allow-orientation-lock":
+                case AllowOrientationLock:
                     if (allowOrientationLock_) {
-                        errors.add(Policy.Severity.Warning, "Duplicate sandbox keyword allow-orientation-lock", index);
+                        errors.report(DiagnosticCode.DuplicateSandboxKeyword, index, "allow-orientation-lock");
                     }
                     else {
                         allowOrientationLock_ = true;
                     }
                     break;
-                case "allow-pointer-lock":
+                case AllowPointerLock:
                     if (allowPointerLock_) {
-                        errors.add(Policy.Severity.Warning, "Duplicate sandbox keyword allow-pointer-lock", index);
+                        errors.report(DiagnosticCode.DuplicateSandboxKeyword, index, "allow-pointer-lock");
                     }
                     else {
                         allowPointerLock_ = true;
                     }
                     break;
-                case "allow-popups":
+                case AllowPopups:
                     if (allowPopups_) {
-                        errors.add(Policy.Severity.Warning, "Duplicate sandbox keyword allow-popups", index);
+                        errors.report(DiagnosticCode.DuplicateSandboxKeyword, index, "allow-popups");
                     }
                     else {
                         allowPopups_ = true;
                     }
                     break;
-                case "allow-popups-to-escape-sandbox":
+                case AllowPopupsToEscapeSandbox:
                     if (allowPopupsToEscapeSandbox_) {
-                        errors.add(Policy.Severity.Warning,
-                                "Duplicate sandbox keyword allow-popups-to-escape-sandbox", index);
+                        errors.report(DiagnosticCode.DuplicateSandboxKeyword, index, "allow-popups-to-escape-sandbox");
                     }
                     else {
                         allowPopupsToEscapeSandbox_ = true;
                     }
                     break;
-                case "allow-presentation":
+                case AllowPresentation:
                     if (allowPresentation_) {
-                        errors.add(Policy.Severity.Warning, "Duplicate sandbox keyword allow-presentation", index);
+                        errors.report(DiagnosticCode.DuplicateSandboxKeyword, index, "allow-presentation");
                     }
                     else {
                         allowPresentation_ = true;
                     }
                     break;
-                case "allow-same-origin":
+                case AllowSameOrigin:
                     if (allowSameOrigin_) {
-                        errors.add(Policy.Severity.Warning, "Duplicate sandbox keyword allow-same-origin", index);
+                        errors.report(DiagnosticCode.DuplicateSandboxKeyword, index, "allow-same-origin");
                     }
                     else {
                         allowSameOrigin_ = true;
                     }
                     break;
-                case "allow-scripts":
+                case AllowScripts:
                     if (allowScripts_) {
-                        errors.add(Policy.Severity.Warning, "Duplicate sandbox keyword allow-scripts", index);
+                        errors.report(DiagnosticCode.DuplicateSandboxKeyword, index, "allow-scripts");
                     }
                     else {
                         allowScripts_ = true;
                     }
                     break;
-                case "allow-storage-access-by-user-activation":
+                case AllowStorageAccessByUserActivation:
                     if (allowStorageAccessByUserActivation_) {
-                        errors.add(Policy.Severity.Warning,
-                                "Duplicate sandbox keyword allow-storage-access-by-user-activation", index);
+                        errors.report(DiagnosticCode.DuplicateSandboxKeyword, index,
+                                "allow-storage-access-by-user-activation");
                     }
                     else {
                         allowStorageAccessByUserActivation_ = true;
                     }
                     break;
-                case "allow-top-navigation":
+                case AllowTopNavigation:
                     if (allowTopNavigation_) {
-                        errors.add(Policy.Severity.Warning, "Duplicate sandbox keyword allow-top-navigation", index);
+                        errors.report(DiagnosticCode.DuplicateSandboxKeyword, index, "allow-top-navigation");
                     }
                     else {
                         allowTopNavigation_ = true;
                     }
                     break;
-                case "allow-top-navigation-by-user-activation":
+                case AllowTopNavigationByUserActivation:
                     if (allowTopNavigationByUserActivation_) {
-                        errors.add(Policy.Severity.Warning,
-                                "Duplicate sandbox keyword allow-top-navigation-by-user-activation", index);
+                        errors.report(DiagnosticCode.DuplicateSandboxKeyword, index,
+                                "allow-top-navigation-by-user-activation");
                     }
                     else {
                         allowTopNavigationByUserActivation_ = true;
@@ -179,12 +202,10 @@ public SandboxDirective(final List<String> values, final DirectiveErrorConsumer
                     break;
                 default:
                     if (token.startsWith("'")) {
-                        errors.add(Policy.Severity.Error,
-                                "Unrecognized sandbox keyword "
-                                        + token + " - note that sandbox keywords do not have \"'\"s", index);
+                        errors.report(DiagnosticCode.QuotedSandboxKeyword, index, token);
                     }
                     else {
-                        errors.add(Policy.Severity.Error, "Unrecognized sandbox keyword " + token, index);
+                        errors.report(DiagnosticCode.UnrecognizedSandboxKeyword, index, token);
                     }
             }
             ++index;
@@ -17,10 +17,14 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Locale;
 import java.util.Optional;
 
-import org.htmlunit.csp.Policy;
+import org.htmlunit.csp.DiagnosticCode;
+import org.htmlunit.csp.HashSourceSet;
+import org.htmlunit.csp.internal.DirectiveAccess;
+import org.htmlunit.csp.internal.HostKind;
+import org.htmlunit.csp.internal.KeywordTable;
+import org.htmlunit.csp.internal.PathSegments;
 import org.htmlunit.csp.value.Hash;
 import org.htmlunit.csp.value.Nonce;
 
@@ -43,19 +47,58 @@
  * </p>
  */
 public class SourceExpressionDirective extends HostSourceDirective {
-    private static final String REPORT_SAMPLE = "'report-sample'";
-    private static final String UNSAFE_INLINE = "'unsafe-inline'";
-    private static final String STRICT_DYNAMIC = "'strict-dynamic'";
-    private static final String UNSAFE_ALLOW_REDIRECTS = "'unsafe-allow-redirects'";
-    private static final String UNSAFE_EVAL = "'unsafe-eval'";
-    private static final String UNSAFE_HASHES = "'unsafe-hashes'";
+    private enum Keyword {
+        UnsafeInline("'unsafe-inline'"),
+        UnsafeEval("'unsafe-eval'"),
+        StrictDynamic("'strict-dynamic'"),
+        UnsafeHashes("'unsafe-hashes'"),
+        /**
+         * <a href="https://developer.mozilla.org/en-US/docs/Web/
+         * HTTP/Headers/Content-Security-Policy/script-src#unsafe_webassembly_execution">
+         * Unsafe WebAssembly execution</a>.
+         */
+        WasmUnsafeEval("'wasm-unsafe-eval'"),
+        ReportSample("'report-sample'"),
+        UnsafeAllowRedirects("'unsafe-allow-redirects'"),
+        UnsafeRedirect("'unsafe-redirect'"),
+        UnsafeHashedAttributes("'unsafe-hashed-attributes'"),
+        Other(null);
 
-    /**
-     * <a href="https://developer.mozilla.org/en-US/docs/Web/
-     * HTTP/Headers/Content-Security-Policy/script-src#unsafe_webassembly_execution">
-     * Unsafe WebAssembly execution</a>
-     */
-    private static final String WASM_UNSAFE_EVAL = "'wasm-unsafe-eval'";
+        private final String keyword_;
+
+        Keyword(final String keyword) {
+            keyword_ = keyword;
+        }
+    }
+
+    private static final KeywordTable<Keyword> KEYWORDS =
+            new KeywordTable<>(Keyword.class, keyword -> keyword.keyword_, Keyword.Other);
+
+    static {
+        DirectiveAccess.set(new DirectiveAccess() {
+            @Override
+            public FrameAncestorsDirective newFrameAncestorsDirective(final List<String> values,
+                    final List<?> parsed, final DirectiveErrorConsumer errors) {
+                return new FrameAncestorsDirective(values, parsed, errors);
+            }
+
+            @Override
+            public SourceExpressionDirective newSourceExpressionDirective(final List<String> values,
+                    final List<?> parsed, final DirectiveErrorConsumer errors) {
+                return new SourceExpressionDirective(values, parsed, errors);
+            }
+
+            @Override
+            public HostKind hostKind(final HostSourceDirective directive, final int index) {
+                return directive.getHostKind(index);
+            }
+
+            @Override
+            public PathSegments hostPath(final HostSourceDirective directive, final int index) {
+                return directive.getHostPath(index);
+            }
+        });
+    }
 
     private boolean unsafeInline_;
     private boolean unsafeEval_;
@@ -68,6 +111,9 @@ public class SourceExpressionDirective extends HostSourceDirective {
     // In practice, these are probably small enough for Lists to be faster than LinkedHashSets
     private final List<Nonce> nonces_ = new ArrayList<>();
     private final List<Hash> hashes_ = new ArrayList<>();
+    // open-addressing table over the nonce values for matchesNonce(), built once parsing is done
+    private final String[] nonceTable_;
+    private final HashSourceSet hashSources_;
 
     /**
      * Parses a source-expression directive from the given list of values.
@@ -81,82 +127,121 @@ public class SourceExpressionDirective extends HostSourceDirective {
      * @param errors consumer that receives parsing errors and warnings
      */
     public SourceExpressionDirective(final List<String> values, final DirectiveErrorConsumer errors) {
+        this(values, null, errors);
+    }
+
+    /**
+     * Creates a source-expression directive from source expressions that are parsed already.
+     * <p>
+     * For every value, {@code parsed} holds the {@link Nonce}, {@link Hash},
+     * {@link org.htmlunit.csp.value.Scheme} or {@link org.htmlunit.csp.value.Host} the value
+     * is the serialization of, or {@code null} for keywords and values to be parsed. These
+     * instances are used as they are instead of parsing the values again. The schemes and
+     * hosts in {@code parsed} must be distinct, they are not checked for duplicates.
+     * </p>
+     *
+     * @param values the raw string values for this directive
+     * @param parsed the parsed form per value, or {@code null} to parse all values
+     * @param errors consumer that receives parsing errors and warnings
+     */
+    SourceExpressionDirective(final List<String> values, final List<?> parsed,
+            final DirectiveErrorConsumer errors) {
         super(values);
 
         int index = 0;
         for (final String token : values) {
+            final Object source = parsed == null ? null : parsed.get(index);
+            if (source instanceof Nonce nonce) {
+                addNonce(nonce, index, errors);
+                ++index;
+                continue;
+            }
+            if (source instanceof Hash hash) {
+                addHash(hash, index, errors);
+                ++index;
+                continue;
+            }
+            if (source != null) {
+                addSourceDuringConstruction(source);
+                ++index;
+                continue;
+            }
+
             // The CSP grammar uses ABNF grammars, whose strings
             // are case-insensitive: https://tools.ietf.org/html/rfc5234
             // This needs to be ASCII-lowercase, so that `'strIct-dynamic'` still parses in Turkey
-            final String lowercaseToken = token.toLowerCase(Locale.ROOT);
-            switch (lowercaseToken) {
-                case UNSAFE_INLINE:
+            switch (KEYWORDS.lookup(token)) {
+                case UnsafeInline:
                     if (unsafeInline_) {
-                        errors.add(Policy.Severity.Warning, "Duplicate source-expression 'unsafe-inline'", index);
+                        errors.report(DiagnosticCode.DuplicateSourceExpression, index,
+                                "source-expression", "'unsafe-inline'");
                     }
                     else {
                         unsafeInline_ = true;
                     }
                     break;
-                case UNSAFE_EVAL:
+                case UnsafeEval:
                     if (unsafeEval_) {
-                        errors.add(Policy.Severity.Warning, "Duplicate source-expression 'unsafe-eval'", index);
+                        errors.report(DiagnosticCode.DuplicateSourceExpression, index,
+                                "source-expression", "'unsafe-eval'");
                     }
                     else {
                         unsafeEval_ = true;
                     }
                     break;
-                case STRICT_DYNAMIC:
+                case StrictDynamic:
                     if (strictDynamic_) {
-                        errors.add(Policy.Severity.Warning, "Duplicate source-expression 'strict-dynamic'", index);
+                        errors.report(DiagnosticCode.DuplicateSourceExpression, index,
+                                "source-expression", "'strict-dynamic'");
                     }
                     else {
                         strictDynamic_ = true;
                     }
                     break;
-                case UNSAFE_HASHES:
+                case UnsafeHashes:
                     if (unsafeHashes_) {
-                        errors.add(Policy.Severity.Warning, "Duplicate source-expression 'unsafe-hashes'", index);
+                        errors.report(DiagnosticCode.DuplicateSourceExpression, index,
+                                "source-expression", "'unsafe-hashes'");
                     }
                     else {
                         unsafeHashes_ = true;
                     }
                     break;
-                case WASM_UNSAFE_EVAL:
+                case WasmUnsafeEval:
                     if (unsafeWasm_) {
-                        errors.add(Policy.Severity.Warning, "Duplicate source-expression " + WASM_UNSAFE_EVAL, index);
+                        errors.report(DiagnosticCode.DuplicateSourceExpression, index,
+                                "source-expression", "'wasm-unsafe-eval'");
                     }
                     else {
                         unsafeWasm_ = true;
                     }
                     break;
-                case REPORT_SAMPLE:
+                case ReportSample:
                     if (reportSample_) {
-                        errors.add(Policy.Severity.Warning, "Duplicate source-expression 'report-sample'", index);
+                        errors.report(DiagnosticCode.DuplicateSourceExpression, index,
+                                "source-expression", "'report-sample'");
                     }
                     else {
                         reportSample_ = true;
                     }
                     break;
-                case UNSAFE_ALLOW_REDIRECTS:
+                case UnsafeAllowRedirects:
                     if (unsafeAllowRedirects_) {
-                        errors.add(Policy.Severity.Warning,
-                                "Duplicate source-expression 'unsafe-allow-redirects'", index);
+                        errors.report(DiagnosticCode.DuplicateSourceExpression, index,
+                                "source-expression", "'unsafe-allow-redirects'");
                     }
                     else {
                         unsafeAllowRedirects_ = true;
                     }
                     break;
-                case "'unsafe-redirect'":
-                    errors.add(Policy.Severity.Error,
-                                    "'unsafe-redirect' has been removed from CSP as of version 2.0", index);
+                case UnsafeRedirect:
+                    errors.report(DiagnosticCode.UnsafeRedirectRemoved, index);
                     break;
-                case "'unsafe-hashed-attributes'":
-                    errors.add(Policy.Severity.Error,
-                            "'unsafe-hashed-attributes' was renamed to 'unsafe-hashes' in June 2018", index);
+                case UnsafeHashedAttributes:
+                    errors.report(DiagnosticCode.UnsafeHashedAttributesRenamed, index);
                     break;
                 default:
-                    if (lowercaseToken.startsWith("'nonce-")) {
+                    if (KeywordTable.startsWithIgnoreCase(token, "'nonce-")) {
                         // the above check is not strictly necessary, but allows us to
                         // give a better message for nonce-likes which don't match the base64 grammar
                         final Optional<Nonce> nonce = Nonce.parseNonce(token);
@@ -164,11 +249,11 @@ public SourceExpressionDirective(final List<String> values, final DirectiveError
                             addNonce(nonce.get(), index, errors);
                         }
                         else {
-                            errors.add(Policy.Severity.Error, "Unrecognised nonce " + token, index);
+                            errors.report(DiagnosticCode.UnrecognizedNonce, index, token);
                         }
                         break;
                     }
-                    else if (lowercaseToken.startsWith("'sha")) {
+                    else if (KeywordTable.startsWithIgnoreCase(token, "'sha")) {
                         // the above check is not strictly necessary, but allows us to give
                         // a better message for hash-likes which don't match the base64 grammar
                         final Optional<Hash> hash = Hash.parseHash(token);
@@ -176,32 +261,56 @@ else if (lowercaseToken.startsWith("'sha")) {
                             addHash(hash.get(), index, errors);
                         }
                         else {
-                            errors.add(Policy.Severity.Error,
-                                    "'sha...' source-expression uses an unrecognized algorithm or "
-                                    + "does not match the base64-value grammar (or is missing its trailing \"'\")",
-                                    index);
+                            errors.report(DiagnosticCode.UnrecognizedHash, index);
                         }
                         break;
                     }
                     else {
-                        addHostOrSchemeDuringConstruction(token, lowercaseToken, "source-expression", index, errors);
+                        addHostOrSchemeDuringConstruction(token, "source-expression", index, errors);
                     }
             }
             ++index;
         }
 
         if (getNone() != null && values.size() > 1) {
-            errors.add(Policy.Severity.Error, "'none' must not be combined with any other source-expression", 1);
+            errors.report(DiagnosticCode.NoneCombined, 1, "source-expression");
         }
 
         if (values.isEmpty()) {
-            errors.add(Policy.Severity.Error, "Source-expression lists cannot be empty (use 'none' instead)", -1);
+            errors.report(DiagnosticCode.EmptySourceList, -1, "Source-expression");
+        }
+
+        nonceTable_ = buildNonceTable(nonces_);
+        hashSources_ = HashSourceSet.of(hashes_);
+    }
+
+    private static String[] buildNonceTable(final List<Nonce> nonces) {
+        if (nonces.isEmpty()) {
+            return null;
+        }
+        int capacity = 2;
+        while (capacity < nonces.size() * 2) {
+            capacity <<= 1;
+        }
+        final String[] table = new String[capacity];
+        for (final Nonce nonce : nonces) {
+            final String value = nonce.base64ValuePart();
+            int slot = spread(value.hashCode()) & (capacity - 1);
+            while (table[slot] != null) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            table[slot] = value;
         }
+        return table;
+    }
+
+    private static int spread(final int hash) {
+        return hash ^ hash >>> 16;
     }
 
     private boolean addNonce(final Nonce nonce, final int index, final DirectiveErrorConsumer errors) {
         if (nonces_.contains(nonce)) {
-            errors.add(Policy.Severity.Warning, "Duplicate nonce " + nonce.toString(), index);
+            errors.report(DiagnosticCode.DuplicateNonce, index, nonce);
             return false;
         }
 
@@ -211,19 +320,17 @@ private boolean addNonce(final Nonce nonce, final int index, final DirectiveErro
 
     private boolean addHash(final Hash hash, final int index, final DirectiveErrorConsumer errors) {
         if (hashes_.contains(hash)) {
-            errors.add(Policy.Severity.Warning, "Duplicate hash " + hash.toString(), index);
+            errors.report(DiagnosticCode.DuplicateHash, index, hash);
             return false;
         }
 
         if (hash.getBase64ValuePart().length() != hash.getAlgorithm().getLength()) {
-            errors.add(Policy.Severity.Warning,
-                    "Wrong length for " + hash.getAlgorithm()
-                    + ": expected " + hash.getAlgorithm().getLength()
-                    + ", got " + hash.getBase64ValuePart().length(), index);
+            errors.report(DiagnosticCode.WrongHashLength, index, hash.getAlgorithm(),
+                    hash.getAlgorithm().getLength(), hash.getBase64ValuePart().length());
         }
 
         if (hash.getBase64ValuePart().contains("_") || hash.getBase64ValuePart().contains("-")) {
-            errors.add(Policy.Severity.Warning, "'_' and '-' in hashes can never match actual elements", index);
+            errors.report(DiagnosticCode.HashNeverMatches, index);
         }
 
         hashes_.add(hash);
@@ -339,6 +446,62 @@ public List<Nonce> getNonces() {
         return Collections.unmodifiableList(nonces_);
     }
 
+    /**
+     * Returns whether the given nonce attribute value matches one of the nonce-sources
+     * of this directive.
+     * <p>
+     * The nonce-sources are looked up in a hash table built when the directive is parsed,
+     * so the check neither allocates nor depends on the number of nonce-sources. The
+     * candidates found are compared in constant time, so the time taken does not tell how
+     * much of a guessed nonce is right. An empty nonce never matches.
+     * </p>
+     *
+     * @param nonce the nonce attribute value of the element
+     * @return {@code true} if the nonce matches a nonce-source
+     * @see <a href="https://w3c.github.io/webappsec-csp/#match-nonce-to-source-list">
+     *      does nonce match source list</a>
+     */
+    public boolean matchesNonce(final CharSequence nonce) {
+        final String[] table = nonceTable_;
+        final int length = nonce.length();
+        if (table == null || length == 0) {
+            return false;
+        }
+
+        int hash;
+        if (nonce instanceof String) {
+            hash = nonce.hashCode();
+        }
+        else {
+            hash = 0;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + nonce.charAt(i);
+            }
+        }
+
+        final int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        boolean matches = false;
+        String candidate;
+        while ((candidate = table[slot]) != null) {
+            matches |= constantTimeEquals(candidate, nonce);
+            slot = (slot + 1) & mask;
+        }
+        return matches;
+    }
+
+    private static boolean constantTimeEquals(final String candidate, final CharSequence nonce) {
+        final int length = candidate.length();
+        if (length != nonce.length()) {
+            return false;
+        }
+        int difference = 0;
+        for (int i = 0; i < length; i++) {
+            difference |= candidate.charAt(i) ^ nonce.charAt(i);
+        }
+        return difference == 0;
+    }
+
     /**
      * Returns an unmodifiable list of hash-sources parsed from this directive.
      *
@@ -347,4 +510,13 @@ public List<Nonce> getNonces() {
     public List<Hash> getHashes() {
         return Collections.unmodifiableList(hashes_);
     }
+
+    /**
+     * Returns the hash-sources of this directive decoded for matching inline content.
+     *
+     * @return the {@link HashSourceSet} built when the directive was parsed
+     */
+    public HashSourceSet getHashSourceSet() {
+        return hashSources_;
+    }
 }
@@ -17,11 +17,11 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Locale;
-import java.util.regex.Pattern;
 
+import org.htmlunit.csp.DiagnosticCode;
 import org.htmlunit.csp.Directive;
-import org.htmlunit.csp.Policy;
+import org.htmlunit.csp.internal.KeywordTable;
+import org.htmlunit.csp.internal.Lexer;
 
 /**
  * Represents the {@code trusted-types} CSP directive.
@@ -39,9 +39,21 @@
  *      trusted-types directive</a>
  */
 public class TrustedTypesDirective extends Directive {
-    // https://w3c.github.io/trusted-types/dist/spec/#trusted-types-csp-directive
-    // tt-policy-name = 1*( ALPHA / DIGIT / "-" / "#" / "=" / "_" / "/" / "@" / "." / "%" )
-    private static final Pattern TT_POLICY_NAME_PATTERN = Pattern.compile("^[A-Za-z0-9\\-#=_/@.%]+$");
+    private enum Keyword {
+        None("'none'"),
+        AllowDuplicates("'allow-duplicates'"),
+        Star("*"),
+        Other(null);
+
+        private final String keyword_;
+
+        Keyword(final String keyword) {
+            keyword_ = keyword;
+        }
+    }
+
+    private static final KeywordTable<Keyword> KEYWORDS =
+            new KeywordTable<>(Keyword.class, keyword -> keyword.keyword_, Keyword.Other);
 
     private boolean none_;
     private boolean allowDuplicates_;
@@ -69,49 +81,47 @@ public TrustedTypesDirective(final List<String> values, final DirectiveErrorCons
             // Note: Chromium incorrectly treats 'allow-duplicates' as case-sensitive,
             // while WebKit correctly treats it as case-insensitive. We follow the spec.
             // See https://issues.chromium.org/issues/472892238
-            final String lowcaseToken = token.toLowerCase(Locale.ROOT);
-            switch (lowcaseToken) {
-                case "'none'":
+            switch (KEYWORDS.lookup(token)) {
+                case None:
                     if (none_) {
-                        errors.add(Policy.Severity.Warning, "Duplicate keyword 'none'", index);
+                        errors.report(DiagnosticCode.DuplicateKeyword, index, "'none'");
                     }
                     else {
                         none_ = true;
                     }
                     break;
-                case "'allow-duplicates'":
+                case AllowDuplicates:
                     if (allowDuplicates_) {
-                        errors.add(Policy.Severity.Warning, "Duplicate keyword 'allow-duplicates'", index);
+                        errors.report(DiagnosticCode.DuplicateKeyword, index, "'allow-duplicates'");
                     }
                     else {
                         allowDuplicates_ = true;
                     }
                     break;
-                case "*":
+                case Star:
                     if (star_) {
-                        errors.add(Policy.Severity.Warning, "Duplicate wildcard *", index);
+                        errors.report(DiagnosticCode.DuplicateWildcard, index);
                     }
                     else {
                         star_ = true;
-                        errors.add(Policy.Severity.Warning,
-                                "Wildcard policy names (*) permit any policy name, which may reduce security", index);
+                        errors.report(DiagnosticCode.WildcardPolicyName, index);
                     }
                     break;
                 default:
                     if (token.startsWith("'") && token.endsWith("'")) {
-                        errors.add(Policy.Severity.Error, "Unrecognized trusted-types keyword " + token, index);
+                        errors.report(DiagnosticCode.UnrecognizedKeyword, index, "trusted-types", token);
                     }
-                    else if (TT_POLICY_NAME_PATTERN.matcher(token).matches()) {
+                    else if (Lexer.isTrustedTypesPolicyName(token, 0, token.length())) {
                         // Policy names are case-sensitive per browser behavior
                         if (policyNames_.contains(token)) {
-                            errors.add(Policy.Severity.Warning, "Duplicate policy name " + token, index);
+                            errors.report(DiagnosticCode.DuplicatePolicyName, index, token);
                         }
                         else {
                             policyNames_.add(token);
                         }
                     }
                     else {
-                        errors.add(Policy.Severity.Error, "Invalid trusted-types policy name " + token, index);
+                        errors.report(DiagnosticCode.InvalidPolicyName, index, token);
                     }
             }
             ++index;
@@ -119,32 +129,27 @@ else if (TT_POLICY_NAME_PATTERN.matcher(token).matches()) {
 
         // Empty directive validation - if no values were provided, warn
         if (values.isEmpty()) {
-            errors.add(Policy.Severity.Warning,
-                    "Empty trusted-types directive allows all policy names (use '*' or 'none' to be explicit)", -1);
+            errors.report(DiagnosticCode.EmptyTrustedTypes, -1);
         }
 
         // 'none' must not be combined with other values
         if (none_ && (star_ || allowDuplicates_ || !policyNames_.isEmpty())) {
-            errors.add(Policy.Severity.Error,
-                    "'none' must not be combined with any other trusted-types expression", -1);
+            errors.report(DiagnosticCode.NoneCombined, -1, "trusted-types expression");
         }
 
         // Wildcard makes specific policy names redundant
         if (star_ && !policyNames_.isEmpty()) {
-            errors.add(Policy.Severity.Warning,
-                    "Wildcard (*) permits any policy name, making specific policy names redundant", -1);
+            errors.report(DiagnosticCode.RedundantPolicyNames, -1);
         }
 
         // 'allow-duplicates' is redundant with wildcard (wildcard already allows everything)
         if (star_ && allowDuplicates_) {
-            errors.add(Policy.Severity.Warning,
-                    "'allow-duplicates' is redundant when wildcard (*) is present", -1);
+            errors.report(DiagnosticCode.RedundantAllowDuplicates, -1);
         }
 
         // 'allow-duplicates' without policy names or wildcard has no effect
         if (allowDuplicates_ && !star_ && policyNames_.isEmpty()) {
-            errors.add(Policy.Severity.Warning,
-                    "'allow-duplicates' has no effect without policy names or wildcard", -1);
+            errors.report(DiagnosticCode.IneffectiveAllowDuplicates, -1);
         }
     }
 
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp.internal;
+
+import java.util.List;
+
+import org.htmlunit.csp.Directive;
+import org.htmlunit.csp.directive.FrameAncestorsDirective;
+import org.htmlunit.csp.directive.HostSourceDirective;
+import org.htmlunit.csp.directive.SourceExpressionDirective;
+
+/**
+ * Gives the {@code org.htmlunit.csp} package access to the directive constructors that take
+ * values parsed already and to the match data the directives keep per host-source. These
+ * constructors trust the values they get and are therefore not public, like the match data;
+ * the directive package registers the only instance when it is initialized.
+ * <p>
+ * As this package is only hidden when the library runs as a module, both the registration
+ * and the lookup check their caller: only {@link SourceExpressionDirective} can register the
+ * instance and only classes of the {@code org.htmlunit.csp} package can get it. Callers keep
+ * the instance in a constant, the check is done once per class.
+ * </p>
+ */
+public abstract class DirectiveAccess {
+    private static final String CSP_PACKAGE = "org.htmlunit.csp";
+    private static final StackWalker WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+    private static volatile DirectiveAccess Instance_;
+
+    /**
+     * Returns the registered instance, initializing the directive package if needed.
+     *
+     * @return the registered instance
+     * @throws IllegalCallerException if the caller is not a class of the {@code org.htmlunit.csp} package
+     */
+    public static DirectiveAccess get() {
+        final Class<?> caller = WALKER.getCallerClass();
+        if (!CSP_PACKAGE.equals(caller.getPackageName())
+                || caller.getClassLoader() != DirectiveAccess.class.getClassLoader()) {
+            throw new IllegalCallerException(caller.getName());
+        }
+
+        DirectiveAccess access = Instance_;
+        if (access == null) {
+            try {
+                Class.forName(SourceExpressionDirective.class.getName(), true,
+                        DirectiveAccess.class.getClassLoader());
+            }
+            catch (final ClassNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+            access = Instance_;
+        }
+        return access;
+    }
+
+    /**
+     * Registers the instance; called once when {@link SourceExpressionDirective} is initialized.
+     *
+     * @param access the instance
+     * @throws IllegalCallerException if the caller is not {@link SourceExpressionDirective}
+     * @throws IllegalStateException if an instance is registered already
+     */
+    public static synchronized void set(final DirectiveAccess access) {
+        final Class<?> caller = WALKER.getCallerClass();
+        if (caller != SourceExpressionDirective.class) {
+            throw new IllegalCallerException(caller.getName());
+        }
+        if (Instance_ != null) {
+            throw new IllegalStateException("DirectiveAccess is set already");
+        }
+        Instance_ = access;
+    }
+
+    /**
+     * Creates a {@code frame-ancestors} directive from values that are parsed already.
+     *
+     * @param values the raw string values for this directive
+     * @param parsed the parsed form per value, or {@code null} to parse all values
+     * @param errors consumer that receives parsing errors and warnings
+     * @return the new directive
+     */
+    public abstract FrameAncestorsDirective newFrameAncestorsDirective(List<String> values, List<?> parsed,
+            Directive.DirectiveErrorConsumer errors);
+
+    /**
+     * Creates a source-expression directive from values that are parsed already.
+     *
+     * @param values the raw string values for this directive
+     * @param parsed the parsed form per value, or {@code null} to parse all values
+     * @param errors consumer that receives parsing errors and warnings
+     * @return the new directive
+     */
+    public abstract SourceExpressionDirective newSourceExpressionDirective(List<String> values, List<?> parsed,
+            Directive.DirectiveErrorConsumer errors);
+
+    /**
+     * Returns the kind of a host-source of the given directive.
+     *
+     * @param directive the directive
+     * @param index the index of the host-source in {@link HostSourceDirective#getHosts()}
+     * @return the kind of the host
+     */
+    public abstract HostKind hostKind(HostSourceDirective directive, int index);
+
+    /**
+     * Returns the decoded path of a host-source of the given directive.
+     *
+     * @param directive the directive
+     * @param index the index of the host-source in {@link HostSourceDirective#getHosts()}
+     * @return the decoded path, or {@code null} if the host-source has no path
+     */
+    public abstract PathSegments hostPath(HostSourceDirective directive, int index);
+}
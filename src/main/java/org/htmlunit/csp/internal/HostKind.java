@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp.internal;
+
+import java.util.Locale;
+
+import org.htmlunit.csp.Constants;
+
+/**
+ * The classification of the host part of a host-source, deciding how it is matched
+ * against the host of a URL per
+ * <a href="https://w3c.github.io/webappsec-csp/#host-part-match">host-part match</a>.
+ * <p>
+ * Host-sources are classified once, when they are added to their directive, so that
+ * matching a URL only runs the regular expressions for IP addresses at parse time.
+ * </p>
+ */
+public enum HostKind {
+    /** The host {@code *}, matching every host. */
+    Wildcard,
+    /** A host starting with {@code *}, e.g. {@code *.example.com}, matching the hosts ending with the rest. */
+    WildcardSuffix,
+    /** The IPv4 loopback address {@code 127.0.0.1}, the only IP address that can match. */
+    IPv4Loopback,
+    /** Any other IPv4 address; never matches. */
+    IPv4,
+    /** The IPv6 loopback address in any of its forms; never matches. */
+    IPv6Loopback,
+    /** Any other IPv6 address, with or without brackets; never matches. */
+    IPv6,
+    /** A host name, matching the same host ignoring case. */
+    Name;
+
+    /**
+     * Classifies the given host part.
+     *
+     * @param host the host part of a host-source
+     * @return the kind of the host
+     */
+    public static HostKind of(final String host) {
+        if ("*".equals(host)) {
+            return Wildcard;
+        }
+        if (host.startsWith("*")) {
+            return WildcardSuffix;
+        }
+        // IPv4 addresses consist of digits and dots and IPv6 addresses contain a colon;
+        // this spares the regular expressions for host names
+        boolean colon = false;
+        boolean digitsAndDots = true;
+        for (int i = 0; i < host.length(); i++) {
+            final char c = host.charAt(i);
+            if (c == ':') {
+                colon = true;
+            }
+            else if (c != '.' && (c < '0' || c > '9')) {
+                digitsAndDots = false;
+            }
+        }
+        if (!colon && !digitsAndDots) {
+            return Name;
+        }
+        if (Constants.IPv4address.matcher(host).find()) {
+            return "127.0.0.1".equals(host) ? IPv4Loopback : IPv4;
+        }
+        if (Constants.IPV6loopback.matcher(host).find()) {
+            return IPv6Loopback;
+        }
+        if (Constants.IPv6addressWithOptionalBracket.matcher(host).find()) {
+            return IPv6;
+        }
+        return Name;
+    }
+
+    /**
+     * Returns whether the given URL host matches a host part of this kind.
+     * <p>
+     * Hosts are compared ignoring case. IP addresses other than {@code 127.0.0.1} never match.
+     * </p>
+     *
+     * @param host the host part of the host-source, classified as this kind
+     * @param urlHost the host of the URL
+     * @return {@code true} if the host matches
+     */
+    public boolean matches(final String host, final String urlHost) {
+        switch (this) {
+            case Wildcard:
+                return true;
+            case WildcardSuffix:
+                return endsWithIgnoreCase(urlHost, host, 1);
+            case IPv4Loopback:
+            case Name:
+                return host.equalsIgnoreCase(urlHost);
+            default:
+                return false;
+        }
+    }
+
+    // whether 's' lowercased ends with the lowercased suffix of 'pattern' starting at 'start'
+    private static boolean endsWithIgnoreCase(final String s, final String pattern, final int start) {
+        final int length = pattern.length() - start;
+        final int offset = s.length() - length;
+        if (offset < 0) {
+            return nonAsciiEndsWith(s, pattern, start);
+        }
+        for (int i = 0; i < length; i++) {
+            final char a = s.charAt(offset + i);
+            final char b = pattern.charAt(start + i);
+            if (a >= 0x80 || b >= 0x80) {
+                // lowercasing may change the length of the strings
+                return nonAsciiEndsWith(s, pattern, start);
+            }
+            if (a != b && toAsciiLowercase(a) != toAsciiLowercase(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean nonAsciiEndsWith(final String s, final String pattern, final int start) {
+        if (isAscii(s) && isAscii(pattern)) {
+            return false;
+        }
+        return s.toLowerCase(Locale.ROOT).endsWith(pattern.substring(start).toLowerCase(Locale.ROOT));
+    }
+
+    private static boolean isAscii(final String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char toAsciiLowercase(final char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
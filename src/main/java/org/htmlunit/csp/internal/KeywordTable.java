@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp.internal;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * Recognizes a fixed set of keywords ASCII case-insensitively without creating
+ * a lowercase copy of the input.
+ * <p>
+ * The keywords are the enum constants of a given type; the table dispatches on
+ * the length and the lowercased first character of the input, so a lookup compares
+ * against at most a handful of candidates. Constants without a keyword (the mapping
+ * function returns {@code null}) are never matched; a lookup that does not match
+ * returns the fallback given at construction.
+ * </p>
+ * <p>
+ * CSP keywords are ABNF strings, which are case-insensitive
+ * (<a href="https://tools.ietf.org/html/rfc5234">RFC 5234</a>). Only ASCII letters are
+ * folded, so {@code 'strIct-dynamic'} is recognized regardless of the default locale.
+ * </p>
+ *
+ * @param <E> the enum type of the keywords
+ */
+public final class KeywordTable<E extends Enum<E>> {
+    private static final int FIRST_CHARS = 128;
+
+    private final E fallback_;
+    private final int maxLength_;
+    private final String[][] keywords_;
+    private final Object[][] constants_;
+
+    /**
+     * Creates a table for all constants of an enum.
+     *
+     * @param type the enum type
+     * @param keyword maps a constant to its keyword in lowercase ASCII, or to {@code null}
+     *        if the constant has no keyword
+     * @param fallback the constant to return if the input is not a keyword, can be {@code null}
+     * @throws IllegalArgumentException if a keyword is empty, not lowercase ASCII or not unique
+     */
+    public KeywordTable(final Class<E> type, final Function<E, String> keyword, final E fallback) {
+        fallback_ = fallback;
+
+        int maxLength = 0;
+        for (final E constant : type.getEnumConstants()) {
+            final String word = keyword.apply(constant);
+            if (word != null) {
+                checkKeyword(word);
+                maxLength = Math.max(maxLength, word.length());
+            }
+        }
+        maxLength_ = maxLength;
+
+        keywords_ = new String[(maxLength + 1) * FIRST_CHARS][];
+        constants_ = new Object[keywords_.length][];
+        for (final E constant : type.getEnumConstants()) {
+            final String word = keyword.apply(constant);
+            if (word == null) {
+                continue;
+            }
+            final int bucket = bucket(word.length(), word.charAt(0));
+            if (keywords_[bucket] == null) {
+                keywords_[bucket] = new String[] {word};
+                constants_[bucket] = new Object[] {constant};
+            }
+            else {
+                if (Arrays.asList(keywords_[bucket]).contains(word)) {
+                    throw new IllegalArgumentException("duplicate keyword " + word);
+                }
+                keywords_[bucket] = Arrays.copyOf(keywords_[bucket], keywords_[bucket].length + 1);
+                keywords_[bucket][keywords_[bucket].length - 1] = word;
+                constants_[bucket] = Arrays.copyOf(constants_[bucket], constants_[bucket].length + 1);
+                constants_[bucket][constants_[bucket].length - 1] = constant;
+            }
+        }
+    }
+
+    private static void checkKeyword(final String word) {
+        if (word.isEmpty()) {
+            throw new IllegalArgumentException("keywords must not be empty");
+        }
+        for (int i = 0; i < word.length(); i++) {
+            final char c = word.charAt(i);
+            if (c >= FIRST_CHARS || c >= 'A' && c <= 'Z') {
+                throw new IllegalArgumentException("keywords must be lowercase ASCII: " + word);
+            }
+        }
+    }
+
+    private static int bucket(final int length, final char lowercaseFirst) {
+        return length * FIRST_CHARS + lowercaseFirst;
+    }
+
+    private static char toLowerCase(final char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    /**
+     * Looks up a keyword.
+     *
+     * @param input the input
+     * @return the constant whose keyword equals the input ignoring ASCII case,
+     *         otherwise the fallback
+     */
+    public E lookup(final CharSequence input) {
+        return lookup(input, 0, input.length());
+    }
+
+    /**
+     * Looks up a keyword in a range of the input.
+     *
+     * @param input the input
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return the constant whose keyword equals the range ignoring ASCII case,
+     *         otherwise the fallback
+     */
+    @SuppressWarnings("unchecked")
+    public E lookup(final CharSequence input, final int start, final int end) {
+        final int length = end - start;
+        if (length <= 0 || length > maxLength_) {
+            return fallback_;
+        }
+        final char first = toLowerCase(input.charAt(start));
+        if (first >= FIRST_CHARS) {
+            return fallback_;
+        }
+        final int bucket = bucket(length, first);
+        final String[] candidates = keywords_[bucket];
+        if (candidates == null) {
+            return fallback_;
+        }
+        for (int c = 0; c < candidates.length; c++) {
+            if (regionMatches(input, start + 1, candidates[c], 1, length - 1)) {
+                return (E) constants_[bucket][c];
+            }
+        }
+        return fallback_;
+    }
+
+    /**
+     * Tests if the input starts with the given prefix, ignoring ASCII case.
+     *
+     * @param input the input
+     * @param lowercasePrefix the prefix in lowercase ASCII
+     * @return {@code true} if the input starts with the prefix
+     */
+    public static boolean startsWithIgnoreCase(final CharSequence input, final String lowercasePrefix) {
+        return input.length() >= lowercasePrefix.length()
+                && regionMatches(input, 0, lowercasePrefix, 0, lowercasePrefix.length());
+    }
+
+    /**
+     * Tests if a range of the input starts with the given prefix, ignoring ASCII case.
+     *
+     * @param input the input
+     * @param start the start of the range
+     * @param end the end of the range
+     * @param lowercasePrefix the prefix in lowercase ASCII
+     * @return {@code true} if the range starts with the prefix
+     */
+    public static boolean startsWithIgnoreCase(final CharSequence input, final int start, final int end,
+            final String lowercasePrefix) {
+        return end - start >= lowercasePrefix.length()
+                && regionMatches(input, start, lowercasePrefix, 0, lowercasePrefix.length());
+    }
+
+    private static boolean regionMatches(final CharSequence input, final int offset,
+            final String lowercase, final int lowercaseOffset, final int length) {
+        for (int i = 0; i < length; i++) {
+            if (toLowerCase(input.charAt(offset + i)) != lowercase.charAt(lowercaseOffset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp.internal;
+
+import org.htmlunit.csp.Constants;
+import org.htmlunit.csp.Utils;
+
+/**
+ * Hand written scanners for the grammars of CSP values.
+ * <p>
+ * These replace the regular expressions in {@link Constants} for parsing; every
+ * scanner runs in linear time, does not backtrack and does not allocate. All
+ * methods work on a range {@code [start, end)} of a {@link CharSequence}, so
+ * tokens can be checked without creating substrings first.
+ * </p>
+ * <p>
+ * The predicates test if the whole range matches the grammar. The patterns in
+ * {@link Constants} are anchored with {@code $}, which in Java also matches in
+ * front of a single trailing line terminator; callers that need to be compatible
+ * with this can use {@link #endIgnoringFinalLineTerminator(CharSequence, int, int)}.
+ * </p>
+ */
+public final class Lexer {
+
+    /** Index of the start of the scheme in the bounds filled by {@link #scanHostSource}. */
+    public static final int SCHEME_START = 0;
+    /** Index of the end of the scheme (excluding {@code "://"}) in the bounds filled by {@link #scanHostSource}. */
+    public static final int SCHEME_END = 1;
+    /** Index of the start of the host in the bounds filled by {@link #scanHostSource}. */
+    public static final int HOST_START = 2;
+    /** Index of the end of the host in the bounds filled by {@link #scanHostSource}. */
+    public static final int HOST_END = 3;
+    /** Index of the start of the port (excluding {@code ':'}) in the bounds filled by {@link #scanHostSource}. */
+    public static final int PORT_START = 4;
+    /** Index of the end of the port in the bounds filled by {@link #scanHostSource}. */
+    public static final int PORT_END = 5;
+    /** Index of the start of the path in the bounds filled by {@link #scanHostSource}. */
+    public static final int PATH_START = 6;
+    /** Index of the end of the path in the bounds filled by {@link #scanHostSource}. */
+    public static final int PATH_END = 7;
+    /** The size of the bounds array required by {@link #scanHostSource}. */
+    public static final int HOST_SOURCE_BOUNDS = 8;
+
+    private static final String ALPHANUMERIC = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+    // https://tools.ietf.org/html/rfc3986#section-3.1
+    private static final boolean[] SCHEME_CHARS = charClass(ALPHANUMERIC + "+-.");
+    // https://w3c.github.io/webappsec-csp/#grammardef-host-char
+    private static final boolean[] HOST_CHARS = charClass(ALPHANUMERIC + "-");
+    // https://tools.ietf.org/html/rfc3986#section-3.3, without pct-encoded
+    private static final boolean[] PCHARS = charClass(ALPHANUMERIC + "-._~" + "!$&'()*+,;=" + ":@");
+    private static final boolean[] HEX_CHARS = charClass("0123456789abcdefABCDEF");
+    // https://tools.ietf.org/html/rfc7230#section-3.2.6
+    private static final boolean[] TCHARS = charClass(ALPHANUMERIC + "!#$%&'*+-.^_`|~");
+    // https://tools.ietf.org/html/rfc2045#section-5.1
+    private static final boolean[] MEDIA_TYPE_CHARS = charClass(ALPHANUMERIC + "!#$%^&*-_+{}|'.`~");
+    // https://w3c.github.io/webappsec-csp/#grammardef-base64-value
+    private static final boolean[] BASE64_CHARS = charClass(ALPHANUMERIC + "+/-_");
+    // https://w3c.github.io/webappsec-csp/#grammardef-directive-name
+    private static final boolean[] DIRECTIVE_NAME_CHARS = charClass(ALPHANUMERIC + "-");
+    // https://w3c.github.io/trusted-types/dist/spec/#tt-policy-name
+    private static final boolean[] TT_POLICY_NAME_CHARS = charClass(ALPHANUMERIC + "-#=_/@.%");
+
+    private static final String[] UNQUOTED_KEYWORDS = {"self", "unsafe-inline", "unsafe-eval", "unsafe-redirect",
+        "none", "strict-dynamic", "unsafe-hashes", "report-sample", "unsafe-allow-redirects", "wasm-unsafe-eval"};
+
+    private Lexer() {
+        // Utility class
+    }
+
+    private static boolean[] charClass(final String members) {
+        final boolean[] table = new boolean[128];
+        for (int i = 0; i < members.length(); i++) {
+            table[members.charAt(i)] = true;
+        }
+        return table;
+    }
+
+    private static boolean is(final boolean[] charClass, final char c) {
+        return c < 128 && charClass[c];
+    }
+
+    private static boolean allOf(final boolean[] charClass, final CharSequence input, final int start, final int end) {
+        if (start >= end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (!is(charClass, input.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests if a character is a line terminator in the sense of {@link java.util.regex.Pattern}.
+     *
+     * @param c the character
+     * @return {@code true} for line feed, carriage return, next line, line separator and paragraph separator
+     */
+    public static boolean isLineTerminator(final char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * Returns the end of the range without a single trailing line terminator
+     * ({@code "\r\n"} counts as one), which is where {@code $} matches in front of it.
+     *
+     * @param input the input
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return {@code end}, or the position of the trailing line terminator
+     */
+    public static int endIgnoringFinalLineTerminator(final CharSequence input, final int start, final int end) {
+        if (end - start >= 2 && input.charAt(end - 2) == '\r' && input.charAt(end - 1) == '\n') {
+            return end - 2;
+        }
+        if (end > start && isLineTerminator(input.charAt(end - 1))) {
+            return end - 1;
+        }
+        return end;
+    }
+
+    // where a non-multiline '$' matches
+    private static boolean isAtEnd(final CharSequence input, final int start, final int index, final int end) {
+        if (index == end) {
+            return true;
+        }
+        if (index == end - 2) {
+            return input.charAt(index) == '\r' && input.charAt(index + 1) == '\n';
+        }
+        if (index == end - 1) {
+            final char c = input.charAt(index);
+            if (c == '\n') {
+                // no match between \r and \n
+                return index == start || input.charAt(index - 1) != '\r';
+            }
+            return isLineTerminator(c);
+        }
+        return false;
+    }
+
+    // returns the end of the scheme-part starting at start, or -1 if there is none
+    private static int scanSchemePart(final CharSequence input, final int start, final int end) {
+        if (start >= end) {
+            return -1;
+        }
+        final char first = input.charAt(start);
+        if (!(first >= 'a' && first <= 'z' || first >= 'A' && first <= 'Z')) {
+            return -1;
+        }
+        int i = start + 1;
+        while (i < end && is(SCHEME_CHARS, input.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Tests if the range is a scheme followed by a colon, e.g. {@code https:}.
+     *
+     * @param input the input
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return {@code true} if the range matches {@code scheme ":"}
+     * @see <a href="https://w3c.github.io/webappsec-csp/#grammardef-scheme-source">scheme-source</a>
+     */
+    public static boolean isSchemeSource(final CharSequence input, final int start, final int end) {
+        return end > start && scanSchemePart(input, start, end) == end - 1 && input.charAt(end - 1) == ':';
+    }
+
+    /**
+     * Returns the position of the colon after a scheme at the start of the range.
+     *
+     * @param input the input
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return the index of the {@code ':'} following the scheme, or {@code -1}
+     *         if the range does not start with a scheme followed by a colon
+     */
+    public static int scanSchemePrefix(final CharSequence input, final int start, final int end) {
+        final int schemeEnd = scanSchemePart(input, start, end);
+        if (schemeEnd != -1 && schemeEnd < end && input.charAt(schemeEnd) == ':') {
+            return schemeEnd;
+        }
+        return -1;
+    }
+
+    /**
+     * Scans a host-source and records the bounds of its parts.
+     * <p>
+     * Accepts the same inputs as {@link Constants#HOST_SOURCE_PATTERN}; a query and
+     * a fragment are tolerated but not recorded. The bounds of absent parts are set
+     * to {@code -1}.
+     * </p>
+     *
+     * @param input the input
+     * @param start the start of the range
+     * @param end the end of the range
+     * @param bounds an array of at least {@link #HOST_SOURCE_BOUNDS} elements receiving
+     *        the bounds; indexed by {@link #SCHEME_START}, {@link #HOST_START} and so on
+     * @return {@code true} if the range is a host-source
+     * @see <a href="https://w3c.github.io/webappsec-csp/#grammardef-host-source">host-source</a>
+     */
+    public static boolean scanHostSource(final CharSequence input, final int start, final int end,
+            final int[] bounds) {
+        int i = start;
+
+        // scheme-part "://"
+        bounds[SCHEME_START] = -1;
+        bounds[SCHEME_END] = -1;
+        final int schemeEnd = scanSchemePart(input, start, end);
+        if (schemeEnd != -1 && schemeEnd + 3 <= end && input.charAt(schemeEnd) == ':'
+                && input.charAt(schemeEnd + 1) == '/' && input.charAt(schemeEnd + 2) == '/') {
+            bounds[SCHEME_START] = start;
+            bounds[SCHEME_END] = schemeEnd;
+            i = schemeEnd + 3;
+        }
+
+        // host-part = "*" / [ "*." ] 1*host-char *( "." 1*host-char )
+        bounds[HOST_START] = i;
+        if (i < end && input.charAt(i) == '*') {
+            if (i + 2 < end && input.charAt(i + 1) == '.' && is(HOST_CHARS, input.charAt(i + 2))) {
+                i = scanHostLabels(input, i + 2, end);
+            }
+            else {
+                i++;
+            }
+        }
+        else if (i < end && is(HOST_CHARS, input.charAt(i))) {
+            i = scanHostLabels(input, i, end);
+        }
+        else {
+            return false;
+        }
+        bounds[HOST_END] = i;
+
+        // port-part = ":" ( 1*DIGIT / "*" )
+        bounds[PORT_START] = -1;
+        bounds[PORT_END] = -1;
+        if (i + 1 < end && input.charAt(i) == ':') {
+            final char c = input.charAt(i + 1);
+            if (c == '*') {
+                bounds[PORT_START] = i + 1;
+                bounds[PORT_END] = i + 2;
+                i += 2;
+            }
+            else if (c >= '0' && c <= '9') {
+                bounds[PORT_START] = ++i;
+                while (i < end && input.charAt(i) >= '0' && input.charAt(i) <= '9') {
+                    i++;
+                }
+                bounds[PORT_END] = i;
+            }
+        }
+
+        // path-part, path-abempty from RFC 3986
+        bounds[PATH_START] = -1;
+        bounds[PATH_END] = -1;
+        if (i < end && input.charAt(i) == '/') {
+            bounds[PATH_START] = i;
+            while (i < end) {
+                final char c = input.charAt(i);
+                if (c == '/' || is(PCHARS, c)) {
+                    i++;
+                }
+                else if (c == '%' && i + 2 < end
+                        && is(HEX_CHARS, input.charAt(i + 1)) && is(HEX_CHARS, input.charAt(i + 2))) {
+                    i += 3;
+                }
+                else {
+                    break;
+                }
+            }
+            bounds[PATH_END] = i;
+        }
+
+        // [ "?" query ] [ "#" fragment ], the fragment does not extend over line terminators
+        if (i < end && input.charAt(i) == '?') {
+            while (i < end && input.charAt(i) != '#') {
+                i++;
+            }
+        }
+        if (i < end && input.charAt(i) == '#') {
+            i++;
+            while (i < end && !isLineTerminator(input.charAt(i))) {
+                i++;
+            }
+        }
+        return isAtEnd(input, start, i, end);
+    }
+
+    /**
+     * Returns the port recorded by {@link #scanHostSource(CharSequence, int, int, int[])}.
+     *
+     * @param input the scanned input
+     * @param bounds the bounds filled by the scan
+     * @param defaultPort the port to use if the input has none
+     * @return the port, {@link Constants#WILDCARD_PORT} for {@code :*}, or {@code defaultPort}
+     */
+    public static int parsePort(final CharSequence input, final int[] bounds, final int defaultPort) {
+        final int start = bounds[PORT_START];
+        if (start == -1) {
+            return defaultPort;
+        }
+        if (input.charAt(start) == '*') {
+            return Constants.WILDCARD_PORT;
+        }
+        return Integer.parseInt(input, start, bounds[PORT_END], 10);
+    }
+
+    // 1*host-char *( "." 1*host-char ), start must point to a host-char
+    private static int scanHostLabels(final CharSequence input, final int start, final int end) {
+        int i = start + 1;
+        while (i < end) {
+            final char c = input.charAt(i);
+            if (is(HOST_CHARS, c)) {
+                i++;
+            }
+            else if (c == '.' && i + 1 < end && is(HOST_CHARS, input.charAt(i + 1))) {
+                i += 2;
+            }
+            else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Tests if the range is an RFC 7230 token.
+     *
+     * @param input the input
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return {@code true} if the range is a non-empty sequence of {@code tchar}s
+     * @see <a href="https://tools.ietf.org/html/rfc7230#section-3.2.6">RFC 7230 section 3.2.6</a>
+     */
+    public static boolean isRFC7230Token(final CharSequence input, final int start, final int end) {
+        return allOf(TCHARS, input, start, end);
+    }
+
+    /**
+     * Returns the position of the slash of a media type.
+     *
+     * @param input the input
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return the index of the {@code '/'} separating type and subtype,
+     *         or {@code -1} if the range is not a media type
+     * @see <a href="https://tools.ietf.org/html/rfc2045#section-5.1">RFC 2045 section 5.1</a>
+     */
+    public static int scanMediaType(final CharSequence input, final int start, final int end) {
+        int i = start;
+        while (i < end && is(MEDIA_TYPE_CHARS, input.charAt(i))) {
+            i++;
+        }
+        if (i == start || i >= end || input.charAt(i) != '/' || !allOf(MEDIA_TYPE_CHARS, input, i + 1, end)) {
+            return -1;
+        }
+        return i;
+    }
+
+    /**
+     * Tests if the range contains a base64-value match.
+     * <p>
+     * Like the unanchored {@link Utils#IS_BASE64_VALUE} this is {@code true} as soon as
+     * the range contains a single base64 character.
+     * </p>
+     *
+     * @param input the input
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return {@code true} if the range contains a base64 character
+     */
+    public static boolean containsBase64Value(final CharSequence input, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            if (is(BASE64_CHARS, input.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tests if the range is a valid directive name.
+     *
+     * @param input the input
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return {@code true} if the range is a non-empty sequence of {@code ALPHA / DIGIT / "-"}
+     * @see <a href="https://w3c.github.io/webappsec-csp/#grammardef-directive-name">directive-name</a>
+     */
+    public static boolean isDirectiveName(final CharSequence input, final int start, final int end) {
+        return allOf(DIRECTIVE_NAME_CHARS, input, start, end);
+    }
+
+    /**
+     * Tests if the range is a valid trusted-types policy name.
+     *
+     * @param input the input
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return {@code true} if the range is a non-empty sequence of
+     *         {@code ALPHA / DIGIT / "-" / "#" / "=" / "_" / "/" / "@" / "." / "%"}
+     * @see <a href="https://w3c.github.io/trusted-types/dist/spec/#tt-policy-name">tt-policy-name</a>
+     */
+    public static boolean isTrustedTypesPolicyName(final CharSequence input, final int start, final int end) {
+        return allOf(TT_POLICY_NAME_CHARS, input, start, end);
+    }
+
+    /**
+     * Tests if the range is a source-expression keyword without its single quotes,
+     * e.g. {@code self} instead of {@code 'self'}. The comparison is case-sensitive.
+     *
+     * @param input the input
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return {@code true} if the range is one of the keywords of {@link Constants#UNQUOTED_KEYWORD_PATTERN}
+     */
+    public static boolean isUnquotedKeyword(final CharSequence input, final int start, final int end) {
+        for (final String keyword : UNQUOTED_KEYWORDS) {
+            if (regionEquals(input, start, end, keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionEquals(final CharSequence input, final int start, final int end,
+            final String expected) {
+        if (end - start != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (input.charAt(start + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
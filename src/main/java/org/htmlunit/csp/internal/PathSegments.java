@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The path of a host-source, split on {@code /} into percent-decoded segments.
+ * <p>
+ * The segments are decoded once, when the host-source is added to its directive, into
+ * the bytes of their UTF-8 encoding. {@link #matches(CharSequence)} walks the path of a
+ * URL in place and compares its segments byte by byte while decoding them, without
+ * creating intermediate lists or strings. Percent-decoding follows the
+ * <a href="https://url.spec.whatwg.org/#percent-decode">URL Standard</a>: a {@code %}
+ * that does not start a valid escape is kept as-is and {@code +} is not a space.
+ * </p>
+ *
+ * @see <a href="https://w3c.github.io/webappsec-csp/#path-part-match">path-part match</a>
+ */
+public final class PathSegments {
+    private static final byte[][] NO_SEGMENTS = {};
+
+    private final String path_;
+    // the segments to compare; for a path ending with '/' the trailing empty segment is dropped
+    private final byte[][] segments_;
+    // a path not ending with '/' only matches URL paths with the same number of segments
+    private final boolean exact_;
+
+    private PathSegments(final String path, final byte[][] segments, final boolean exact) {
+        path_ = path;
+        segments_ = segments;
+        exact_ = exact;
+    }
+
+    /**
+     * Splits and decodes the given host-source path.
+     *
+     * @param path the path part of a host-source (e.g. {@code "/scripts/"})
+     * @return the path segments
+     */
+    public static PathSegments of(final String path) {
+        if (path.isEmpty()) {
+            return new PathSegments(path, NO_SEGMENTS, false);
+        }
+
+        final List<byte[]> segments = new ArrayList<>();
+        final ByteArrayOutputStream segment = new ByteArrayOutputStream();
+        int i = 0;
+        while (i < path.length()) {
+            final char c = path.charAt(i);
+            if (c == '/') {
+                segments.add(segment.toByteArray());
+                segment.reset();
+                i++;
+            }
+            else if (c == '%' && isEscape(path, i, path.length())) {
+                segment.write(hexValue(path.charAt(i + 1)) << 4 | hexValue(path.charAt(i + 2)));
+                i += 3;
+            }
+            else {
+                final int codePoint = codePointAt(path, i, path.length());
+                for (int n = 0; n < utf8Length(codePoint); n++) {
+                    segment.write(utf8Byte(codePoint, n));
+                }
+                i += Character.charCount(codePoint);
+            }
+        }
+
+        final boolean exact = path.charAt(path.length() - 1) != '/';
+        if (exact) {
+            segments.add(segment.toByteArray());
+        }
+        return new PathSegments(path, segments.toArray(NO_SEGMENTS), exact);
+    }
+
+    /**
+     * Returns whether the given URL path matches this path per
+     * <a href="https://w3c.github.io/webappsec-csp/#path-part-match">path-part match</a>.
+     * <p>
+     * An empty path matches every URL path. A path ending with {@code /} matches the URL
+     * paths starting with the same segments, any other path only the URL paths with exactly
+     * the same segments. Segments are compared after percent-decoding.
+     * </p>
+     *
+     * @param urlPath the path of the URL, {@code null} is treated as empty
+     * @return {@code true} if the URL path matches
+     */
+    public boolean matches(final CharSequence urlPath) {
+        if (path_.isEmpty()) {
+            return true;
+        }
+
+        final int length = urlPath == null ? 0 : urlPath.length();
+        if (length == 0) {
+            return "/".equals(path_);
+        }
+
+        int start = 0;
+        for (final byte[] segment : segments_) {
+            if (start > length) {
+                // the URL path has fewer segments
+                return false;
+            }
+            final int end = matchSegment(segment, urlPath, start, length);
+            if (end == -1) {
+                return false;
+            }
+            start = end + 1;
+        }
+
+        // 'start' is beyond the end of the URL path if its last segment has been compared
+        if (exact_) {
+            return start > length;
+        }
+        return start <= length;
+    }
+
+    // compares the segment of the URL path beginning at 'start' with the given decoded
+    // segment, returns the end of the URL path segment or -1
+    private static int matchSegment(final byte[] segment, final CharSequence urlPath, final int start,
+            final int length) {
+        int k = 0;
+        int i = start;
+        while (i < length) {
+            final char c = urlPath.charAt(i);
+            if (c == '/') {
+                break;
+            }
+            if (c == '%' && isEscape(urlPath, i, length)) {
+                if (k == segment.length
+                        || segment[k] != (byte) (hexValue(urlPath.charAt(i + 1)) << 4
+                                                    | hexValue(urlPath.charAt(i + 2)))) {
+                    return -1;
+                }
+                k++;
+                i += 3;
+            }
+            else if (c < 0x80) {
+                if (k == segment.length || segment[k] != (byte) c) {
+                    return -1;
+                }
+                k++;
+                i++;
+            }
+            else {
+                final int codePoint = codePointAt(urlPath, i, length);
+                final int byteCount = utf8Length(codePoint);
+                if (k + byteCount > segment.length) {
+                    return -1;
+                }
+                for (int n = 0; n < byteCount; n++) {
+                    if (segment[k++] != utf8Byte(codePoint, n)) {
+                        return -1;
+                    }
+                }
+                i += Character.charCount(codePoint);
+            }
+        }
+        return k == segment.length ? i : -1;
+    }
+
+    private static boolean isEscape(final CharSequence s, final int i, final int length) {
+        return i + 2 < length && hexValue(s.charAt(i + 1)) != -1 && hexValue(s.charAt(i + 2)) != -1;
+    }
+
+    private static int hexValue(final char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    // lone surrogates are returned as they are and encoded like other code points,
+    // so that they only ever match themselves
+    private static int codePointAt(final CharSequence s, final int i, final int length) {
+        final char c = s.charAt(i);
+        if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+            return Character.toCodePoint(c, s.charAt(i + 1));
+        }
+        return c;
+    }
+
+    private static int utf8Length(final int codePoint) {
+        if (codePoint < 0x80) {
+            return 1;
+        }
+        if (codePoint < 0x800) {
+            return 2;
+        }
+        if (codePoint < 0x10000) {
+            return 3;
+        }
+        return 4;
+    }
+
+    private static byte utf8Byte(final int codePoint, final int n) {
+        final int byteCount = utf8Length(codePoint);
+        if (byteCount == 1) {
+            return (byte) codePoint;
+        }
+        if (n == 0) {
+            // 0xC0, 0xE0 or 0xF0 followed by the high bits
+            return (byte) ((0xF00 >> byteCount) & 0xF0 | codePoint >> (6 * (byteCount - 1)));
+        }
+        return (byte) (0x80 | (codePoint >> (6 * (byteCount - 1 - n))) & 0x3F);
+    }
+
+    /**
+     * Returns the path these segments were created from.
+     *
+     * @return the host-source path
+     */
+    @Override
+    public String toString() {
+        return path_;
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * Scanners and lookup tables shared by the parsers of the other packages, and the
+ * access to the directive constructors that are not public.
+ * <p>
+ * This package is not exported by the module and is not part of the API; its
+ * content may change in any release.
+ * </p>
+ */
+package org.htmlunit.csp.internal;
@@ -15,9 +15,8 @@
 package org.htmlunit.csp.url;
 
 import java.util.Optional;
-import java.util.regex.Matcher;
 
-import org.htmlunit.csp.Constants;
+import org.htmlunit.csp.internal.Lexer;
 
 /**
  * Represents an opaque (non-hierarchical) URL that has a scheme and an opaque value
@@ -65,12 +64,10 @@ public GUID(final String scheme, final String value) {
      *         or empty if the value does not begin with a valid scheme
      */
     public static Optional<GUID> parseGUID(final String value) {
-        final Matcher matcher = Constants.SCHEME_PATTERN.matcher(value);
-        if (!matcher.find()) {
+        final int colon = Lexer.scanSchemePrefix(value, 0, value.length());
+        if (colon == -1) {
             return Optional.empty();
         }
-        String scheme = matcher.group("scheme");
-        scheme = scheme.substring(0, scheme.length() - 1);  // + 1 for the trailing ":"
-        return Optional.of(new GUID(scheme, value.substring(scheme.length() + 1)));
+        return Optional.of(new GUID(value.substring(0, colon), value.substring(colon + 1)));
     }
 }
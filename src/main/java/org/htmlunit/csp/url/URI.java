@@ -16,9 +16,9 @@
 
 import java.util.Locale;
 import java.util.Optional;
-import java.util.regex.Matcher;
 
 import org.htmlunit.csp.Constants;
+import org.htmlunit.csp.internal.Lexer;
 
 /**
  * Represents a hierarchical URI with scheme, host, port, and path components.
@@ -63,28 +63,16 @@ public URI(final String scheme, final String host, final int port, final String
      *         or has no scheme
      */
     public static Optional<URI> parseURI(final String uri) {
-        final Matcher matcher = Constants.HOST_SOURCE_PATTERN.matcher(uri);
-        if (!matcher.find()) {
+        final int[] bounds = new int[Lexer.HOST_SOURCE_BOUNDS];
+        if (!Lexer.scanHostSource(uri, 0, uri.length(), bounds) || bounds[Lexer.SCHEME_START] == -1) {
             return Optional.empty();
         }
-        String scheme = matcher.group("scheme");
-        if (scheme == null) {
-            return Optional.empty();
-        }
-        scheme = scheme.substring(0, scheme.length() - 3);
-        final String portString = matcher.group("port");
-        final int port;
-        if (portString == null) {
-            port = URI.defaultPortForProtocol(scheme.toLowerCase(Locale.ROOT));
-        }
-        else {
-            port = ":*".equals(portString) ? Constants.WILDCARD_PORT : Integer.parseInt(portString.substring(1));
-        }
-        final String host = matcher.group("host");
-        String path = matcher.group("path");
-        if (path == null) {
-            path = "";
-        }
+        final String scheme = uri.substring(bounds[Lexer.SCHEME_START], bounds[Lexer.SCHEME_END]);
+        final int port = Lexer.parsePort(uri, bounds, URI.defaultPortForProtocol(scheme.toLowerCase(Locale.ROOT)));
+        final String host = uri.substring(bounds[Lexer.HOST_START], bounds[Lexer.HOST_END]);
+        final String path = bounds[Lexer.PATH_START] == -1
+                                ? ""
+                                : uri.substring(bounds[Lexer.PATH_START], bounds[Lexer.PATH_END]);
         return Optional.of(new URI(scheme, host, port, path));
     }
 
@@ -16,9 +16,9 @@
 
 import java.util.Locale;
 import java.util.Optional;
-import java.util.regex.Matcher;
 
 import org.htmlunit.csp.Constants;
+import org.htmlunit.csp.internal.Lexer;
 import org.htmlunit.csp.url.URI;
 
 /**
@@ -53,24 +53,19 @@ public record Host(String scheme, String host, int port, String path) {
      *         or empty if the value does not match the host-source grammar
      */
     public static Optional<Host> parseHost(final String value) {
-        final Matcher matcher = Constants.HOST_SOURCE_PATTERN.matcher(value);
-        if (matcher.find()) {
-            String scheme = matcher.group("scheme");
-            if (scheme != null) {
-                scheme = scheme.substring(0, scheme.length() - 3).toLowerCase(Locale.ROOT);
-            }
-            final String portString = matcher.group("port");
-            final int port;
-            if (portString == null) {
-                port = Constants.EMPTY_PORT;
-            }
-            else {
-                port = ":*".equals(portString) ? Constants.WILDCARD_PORT : Integer.parseInt(portString.substring(1));
+        final int[] bounds = new int[Lexer.HOST_SOURCE_BOUNDS];
+        if (Lexer.scanHostSource(value, 0, value.length(), bounds)) {
+            String scheme = null;
+            if (bounds[Lexer.SCHEME_START] != -1) {
+                scheme = value.substring(bounds[Lexer.SCHEME_START], bounds[Lexer.SCHEME_END]).toLowerCase(Locale.ROOT);
             }
+            final int port = Lexer.parsePort(value, bounds, Constants.EMPTY_PORT);
             // Hosts are only consumed lowercase: https://w3c.github.io/webappsec-csp/#host-part-match
-            // There is no possible NPE here; host is not optional
-            final String host = matcher.group("host").toLowerCase(Locale.ROOT);
-            final String path = matcher.group("path");
+            final String host = value.substring(bounds[Lexer.HOST_START], bounds[Lexer.HOST_END])
+                                    .toLowerCase(Locale.ROOT);
+            final String path = bounds[Lexer.PATH_START] == -1
+                                    ? null
+                                    : value.substring(bounds[Lexer.PATH_START], bounds[Lexer.PATH_END]);
 
             // TODO contemplate warning for paths which contain `//`, `/../`, or `/./`,
             // since those will never match an actual request
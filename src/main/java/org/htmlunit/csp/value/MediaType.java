@@ -16,9 +16,8 @@
 
 import java.util.Locale;
 import java.util.Optional;
-import java.util.regex.Matcher;
 
-import org.htmlunit.csp.Constants;
+import org.htmlunit.csp.internal.Lexer;
 
 /**
  * Represents a media type (MIME type) value used by the (deprecated)
@@ -47,12 +46,14 @@ public record MediaType(String type, String subtype) {
      *         or empty if the value does not match the media-type grammar
      */
     public static Optional<MediaType> parseMediaType(final String value) {
-        final Matcher matcher = Constants.MEDIA_TYPE_PATTERN.matcher(value);
-        if (matcher.find()) {
+        // like the former pattern, tolerate a trailing line terminator
+        final int end = Lexer.endIgnoringFinalLineTerminator(value, 0, value.length());
+        final int slash = Lexer.scanMediaType(value, 0, end);
+        if (slash != -1) {
             // plugin type matching is ASCII case-insensitive
             // https://w3c.github.io/webappsec-csp/#plugin-types-post-request-check
-            final String type = matcher.group("type").toLowerCase(Locale.ROOT);
-            final String subtype = matcher.group("subtype").toLowerCase(Locale.ROOT);
+            final String type = value.substring(0, slash).toLowerCase(Locale.ROOT);
+            final String subtype = value.substring(slash + 1, end).toLowerCase(Locale.ROOT);
             return Optional.of(new MediaType(type, subtype));
         }
         return Optional.empty();
@@ -15,9 +15,8 @@
 package org.htmlunit.csp.value;
 
 import java.util.Optional;
-import java.util.regex.Matcher;
 
-import org.htmlunit.csp.Constants;
+import org.htmlunit.csp.internal.Lexer;
 
 /**
  * Represents an RFC 7230 token value, used as the value of the
@@ -46,8 +45,8 @@ public record RFC7230Token(String value) {
      *         or empty if the value does not match the RFC 7230 token grammar
      */
     public static Optional<RFC7230Token> parseRFC7230Token(final String value) {
-        final Matcher matcher = Constants.rfc7230TokenPattern.matcher(value);
-        if (matcher.find()) {
+        // like the former pattern, tolerate a trailing line terminator
+        if (Lexer.isRFC7230Token(value, 0, Lexer.endIgnoringFinalLineTerminator(value, 0, value.length()))) {
             return Optional.of(new RFC7230Token(value));
         }
 
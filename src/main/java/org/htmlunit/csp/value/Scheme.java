@@ -17,7 +17,7 @@
 import java.util.Locale;
 import java.util.Optional;
 
-import org.htmlunit.csp.Constants;
+import org.htmlunit.csp.internal.Lexer;
 
 /**
  * Represents a CSP scheme-source value, e.g. {@code https:} or {@code data:}.
@@ -47,7 +47,7 @@ public record Scheme(String value) {
      *         or empty if the value does not match the scheme-source grammar
      */
     public static Optional<Scheme> parseScheme(final String value) {
-        if (value.matches("^" + Constants.SCHEME_PART + ":$")) {
+        if (Lexer.isSchemeSource(value, 0, value.length())) {
             // https://tools.ietf.org/html/rfc3986#section-3.1
             // "Although schemes are case-insensitive, the canonical form is lowercase"
             return Optional.of(new Scheme(value.substring(0, value.length() - 1).toLowerCase(Locale.ROOT)));
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+
+import org.htmlunit.csp.CheckRequest.Destination;
+import org.htmlunit.csp.url.URI;
+import org.htmlunit.csp.url.URLWithScheme;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the answers of {@link Policy#check} and {@link CompiledPolicy#check}
+ * with the ones of the {@code allows*} methods.
+ */
+public class CheckRequestTest extends TestBase {
+
+    private static final List<String> STRINGS = Arrays.asList(null, "", "abc", "xyz", "alert(1)",
+            "sha256-n4bQgYhMfWWaL+qgxVrQFaO/TxsrC4Is0V1sFbDwCgg=");
+    private static final List<String> NONCES = Arrays.asList(null, "abc",
+            "sha256-n4bQgYhMfWWaL+qgxVrQFaO/TxsrC4Is0V1sFbDwCgg=");
+    private static final List<Boolean> BOOLEANS = Arrays.asList(null, Boolean.TRUE, Boolean.FALSE);
+
+    @Test
+    public void sameAnswersForUrls() throws Exception {
+        final List<URLWithScheme> urls = new ArrayList<>(CompiledPolicyTest.URLS);
+        urls.add(null);
+        final List<URLWithScheme> origins = new ArrayList<>(CompiledPolicyTest.ORIGINS);
+        origins.add(null);
+
+        final CheckRequest request = new CheckRequest();
+        for (final Policy policy : CompiledPolicyTest.policies()) {
+            final CompiledPolicy compiled = policy.compile();
+            for (final URLWithScheme origin : origins) {
+                for (final URLWithScheme url : urls) {
+                    final Optional<URLWithScheme> u = Optional.ofNullable(url);
+                    final Optional<URLWithScheme> o = Optional.ofNullable(origin);
+                    request.reset().setOrigin(origin).setUrl(url);
+
+                    assertCheck(policy.allowsImage(u, o), policy, compiled, request, Destination.Image);
+                    assertCheck(policy.allowsFont(u, o), policy, compiled, request, Destination.Font);
+                    assertCheck(policy.allowsMedia(u, o), policy, compiled, request, Destination.Media);
+                    assertCheck(policy.allowsObject(u, o), policy, compiled, request, Destination.Object);
+                    assertCheck(policy.allowsFrame(u, o), policy, compiled, request, Destination.Frame);
+                    assertCheck(policy.allowsWorker(u, o), policy, compiled, request, Destination.Worker);
+                    assertCheck(policy.allowsApplicationManifest(u, o), policy, compiled, request,
+                            Destination.Manifest);
+                    assertCheck(policy.allowsPrefetch(u, o), policy, compiled, request, Destination.Prefetch);
+                    assertCheck(policy.allowsConnection(u, o), policy, compiled, request, Destination.Connection);
+                    assertCheck(policy.allowsFrameAncestor(u, o), policy, compiled, request,
+                            Destination.FrameAncestor);
+
+                    for (final Boolean redirected : BOOLEANS) {
+                        request.setRedirected(redirected).setRedirectedTo(url == null ? null : origin);
+                        final Optional<Boolean> r = Optional.ofNullable(redirected);
+                        final Optional<URLWithScheme> to = Optional.ofNullable(request.getRedirectedTo());
+                        assertCheck(policy.allowsNavigation(u, r, to, o), policy, compiled, request,
+                                Destination.Navigation);
+                        assertCheck(policy.allowsFormAction(u, r, to, o), policy, compiled, request,
+                                Destination.FormAction);
+                    }
+
+                    // the nonce values double as integrity metadata
+                    for (final String nonce : NONCES) {
+                        final Optional<String> n = Optional.ofNullable(nonce);
+                        request.setNonce(nonce);
+                        assertCheck(policy.allowsExternalStyle(n, u, o), policy, compiled, request,
+                                Destination.Style);
+                        for (final Boolean parserInserted : BOOLEANS) {
+                            request.setParserInserted(parserInserted).setIntegrity(nonce);
+                            assertCheck(policy.allowsExternalScript(n, n, u, Optional.ofNullable(parserInserted), o),
+                                    policy, compiled, request, Destination.Script);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sameAnswersForInlineContent() throws Exception {
+        final List<URLWithScheme> origins = new ArrayList<>(CompiledPolicyTest.ORIGINS);
+        origins.add(null);
+
+        final CheckRequest request = new CheckRequest();
+        for (final Policy policy : CompiledPolicyTest.policies()) {
+            final CompiledPolicy compiled = policy.compile();
+            for (final String source : STRINGS) {
+                final Optional<String> s = Optional.ofNullable(source);
+                request.reset().setSource(source);
+                assertCheck(policy.allowsScriptAsAttribute(s), policy, compiled, request,
+                        Destination.ScriptAttribute);
+                assertCheck(policy.allowsStyleAsAttribute(s), policy, compiled, request, Destination.StyleAttribute);
+                for (final URLWithScheme origin : origins) {
+                    request.setOrigin(origin);
+                    assertCheck(policy.allowsJavascriptUrlNavigation(s, Optional.ofNullable(origin)),
+                            policy, compiled, request, Destination.JavascriptUrl);
+                }
+                for (final String nonce : STRINGS) {
+                    final Optional<String> n = Optional.ofNullable(nonce);
+                    request.setNonce(nonce);
+                    assertCheck(policy.allowsInlineStyle(n, s), policy, compiled, request, Destination.InlineStyle);
+                    for (final Boolean parserInserted : BOOLEANS) {
+                        request.setParserInserted(parserInserted);
+                        assertCheck(policy.allowsInlineScript(n, s, Optional.ofNullable(parserInserted)),
+                                policy, compiled, request, Destination.InlineScript);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void javascriptUrlHashes() throws Exception {
+        final byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest("javascript:alert(1)".getBytes(StandardCharsets.UTF_8));
+        final Policy policy = Policy.parseSerializedCSP("script-src 'unsafe-hashes' 'sha256-"
+                + Base64.getEncoder().encodeToString(digest) + "'", ThrowIfPolicyError);
+
+        final CheckRequest request = new CheckRequest(Destination.JavascriptUrl).setSource("alert(1)");
+        assertTrue(policy.check(request));
+        assertTrue(policy.compile().check(request));
+        assertTrue(policy.allowsJavascriptUrlNavigation(Optional.of("alert(1)"), Optional.empty()));
+
+        request.setSource("alert(2)");
+        assertFalse(policy.check(request));
+        assertFalse(policy.compile().check(request));
+    }
+
+    @Test
+    public void reset() {
+        final URLWithScheme origin = URI.parseURI("https://example.com").orElseThrow();
+        final CheckRequest request = new CheckRequest(Destination.Script)
+                .setOrigin(origin)
+                .setUrl(origin)
+                .setNonce("n")
+                .setIntegrity("i")
+                .setSource("s")
+                .setParserInserted(true)
+                .setRedirected(false)
+                .setRedirectedTo(origin);
+        assertSame(request, request.reset());
+        assertNull(request.getDestination());
+        assertNull(request.getUrl());
+        assertNull(request.getNonce());
+        assertNull(request.getIntegrity());
+        assertNull(request.getSource());
+        assertNull(request.getParserInserted());
+        assertNull(request.getRedirected());
+        assertNull(request.getRedirectedTo());
+        assertSame(origin, request.getOrigin());
+
+        final Policy policy = Policy.parseSerializedCSP("", ThrowIfPolicyError);
+        assertThrows(IllegalArgumentException.class, () -> policy.check(request));
+        assertThrows(IllegalArgumentException.class, () -> policy.compile().check(request));
+    }
+
+    private static void assertCheck(final boolean expected, final Policy policy, final CompiledPolicy compiled,
+            final CheckRequest request, final Destination destination) {
+        request.setDestination(destination);
+        assertEquals(expected, policy.check(request), () -> destination + " " + policy);
+        assertEquals(expected, compiled.check(request), () -> destination + " " + policy);
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.htmlunit.csp.CheckRequest.Destination;
+import org.htmlunit.csp.url.GUID;
+import org.htmlunit.csp.url.URI;
+import org.htmlunit.csp.url.URLWithScheme;
+import org.htmlunit.csp.value.MediaType;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the answers of {@link CompiledPolicy} with the ones of {@link Policy}.
+ */
+public class CompiledPolicyTest extends TestBase {
+
+    static final String[] POLICIES = {
+        "",
+        "default-src 'none'",
+        "default-src *; script-src 'self' 'unsafe-inline' 'unsafe-eval'",
+        "default-src 'self' https: ws:; img-src http: data: blob:; connect-src wss: *.example.com:*",
+        "script-src 'nonce-abc' 'strict-dynamic' 'sha256-n4bQgYhMfWWaL+qgxVrQFaO/TxsrC4Is0V1sFbDwCgg='",
+        "script-src 'unsafe-inline' 'unsafe-hashes' 'sha256-n4bQgYhMfWWaL-qgxVrQFaO_TxsrC4Is0V1sFbDwCgg='",
+        "style-src 'sha384-OLBgp1GsljhM2TJ+sbHjaiH9txEUvgdDTAzHv2P24donTt6/529l+9Ua0vFImLlb' 'unsafe-inline'",
+        "style-src-elem https://cdn.example.com/css/; style-src-attr 'unsafe-inline'; style-src 'nonce-xyz'",
+        "script-src-elem 'self'; script-src-attr 'none'; script-src https://a.example/path/file.js",
+        "default-src http://*.example.com:8080/a/ https://EXAMPLE.org:443 ftp://files.example.net",
+        "default-src 127.0.0.1 10.0.0.1 [::1] https://[2001:db8::1]:443 *.%65xample.com/%70ath",
+        "default-src example.com/a%2Fb example.com/a+b/ example.com/ example.com:*/x",
+        "navigate-to 'self' https://nav.example; form-action 'none'",
+        "navigate-to 'unsafe-allow-redirects' https://nav.example javascript: 'unsafe-inline'",
+        "form-action https://forms.example; sandbox allow-forms",
+        "sandbox; script-src *",
+        "sandbox allow-scripts; script-src 'unsafe-inline'",
+        "frame-ancestors 'self' https://parent.example; frame-src *; child-src 'none'",
+        "worker-src 'none'; child-src https:; manifest-src 'self'; prefetch-src *; media-src https://m.example",
+        "object-src 'none'; plugin-types application/pdf application/x-shockwave-flash",
+        "font-src data: https://fonts.example:*; default-src 'unsafe-eval'",
+        "script-src 'self' https: 'unsafe-eval'; default-src 'none'",
+        "connect-src 'self' ws://sock.example wss://secure.example",
+        "img-src * 'self'; default-src 'wasm-unsafe-eval'",
+    };
+
+    static final List<URLWithScheme> URLS = new ArrayList<>();
+    static final List<URLWithScheme> ORIGINS = new ArrayList<>();
+
+    static {
+        for (final String url : new String[] {
+            "https://example.com", "http://example.com", "https://www.example.com:8080/a/b",
+            "http://www.example.com:8080/a/", "https://EXAMPLE.org/x", "https://example.org:443",
+            "ftp://files.example.net", "ws://sock.example", "wss://secure.example", "wss://sock.example",
+            "ws://www.example.com:8080/a/x", "https://cdn.example.com/css/site.css", "https://cdn.example.com/js",
+            "https://a.example/path/file.js", "https://a.example/path/file.js/", "http://127.0.0.1",
+            "http://10.0.0.1", "https://sub.example.com/path",
+            "https://example.com/a%2Fb", "https://example.com/a/b", "https://example.com/a+b/c",
+            "https://example.com/a%20b/c", "https://example.com:1234/x", "https://nav.example/p",
+            "https://forms.example", "https://parent.example", "https://fonts.example:99/f.woff",
+            "https://m.example", "http://self.example", "https://self.example", "https://self.example:444",
+            "ws://self.example", "gopher://self.example",
+        }) {
+            URLS.add(URI.parseURI(url).orElseThrow());
+        }
+        // the host-source grammar has no IPv6 literals
+        URLS.add(new URI("https", "[::1]", 443, ""));
+        URLS.add(new URI("https", "[2001:db8::1]", 443, "/"));
+        URLS.add(new GUID("data", "text/plain,abc"));
+        URLS.add(new GUID("blob", "https://self.example/uuid"));
+        URLS.add(new GUID("javascript", "alert(1)"));
+
+        for (final String origin : new String[] {"https://self.example", "http://self.example",
+            "https://example.com", "ws://self.example", "https://self.example:444"}) {
+            ORIGINS.add(URI.parseURI(origin).orElseThrow());
+        }
+        ORIGINS.add(new GUID("data", "x"));
+    }
+
+    private static final List<Optional<String>> NONCES = Arrays.asList(Optional.empty(), Optional.of(""),
+            Optional.of("abc"), Optional.of("xyz"), Optional.of("ABC"));
+
+    // "alert(1)" hashes to n4bQgYhMfWWaL+qgxVrQFaO/TxsrC4Is0V1sFbDwCgg= with SHA-256
+    private static final List<Optional<String>> SOURCES = Arrays.asList(Optional.empty(), Optional.of(""),
+            Optional.of("alert(1)"), Optional.of("body {}"));
+
+    private static final List<Optional<String>> INTEGRITIES = Arrays.asList(Optional.empty(), Optional.of(""),
+            Optional.of("sha256-n4bQgYhMfWWaL+qgxVrQFaO/TxsrC4Is0V1sFbDwCgg="),
+            Optional.of("sha256-n4bQgYhMfWWaL+qgxVrQFaO/TxsrC4Is0V1sFbDwCgg= sha512-abc"), Optional.of("md5-x"));
+
+    private static final List<Optional<Boolean>> BOOLEANS =
+            Arrays.asList(Optional.empty(), Optional.of(true), Optional.of(false));
+
+    private static List<Optional<URLWithScheme>> optionals(final List<URLWithScheme> urls) {
+        final List<Optional<URLWithScheme>> optionals = new ArrayList<>();
+        optionals.add(Optional.empty());
+        for (final URLWithScheme url : urls) {
+            optionals.add(Optional.of(url));
+        }
+        return optionals;
+    }
+
+    static List<Policy> policies() throws Exception {
+        final List<Policy> policies = new ArrayList<>();
+        for (final String serialized : POLICIES) {
+            policies.add(Policy.parseSerializedCSP(serialized, Policy.PolicyErrorConsumer.ignored));
+        }
+        for (final String serialized : PolicyTokenizerTest.readCorpus()) {
+            policies.addAll(Policy.parseSerializedCSPList(serialized, Policy.PolicyListErrorConsumer.ignored)
+                    .getPolicies());
+        }
+        return policies;
+    }
+
+    @Test
+    public void sameAnswersForUrls() throws Exception {
+        final List<Optional<URLWithScheme>> urls = optionals(URLS);
+        final List<Optional<URLWithScheme>> origins = optionals(ORIGINS);
+        for (final Policy policy : policies()) {
+            final CompiledPolicy compiled = policy.compile();
+            assertEquals(policy.allowsEval(), compiled.allowsEval(), policy.toString());
+            for (final Optional<URLWithScheme> url : urls) {
+                for (final Optional<URLWithScheme> origin : origins) {
+                    final String message = policy + " " + url + " " + origin;
+                    assertEquals(policy.allowsFrame(url, origin), compiled.allowsFrame(url, origin), message);
+                    assertEquals(policy.allowsFrameAncestor(url, origin), compiled.allowsFrameAncestor(url, origin),
+                            message);
+                    assertEquals(policy.allowsConnection(url, origin), compiled.allowsConnection(url, origin),
+                            message);
+                    assertEquals(policy.allowsFont(url, origin), compiled.allowsFont(url, origin), message);
+                    assertEquals(policy.allowsImage(url, origin), compiled.allowsImage(url, origin), message);
+                    assertEquals(policy.allowsApplicationManifest(url, origin),
+                            compiled.allowsApplicationManifest(url, origin), message);
+                    assertEquals(policy.allowsMedia(url, origin), compiled.allowsMedia(url, origin), message);
+                    assertEquals(policy.allowsObject(url, origin), compiled.allowsObject(url, origin), message);
+                    assertEquals(policy.allowsPrefetch(url, origin), compiled.allowsPrefetch(url, origin), message);
+                    assertEquals(policy.allowsWorker(url, origin), compiled.allowsWorker(url, origin), message);
+                    assertEquals(policy.allowsExternalStyle(Optional.of("xyz"), url, origin),
+                            compiled.allowsExternalStyle(Optional.of("xyz"), url, origin), message);
+                    assertEquals(policy.allowsExternalStyle(Optional.empty(), url, origin),
+                            compiled.allowsExternalStyle(Optional.empty(), url, origin), message);
+                    for (final Optional<Boolean> parserInserted : BOOLEANS) {
+                        assertEquals(
+                                policy.allowsExternalScript(Optional.empty(), Optional.empty(), url,
+                                        parserInserted, origin),
+                                compiled.allowsExternalScript(Optional.empty(), Optional.empty(), url,
+                                        parserInserted, origin), message);
+                    }
+                    for (final Optional<Boolean> redirected : BOOLEANS) {
+                        assertEquals(policy.allowsNavigation(url, redirected, url, origin),
+                                compiled.allowsNavigation(url, redirected, url, origin), message);
+                        assertEquals(policy.allowsNavigation(url, redirected, Optional.empty(), origin),
+                                compiled.allowsNavigation(url, redirected, Optional.empty(), origin), message);
+                        assertEquals(policy.allowsFormAction(url, redirected, url, origin),
+                                compiled.allowsFormAction(url, redirected, url, origin), message);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sameAnswersForInlineContent() throws Exception {
+        final List<Optional<URLWithScheme>> origins = optionals(ORIGINS);
+        for (final Policy policy : policies()) {
+            final CompiledPolicy compiled = policy.compile();
+            for (final Optional<String> source : SOURCES) {
+                final String message = policy + " " + source;
+                assertEquals(policy.allowsScriptAsAttribute(source), compiled.allowsScriptAsAttribute(source),
+                        message);
+                assertEquals(policy.allowsStyleAsAttribute(source), compiled.allowsStyleAsAttribute(source),
+                        message);
+                for (final Optional<URLWithScheme> origin : origins) {
+                    assertEquals(policy.allowsJavascriptUrlNavigation(source, origin),
+                            compiled.allowsJavascriptUrlNavigation(source, origin), message);
+                }
+                for (final Optional<String> nonce : NONCES) {
+                    assertEquals(policy.allowsInlineStyle(nonce, source), compiled.allowsInlineStyle(nonce, source),
+                            message + " " + nonce);
+                    for (final Optional<Boolean> parserInserted : BOOLEANS) {
+                        assertEquals(policy.allowsInlineScript(nonce, source, parserInserted),
+                                compiled.allowsInlineScript(nonce, source, parserInserted),
+                                message + " " + nonce + " " + parserInserted);
+                    }
+                }
+            }
+            for (final Optional<String> nonce : NONCES) {
+                for (final Optional<String> integrity : INTEGRITIES) {
+                    for (final Optional<Boolean> parserInserted : BOOLEANS) {
+                        assertEquals(
+                                policy.allowsExternalScript(nonce, integrity, Optional.empty(), parserInserted,
+                                        Optional.empty()),
+                                compiled.allowsExternalScript(nonce, integrity, Optional.empty(), parserInserted,
+                                        Optional.empty()),
+                                policy + " " + nonce + " " + integrity + " " + parserInserted);
+                    }
+                }
+            }
+            for (final String type : new String[] {"application/pdf", "APPLICATION/PDF", "text/html"}) {
+                final Optional<MediaType> mediaType = MediaType.parseMediaType(type);
+                assertEquals(policy.allowsPlugin(mediaType), compiled.allowsPlugin(mediaType), policy + " " + type);
+            }
+            assertEquals(policy.allowsPlugin(Optional.empty()), compiled.allowsPlugin(Optional.empty()),
+                    policy.toString());
+        }
+    }
+
+    @Test
+    public void largeSourceLists() {
+        final String[] labels = {"a", "b", "cdn", "static", "example", "com", "net", "co", "uk", "1", "127"};
+        final String[] schemes = {"", "https://", "http://", "wss://", "ftp://", "foo://"};
+        final String[] ports = {"", ":443", ":80", ":8080", ":*"};
+        final String[] paths = {"", "/", "/a", "/a/", "/a/b", "/A%2Fb"};
+        final Random random = new Random(11);
+        final List<URLWithScheme> urls = new ArrayList<>(URLS);
+        for (int i = 0; i < 300; i++) {
+            urls.add(new URI(new String[] {"https", "http", "ws", "wss", "ftp", "foo"}[random.nextInt(6)],
+                    host(labels, random), new int[] {443, 80, 8080, 21, 1}[random.nextInt(5)],
+                    paths[random.nextInt(paths.length)]));
+        }
+        // hosts which only compare equal to ASCII hosts ignoring case
+        urls.add(new URI("https", "\u0131.example.com", 443, ""));
+        urls.add(new URI("https", "cdn.\u212Aexample.com", 443, ""));
+
+        for (int round = 0; round < 20; round++) {
+            final StringBuilder serialized = new StringBuilder("img-src");
+            final int size = round < 10 ? random.nextInt(20) : 500 + random.nextInt(2000);
+            for (int i = 0; i < size; i++) {
+                final int kind = random.nextInt(10);
+                serialized.append(' ').append(schemes[random.nextInt(schemes.length)]);
+                if (kind == 0) {
+                    serialized.append('*');
+                }
+                else if (kind < 4) {
+                    serialized.append("*.").append(host(labels, random));
+                }
+                else if (kind == 4) {
+                    serialized.append("127.0.0.1");
+                }
+                else if (kind == 5) {
+                    serialized.append("10.0.").append(random.nextInt(3)).append(".1");
+                }
+                else {
+                    serialized.append(host(labels, random));
+                }
+                serialized.append(ports[random.nextInt(ports.length)]).append(paths[random.nextInt(paths.length)]);
+            }
+            final Policy policy = Policy.parseSerializedCSP(serialized.toString(), Policy.PolicyErrorConsumer.ignored);
+            final CompiledPolicy compiled = policy.compile();
+            for (final URLWithScheme url : urls) {
+                for (final URLWithScheme origin : ORIGINS) {
+                    assertEquals(policy.allowsImage(Optional.of(url), Optional.of(origin)),
+                            compiled.allowsImage(Optional.of(url), Optional.of(origin)), url + " " + origin);
+                }
+            }
+        }
+    }
+
+    private static String host(final String[] labels, final Random random) {
+        final StringBuilder host = new StringBuilder(labels[random.nextInt(labels.length)]);
+        final int count = random.nextInt(4);
+        for (int i = 0; i < count; i++) {
+            host.append('.').append(labels[random.nextInt(labels.length)]);
+        }
+        return host.toString();
+    }
+
+    @Test
+    public void governingDirectives() {
+        final CompiledPolicy compiled = Policy.parseSerializedCSP("script-src 'self'; img-src *",
+                ThrowIfPolicyError).compile();
+        assertTrue(compiled.hasGoverningDirective(FetchDirectiveKind.ScriptSrcElem));
+        assertTrue(compiled.hasGoverningDirective(FetchDirectiveKind.ScriptSrcAttr));
+        assertTrue(compiled.hasGoverningDirective(FetchDirectiveKind.ImgSrc));
+        assertFalse(compiled.hasGoverningDirective(FetchDirectiveKind.StyleSrcElem));
+        assertFalse(compiled.hasGoverningDirective(FetchDirectiveKind.FontSrc));
+        assertThrows(IllegalArgumentException.class,
+                () -> compiled.hasGoverningDirective(FetchDirectiveKind.DefaultSrc));
+        assertFalse(compiled.allowsEval());
+
+        final Optional<URLWithScheme> origin = URI.parseURI("https://self.example").map(URLWithScheme.class::cast);
+        final Optional<URLWithScheme> url = URI.parseURI("https://self.example/app.js")
+                                                .map(URLWithScheme.class::cast);
+        assertTrue(compiled.allowsExternalScript(Optional.empty(), Optional.empty(), url, Optional.empty(), origin));
+        assertFalse(compiled.allowsInlineScript(Optional.empty(), Optional.of("x"), Optional.empty()));
+        assertTrue(compiled.allowsInlineStyle(Optional.empty(), Optional.of("x")));
+    }
+
+    @Test
+    public void serializedBytes() throws Exception {
+        final Policy policy = Policy.parseSerializedCSP("default-src 'self'; img-src https://cdn.example.com",
+                ThrowIfPolicyError);
+        final CompiledPolicy compiled = policy.compile();
+        final String serialized = policy.toString();
+        assertEquals(serialized.length(), compiled.getSerializedLength());
+
+        final StringBuilder out = new StringBuilder("x");
+        compiled.appendTo(out);
+        assertEquals("x" + serialized, out.toString());
+
+        final ByteBuffer buffer = ByteBuffer.allocate(serialized.length() + 1);
+        compiled.writeTo(buffer);
+        assertEquals(serialized.length(), buffer.position());
+        assertEquals(serialized, new String(buffer.array(), 0, serialized.length(), StandardCharsets.US_ASCII));
+        assertThrows(BufferOverflowException.class, () -> compiled.writeTo(buffer));
+        assertEquals(serialized.length(), buffer.position());
+
+        final ByteBuffer bytes = compiled.getSerializedBytes();
+        assertTrue(bytes.isReadOnly());
+        assertEquals(ByteBuffer.wrap(serialized.getBytes(StandardCharsets.US_ASCII)), bytes);
+        bytes.get();
+        assertEquals(0, compiled.getSerializedBytes().position());
+    }
+
+    @Test
+    public void snapshot() {
+        final Policy policy = Policy.parseSerializedCSP("trusted-types one two; require-trusted-types-for 'script';"
+                + " upgrade-insecure-requests; img-src https://a.example", Policy.PolicyErrorConsumer.ignored);
+        final CompiledPolicy compiled = policy.compile();
+        final String serialized = policy.toString();
+        assertEquals(serialized, compiled.toString());
+        assertFalse(compiled.allowsWildcardPolicyNames());
+        assertTrue(compiled.requiresTrustedTypesForScript());
+        assertTrue(compiled.upgradeInsecureRequests());
+        assertFalse(compiled.blockAllMixedContent());
+
+        policy.trustedTypes().orElseThrow().setStar(true);
+        policy.requireTrustedTypesFor().orElseThrow().setScript(false);
+        assertTrue(policy.allowsWildcardPolicyNames());
+        assertFalse(compiled.allowsWildcardPolicyNames());
+        assertTrue(compiled.requiresTrustedTypesForScript());
+        assertEquals(serialized, compiled.toString());
+    }
+
+    @Test
+    public void sharedByThreads() throws Exception {
+        final List<Policy> policies = policies();
+        final List<CompiledPolicy> compiled = new ArrayList<>();
+        final List<Boolean> expected = new ArrayList<>();
+        for (final Policy policy : policies) {
+            compiled.add(policy.compile());
+            for (final URLWithScheme url : URLS) {
+                expected.add(policy.allowsImage(Optional.of(url), Optional.of(ORIGINS.get(0))));
+            }
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                results.add(executor.submit(() -> {
+                    final CheckRequest request = new CheckRequest(Destination.Image).setOrigin(ORIGINS.get(0));
+                    int i = 0;
+                    for (final CompiledPolicy policy : compiled) {
+                        for (final URLWithScheme url : URLS) {
+                            if (policy.check(request.setUrl(url)) != expected.get(i++)) {
+                                return false;
+                            }
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (final Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.htmlunit.csp.Policy.Severity;
+import org.junit.jupiter.api.Test;
+
+public class DiagnosticCollectorTest extends TestBase {
+
+    @Test
+    public void structuredDiagnostics() {
+        final DiagnosticCollector diagnostics = new DiagnosticCollector();
+        Policy.parseSerializedCSP("script-src 'self' 'SELF' 'sha256-abc'; FOO; frame-ancestors; script-src",
+                diagnostics);
+
+        assertEquals(6, diagnostics.size());
+
+        assertEquals(DiagnosticCode.DuplicateSourceExpression, diagnostics.getCode(0));
+        assertEquals(Severity.Warning, diagnostics.getSeverity(0));
+        assertEquals(0, diagnostics.getPolicyIndex(0));
+        assertEquals(0, diagnostics.getDirectiveIndex(0));
+        assertEquals(1, diagnostics.getValueIndex(0));
+        assertEquals("source-expression", diagnostics.getArgument(0, 0));
+        assertEquals("Duplicate source-expression 'self'", diagnostics.getMessage(0));
+
+        assertEquals(DiagnosticCode.WrongHashLength, diagnostics.getCode(1));
+        assertEquals(2, diagnostics.getValueIndex(1));
+        assertEquals(44, diagnostics.getArgument(1, 1));
+        assertEquals("Wrong length for sha256: expected 44, got 3", diagnostics.getMessage(1));
+
+        assertEquals(DiagnosticCode.UnrecognizedDirective, diagnostics.getCode(2));
+        assertEquals("FOO", diagnostics.getArgument(2, 0));
+        assertEquals("Unrecognized directive foo", diagnostics.getMessage(2));
+        assertEquals(1, diagnostics.getDirectiveIndex(2));
+        assertEquals(-1, diagnostics.getValueIndex(2));
+
+        assertEquals(DiagnosticCode.EmptySourceList, diagnostics.getCode(3));
+        assertEquals(DiagnosticCode.EmptySourceList, diagnostics.getCode(4));
+        assertEquals(DiagnosticCode.DuplicateDirective, diagnostics.getCode(5));
+
+        assertEquals(2, diagnostics.count(DiagnosticCode.EmptySourceList));
+        assertEquals(0, diagnostics.count(DiagnosticCode.DuplicateHash));
+        assertEquals(2, diagnostics.count(Severity.Error));
+        assertEquals(Severity.Error, diagnostics.getMaxSeverity());
+
+        assertThrows(IndexOutOfBoundsException.class, () -> diagnostics.getCode(6));
+        assertThrows(IndexOutOfBoundsException.class, () -> diagnostics.getArgument(0, 3));
+
+        diagnostics.clear();
+        assertTrue(diagnostics.isEmpty());
+        assertNull(diagnostics.getMaxSeverity());
+    }
+
+    @Test
+    public void messagesMatchLegacyConsumer() throws Exception {
+        for (final String serialized : PolicyTokenizerTest.readCorpus()) {
+            final List<PolicyListError> expected = new ArrayList<>();
+            Policy.parseSerializedCSPList(serialized, (severity, message, policyIndex, directiveIndex, valueIndex)
+                    -> expected.add(e(severity, message, policyIndex, directiveIndex, valueIndex)));
+
+            final DiagnosticCollector diagnostics = new DiagnosticCollector();
+            Policy.parseSerializedCSPList(serialized, diagnostics);
+            final List<PolicyListError> actual = new ArrayList<>();
+            for (int i = 0; i < diagnostics.size(); i++) {
+                assertEquals(diagnostics.getCode(i).getSeverity(), diagnostics.getSeverity(i));
+                actual.add(e(diagnostics.getSeverity(i), diagnostics.getMessage(i), diagnostics.getPolicyIndex(i),
+                        diagnostics.getDirectiveIndex(i), diagnostics.getValueIndex(i)));
+            }
+            assertEquals(expected, actual, serialized);
+
+            final List<PolicyListError> replayed = new ArrayList<>();
+            diagnostics.replay((severity, message, policyIndex, directiveIndex, valueIndex)
+                    -> replayed.add(e(severity, message, policyIndex, directiveIndex, valueIndex)));
+            assertEquals(expected, replayed, serialized);
+        }
+    }
+
+    @Test
+    public void legacyMessages() {
+        final DiagnosticCollector diagnostics = new DiagnosticCollector();
+        for (int i = 0; i < 100; i++) {
+            diagnostics.add(Severity.Warning, "message " + i, 1, i, -1);
+        }
+        assertEquals(100, diagnostics.size());
+        assertEquals(DiagnosticCode.Message, diagnostics.getCode(99));
+        assertEquals(Severity.Warning, diagnostics.getSeverity(99));
+        assertEquals("message 99", diagnostics.getMessage(99));
+        assertEquals(99, diagnostics.getDirectiveIndex(99));
+
+        final List<PolicyListError> replayed = new ArrayList<>();
+        diagnostics.replay((severity, message, policyIndex, directiveIndex, valueIndex)
+                -> replayed.add(e(severity, message, policyIndex, directiveIndex, valueIndex)));
+        assertEquals(e(Severity.Warning, "message 7", 1, 7, -1), replayed.get(7));
+    }
+
+    @Test
+    public void templates() {
+        for (final DiagnosticCode code : DiagnosticCode.values()) {
+            final String message = code.format("a", "b", "c");
+            assertTrue(!message.contains("{0}") && !message.contains("{1}") && !message.contains("{2}"),
+                    code.name());
+        }
+        assertEquals(3, DiagnosticCode.WrongHashLength.getArgumentCount());
+        assertEquals(0, DiagnosticCode.DuplicateWildcard.getArgumentCount());
+        assertEquals("Unrecognized directive ab", DiagnosticCode.UnrecognizedDirective.format("AB", null, null));
+    }
+}
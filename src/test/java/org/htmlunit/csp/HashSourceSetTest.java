@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+
+import org.htmlunit.csp.value.Hash;
+import org.junit.jupiter.api.Test;
+
+public class HashSourceSetTest extends TestBase {
+
+    @Test
+    public void matches() throws Exception {
+        final List<Hash> hashes = new ArrayList<>();
+        hashes.add(hash(Hash.Algorithm.SHA256, "SHA-256", "a"));
+        hashes.add(hash(Hash.Algorithm.SHA384, "SHA-384", "b"));
+        hashes.add(hash(Hash.Algorithm.SHA512, "SHA-512", "c\u00e9"));
+        final HashSourceSet set = HashSourceSet.of(hashes);
+
+        assertFalse(set.isEmpty());
+        assertTrue(set.matches("a"));
+        assertTrue(set.matches("b"));
+        assertTrue(set.matches("c\u00e9"));
+        assertTrue(set.matches("c\u00e9".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(set.matches("c"));
+        assertFalse(set.matches(""));
+
+        final byte[] digest = MessageDigest.getInstance("SHA-256").digest("a".getBytes(StandardCharsets.UTF_8));
+        assertTrue(set.containsDigest(Hash.Algorithm.SHA256, digest));
+        assertFalse(set.containsDigest(Hash.Algorithm.SHA512, digest));
+    }
+
+    @Test
+    public void manyHashes() throws Exception {
+        final List<Hash> hashes = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            hashes.add(hash(Hash.Algorithm.SHA256, "SHA-256", "script" + i));
+        }
+        final HashSourceSet set = HashSourceSet.of(hashes);
+        for (int i = 0; i < 500; i++) {
+            assertTrue(set.matches("script" + i));
+        }
+        assertFalse(set.matches("script500"));
+    }
+
+    @Test
+    public void base64Url() throws Exception {
+        String source = "";
+        String value;
+        do {
+            source += "a";
+            value = hash(Hash.Algorithm.SHA256, "SHA-256", source).getBase64ValuePart();
+        }
+        while (!value.contains("+") && !value.contains("/"));
+
+        final String urlValue = value.replace('+', '-').replace('/', '_');
+        assertTrue(HashSourceSet.of(List.of(new Hash(Hash.Algorithm.SHA256, urlValue))).matches(source));
+    }
+
+    @Test
+    public void neverMatching() throws Exception {
+        final String value = hash(Hash.Algorithm.SHA256, "SHA-256", "a").getBase64ValuePart();
+
+        // missing padding, wrong algorithm, non-zero padding bits, not base64
+        final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        final String nonCanonical = value.substring(0, 42) + alphabet.charAt(alphabet.indexOf(value.charAt(42)) + 1) + "=";
+        assertSame(HashSourceSet.EMPTY, HashSourceSet.of(List.of(
+                new Hash(Hash.Algorithm.SHA256, value.substring(0, 43)),
+                new Hash(Hash.Algorithm.SHA384, value),
+                new Hash(Hash.Algorithm.SHA256, nonCanonical),
+                new Hash(Hash.Algorithm.SHA256, value.substring(0, 40) + "!!!="))));
+        assertSame(HashSourceSet.EMPTY, HashSourceSet.of(List.of()));
+        assertFalse(HashSourceSet.EMPTY.matches("a"));
+    }
+
+    @Test
+    public void policy() {
+        final Policy p = Policy.parseSerializedCSP("script-src 'unsafe-inline' 'sha256-AAAA'",
+                Policy.PolicyErrorConsumer.ignored);
+        // a hash-source that can never match still disables 'unsafe-inline'
+        assertFalse(p.allowsInlineScript(Optional.empty(), Optional.of("a"), Optional.empty()));
+    }
+
+    private static Hash hash(final Hash.Algorithm algorithm, final String name, final String source)
+            throws Exception {
+        final byte[] digest = MessageDigest.getInstance(name).digest(source.getBytes(StandardCharsets.UTF_8));
+        return new Hash(algorithm, Base64.getEncoder().encodeToString(digest));
+    }
+}
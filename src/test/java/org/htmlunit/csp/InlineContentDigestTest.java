@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+
+import org.htmlunit.csp.value.Hash;
+import org.junit.jupiter.api.Test;
+
+public class InlineContentDigestTest extends TestBase {
+
+    @Test
+    public void sameAsStringBytes() throws Exception {
+        final String[] sources = {
+            "",
+            "alert(1)",
+            "caf\u00e9 \u20ac \ud83d\ude00",
+            "lone \ud83d high",
+            "lone \ude00 low",
+            "trailing \ud83d",
+            "x".repeat(10000) + "\u00e9".repeat(3000) + "\ud83d\ude00".repeat(2000),
+        };
+        for (final String source : sources) {
+            final InlineContentDigest whole = InlineContentDigest.forAllAlgorithms().update(source);
+            assertDigests(source, whole);
+
+            // every split point, including between the halves of a surrogate pair
+            for (int split = 0; split <= Math.min(source.length(), 40); split++) {
+                final InlineContentDigest parts = InlineContentDigest.forAllAlgorithms()
+                        .update(source, 0, split)
+                        .update(source.substring(split).toCharArray(), 0, source.length() - split);
+                assertDigests(source, parts);
+            }
+        }
+    }
+
+    @Test
+    public void readerAndBytes() throws Exception {
+        final String source = "var s = '\u00e9\ud83d\ude00';".repeat(500);
+        assertDigests(source, InlineContentDigest.forAllAlgorithms().update(new StringReader(source)));
+
+        final byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        final InlineContentDigest chunked = InlineContentDigest.forAllAlgorithms();
+        for (int i = 0; i < bytes.length; i += 1000) {
+            final ByteBuffer chunk = ByteBuffer.wrap(bytes, i, Math.min(1000, bytes.length - i));
+            chunked.update(chunk);
+            assertFalse(chunk.hasRemaining());
+        }
+        assertDigests(source, chunked);
+
+        // text and bytes mixed
+        final InlineContentDigest mixed = InlineContentDigest.forAllAlgorithms()
+                .update("a\ud83d")
+                .update(ByteBuffer.wrap("b".getBytes(StandardCharsets.UTF_8)))
+                .update("\ude00c");
+        assertDigests("a\ud83db\ude00c", mixed);
+    }
+
+    @Test
+    public void algorithms() throws Exception {
+        final InlineContentDigest digest = InlineContentDigest.forAlgorithms(EnumSet.of(Hash.Algorithm.SHA384));
+        assertTrue(digest.covers(Hash.Algorithm.SHA384));
+        assertFalse(digest.covers(Hash.Algorithm.SHA256));
+        digest.update("a");
+        assertThrows(IllegalArgumentException.class, () -> digest.digest(Hash.Algorithm.SHA256));
+        assertArrayEquals(digest("SHA-384", "a"), digest.digest(Hash.Algorithm.SHA384));
+        assertThrows(IllegalStateException.class, () -> digest.update("b"));
+
+        // the returned digest is a copy
+        digest.digest(Hash.Algorithm.SHA384)[0] ^= 1;
+        assertArrayEquals(digest("SHA-384", "a"), digest.digest(Hash.Algorithm.SHA384));
+
+        final InlineContentDigest none = InlineContentDigest.forAlgorithms(EnumSet.noneOf(Hash.Algorithm.class));
+        none.update("ignored").update(ByteBuffer.wrap(new byte[] {1, 2}));
+        assertThrows(IllegalArgumentException.class, () -> none.digest(Hash.Algorithm.SHA256));
+    }
+
+    @Test
+    public void policy() throws Exception {
+        final String script = "console.log('\u00e9');".repeat(100);
+        final String style = "body { color: red; }";
+        final Policy p = Policy.parseSerializedCSP("script-src 'sha384-" + base64("SHA-384", script)
+                + "' 'nonce-abc'; style-src 'sha256-" + base64("SHA-256", style) + "'", ThrowIfPolicyError);
+
+        assertTrue(p.allowsInlineScript(Optional.empty(), (CharSequence) new StringBuilder(script), Optional.empty()));
+        assertTrue(p.allowsInlineScript(Optional.empty(), new StringReader(script), Optional.empty()));
+        assertTrue(p.allowsInlineScript(Optional.empty(), chunks(script, 7), Optional.empty()));
+        assertTrue(p.allowsInlineScript(Optional.empty(), p.newInlineScriptDigest().update(script), Optional.empty()));
+        assertFalse(p.allowsInlineScript(Optional.empty(), (CharSequence) style, Optional.empty()));
+        assertFalse(p.allowsInlineScript(Optional.empty(), p.newInlineScriptDigest().update(style), Optional.empty()));
+
+        assertTrue(p.allowsInlineStyle(Optional.empty(), (CharSequence) style));
+        assertTrue(p.allowsInlineStyle(Optional.empty(), new StringReader(style)));
+        assertTrue(p.allowsInlineStyle(Optional.empty(), chunks(style, 3)));
+        assertTrue(p.allowsInlineStyle(Optional.empty(), p.newInlineStyleDigest().update(style)));
+        assertFalse(p.allowsInlineStyle(Optional.empty(), p.newInlineStyleDigest().update(script)));
+
+        assertTrue(p.newInlineScriptDigest().covers(Hash.Algorithm.SHA384));
+        assertFalse(p.newInlineScriptDigest().covers(Hash.Algorithm.SHA256));
+        // a digest lacking the algorithm of the hash-sources cannot be matched
+        assertThrows(IllegalArgumentException.class,
+            () -> p.allowsInlineStyle(Optional.empty(), p.newInlineScriptDigest().update(style)));
+
+        // the content is not consumed if the nonce already allows the element
+        final Reader failing = new Reader() {
+            @Override
+            public int read(final char[] cbuf, final int off, final int len) throws IOException {
+                throw new IOException("read");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        assertTrue(p.allowsInlineScript(Optional.of("abc"), failing, Optional.empty()));
+        assertThrows(IOException.class, () -> p.allowsInlineScript(Optional.empty(), failing, Optional.empty()));
+
+        final Policy sandboxed = Policy.parseSerializedCSP("sandbox", ThrowIfPolicyError);
+        assertFalse(sandboxed.allowsInlineScript(Optional.empty(), (CharSequence) script, Optional.empty()));
+        assertTrue(sandboxed.allowsInlineStyle(Optional.empty(), (CharSequence) style));
+        assertFalse(sandboxed.newInlineStyleDigest().covers(Hash.Algorithm.SHA256));
+    }
+
+    private static void assertDigests(final String source, final InlineContentDigest digest) throws Exception {
+        assertArrayEquals(digest("SHA-256", source), digest.digest(Hash.Algorithm.SHA256));
+        assertArrayEquals(digest("SHA-384", source), digest.digest(Hash.Algorithm.SHA384));
+        assertArrayEquals(digest("SHA-512", source), digest.digest(Hash.Algorithm.SHA512));
+    }
+
+    private static List<ByteBuffer> chunks(final String source, final int count) {
+        final byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer[] chunks = new ByteBuffer[count];
+        final int size = (bytes.length + count - 1) / count;
+        for (int i = 0; i < count; i++) {
+            final int start = Math.min(i * size, bytes.length);
+            chunks[i] = ByteBuffer.wrap(bytes, start, Math.min(size, bytes.length - start));
+        }
+        return List.of(chunks);
+    }
+
+    private static byte[] digest(final String name, final String source) throws Exception {
+        return MessageDigest.getInstance(name).digest(source.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String base64(final String name, final String source) throws Exception {
+        return Base64.getEncoder().encodeToString(digest(name, source));
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+public class InlineDigestCacheTest extends TestBase {
+
+    @Test
+    public void hitsAndMisses() throws Exception {
+        final InlineDigestCache cache = new InlineDigestCache(10);
+        assertEquals(0.0, cache.getHitRate());
+
+        final Policy p = parse("script-src " + hash("a") + "; style-src " + hash("b"));
+        // only the checks of requests carrying the cache use it
+        assertTrue(p.allowsInlineScript(Optional.empty(), Optional.of("a"), Optional.empty()));
+        assertTrue(p.check(new CheckRequest(CheckRequest.Destination.InlineScript).setSource("a")));
+        assertEquals(0, cache.getMissCount());
+
+        assertTrue(script(p, cache, "a"));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        assertTrue(script(p, cache, "a"));
+        assertFalse(style(p, cache, "a"));
+        assertTrue(style(p, cache, "b"));
+        assertFalse(script(p, cache, "b"));
+        assertEquals(3, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0.6, cache.getHitRate(), 1e-9);
+        assertEquals(2, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(3, cache.getHitCount());
+    }
+
+    @Test
+    public void sameFingerprint() throws Exception {
+        // same hash code and length
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        // long content differing only between the sampled characters
+        final String longA = "x".repeat(1000) + "a" + "x".repeat(1000);
+        final String longB = "x".repeat(1000) + "b" + "x".repeat(1000);
+
+        final InlineDigestCache cache = new InlineDigestCache(64);
+
+        final Policy p = parse("script-src " + hash("Aa") + " " + hash(longA));
+        assertTrue(script(p, cache, "Aa"));
+        assertFalse(script(p, cache, "BB"));
+        assertTrue(script(p, cache, "Aa"));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(1, cache.size());
+
+        assertTrue(script(p, cache, longA));
+        assertFalse(script(p, cache, longB));
+        assertFalse(script(p, cache, longB));
+        assertTrue(script(p, cache, new String(longA)));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(6, cache.getMissCount());
+    }
+
+    @Test
+    public void boundedSize() throws Exception {
+        final InlineDigestCache cache = new InlineDigestCache(4, 5);
+
+        final Policy p = parse("script-src " + hash("longer than five"));
+        assertTrue(script(p, cache, "longer than five"));
+        assertEquals(0, cache.getMissCount());
+        assertNull(cache.lookup("longer than five"));
+
+        for (int i = 0; i < 10; i++) {
+            assertFalse(script(p, cache, "s" + i));
+        }
+        assertEquals(4, cache.getMaxSize());
+        assertEquals(5, cache.getMaxSourceLength());
+        assertTrue(cache.size() <= 4);
+        assertEquals(10 - cache.size(), cache.getEvictionCount());
+
+        assertThrows(IllegalArgumentException.class, () -> new InlineDigestCache(0));
+        assertThrows(IllegalArgumentException.class, () -> new InlineDigestCache(1, -1));
+    }
+
+    @Test
+    public void concurrentUse() throws Exception {
+        final InlineDigestCache cache = new InlineDigestCache(16);
+
+        final StringBuilder policy = new StringBuilder("script-src");
+        for (int i = 0; i < 32; i += 2) {
+            policy.append(' ').append(hash("snippet" + i));
+        }
+        final Policy p = parse(policy.toString());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(() -> {
+                    for (int n = 0; n < 2000; n++) {
+                        final int i = n % 32;
+                        final boolean allowed =
+                                script(p, cache, "snippet" + i);
+                        if (allowed != (i % 2 == 0)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (final Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        assertEquals(8 * 2000, cache.getHitCount() + cache.getMissCount());
+        assertTrue(cache.size() <= 16);
+    }
+
+    @Test
+    public void compiledPoliciesAndLists() throws Exception {
+        final InlineDigestCache cache = new InlineDigestCache(10);
+        final CheckRequest request = new CheckRequest(CheckRequest.Destination.InlineScript)
+                .setInlineDigestCache(cache).setSource("a");
+
+        final Policy p = parse("script-src " + hash("a"));
+        assertTrue(p.compile().check(request));
+        assertEquals(1, cache.getMissCount());
+
+        final PolicyList list = Policy.parseSerializedCSPList("script-src " + hash("a") + ", script-src "
+                + hash("a") + " " + hash("b"), ThrowIfPolicyListError);
+        assertTrue(list.check(request.reset().setDestination(CheckRequest.Destination.InlineScript).setSource("a")));
+        assertSame(cache, request.getInlineDigestCache());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    private static boolean script(final Policy p, final InlineDigestCache cache, final String source) {
+        return p.check(new CheckRequest(CheckRequest.Destination.InlineScript)
+                .setInlineDigestCache(cache).setSource(source));
+    }
+
+    private static boolean style(final Policy p, final InlineDigestCache cache, final String source) {
+        return p.check(new CheckRequest(CheckRequest.Destination.InlineStyle)
+                .setInlineDigestCache(cache).setSource(source));
+    }
+
+    private static Policy parse(final String policy) {
+        return Policy.parseSerializedCSP(policy, ThrowIfPolicyError);
+    }
+
+    private static String hash(final String source) throws Exception {
+        final byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+        return "'sha256-" + Base64.getEncoder().encodeToString(digest) + "'";
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Locale;
+
+import org.htmlunit.csp.internal.KeywordTable;
+import org.junit.jupiter.api.Test;
+
+public class KeywordTableTest extends TestBase {
+
+    private enum Word {
+        Self("'self'"),
+        Star("*"),
+        Same("'same'"),
+        Sha("'sha'"),
+        None(null);
+
+        private final String keyword_;
+
+        Word(final String keyword) {
+            keyword_ = keyword;
+        }
+    }
+
+    @Test
+    public void lookup() {
+        final KeywordTable<Word> table = new KeywordTable<>(Word.class, w -> w.keyword_, Word.None);
+        assertEquals(Word.Self, table.lookup("'self'"));
+        assertEquals(Word.Self, table.lookup("'SeLf'"));
+        assertEquals(Word.Same, table.lookup("'SAME'"));
+        assertEquals(Word.Sha, table.lookup("'sha'"));
+        assertEquals(Word.Star, table.lookup("*"));
+        assertEquals(Word.None, table.lookup(""));
+        assertEquals(Word.None, table.lookup("'selfs'"));
+        assertEquals(Word.None, table.lookup("'selv'"));
+        assertEquals(Word.None, table.lookup("\u00e9"));
+        assertEquals(Word.Self, table.lookup("a 'self' b", 2, 8));
+        assertEquals(Word.None, table.lookup("a 'self' b", 2, 7));
+
+        final KeywordTable<FetchDirectiveKind> fetch =
+                new KeywordTable<>(FetchDirectiveKind.class, FetchDirectiveKind::getRepr, null);
+        for (final FetchDirectiveKind kind : FetchDirectiveKind.values()) {
+            assertEquals(kind, fetch.lookup(kind.getRepr().toUpperCase(Locale.ROOT)));
+        }
+        assertNull(fetch.lookup("script-src-"));
+    }
+
+    @Test
+    public void ignoresLocale() {
+        final Locale locale = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.forLanguageTag("tr"));
+            final KeywordTable<Word> table = new KeywordTable<>(Word.class, w -> w.keyword_, Word.None);
+            assertEquals(Word.Self, table.lookup("'SELF'"));
+            assertTrue(KeywordTable.startsWithIgnoreCase("'NONCE-abc'", "'nonce-"));
+            assertFalse(KeywordTable.startsWithIgnoreCase("'NONC", "'nonce-"));
+        }
+        finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    public void invalidKeywords() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new KeywordTable<>(Word.class, w -> w == Word.Self ? "'Self'" : null, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> new KeywordTable<>(Word.class, w -> w == Word.None ? null : "*", null));
+        assertThrows(IllegalArgumentException.class,
+                () -> new KeywordTable<>(Word.class, w -> "", null));
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.htmlunit.csp.directive.SourceExpressionDirective;
+import org.htmlunit.csp.url.URI;
+import org.junit.jupiter.api.Test;
+
+public class LazyPolicyTest extends TestBase {
+
+    @Test
+    public void roundTrips() {
+        final String serialized = "script-src 'self' 'nonce-abc'; SCRIPT-SRC a; report-to x; sandbox allow-forms;;img-src";
+        final Policy policy = Policy.parseSerializedCSPLazily(serialized, Policy.PolicyErrorConsumer.ignored);
+        assertEquals("script-src 'self' 'nonce-abc'; SCRIPT-SRC a; report-to x; sandbox allow-forms; img-src",
+                policy.toString());
+        assertEquals("x", policy.reportTo().get().value());
+        assertTrue(policy.sandbox().get().allowForms());
+        assertEquals(policy.toString(), Policy.parseSerializedCSPLazily(serialized, Policy.PolicyErrorConsumer.ignored).toString());
+    }
+
+    @Test
+    public void reportsDirectiveLevelDiagnosticsOnly() {
+        final List<PolicyError> observed = new ArrayList<>();
+        final Policy policy = Policy.parseSerializedCSPLazily(
+                "script-src 'self' 'self'; script-src a; foo; prefetch-src a; block-all-mixed-content a",
+                (severity, message, directiveIndex, valueIndex) ->
+                        observed.add(e(severity, message, directiveIndex, valueIndex)));
+
+        final List<PolicyError> expected = new ArrayList<>();
+        expected.add(e(Policy.Severity.Warning, "Duplicate directive script-src", 1, -1));
+        expected.add(e(Policy.Severity.Warning, "Unrecognized directive foo", 2, -1));
+        expected.add(e(Policy.Severity.Warning, "The prefetch-src directive has been deprecated", 3, -1));
+        expected.add(e(Policy.Severity.Error, "The block-all-mixed-content directive does not support values", 4, 0));
+        assertEquals(expected, observed);
+
+        // building the directive does not report anything
+        assertTrue(policy.getFetchDirective(FetchDirectiveKind.ScriptSrc).get().self());
+        assertEquals(expected, observed);
+    }
+
+    @Test
+    public void matchesEagerParsingOnCorpus() throws Exception {
+        final Optional<URI> origin = URI.parseURI("https://www.example.com");
+        final List<Function<Policy, Object>> queries = new ArrayList<>();
+        queries.add(Policy::toString);
+        queries.add(Policy::allowsEval);
+        queries.add(p -> p.allowsInlineScript(Optional.empty(), Optional.of("alert(1)"), Optional.empty()));
+        queries.add(p -> p.allowsExternalScript(Optional.empty(), Optional.empty(),
+                URI.parseURI("https://cdn.example.com/a.js"), Optional.empty(), origin));
+        queries.add(p -> p.allowsImage(URI.parseURI("https://img.example.org/a.png"), origin));
+        queries.add(p -> p.allowsFrame(URI.parseURI("https://www.youtube.com/embed"), origin));
+        queries.add(p -> p.allowsConnection(URI.parseURI("wss://www.example.com/socket"), origin));
+        queries.add(p -> p.allowsFormAction(URI.parseURI("https://www.example.com/post"),
+                Optional.of(false), Optional.empty(), origin));
+        queries.add(p -> p.allowsFrameAncestor(URI.parseURI("https://www.example.com"), origin));
+        queries.add(p -> p.allowsPlugin(Optional.empty()));
+        queries.add(Policy::upgradeInsecureRequests);
+        queries.add(p -> p.sandbox().map(d -> d.allowScripts() + " " + d.allowForms() + " " + d.getValues()));
+        queries.add(p -> p.reportUri().map(d -> d.getValues()));
+        queries.add(p -> p.baseUri().map(d -> d.getValues()));
+        queries.add(p -> p.trustedTypes().map(d -> d.getValues()));
+        for (final FetchDirectiveKind kind : FetchDirectiveKind.values()) {
+            queries.add(p -> p.getFetchDirective(kind).map(d -> d.getValues()));
+        }
+
+        for (final String serialized : PolicyTokenizerTest.readCorpus()) {
+            final PolicyList eager = Policy.parseSerializedCSPList(serialized, Policy.PolicyListErrorConsumer.ignored);
+            final PolicyList lazy = Policy.parseSerializedCSPListLazily(serialized, Policy.PolicyListErrorConsumer.ignored);
+            assertEquals(eager.getPolicies().size(), lazy.getPolicies().size(), serialized);
+            for (int i = 0; i < eager.getPolicies().size(); i++) {
+                for (final Function<Policy, Object> query : queries) {
+                    assertEquals(query.apply(eager.getPolicies().get(i)), query.apply(lazy.getPolicies().get(i)),
+                            serialized);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void materializesOnceAcrossThreads() throws Exception {
+        final Policy policy = Policy.parseSerializedCSPLazily(
+                "default-src 'self'; script-src 'self' https://a.example '" + QueryingTest.EXAMPLE_SHA + "'",
+                ThrowIfPolicyError);
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<SourceExpressionDirective>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return policy.getFetchDirective(FetchDirectiveKind.ScriptSrc).get();
+                }));
+            }
+            start.countDown();
+            final SourceExpressionDirective first = futures.get(0).get(1, TimeUnit.MINUTES);
+            for (final Future<SourceExpressionDirective> future : futures) {
+                assertSame(first, future.get(1, TimeUnit.MINUTES));
+            }
+            assertEquals(1, first.getHashes().size());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.htmlunit.csp.internal.Lexer;
+import org.htmlunit.csp.url.GUID;
+import org.htmlunit.csp.url.URI;
+import org.htmlunit.csp.url.URLWithScheme;
+import org.htmlunit.csp.value.Host;
+import org.htmlunit.csp.value.MediaType;
+import org.htmlunit.csp.value.RFC7230Token;
+import org.htmlunit.csp.value.Scheme;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the scanners of {@link Lexer} with the regular expressions they replace.
+ */
+public class LexerTest {
+
+    private static final Pattern TT_POLICY_NAME_PATTERN = Pattern.compile("^[A-Za-z0-9\\-#=_/@.%]+$");
+    private static final Pattern BASE64_VALUE_PATTERN = Pattern.compile("[a-zA-Z0-9+/\\-_]+=?=?");
+
+    private static final String[] EDGE_CASES = {
+        "", "*", "*.", "*.a", "*a", "**", ".", "a.", ".a", "a..b", "a.b.", "-", "a-b.c-d",
+        "https://", "https://*", "https://*.example.com", "https://a:", "https://a:*", "https://a:8",
+        "https://a:99999999999", "a:b", "a://b", "a+b.c-d://e", "1a://b", "a:/b", "a:80/", "a:80/p/",
+        "a/b%2", "a/b%2F", "a/b%zz", "a/b?c", "a?c#d", "a#d", "a#d\n", "a#d\nx", "a?c\nd", "a?c\n#d",
+        "a\n", "a\r", "a\r\n", "a\n\n", "a\u0085", "a\u2028", "a\u2029", "a\n\r", "a:8\n", "a/p\r\n",
+        "a/\u00e9", "a\u00e9", "a/p;q=1", "a/p,q", "a/[", "a@b", "a/@:", "a/~._-", "HTTPS://A.COM/P",
+        "data:", "data:text/html,x", "javascript:alert(1)", "https:", "HTTPS:", "a:\n", "a",
+        "text/plain", "text/", "/plain", "text/plain/x", "text/plain\n", "a{b}/c|d", "text plain",
+        "self", "self\n", "'self'", "none", "unsafe-inline", "Self", "selfx", "wasm-unsafe-eval",
+        "abc", "abc=", "abc==", "abc===", "=", "!", "!a", "a b", "#", "%", "tt-name#1=_/@.%",
+    };
+
+    private static final String ALPHABET = "aZ09-.*:/%Ff2?#+@_=!'~\n\r\u0085\u2028 \u00e9[";
+
+    private static List<String> inputs() throws Exception {
+        final Set<String> inputs = new LinkedHashSet<>(Arrays.asList(EDGE_CASES));
+        for (final String policy : PolicyTokenizerTest.readCorpus()) {
+            for (final String token : policy.split("[;,\\s]+")) {
+                inputs.add(token);
+                if (token.length() > 2 && token.startsWith("'") && token.endsWith("'")) {
+                    inputs.add(token.substring(1, token.length() - 1));
+                }
+            }
+        }
+        final Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            final StringBuilder sb = new StringBuilder();
+            if (random.nextBoolean()) {
+                sb.append(random.nextBoolean() ? "https://" : "a.b");
+            }
+            final int length = random.nextInt(10);
+            for (int j = 0; j < length; j++) {
+                sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            inputs.add(sb.toString());
+        }
+        return new ArrayList<>(inputs);
+    }
+
+    private static <T> void assertSameOutcome(final String input, final Function<String, T> expected,
+            final Function<String, T> actual) {
+        assertEquals(outcome(input, expected), outcome(input, actual), () -> "input: \"" + input + "\"");
+    }
+
+    private static Object outcome(final String input, final Function<String, ?> function) {
+        try {
+            return function.apply(input);
+        }
+        catch (final RuntimeException e) {
+            return e.getClass();
+        }
+    }
+
+    @Test
+    public void hostSourceMatchesPattern() throws Exception {
+        for (final String input : inputs()) {
+            assertSameOutcome(input, LexerTest::parseHostWithPattern, Host::parseHost);
+        }
+    }
+
+    @Test
+    public void uriMatchesPattern() throws Exception {
+        for (final String input : inputs()) {
+            assertSameOutcome(input, LexerTest::parseURIWithPattern, s -> URI.parseURI(s).map(LexerTest::describe));
+        }
+    }
+
+    @Test
+    public void guidMatchesPattern() throws Exception {
+        for (final String input : inputs()) {
+            assertSameOutcome(input, LexerTest::parseGUIDWithPattern, s -> GUID.parseGUID(s).map(LexerTest::describe));
+        }
+    }
+
+    @Test
+    public void valuesMatchPatterns() throws Exception {
+        for (final String input : inputs()) {
+            assertSameOutcome(input,
+                    s -> s.matches("^" + Constants.SCHEME_PART + ":$")
+                            ? Optional.of(new Scheme(s.substring(0, s.length() - 1).toLowerCase(Locale.ROOT)))
+                            : Optional.empty(),
+                    Scheme::parseScheme);
+            assertSameOutcome(input, LexerTest::parseMediaTypeWithPattern, MediaType::parseMediaType);
+            assertSameOutcome(input,
+                    s -> Constants.rfc7230TokenPattern.matcher(s).find()
+                            ? Optional.of(new RFC7230Token(s))
+                            : Optional.empty(),
+                    RFC7230Token::parseRFC7230Token);
+        }
+    }
+
+    @Test
+    public void predicatesMatchPatterns() throws Exception {
+        for (final String input : inputs()) {
+            final int length = input.length();
+            assertSameOutcome(input, s -> BASE64_VALUE_PATTERN.matcher(s).find(), Utils.IS_BASE64_VALUE::test);
+            assertSameOutcome(input, s -> Constants.DIRECTIVE_NAME_PATTERN.matcher(s).find(),
+                    Directive.IS_DIRECTIVE_NAME::test);
+            assertSameOutcome(input, s -> TT_POLICY_NAME_PATTERN.matcher(s).matches(),
+                    s -> Lexer.isTrustedTypesPolicyName(s, 0, length));
+            assertSameOutcome(input, s -> Constants.UNQUOTED_KEYWORD_PATTERN.matcher(s).find(),
+                    s -> Lexer.isUnquotedKeyword(s, 0, Lexer.endIgnoringFinalLineTerminator(s, 0, length)));
+        }
+    }
+
+    @Test
+    public void scansRanges() {
+        final String input = "script-src https://a.example:8080/p?q#f 'self'";
+        final int[] bounds = new int[Lexer.HOST_SOURCE_BOUNDS];
+        assertTrue(Lexer.scanHostSource(input, 11, 39, bounds));
+        assertEquals("https", input.substring(bounds[Lexer.SCHEME_START], bounds[Lexer.SCHEME_END]));
+        assertEquals("a.example", input.substring(bounds[Lexer.HOST_START], bounds[Lexer.HOST_END]));
+        assertEquals("8080", input.substring(bounds[Lexer.PORT_START], bounds[Lexer.PORT_END]));
+        assertEquals("/p", input.substring(bounds[Lexer.PATH_START], bounds[Lexer.PATH_END]));
+        assertFalse(Lexer.scanHostSource(input, 0, 39, bounds));
+
+        assertTrue(Lexer.isDirectiveName(input, 0, 10));
+        assertFalse(Lexer.isDirectiveName(input, 0, 11));
+        assertTrue(Lexer.isUnquotedKeyword(input, 41, 45));
+        assertEquals(16, Lexer.scanSchemePrefix(input, 11, input.length()));
+        assertTrue(Lexer.isSchemeSource(input, 11, 17));
+        assertEquals(-1, Lexer.scanMediaType(input, 0, 10));
+    }
+
+    private static Optional<Host> parseHostWithPattern(final String value) {
+        final Matcher matcher = Constants.HOST_SOURCE_PATTERN.matcher(value);
+        if (matcher.find()) {
+            String scheme = matcher.group("scheme");
+            if (scheme != null) {
+                scheme = scheme.substring(0, scheme.length() - 3).toLowerCase(Locale.ROOT);
+            }
+            final String portString = matcher.group("port");
+            final int port;
+            if (portString == null) {
+                port = Constants.EMPTY_PORT;
+            }
+            else {
+                port = ":*".equals(portString) ? Constants.WILDCARD_PORT : Integer.parseInt(portString.substring(1));
+            }
+            final String host = matcher.group("host").toLowerCase(Locale.ROOT);
+            return Optional.of(new Host(scheme, host, port, matcher.group("path")));
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<String> parseURIWithPattern(final String uri) {
+        final Matcher matcher = Constants.HOST_SOURCE_PATTERN.matcher(uri);
+        if (!matcher.find()) {
+            return Optional.empty();
+        }
+        String scheme = matcher.group("scheme");
+        if (scheme == null) {
+            return Optional.empty();
+        }
+        scheme = scheme.substring(0, scheme.length() - 3);
+        final String portString = matcher.group("port");
+        final int port;
+        if (portString == null) {
+            port = URI.defaultPortForProtocol(scheme.toLowerCase(Locale.ROOT));
+        }
+        else {
+            port = ":*".equals(portString) ? Constants.WILDCARD_PORT : Integer.parseInt(portString.substring(1));
+        }
+        final String path = matcher.group("path");
+        return Optional.of(describe(new URI(scheme, matcher.group("host"), port, path == null ? "" : path)));
+    }
+
+    private static Optional<String> parseGUIDWithPattern(final String value) {
+        final Matcher matcher = Constants.SCHEME_PATTERN.matcher(value);
+        if (!matcher.find()) {
+            return Optional.empty();
+        }
+        String scheme = matcher.group("scheme");
+        scheme = scheme.substring(0, scheme.length() - 1);
+        return Optional.of(describe(new GUID(scheme, value.substring(scheme.length() + 1))));
+    }
+
+    private static Optional<MediaType> parseMediaTypeWithPattern(final String value) {
+        final Matcher matcher = Constants.MEDIA_TYPE_PATTERN.matcher(value);
+        if (matcher.find()) {
+            return Optional.of(new MediaType(matcher.group("type").toLowerCase(Locale.ROOT),
+                    matcher.group("subtype").toLowerCase(Locale.ROOT)));
+        }
+        return Optional.empty();
+    }
+
+    private static String describe(final URLWithScheme url) {
+        return url.getClass().getSimpleName() + " " + url.getScheme() + " " + url.getHost() + " "
+                + url.getPort() + " " + url.getPath();
+    }
+}
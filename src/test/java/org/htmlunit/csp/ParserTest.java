@@ -19,6 +19,10 @@
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 
 import org.htmlunit.csp.Policy.PolicyErrorConsumer;
@@ -749,6 +753,11 @@ private static void serializesTo(final String input, final String output, final
         }
         assertEquals(output, policy.toString());
         assertEquals(deliveredViaMeta, policy.deliveredViaMeta());
+
+        assertEquals(output.length(), policy.getSerializedLength());
+        final ByteBuffer buffer = ByteBuffer.allocate(output.length());
+        policy.writeTo(buffer);
+        assertEquals(output, new String(buffer.array(), StandardCharsets.US_ASCII));
     }
 
     /**
@@ -773,4 +782,89 @@ public void invalidHashSyntax() {
             assertEquals(errors[i], observedErrors.get(i));
         }
     }
+
+    @Test
+    public void parsesCharSequences() {
+        final StringBuilder serialized = new StringBuilder("script-src 'self'  https://example.com ;img-src *");
+        assertEquals("script-src 'self' https://example.com; img-src *",
+                Policy.parseSerializedCSP(serialized, ThrowIfPolicyError).toString());
+        assertEquals("script-src 'self' https://example.com; img-src *",
+                Policy.parseSerializedCSPList(serialized, ThrowIfPolicyListError).toString());
+    }
+
+    @Test
+    public void parsesBytes() {
+        final byte[] bytes = "xxscript-src 'self', img-src *xx".getBytes(StandardCharsets.US_ASCII);
+
+        final PolicyList list = Policy.parseSerializedCSPList(bytes, 2, bytes.length - 4, ThrowIfPolicyListError);
+        assertEquals("script-src 'self', img-src *", list.toString());
+
+        final Policy policy = Policy.parseSerializedCSP(bytes, 2, 17, ThrowIfPolicyError);
+        assertEquals("script-src 'self'", policy.toString());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> Policy.parseSerializedCSP(bytes, 2, bytes.length - 4, ThrowIfPolicyError));
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> Policy.parseSerializedCSP(bytes, 2, bytes.length, ThrowIfPolicyError));
+
+        final byte[] nonAscii = {'a', ' ', (byte) 0xC3, (byte) 0xA9};
+        assertThrows(IllegalArgumentException.class,
+                () -> Policy.parseSerializedCSPList(nonAscii, 0, nonAscii.length, ThrowIfPolicyListError));
+    }
+
+    @Test
+    public void serializesToAppendableAndBuffer() throws Exception {
+        final String serialized = "Script-Src 'self' https://a.com; img-src; x-unknown a, "
+                + "default-src 'none', sandbox allow-scripts";
+        for (final PolicyList list : new PolicyList[] {
+            Policy.parseSerializedCSPList(serialized, Policy.PolicyListErrorConsumer.ignored),
+            Policy.parseSerializedCSPListLazily(serialized, Policy.PolicyListErrorConsumer.ignored),
+        }) {
+            assertEquals(serialized, list.toString());
+            assertEquals(serialized.length(), list.getSerializedLength());
+
+            final StringWriter writer = new StringWriter();
+            writer.write('>');
+            list.appendTo(writer);
+            assertEquals(">" + serialized, writer.toString());
+
+            final ByteBuffer direct = ByteBuffer.allocateDirect(serialized.length() + 2);
+            direct.put((byte) '>');
+            list.writeTo(direct);
+            assertEquals(serialized.length() + 1, direct.position());
+            final byte[] bytes = new byte[serialized.length()];
+            direct.position(1);
+            direct.get(bytes);
+            assertEquals(serialized, new String(bytes, StandardCharsets.US_ASCII));
+
+            // nothing is written if the space does not suffice
+            final ByteBuffer small = ByteBuffer.allocate(serialized.length() - 1);
+            assertThrows(BufferOverflowException.class, () -> list.writeTo(small));
+            assertEquals(0, small.position());
+            assertThrows(BufferOverflowException.class, () -> list.getPolicy(0).writeTo(ByteBuffer.allocate(5)));
+        }
+
+        final PolicyList empty = new PolicyList(new ArrayList<>());
+        assertEquals(0, empty.getSerializedLength());
+        empty.writeTo(ByteBuffer.allocate(0));
+    }
+
+    @Test
+    public void parsesByteBuffers() {
+        final byte[] bytes = "default-src 'none'; report-to a".getBytes(StandardCharsets.US_ASCII);
+
+        final ByteBuffer heap = ByteBuffer.wrap(bytes);
+        heap.position(20);
+        assertEquals("report-to a", Policy.parseSerializedCSP(heap, ThrowIfPolicyError).toString());
+        assertEquals(20, heap.position());
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        assertEquals("default-src 'none'; report-to a",
+                Policy.parseSerializedCSPList(direct, ThrowIfPolicyListError).toString());
+        assertEquals(0, direct.position());
+
+        final ByteBuffer sliced = ByteBuffer.wrap(bytes, 0, 18).slice();
+        assertEquals("default-src 'none'", Policy.parseSerializedCSP(sliced, ThrowIfPolicyError).toString());
+    }
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Optional;
+
+import org.htmlunit.csp.CheckRequest.Destination;
+import org.htmlunit.csp.directive.SourceExpressionDirective;
+import org.htmlunit.csp.internal.DirectiveAccess;
+import org.htmlunit.csp.url.URLWithScheme;
+import org.htmlunit.csp.value.Hash;
+import org.htmlunit.csp.value.Host;
+import org.htmlunit.csp.value.Nonce;
+import org.htmlunit.csp.value.Scheme;
+import org.junit.jupiter.api.Test;
+
+public class PolicyBuilderTest extends TestBase {
+
+    private static final Host CDN = Host.parseHost("https://cdn.example.com:8443/js/").orElseThrow();
+    private static final Host WILDCARD = Host.parseHost("*.example.com").orElseThrow();
+    private static final Scheme DATA = Scheme.parseScheme("data:").orElseThrow();
+    private static final Hash HASH =
+            Hash.parseHash("'sha256-n4bQgYhMfWWaL+qgxVrQFaO/TxsrC4Is0V1sFbDwCgg='").orElseThrow();
+
+    @Test
+    public void sameAsParsed() throws Exception {
+        final Nonce nonce = Nonce.parseNonce("'nonce-abc'").orElseThrow();
+        final Policy built = new PolicyBuilder()
+                .addSelf(FetchDirectiveKind.DefaultSrc)
+                .addHost(FetchDirectiveKind.ScriptSrc, CDN)
+                .addNonce(FetchDirectiveKind.ScriptSrc, nonce)
+                .addHash(FetchDirectiveKind.ScriptSrc, HASH)
+                .addStrictDynamic(FetchDirectiveKind.ScriptSrc)
+                .addUnsafeInline(FetchDirectiveKind.StyleSrc)
+                .addHost(FetchDirectiveKind.ImgSrc, WILDCARD)
+                .addScheme(FetchDirectiveKind.ImgSrc, DATA)
+                .addSelf(FetchDirectiveKind.ImgSrc)
+                .addNone(FetchDirectiveKind.ObjectSrc)
+                .addDirective("frame-ancestors", "'self'", "https://parent.example")
+                .addDirective("upgrade-insecure-requests")
+                .addDirective("sandbox", "allow-scripts")
+                .build();
+        final Policy parsed = Policy.parseSerializedCSP(built.toString(), ThrowIfPolicyError);
+
+        assertEquals("default-src 'self'; script-src https://cdn.example.com:8443/js/ 'nonce-abc' "
+                + "'sha256-n4bQgYhMfWWaL+qgxVrQFaO/TxsrC4Is0V1sFbDwCgg=' 'strict-dynamic'; "
+                + "style-src 'unsafe-inline'; img-src *.example.com data: 'self'; object-src 'none'; "
+                + "frame-ancestors 'self' https://parent.example; upgrade-insecure-requests; sandbox allow-scripts",
+                built.toString());
+        assertEquals(parsed.toString(), built.toString());
+        assertEquals(parsed.upgradeInsecureRequests(), built.upgradeInsecureRequests());
+        for (final FetchDirectiveKind kind : FetchDirectiveKind.values()) {
+            final Optional<SourceExpressionDirective> expected = parsed.getFetchDirective(kind);
+            final Optional<SourceExpressionDirective> actual = built.getFetchDirective(kind);
+            assertEquals(expected.isPresent(), actual.isPresent(), kind::toString);
+            if (expected.isPresent()) {
+                assertEquals(expected.get().getValues(), actual.get().getValues());
+                assertEquals(expected.get().getHosts(), actual.get().getHosts());
+                assertEquals(expected.get().getSchemes(), actual.get().getSchemes());
+                assertEquals(expected.get().getNonces(), actual.get().getNonces());
+                assertEquals(expected.get().getHashes(), actual.get().getHashes());
+                assertEquals(expected.get().self(), actual.get().self());
+                assertEquals(expected.get().star(), actual.get().star());
+                assertEquals(expected.get().unsafeInline(), actual.get().unsafeInline());
+                assertEquals(expected.get().strictDynamic(), actual.get().strictDynamic());
+            }
+        }
+
+        final CheckRequest request = new CheckRequest();
+        for (final URLWithScheme origin : CompiledPolicyTest.ORIGINS) {
+            for (final URLWithScheme url : CompiledPolicyTest.URLS) {
+                for (final Destination destination : Destination.values()) {
+                    request.reset().setDestination(destination).setOrigin(origin).setUrl(url)
+                            .setNonce("abc").setSource("alert(1)");
+                    assertEquals(parsed.check(request), built.check(request), destination::toString);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void valuesShared() {
+        final PolicyBuilder builder = new PolicyBuilder()
+                .addHost(FetchDirectiveKind.ScriptSrc, CDN)
+                .addHash(FetchDirectiveKind.ScriptSrc, HASH);
+        final Policy first = builder.build();
+        final Policy second = builder.build();
+
+        final SourceExpressionDirective script = first.getFetchDirective(FetchDirectiveKind.ScriptSrc).orElseThrow();
+        assertSame(CDN, script.getHosts().get(0));
+        assertSame(HASH, script.getHashes().get(0));
+        assertSame(CDN, second.getFetchDirective(FetchDirectiveKind.ScriptSrc).orElseThrow().getHosts().get(0));
+
+        // every policy has its own directives
+        assertNotSame(script, second.getFetchDirective(FetchDirectiveKind.ScriptSrc).orElseThrow());
+    }
+
+    @Test
+    public void copy() {
+        final PolicyBuilder base = new PolicyBuilder()
+                .addSelf(FetchDirectiveKind.DefaultSrc)
+                .addHost(FetchDirectiveKind.ScriptSrc, CDN)
+                .addDirective("frame-ancestors", "'self'");
+
+        final Policy first = base.copy()
+                .addNonce(FetchDirectiveKind.ScriptSrc, Nonce.parseNonce("'nonce-abc'").orElseThrow())
+                .build();
+        final Policy second = base.copy()
+                .addNonce(FetchDirectiveKind.ScriptSrc, Nonce.parseNonce("'nonce-def'").orElseThrow())
+                .addUnsafeInline(FetchDirectiveKind.StyleSrc)
+                .build();
+        assertEquals("default-src 'self'; script-src https://cdn.example.com:8443/js/ 'nonce-abc'; "
+                + "frame-ancestors 'self'", first.toString());
+        assertEquals("default-src 'self'; script-src https://cdn.example.com:8443/js/ 'nonce-def'; "
+                + "frame-ancestors 'self'; style-src 'unsafe-inline'", second.toString());
+        assertSame(CDN, second.getFetchDirective(FetchDirectiveKind.ScriptSrc).orElseThrow().getHosts().get(0));
+
+        // the base is not changed by its copies, and copies know about 'none'
+        assertEquals("default-src 'self'; script-src https://cdn.example.com:8443/js/; frame-ancestors 'self'",
+                base.build().toString());
+        final PolicyBuilder none = new PolicyBuilder().addNone(FetchDirectiveKind.ObjectSrc);
+        assertThrows(IllegalArgumentException.class, () -> none.copy().addSelf(FetchDirectiveKind.ObjectSrc));
+    }
+
+    @Test
+    public void invalid() {
+        final PolicyBuilder builder = new PolicyBuilder()
+                .addSelf(FetchDirectiveKind.ImgSrc)
+                .addSelf(FetchDirectiveKind.ImgSrc)
+                .addNone(FetchDirectiveKind.ObjectSrc)
+                .addNone(FetchDirectiveKind.ObjectSrc);
+        assertEquals("img-src 'self'; object-src 'none'", builder.build().toString());
+
+        assertThrows(IllegalArgumentException.class, () -> builder.addNone(FetchDirectiveKind.ImgSrc));
+        assertThrows(IllegalArgumentException.class, () -> builder.addSelf(FetchDirectiveKind.ObjectSrc));
+        assertThrows(IllegalArgumentException.class, () -> builder.addDirective("script-src", "'self'"));
+        assertThrows(IllegalArgumentException.class, () -> builder.addDirective("frame ancestors"));
+        assertThrows(IllegalArgumentException.class,
+            () -> new PolicyBuilder().addDirective("frame-ancestors", "'nonce-abc'").build());
+
+        final Policy empty = new PolicyBuilder().build();
+        assertEquals("", empty.toString());
+        assertTrue(empty.allowsEval());
+        assertFalse(builder.build().allowsObject(Optional.of(CompiledPolicyTest.URLS.get(0)), Optional.empty()));
+    }
+
+    @Test
+    public void invalidValues() {
+        final PolicyBuilder builder = new PolicyBuilder();
+
+        // would serialize as the keyword
+        assertThrows(IllegalArgumentException.class,
+            () -> builder.addHost(FetchDirectiveKind.ScriptSrc, new Host(null, "'unsafe-inline'", -1, null)));
+        // the parser lowercases scheme and host
+        assertThrows(IllegalArgumentException.class,
+            () -> builder.addHost(FetchDirectiveKind.ScriptSrc, new Host("https", "CDN.example.com", -1, null)));
+        assertThrows(IllegalArgumentException.class,
+            () -> builder.addScheme(FetchDirectiveKind.ScriptSrc, new Scheme("HTTPS")));
+        // would split into several tokens
+        assertThrows(IllegalArgumentException.class,
+            () -> builder.addNonce(FetchDirectiveKind.ScriptSrc, new Nonce("a b")));
+        assertThrows(IllegalArgumentException.class,
+            () -> builder.addHash(FetchDirectiveKind.ScriptSrc, new Hash(Hash.Algorithm.SHA256, "a;b")));
+
+        // nothing was added
+        assertEquals("", builder.build().toString());
+        builder.addHost(FetchDirectiveKind.ScriptSrc, new Host("https", "cdn.example.com", -1, null));
+        assertEquals("script-src https://cdn.example.com", builder.build().toString());
+    }
+
+    @Test
+    public void directiveAccess() {
+        // only the directive package registers the constructors for parsed values
+        assertThrows(IllegalCallerException.class, () -> DirectiveAccess.set(null));
+        assertEquals("script-src https://cdn.example.com:8443/js/",
+                new PolicyBuilder().addHost(FetchDirectiveKind.ScriptSrc, CDN).build().toString());
+    }
+}
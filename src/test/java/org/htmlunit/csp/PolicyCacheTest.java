@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class PolicyCacheTest extends TestBase {
+
+    @Test
+    public void hitsAndMisses() {
+        final PolicyCache cache = new PolicyCache(10);
+
+        final PolicyList first = cache.parseSerializedCSPList("script-src 'self', img-src *", ThrowIfPolicyListError);
+        final PolicyList second = cache.parseSerializedCSPList("script-src 'self', img-src *", ThrowIfPolicyListError);
+        assertSame(first, second);
+        assertEquals("script-src 'self', img-src *", first.toString());
+
+        cache.parseSerializedCSPList("default-src 'none'", ThrowIfPolicyListError);
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.getEvictionCount());
+        assertEquals(2, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        final PolicyCache cache = new PolicyCache(1);
+        final PolicyList a = cache.parseSerializedCSPList("script-src a", ThrowIfPolicyListError);
+        cache.parseSerializedCSPList("script-src b", ThrowIfPolicyListError);
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(1, cache.size());
+
+        final PolicyList again = cache.parseSerializedCSPList("script-src a", ThrowIfPolicyListError);
+        assertEquals(a.toString(), again.toString());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(2, cache.getEvictionCount());
+    }
+
+    @Test
+    public void staysBounded() {
+        final PolicyCache cache = new PolicyCache(37);
+        for (int i = 0; i < 1000; i++) {
+            cache.parseSerializedCSPList("script-src https://host" + i + ".example", ThrowIfPolicyListError);
+            assertTrue(cache.size() <= 37);
+        }
+        assertEquals(1000 - cache.size(), cache.getEvictionCount());
+    }
+
+    @Test
+    public void diagnosticsAreReplayedWhenCaptured() {
+        final String header = "script-src 'self' 'self', frame-src";
+        final List<PolicyListError> expected = new ArrayList<>();
+        expected.add(e(Policy.Severity.Warning, "Duplicate source-expression 'self'", 0, 0, 1));
+        expected.add(e(Policy.Severity.Error, "Source-expression lists cannot be empty (use 'none' instead)", 1, 0, -1));
+
+        final PolicyCache cache = new PolicyCache(4, true);
+        assertTrue(cache.capturesDiagnostics());
+        for (int i = 0; i < 3; i++) {
+            final List<PolicyListError> observed = new ArrayList<>();
+            cache.parseSerializedCSPList(header,
+                    (severity, message, policyIndex, directiveIndex, valueIndex) ->
+                            observed.add(e(severity, message, policyIndex, directiveIndex, valueIndex)));
+            assertEquals(expected, observed);
+        }
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void diagnosticsAreNotReplayedByDefault() {
+        final PolicyCache cache = new PolicyCache(4);
+        final List<PolicyListError> observed = new ArrayList<>();
+        final Policy.PolicyListErrorConsumer consumer = (severity, message, policyIndex, directiveIndex, valueIndex) ->
+                observed.add(e(severity, message, policyIndex, directiveIndex, valueIndex));
+
+        cache.parseSerializedCSPList("script-src 'self' 'self'", consumer);
+        assertEquals(1, observed.size());
+        cache.parseSerializedCSPList("script-src 'self' 'self'", consumer);
+        assertEquals(1, observed.size());
+    }
+
+    @Test
+    public void invalidInput() {
+        assertThrows(IllegalArgumentException.class, () -> new PolicyCache(0));
+
+        final PolicyCache cache = new PolicyCache(4);
+        assertThrows(IllegalArgumentException.class,
+                () -> cache.parseSerializedCSPList("script-src \u00e9", ThrowIfPolicyListError));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void concurrentUse() throws Exception {
+        final PolicyCache cache = new PolicyCache(8);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        final String header = "img-src https://h" + (i % 12) + ".example";
+                        final PolicyList list = cache.parseSerializedCSPList(header, ThrowIfPolicyListError);
+                        assertEquals(header, list.toString());
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(8000, cache.getHitCount() + cache.getMissCount());
+        assertTrue(cache.size() <= 8);
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.htmlunit.csp.CheckRequest.Destination;
+import org.htmlunit.csp.directive.SourceExpressionDirective;
+import org.htmlunit.csp.url.URLWithScheme;
+import org.junit.jupiter.api.Test;
+
+public class PolicyCodecTest extends TestBase {
+    // the type tags of the values, see PolicyCodec
+    private static final int TEXT = 0;
+    private static final int NONCE = 1;
+    private static final int HASH = 2;
+    private static final int SCHEME = 3;
+    private static final int HOST = 4;
+
+    @Test
+    public void roundTrip() throws Exception {
+        final CheckRequest request = new CheckRequest();
+        for (final Policy policy : CompiledPolicyTest.policies()) {
+            final byte[] encoded = PolicyCodec.encode(policy);
+            final ByteBuffer buffer = ByteBuffer.wrap(encoded);
+            final Policy decoded = PolicyCodec.decodePolicy(buffer);
+            assertFalse(buffer.hasRemaining());
+            assertEquals(policy.toString(), decoded.toString());
+
+            for (final FetchDirectiveKind kind : FetchDirectiveKind.values()) {
+                final SourceExpressionDirective expected = policy.getFetchDirective(kind).orElse(null);
+                final SourceExpressionDirective actual = decoded.getFetchDirective(kind).orElse(null);
+                if (expected == null) {
+                    assertEquals(null, actual);
+                }
+                else {
+                    assertEquals(expected.getHosts(), actual.getHosts(), policy::toString);
+                    assertEquals(expected.getSchemes(), actual.getSchemes(), policy::toString);
+                    assertEquals(expected.getNonces(), actual.getNonces(), policy::toString);
+                    assertEquals(expected.getHashes(), actual.getHashes(), policy::toString);
+                }
+            }
+
+            for (final URLWithScheme origin : CompiledPolicyTest.ORIGINS) {
+                for (final URLWithScheme url : CompiledPolicyTest.URLS) {
+                    for (final Destination destination : Destination.values()) {
+                        request.reset().setDestination(destination).setOrigin(origin).setUrl(url)
+                                .setNonce("abc").setSource("alert(1)");
+                        assertEquals(policy.check(request), decoded.check(request),
+                            () -> destination + " " + policy);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void roundTripList() throws Exception {
+        for (final String serialized : PolicyTokenizerTest.readCorpus()) {
+            final PolicyList list = Policy.parseSerializedCSPList(serialized, Policy.PolicyListErrorConsumer.ignored);
+            final byte[] encoded = PolicyCodec.encode(list);
+
+            final PolicyList heap = PolicyCodec.decodePolicyList(ByteBuffer.wrap(encoded));
+            assertEquals(list.toString(), heap.toString());
+
+            // a direct buffer, starting in the middle
+            final ByteBuffer direct = ByteBuffer.allocateDirect(encoded.length + 3);
+            direct.put(new byte[] {1, 2, 3}).put(encoded).flip().position(3);
+            assertEquals(list.toString(), PolicyCodec.decodePolicyList(direct).toString());
+            assertFalse(direct.hasRemaining());
+
+            final PolicyList lazy = Policy.parseSerializedCSPListLazily(serialized,
+                    Policy.PolicyListErrorConsumer.ignored);
+            assertTrue(Arrays.equals(encoded, PolicyCodec.encode(lazy)));
+        }
+    }
+
+    @Test
+    public void preserved() {
+        final String serialized = "Script-Src 'SELF' 'nonce-abc' HTTPS://Example.com:443 'nonce-a'; "
+                + "frame-ancestors 'none' https:; sandbox allow-scripts ALLOW-FORMS; x-unknown a b; "
+                + "default-src; upgrade-insecure-requests";
+        final Policy policy = Policy.parseSerializedCSP(serialized, Policy.PolicyErrorConsumer.ignored, true);
+        final Policy decoded = PolicyCodec.decodePolicy(ByteBuffer.wrap(PolicyCodec.encode(policy)));
+        assertEquals(serialized, decoded.toString());
+        assertTrue(decoded.deliveredViaMeta());
+        assertTrue(decoded.upgradeInsecureRequests());
+        assertTrue(decoded.sandbox().isPresent());
+
+        // duplicates are dropped as when parsing, whether the value is the same or not
+        final Policy duplicates = Policy.parseSerializedCSP("img-src https://b.com:443 a.com A.com a.com "
+                + "https://b.com 'nonce-a' 'nonce-a' data: DATA: [::1] [::1]:*", Policy.PolicyErrorConsumer.ignored);
+        final SourceExpressionDirective expected = duplicates.getFetchDirective(FetchDirectiveKind.ImgSrc).get();
+        final SourceExpressionDirective actual = PolicyCodec.decodePolicy(ByteBuffer.wrap(
+                PolicyCodec.encode(duplicates))).getFetchDirective(FetchDirectiveKind.ImgSrc).get();
+        assertEquals(expected.getValues(), actual.getValues());
+        assertEquals(expected.getHosts(), actual.getHosts());
+        assertEquals(expected.getSchemes(), actual.getSchemes());
+        assertEquals(expected.getNonces(), actual.getNonces());
+
+        final Policy typical = Policy.parseSerializedCSP("default-src 'self'; script-src 'self' 'nonce-abc' "
+                + "https://cdn.example.com; img-src 'self' data: https://*.example.com; frame-ancestors 'none'",
+                ThrowIfPolicyError);
+        assertTrue(PolicyCodec.encode(typical).length < typical.toString().length());
+    }
+
+    @Test
+    public void invalid() {
+        final byte[] encoded = PolicyCodec.encode(Policy.parseSerializedCSP("script-src 'self' https://a.com",
+                ThrowIfPolicyError));
+        for (int length = 0; length < encoded.length; length++) {
+            final ByteBuffer truncated = ByteBuffer.wrap(encoded, 0, length);
+            assertThrows(IllegalArgumentException.class, () -> PolicyCodec.decodePolicy(truncated));
+        }
+
+        final byte[] version = encoded.clone();
+        version[3] = PolicyCodec.VERSION + 1;
+        assertThrows(IllegalArgumentException.class, () -> PolicyCodec.decodePolicy(ByteBuffer.wrap(version)));
+
+        final byte[] text = "script-src 'self'".getBytes(StandardCharsets.US_ASCII);
+        assertThrows(IllegalArgumentException.class, () -> PolicyCodec.decodePolicy(ByteBuffer.wrap(text)));
+
+        final byte[] list = PolicyCodec.encode(Policy.parseSerializedCSPList("img-src 'self', script-src 'none'",
+                ThrowIfPolicyListError));
+        assertThrows(IllegalArgumentException.class, () -> PolicyCodec.decodePolicy(ByteBuffer.wrap(list)));
+        assertEquals(2, PolicyCodec.decodePolicyList(ByteBuffer.wrap(list)).size());
+    }
+
+    @Test
+    public void valueTypeNotAllowed() {
+        // a nonce or hash in frame-ancestors, which keeps schemes and hosts only
+        assertEquals("frame-ancestors https://example.com",
+                decode(crafted("frame-ancestors", HOST, "https://example.com")).toString());
+        assertThrows(IllegalArgumentException.class, () -> decode(crafted("frame-ancestors", NONCE, "'nonce-abc'")));
+        assertThrows(IllegalArgumentException.class, () -> decode(crafted("frame-ancestors", HASH, "'sha256-abc'")));
+
+        // a host in a directive that keeps text only
+        assertThrows(IllegalArgumentException.class, () -> decode(crafted("report-to", HOST, "example.com")));
+    }
+
+    @Test
+    public void malformedValues() {
+        final String hash = "'sha256-n4bQgYhMfWWaL+qgxVrQFaO/TxsrC4Is0V1sFbDwCgg='";
+        final Policy decoded = decode(crafted("script-src", NONCE, "'nonce-abc'", HASH, hash,
+                SCHEME, "https:", HOST, "https://a.example.com:8443/p"));
+        final Policy parsed = Policy.parseSerializedCSP(decoded.toString(), ThrowIfPolicyError);
+        assertEquals("script-src 'nonce-abc' " + hash + " https: https://a.example.com:8443/p", decoded.toString());
+        final SourceExpressionDirective expected = parsed.getFetchDirective(FetchDirectiveKind.ScriptSrc).get();
+        final SourceExpressionDirective actual = decoded.getFetchDirective(FetchDirectiveKind.ScriptSrc).get();
+        assertEquals(expected.getNonces(), actual.getNonces());
+        assertEquals(expected.getHashes(), actual.getHashes());
+        assertEquals(expected.getSchemes(), actual.getSchemes());
+        assertEquals(expected.getHosts(), actual.getHosts());
+
+        final Object[] malformed = {
+            TEXT, "a b", TEXT, "", TEXT, "a;b",
+            // the parser does not create these values from the text
+            NONCE, "'nonce-!'", NONCE, "'NONCE-abc'", NONCE, "'nonce-a b'", NONCE, "'nonce-", NONCE, "'",
+            HASH, "'sha384-abc'", HASH, "'sha256-'", HASH, "'sha256-!'", HASH, "sha256-abc'",
+            SCHEME, "HTTPS:", SCHEME, "https", SCHEME, "'self':",
+            // a keyword, upper case, a default port that is not serialized and a port out of range
+            HOST, "'unsafe-inline'", HOST, "EXAMPLE.com", HOST, "HTTPS://example.com", HOST, "https://a.com:443",
+            HOST, "a.b:99999999999", HOST, "*", HOST, "a.b/p q",
+        };
+        for (int i = 0; i < malformed.length; i += 2) {
+            final byte[] encoded = crafted("script-src", malformed[i], malformed[i + 1]);
+            assertThrows(IllegalArgumentException.class, () -> decode(encoded), (String) malformed[i + 1]);
+        }
+    }
+
+    private static Policy decode(final byte[] encoded) {
+        return PolicyCodec.decodePolicy(ByteBuffer.wrap(encoded));
+    }
+
+    // the encoding of a policy with a single directive holding values with the given type tags and texts
+    private static byte[] crafted(final String name, final Object... tagsAndTexts) {
+        final byte[] encoded = PolicyCodec.encode(Policy.parseSerializedCSP(name + " a.b", ThrowIfPolicyError));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // the value count, the tag, the length of the text and "a.b" end the encoding
+        out.write(encoded, 0, encoded.length - 6);
+        out.write(tagsAndTexts.length / 2);
+        for (int i = 0; i < tagsAndTexts.length; i += 2) {
+            final int tag = (Integer) tagsAndTexts[i];
+            final String text = (String) tagsAndTexts[i + 1];
+            out.write(tag);
+            if (tag == HASH) {
+                // SHA256
+                out.write(0);
+            }
+            out.write(text.length());
+            out.writeBytes(text.getBytes(StandardCharsets.US_ASCII));
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import org.htmlunit.csp.CheckRequest.Destination;
+import org.htmlunit.csp.url.URI;
+import org.htmlunit.csp.url.URLWithScheme;
+import org.junit.jupiter.api.Test;
+
+public class PolicyListTest extends TestBase {
+
+    private static final String[] MERGEABLE = {
+        "img-src https://example.com 'self'; script-src 'nonce-abc' 'self'",
+        "img-src https://example.com 'self' https://cdn.example.com; script-src 'self'",
+        "img-src 'self' https://example.com",
+        "default-src 'none'",
+        "default-src https:; frame-ancestors 'self'",
+        "frame-ancestors 'self' https://parent.example; form-action https://forms.example",
+        "navigate-to 'self' 'unsafe-allow-redirects'; sandbox allow-scripts",
+        "sandbox allow-forms; script-src 'strict-dynamic' 'nonce-abc'",
+        "style-src 'unsafe-inline' https://cdn.example.com; connect-src 'self' wss://secure.example",
+        "connect-src 'self'; img-src *",
+        "script-src 'unsafe-inline' 'sha256-n4bQgYhMfWWaL+qgxVrQFaO/TxsrC4Is0V1sFbDwCgg='",
+        "report-uri /csp",
+    };
+
+    @Test
+    public void allPoliciesEnforced() throws Exception {
+        final List<Policy> policies = CompiledPolicyTest.policies();
+        for (int i = 0; i + 2 < policies.size(); i += 3) {
+            final List<Policy> members = policies.subList(i, i + 3);
+            final PolicyList list = new PolicyList(members);
+            for (final URLWithScheme origin : CompiledPolicyTest.ORIGINS) {
+                final Optional<URLWithScheme> o = Optional.of(origin);
+                for (final URLWithScheme url : CompiledPolicyTest.URLS) {
+                    final Optional<URLWithScheme> u = Optional.of(url);
+                    boolean image = true;
+                    boolean script = true;
+                    boolean navigation = true;
+                    boolean formAction = true;
+                    boolean ancestor = true;
+                    for (final Policy policy : members) {
+                        image &= policy.allowsImage(u, o);
+                        script &= policy.allowsExternalScript(Optional.of("abc"), Optional.empty(), u,
+                                Optional.empty(), o);
+                        navigation &= policy.allowsNavigation(u, Optional.empty(), Optional.empty(), o);
+                        formAction &= policy.allowsFormAction(u, Optional.empty(), Optional.empty(), o);
+                        ancestor &= policy.allowsFrameAncestor(u, o);
+                    }
+                    assertEquals(image, list.allowsImage(u, o), list::toString);
+                    assertEquals(script, list.allowsExternalScript(Optional.of("abc"), Optional.empty(), u,
+                            Optional.empty(), o), list::toString);
+                    assertEquals(navigation, list.allowsNavigation(u, Optional.empty(), Optional.empty(), o),
+                            list::toString);
+                    assertEquals(formAction, list.allowsFormAction(u, Optional.empty(), Optional.empty(), o),
+                            list::toString);
+                    assertEquals(ancestor, list.allowsFrameAncestor(u, o), list::toString);
+
+                    final CheckRequest request = new CheckRequest(Destination.Image).setUrl(url).setOrigin(origin);
+                    final int blocking = list.indexOfBlockingPolicy(request);
+                    assertEquals(image, blocking < 0);
+                    if (blocking >= 0) {
+                        assertFalse(list.getPolicy(blocking).check(request));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void mergedSameAnswers() throws Exception {
+        final List<URLWithScheme> urls = new ArrayList<>(CompiledPolicyTest.URLS);
+        urls.add(null);
+        final List<String> sources = Arrays.asList(null, "alert(1)", "x");
+        final List<String> nonces = Arrays.asList(null, "abc");
+        final CheckRequest request = new CheckRequest();
+        for (final String first : MERGEABLE) {
+            for (final String second : MERGEABLE) {
+                final PolicyList list = Policy.parseSerializedCSPList(first + ", " + second + ", " + first,
+                        Policy.PolicyListErrorConsumer.ignored).merge();
+                for (final Destination destination : Destination.values()) {
+                    assertTrue(list.getEvaluationCount(destination) <= 2, list::toString);
+                    for (final URLWithScheme origin : CompiledPolicyTest.ORIGINS) {
+                        for (final URLWithScheme url : urls) {
+                            for (final String source : sources) {
+                                for (final String nonce : nonces) {
+                                    request.reset().setDestination(destination).setOrigin(origin).setUrl(url)
+                                            .setSource(source).setNonce(nonce).setParserInserted(nonce == null);
+                                    boolean allowed = true;
+                                    for (int i = 0; i < list.size(); i++) {
+                                        allowed &= list.getPolicy(i).check(request);
+                                    }
+                                    assertEquals(allowed, list.check(request), () -> destination + " " + list);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void mergedEvaluationCount() {
+        final PolicyList list = Policy.parseSerializedCSPList("default-src 'self' https://cdn.example.com;"
+                + " img-src 'self' https://img.example.com; frame-ancestors 'none',"
+                + " img-src 'self' https://img.example.com https://other.example.com; report-uri /csp,"
+                + " script-src 'nonce-abc' 'strict-dynamic', script-src 'nonce-xyz', upgrade-insecure-requests",
+                Policy.PolicyListErrorConsumer.ignored);
+        assertEquals(5, list.size());
+        // the second img-src allows everything the first one does
+        assertEquals(1, list.getEvaluationCount(Destination.Image));
+        assertEquals(1, list.getEvaluationCount(Destination.Font));
+        assertEquals(1, list.getEvaluationCount(Destination.FrameAncestor));
+        assertEquals(0, list.getEvaluationCount(Destination.Navigation));
+        // nonces cannot be merged
+        assertEquals(3, list.getEvaluationCount(Destination.Script));
+        assertEquals(3, list.getEvaluationCount(Destination.InlineScript));
+        assertEquals(1, list.getEvaluationCount(Destination.Style));
+    }
+
+    @Test
+    public void blockingPolicyFirst() {
+        final PolicyList list = Policy.parseSerializedCSPList(
+                "img-src https://a.com, script-src 'self', default-src 'none', sandbox allow-forms",
+                ThrowIfPolicyListError);
+        assertEquals(4, list.size());
+        final URLWithScheme url = URI.parseURI("https://b.com/x").orElse(null);
+        final URLWithScheme origin = URI.parseURI("https://a.com").orElse(null);
+
+        // img-src and default-src 'none' both block, the 'none' is tried first
+        assertEquals(2, list.indexOfBlockingPolicy(new CheckRequest(Destination.Image).setUrl(url)));
+        // policies that are equally likely to block keep their order
+        assertEquals(2, list.indexOfBlockingPolicy(new CheckRequest(Destination.InlineScript)));
+        // the sandbox blocks scripts before any source list is looked at
+        final PolicyList sandboxed = Policy.parseSerializedCSPList("script-src 'self', sandbox",
+                ThrowIfPolicyListError);
+        assertEquals(1, sandboxed.indexOfBlockingPolicy(new CheckRequest(Destination.InlineScript)));
+        assertEquals(-1, sandboxed.indexOfBlockingPolicy(new CheckRequest(Destination.Image).setUrl(url)));
+        assertEquals(2, list.indexOfBlockingPolicy(new CheckRequest(Destination.Style).setUrl(url)));
+        assertEquals(-1, list.indexOfBlockingPolicy(new CheckRequest(Destination.Navigation).setUrl(url)));
+        assertFalse(list.allowsImage(Optional.of(origin), Optional.of(origin)));
+        assertFalse(list.allowsEval());
+        assertTrue(list.allowsPlugin(Optional.empty()));
+
+        final PolicyList lazy = Policy.parseSerializedCSPListLazily(list.toString(), ThrowIfPolicyListError);
+        assertEquals(2, lazy.indexOfBlockingPolicy(new CheckRequest(Destination.Image).setUrl(url)));
+
+        final PolicyList empty = new PolicyList(List.of());
+        assertTrue(empty.allowsImage(Optional.of(url), Optional.of(origin)));
+        assertEquals(-1, empty.indexOfBlockingPolicy(new CheckRequest(Destination.Script)));
+        assertThrows(IllegalArgumentException.class, () -> list.check(new CheckRequest()));
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class PolicyTokenizerTest extends TestBase {
+
+    @Test
+    public void emptyInput() {
+        assertEquals(0, PolicyTokenizer.tokenizePolicy("").getPolicyCount());
+        assertEquals(0, PolicyTokenizer.tokenizePolicy(" ; \t;;").getPolicyCount());
+        assertEquals(0, PolicyTokenizer.tokenizeList(" , ;,").getPolicyCount());
+    }
+
+    @Test
+    public void offsets() {
+        final PolicyTokenizer tokenizer = PolicyTokenizer.tokenizePolicy("  script-src  a\tb ;;img-src");
+        assertEquals(1, tokenizer.getPolicyCount());
+        assertEquals(2, tokenizer.getDirectiveCount(0));
+
+        assertEquals(0, tokenizer.getDirectiveIndex(0));
+        assertEquals(2, tokenizer.getNameStart(0));
+        assertEquals(12, tokenizer.getNameEnd(0));
+        assertEquals("script-src", tokenizer.getName(0));
+        assertEquals(2, tokenizer.getValueCount(0));
+        assertEquals(14, tokenizer.getValueStart(0, 0));
+        assertEquals(15, tokenizer.getValueEnd(0, 0));
+        assertEquals(Arrays.asList("a", "b"), tokenizer.getValues(0));
+
+        // the empty segment between the semicolons still counts
+        assertEquals(2, tokenizer.getDirectiveIndex(1));
+        assertEquals("img-src", tokenizer.getName(1));
+        assertEquals(0, tokenizer.getValueCount(1));
+    }
+
+    @Test
+    public void listIndices() {
+        final PolicyTokenizer tokenizer = PolicyTokenizer.tokenizeList(", a;b c,; ,d");
+        assertEquals(2, tokenizer.getPolicyCount());
+
+        assertEquals(1, tokenizer.getPolicyIndex(0));
+        assertEquals(2, tokenizer.getDirectiveCount(0));
+        assertEquals("a", tokenizer.getName(tokenizer.getFirstDirective(0)));
+        assertEquals(1, tokenizer.getDirectiveIndex(tokenizer.getFirstDirective(0) + 1));
+
+        assertEquals(3, tokenizer.getPolicyIndex(1));
+        assertEquals(1, tokenizer.getDirectiveCount(1));
+        assertEquals("d", tokenizer.getName(tokenizer.getFirstDirective(1)));
+        assertEquals(0, tokenizer.getDirectiveIndex(tokenizer.getFirstDirective(1)));
+    }
+
+    @Test
+    public void commas() {
+        final IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> PolicyTokenizer.tokenizePolicy("a ,b"));
+        assertEquals("Serialized CSPs cannot contain commas - you may have wanted parseSerializedCSPList",
+                e.getMessage());
+    }
+
+    @Test
+    public void nonAsciiIsReportedBeforeCommas() {
+        final IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> PolicyTokenizer.tokenizePolicy("a, b \u00e9"));
+        assertEquals("string is not ascii: \"a, b \u00e9\"", e.getMessage());
+
+        assertThrows(IllegalArgumentException.class, () -> PolicyTokenizer.tokenizeList("a, b \u00e9"));
+        assertThrows(IllegalArgumentException.class, () -> Policy.parseSerializedCSPList("\u0080", null));
+    }
+
+    @Test
+    public void matchesSplitBasedParsingOnCorpus() throws IOException {
+        for (final String policy : readCorpus()) {
+            assertEquals(splitReference(policy), tokenizerResult(PolicyTokenizer.tokenizeList(policy)), policy);
+        }
+    }
+
+    private static List<String> tokenizerResult(final PolicyTokenizer tokenizer) {
+        final List<String> result = new ArrayList<>();
+        for (int p = 0; p < tokenizer.getPolicyCount(); p++) {
+            final int first = tokenizer.getFirstDirective(p);
+            for (int d = first; d < first + tokenizer.getDirectiveCount(p); d++) {
+                result.add(tokenizer.getPolicyIndex(p) + "/" + tokenizer.getDirectiveIndex(d)
+                        + " " + tokenizer.getName(d) + " " + tokenizer.getValues(d));
+            }
+        }
+        return result;
+    }
+
+    private static List<String> splitReference(final String serialized) {
+        final List<String> result = new ArrayList<>();
+        final String[] policies = serialized.split(",");
+        for (int p = 0; p < policies.length; p++) {
+            final String[] directives = policies[p].split(";");
+            for (int d = 0; d < directives.length; d++) {
+                final String trimmed = Utils.trimAsciiWhitespace(directives[d]);
+                if (trimmed.isEmpty()) {
+                    continue;
+                }
+                final String name = Utils.extractLeadingToken(trimmed);
+                result.add(p + "/" + d + " " + name + " "
+                        + Utils.splitOnAsciiWhitespace(trimmed.substring(name.length())));
+            }
+        }
+        return result;
+    }
+
+    static List<String> readCorpus() throws IOException {
+        final List<String> policies = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                PolicyTokenizerTest.class.getResourceAsStream("/csp.txt"), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int colon = line.indexOf(':');
+                if (colon != -1 && StandardCharsets.US_ASCII.newEncoder().canEncode(line)) {
+                    policies.add(line.substring(colon + 1));
+                }
+            }
+        }
+        return policies;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2023-2026 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.csp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.htmlunit.csp.Policy.Severity;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares {@link PolicyValidator} with the diagnostics of the full parse.
+ */
+public class PolicyValidatorTest extends TestBase {
+
+    private static final String[] NAMES = {
+        "script-src", "SCRIPT-SRC", "default-src", "prefetch-src", "style-src-attr", "base-uri", "form-action",
+        "navigate-to", "frame-ancestors", "plugin-types", "report-to", "report-uri", "referrer", "sandbox",
+        "trusted-types", "require-trusted-types-for", "block-all-mixed-content", "upgrade-insecure-requests",
+        "foo", "Bad_Name", "x!",
+    };
+
+    private static final String[] VALUES = {
+        "'self'", "'SELF'", "'none'", "*", "'unsafe-inline'", "'unsafe-eval'", "'strict-dynamic'",
+        "'unsafe-hashes'", "'wasm-unsafe-eval'", "'report-sample'", "'unsafe-allow-redirects'",
+        "'unsafe-redirect'", "'unsafe-hashed-attributes'", "self", "none", "'nonce-abc'", "'NONCE-abc'",
+        "'nonce-ABC'", "'nonce-!'", "'nonce-'", "'sha256-abc'", "'SHA256-abc'", "'sha384-abc'", "'sha512_ab'",
+        "'sha256-ab_c'", "'sha25'", "'sha999-abc'", "'sha256-!'", "https:", "HTTPS:", "data:", "example.com",
+        "EXAMPLE.com", "*.example.com", "https://example.com", "https://example.com:443", "https://a.b:0443",
+        "a.b:*", "a.b:99999999999", "a.b/path", "a.b/Path", "a.b/path?q", "https://*", "a.b:80/", "'bogus'", "%",
+        "text/plain", "TEXT/Plain", "*/plain", "text/*", "text", "allow-forms", "ALLOW-FORMS", "allow-scripts",
+        "'allow-forms'", "'script'", "'SCRIPT'", "script", "'allow-duplicates'", "policy-1", "policy-1",
+        "Policy-1", "'", "bad!name", "endpoint", "https://r.example/report",
+    };
+
+    private static List<String> inputs() throws Exception {
+        final List<String> inputs = new ArrayList<>(PolicyTokenizerTest.readCorpus());
+        final Random random = new Random(7);
+        for (int i = 0; i < 5_000; i++) {
+            final StringBuilder sb = new StringBuilder();
+            final int directives = random.nextInt(6);
+            for (int d = 0; d < directives; d++) {
+                if (d > 0) {
+                    sb.append(random.nextInt(8) == 0 ? ", " : "; ");
+                }
+                if (random.nextInt(10) == 0) {
+                    continue;
+                }
+                sb.append(NAMES[random.nextInt(NAMES.length)]);
+                final int values = random.nextInt(5);
+                for (int v = 0; v < values; v++) {
+                    sb.append(random.nextBoolean() ? " " : "\t ").append(VALUES[random.nextInt(VALUES.length)]);
+                }
+            }
+            inputs.add(sb.toString());
+        }
+        return inputs;
+    }
+
+    private static List<PolicyListError> parse(final String serialized) {
+        final List<PolicyListError> errors = new ArrayList<>();
+        Policy.parseSerializedCSPList(serialized, (severity, message, policyIndex, directiveIndex, valueIndex)
+                -> errors.add(e(severity, message, policyIndex, directiveIndex, valueIndex)));
+        return errors;
+    }
+
+    @Test
+    public void sameDiagnosticsAsParser() throws Exception {
+        final PolicyValidator validator = new PolicyValidator();
+        for (final String serialized : inputs()) {
+            final List<PolicyListError> expected;
+            try {
+                expected = parse(serialized);
+            }
+            catch (final RuntimeException e) {
+                // the parser fails on a few malformed hashes and huge ports, so has to the validator
+                assertThrows(e.getClass(), () -> validator.validateSerializedCSPList(serialized), serialized);
+                continue;
+            }
+
+            final DiagnosticCollector diagnostics = new DiagnosticCollector();
+            final Severity maxSeverity = validator.validateSerializedCSPList(serialized, diagnostics);
+            final List<PolicyListError> actual = new ArrayList<>();
+            diagnostics.replay((severity, message, policyIndex, directiveIndex, valueIndex)
+                    -> actual.add(e(severity, message, policyIndex, directiveIndex, valueIndex)));
+            assertEquals(expected, actual, serialized);
+            assertEquals(diagnostics.getMaxSeverity(), maxSeverity, serialized);
+
+            // the summary does not depend on the consumer
+            assertEquals(maxSeverity, validator.validateSerializedCSPList(serialized), serialized);
+            for (final DiagnosticCode code : DiagnosticCode.values()) {
+                assertEquals(diagnostics.count(code), validator.getCount(code), serialized);
+            }
+            for (final Severity severity : Severity.values()) {
+                assertEquals(diagnostics.count(severity), validator.getCount(severity), serialized);
+            }
+        }
+    }
+
+    @Test
+    public void sameDiagnosticsAsParserForSinglePolicies() throws Exception {
+        final PolicyValidator validator = new PolicyValidator();
+        for (final String serialized : inputs()) {
+            if (serialized.indexOf(',') != -1) {
+                continue;
+            }
+            for (final boolean deliveredViaMeta : new boolean[] {false, true}) {
+                final List<PolicyError> expected = new ArrayList<>();
+                try {
+                    Policy.parseSerializedCSP(serialized, (severity, message, directiveIndex, valueIndex)
+                            -> expected.add(e(severity, message, directiveIndex, valueIndex)), deliveredViaMeta);
+                }
+                catch (final RuntimeException e) {
+                    assertThrows(e.getClass(), () -> validator.validateSerializedCSP(serialized, deliveredViaMeta,
+                            (severity, message, directiveIndex, valueIndex) -> { }), serialized);
+                    continue;
+                }
+
+                final List<PolicyError> actual = new ArrayList<>();
+                validator.validateSerializedCSP(serialized, deliveredViaMeta,
+                        (severity, message, directiveIndex, valueIndex)
+                                -> actual.add(e(severity, message, directiveIndex, valueIndex)));
+                assertEquals(expected, actual, serialized);
+            }
+        }
+    }
+
+    @Test
+    public void summary() {
+        final PolicyValidator validator = new PolicyValidator();
+        assertEquals(Severity.Error, validator.validateSerializedCSPList(
+                "script-src 'self' 'self' 'nonce-!'; foo, img-src; img-src *"));
+        assertEquals(1, validator.getCount(DiagnosticCode.DuplicateSourceExpression));
+        assertEquals(1, validator.getCount(DiagnosticCode.UnrecognizedNonce));
+        assertEquals(1, validator.getCount(DiagnosticCode.UnrecognizedDirective));
+        assertEquals(1, validator.getCount(DiagnosticCode.EmptySourceList));
+        assertEquals(1, validator.getCount(DiagnosticCode.DuplicateDirective));
+        assertEquals(2, validator.getCount(Severity.Error));
+        assertEquals(3, validator.getCount(Severity.Warning));
+        assertEquals(Severity.Error, validator.getMaxSeverity());
+
+        assertNull(validator.validateSerializedCSPList("default-src 'self'; script-src 'nonce-abc'"));
+        assertNull(validator.getMaxSeverity());
+        assertEquals(0, validator.getCount(DiagnosticCode.DuplicateSourceExpression));
+
+        final byte[] bytes = "report-uri /a /a".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(Severity.Warning, validator.validateSerializedCSPList(bytes, 0, bytes.length));
+        assertEquals(1, validator.getCount(DiagnosticCode.DuplicateReportUri));
+        assertEquals(Severity.Warning, validator.validateSerializedCSPList(ByteBuffer.wrap(bytes)));
+    }
+
+    @Test
+    public void rejectsLikeParser() {
+        final PolicyValidator validator = new PolicyValidator();
+        final IllegalArgumentException nonAscii = assertThrows(IllegalArgumentException.class,
+                () -> validator.validateSerializedCSPList("script-src https://\u00e9.example"));
+        assertEquals("string is not ascii: \"script-src https://\u00e9.example\"", nonAscii.getMessage());
+
+        final IllegalArgumentException comma = assertThrows(IllegalArgumentException.class,
+                () -> validator.validateSerializedCSP("script-src a, b", false));
+        assertEquals("Serialized CSPs cannot contain commas - you may have wanted parseSerializedCSPList",
+                comma.getMessage());
+
+        // the parser fails on ports that do not fit into an int
+        assertThrows(NumberFormatException.class,
+                () -> Policy.parseSerializedCSPList("script-src a.b:99999999999", ThrowIfPolicyListError));
+        assertThrows(NumberFormatException.class,
+                () -> validator.validateSerializedCSPList("script-src a.b:99999999999"));
+
+        // nothing is reported before the input is rejected
+        assertThrows(IllegalArgumentException.class,
+                () -> validator.validateSerializedCSPList("foo; \u00e9", ThrowIfPolicyListError));
+    }
+}
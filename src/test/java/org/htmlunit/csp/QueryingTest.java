@@ -14,15 +14,27 @@
  */
 package org.htmlunit.csp;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Optional;
 
+import org.htmlunit.csp.CheckRequest.Destination;
 import org.htmlunit.csp.Policy.PolicyErrorConsumer;
+import org.htmlunit.csp.directive.SourceExpressionDirective;
+import org.htmlunit.csp.internal.HostKind;
+import org.htmlunit.csp.internal.PathSegments;
 import org.htmlunit.csp.url.GUID;
 import org.htmlunit.csp.url.URI;
 import org.htmlunit.csp.url.URLWithScheme;
+import org.htmlunit.csp.value.Host;
 import org.htmlunit.csp.value.MediaType;
 import org.junit.jupiter.api.Test;
 
@@ -345,6 +357,27 @@ public void allowsNonce() {
         assertFalse(p.allowsExternalStyle(Optional.of(""), Optional.empty(), Optional.empty()));
     }
 
+    @Test
+    public void matchesNonce() {
+        final StringBuilder policy = new StringBuilder("script-src");
+        for (int i = 0; i < 100; i++) {
+            policy.append(" 'nonce-n").append(i).append("'");
+        }
+        final SourceExpressionDirective directive =
+                parse(policy.toString()).getFetchDirective(FetchDirectiveKind.ScriptSrc).orElseThrow();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(directive.matchesNonce("n" + i));
+            assertTrue(directive.matchesNonce(new StringBuilder("n").append(i)));
+        }
+        assertFalse(directive.matchesNonce("n100"));
+        assertFalse(directive.matchesNonce("N1"));
+        assertFalse(directive.matchesNonce("n1 "));
+        assertFalse(directive.matchesNonce(""));
+
+        assertFalse(parse("script-src 'self'").getFetchDirective(FetchDirectiveKind.ScriptSrc).orElseThrow()
+                .matchesNonce("n1"));
+    }
+
     @Test
     public void allowsScriptAttributeWithHash() {
         Policy p;
@@ -1260,6 +1293,223 @@ public void navigateToWithRedirects() {
         assertFalse(p.allowsFormAction(Optional.of(URI.parseURI("http://example2.com/").orElse(null)), Optional.of(true), Optional.empty(), Optional.empty()));
     }
 
+    @Test
+    public void paths() {
+        PolicyInOrigin p;
+
+        p = parse("script-src https://cdn.example.com/js/", "https://example.com");
+        assertTrue(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/js/").orElse(null)));
+        assertTrue(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/js/app.js").orElse(null)));
+        assertTrue(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/js/lib/app.js").orElse(null)));
+        assertTrue(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/%6As/app.js").orElse(null)));
+        assertFalse(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/js").orElse(null)));
+        assertFalse(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/jsx/app.js").orElse(null)));
+        assertFalse(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/JS/app.js").orElse(null)));
+        assertFalse(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/").orElse(null)));
+        assertFalse(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com").orElse(null)));
+
+        p = parse("script-src https://cdn.example.com/js/app.js", "https://example.com");
+        assertTrue(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/js/app.js").orElse(null)));
+        assertTrue(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/js/app%2Ejs").orElse(null)));
+        assertFalse(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/js/app.js/").orElse(null)));
+        assertFalse(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/js/app.jsx").orElse(null)));
+        assertFalse(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/js/").orElse(null)));
+        assertFalse(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/js%2Fapp.js").orElse(null)));
+
+        p = parse("script-src https://cdn.example.com/", "https://example.com");
+        assertTrue(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com").orElse(null)));
+        assertTrue(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/").orElse(null)));
+        assertTrue(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/app.js").orElse(null)));
+
+        // '+' is not a space in paths
+        p = parse("script-src https://cdn.example.com/a+b.js", "https://example.com");
+        assertTrue(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/a+b.js").orElse(null)));
+        assertTrue(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/a%2Bb.js").orElse(null)));
+        assertFalse(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/a%20b.js").orElse(null)));
+
+        // invalid escapes are compared as they are
+        p = parse("script-src https://cdn.example.com/100%25/", "https://example.com");
+        assertTrue(p.allowsScriptFromSource(new URI("https", "cdn.example.com", 443, "/100%/app.js")));
+        assertTrue(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/100%25/app.js").orElse(null)));
+        assertFalse(p.allowsScriptFromSource(new URI("https", "cdn.example.com", 443, "/100%2/app.js")));
+
+        // decoded segments are compared as UTF-8
+        p = parse("script-src https://cdn.example.com/caf%C3%A9/", "https://example.com");
+        assertTrue(p.allowsScriptFromSource(new URI("https", "cdn.example.com", 443, "/caf\u00e9/app.js")));
+        assertTrue(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/caf%c3%a9/app.js").orElse(null)));
+        assertFalse(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/caf%E9/app.js").orElse(null)));
+        assertFalse(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/cafe/app.js").orElse(null)));
+
+        p = parse("script-src https://cdn.example.com/%F0%9F%98%80", "https://example.com");
+        assertTrue(p.allowsScriptFromSource(new URI("https", "cdn.example.com", 443, "/\ud83d\ude00")));
+        assertFalse(p.allowsScriptFromSource(new URI("https", "cdn.example.com", 443, "/\ud83d")));
+    }
+
+    @Test
+    public void hostMatchDataComputedOnce() {
+        final PolicyInOrigin p = parse("script-src https://cdn.example.com/js/ https://a.example.com 127.0.0.1",
+                "https://example.com");
+        final SourceExpressionDirective scriptSrc = p.getPolicy().getFetchDirective(FetchDirectiveKind.ScriptSrc).orElseThrow();
+        final PathSegments path = Policy.DIRECTIVES.hostPath(scriptSrc, 0);
+        assertTrue(path.matches("/js/app.js"));
+        assertNull(Policy.DIRECTIVES.hostPath(scriptSrc, 1));
+        assertEquals(HostKind.Name, Policy.DIRECTIVES.hostKind(scriptSrc, 0));
+        assertEquals(HostKind.IPv4Loopback, Policy.DIRECTIVES.hostKind(scriptSrc, 2));
+
+        assertTrue(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/js/app.js").orElse(null)));
+        assertFalse(p.allowsScriptFromSource(URI.parseURI("https://cdn.example.com/css/app.css").orElse(null)));
+        assertSame(path, Policy.DIRECTIVES.hostPath(scriptSrc, 0));
+    }
+
+    @Test
+    public void hostKinds() {
+        assertEquals(HostKind.Wildcard, HostKind.of("*"));
+        assertEquals(HostKind.WildcardSuffix, HostKind.of("*.example.com"));
+        assertEquals(HostKind.IPv4Loopback, HostKind.of("127.0.0.1"));
+        assertEquals(HostKind.IPv4, HostKind.of("10.0.0.1"));
+        assertEquals(HostKind.IPv6Loopback, HostKind.of("0:0::1"));
+        assertEquals(HostKind.IPv6, HostKind.of("[2001:db8::1]"));
+        assertEquals(HostKind.Name, HostKind.of("example.com"));
+        assertEquals(HostKind.Name, HostKind.of(Host.parseHost("https://EXAMPLE.com").orElseThrow().host()));
+
+        Host host = Host.parseHost("*.example.com").orElseThrow();
+        assertTrue(hostPartMatches(host, "a.example.com"));
+        assertTrue(hostPartMatches(host, "a.b.EXAMPLE.com"));
+        assertFalse(hostPartMatches(host, "example.com"));
+        assertFalse(hostPartMatches(host, "aexample.com"));
+        assertFalse(hostPartMatches(host, "a.example.co"));
+        assertTrue(hostPartMatches(host, "\u00e9.example.com"));
+        // U+212A KELVIN SIGN lowercases to 'k'
+        assertTrue(hostPartMatches(Host.parseHost("*.kelvin.example").orElseThrow(), "a.\u212Aelvin.example"));
+
+        host = Host.parseHost("example.com").orElseThrow();
+        assertTrue(hostPartMatches(host, "example.com"));
+        assertTrue(hostPartMatches(host, "Example.COM"));
+        assertFalse(hostPartMatches(host, "a.example.com"));
+
+        assertTrue(hostPartMatches(Host.parseHost("*").orElseThrow(), "example.com"));
+        assertTrue(hostPartMatches(Host.parseHost("127.0.0.1").orElseThrow(), "127.0.0.1"));
+        assertFalse(hostPartMatches(Host.parseHost("10.0.0.1").orElseThrow(), "10.0.0.1"));
+        assertFalse(hostPartMatches(new Host(null, "[::1]", Constants.EMPTY_PORT, null), "[::1]"));
+    }
+
+    private static boolean hostPartMatches(final Host host, final String urlHost) {
+        return HostKind.of(host.host()).matches(host.host(), urlHost);
+    }
+
+    @Test
+    public void memoizedDecisions() {
+        final Policy policy = parse("default-src 'self'; img-src https://img.am; script-src https://cdn.am/js/ 'self';"
+                + " connect-src wss://abc.com; frame-ancestors https://*.abc.com; navigate-to https://nav.am/a");
+        final URLWithScheme origin = URI.parseURI("https://abc.com").orElse(null);
+        final PolicyInOrigin plain = new PolicyInOrigin(policy, origin);
+        final PolicyInOrigin memo = new PolicyInOrigin(policy, origin, 100);
+        assertFalse(plain.isMemoizing());
+        assertTrue(memo.isMemoizing());
+
+        final String[] urls = {
+            "https://abc.com/x", "https://abc.com:443/y", "http://abc.com/", "https://img.am/a.png",
+            "https://img.am:8443/a.png", "https://cdn.am/js/app.js", "https://cdn.am/css/app.css",
+            "https://cdn.am/js/other.js", "wss://abc.com/socket", "ws://abc.com/socket", "https://www.abc.com/",
+            "https://nav.am/a", "https://nav.am/b",
+        };
+        for (int round = 0; round < 2; round++) {
+            for (final String url : urls) {
+                final URLWithScheme u = URI.parseURI(url).orElse(null);
+                assertEquals(plain.allowsScriptFromSource(u), memo.allowsScriptFromSource(u), url);
+                assertEquals(plain.allowsStyleFromSource(u), memo.allowsStyleFromSource(u), url);
+                assertEquals(plain.allowsImageFromSource(u), memo.allowsImageFromSource(u), url);
+                assertEquals(plain.allowsFrameFromSource(u), memo.allowsFrameFromSource(u), url);
+                assertEquals(plain.allowsWorkerFromSource(u), memo.allowsWorkerFromSource(u), url);
+                assertEquals(plain.allowsFontFromSource(u), memo.allowsFontFromSource(u), url);
+                assertEquals(plain.allowsObjectFromSource(u), memo.allowsObjectFromSource(u), url);
+                assertEquals(plain.allowsMediaFromSource(u), memo.allowsMediaFromSource(u), url);
+                assertEquals(plain.allowsManifestFromSource(u), memo.allowsManifestFromSource(u), url);
+                assertEquals(plain.allowsPrefetchFromSource(u), memo.allowsPrefetchFromSource(u), url);
+                assertEquals(plain.allowsConnection(u), memo.allowsConnection(u), url);
+                assertEquals(plain.allowsNavigation(u), memo.allowsNavigation(u), url);
+                assertEquals(plain.allowsFrameAncestor(u), memo.allowsFrameAncestor(u), url);
+                assertEquals(plain.allowsFormAction(u), memo.allowsFormAction(u), url);
+            }
+        }
+        final GUID data = new GUID("data", "image/png;base64,AAAA");
+        assertEquals(plain.allowsImageFromSource(data), memo.allowsImageFromSource(data));
+
+        assertTrue(memo.getMemoHitCount() > 0);
+        assertEquals(0, plain.getMemoHitCount());
+
+        // img-src has no paths, so all paths of a host share a decision; script-src has paths
+        final PolicyInOrigin images = new PolicyInOrigin(policy, origin, 100);
+        images.allowsImageFromSource(URI.parseURI("https://img.am/a.png").orElse(null));
+        images.allowsImageFromSource(URI.parseURI("https://img.am/b.png").orElse(null));
+        images.allowsScriptFromSource(URI.parseURI("https://cdn.am/js/a.js").orElse(null));
+        images.allowsScriptFromSource(URI.parseURI("https://cdn.am/js/b.js").orElse(null));
+        assertEquals(1, images.getMemoHitCount());
+        assertEquals(3, images.getMemoMissCount());
+        assertEquals(3, images.getMemoSize());
+        assertEquals(0.25, images.getMemoHitRate(), 1e-9);
+
+        images.clearMemo();
+        assertEquals(0, images.getMemoSize());
+        assertEquals(1, images.getMemoHitCount());
+
+        assertThrows(IllegalArgumentException.class, () -> new PolicyInOrigin(policy, origin, 0));
+    }
+
+    @Test
+    public void batchDecisions() {
+        final Policy policy = parse("default-src 'self'; img-src https://img.am; script-src https://cdn.am/js/ 'self';"
+                + " connect-src wss://abc.com; frame-ancestors https://*.abc.com; navigate-to https://nav.am/a");
+        final URLWithScheme origin = URI.parseURI("https://abc.com").orElse(null);
+        final Destination[] kinds = {
+            Destination.Script, Destination.Style, Destination.Image, Destination.Font, Destination.Media,
+            Destination.Object, Destination.Frame, Destination.Worker, Destination.Manifest, Destination.Prefetch,
+            Destination.Connection, Destination.Navigation, Destination.FormAction, Destination.FrameAncestor,
+        };
+
+        final List<Destination> destinations = new ArrayList<>();
+        final List<URLWithScheme> urls = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            destinations.add(kinds[i % kinds.length]);
+            urls.add(URI.parseURI("https://h" + (i % 50) + ".abc.com/p" + (i % 7)).orElse(null));
+            destinations.add(kinds[i % kinds.length]);
+            urls.add(URI.parseURI((i % 2 == 0 ? "https://cdn.am/js/" : "https://cdn.am/") + i).orElse(null));
+        }
+        for (final String url : new String[] {"https://abc.com/x", "http://abc.com/", "https://img.am/a.png",
+            "wss://abc.com/socket", "https://nav.am/a", "https://nav.am/b"}) {
+            for (final Destination destination : kinds) {
+                destinations.add(destination);
+                urls.add(URI.parseURI(url).orElse(null));
+            }
+        }
+        destinations.add(Destination.Image);
+        urls.add(new GUID("data", "image/png;base64,AAAA"));
+        destinations.add(Destination.Image);
+        urls.add(null);
+
+        final PolicyInOrigin plain = new PolicyInOrigin(policy, origin);
+        final BitSet expected = new BitSet();
+        for (int i = 0; i < urls.size(); i++) {
+            final CheckRequest request = new CheckRequest(destinations.get(i)).setUrl(urls.get(i)).setOrigin(origin);
+            expected.set(i, policy.check(request));
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, plain.checkAll(destinations, urls, false));
+        assertEquals(expected, plain.checkAll(destinations, urls, true));
+        assertEquals(expected, new PolicyInOrigin(policy, origin, 1000).checkAll(destinations, urls, true));
+        assertEquals(expected.get(0), plain.allowsScriptFromSource(urls.get(0)));
+
+        final List<URLWithScheme> images = urls.subList(0, 10);
+        final BitSet allowedImages = plain.checkAll(Destination.Image, images);
+        for (int i = 0; i < images.size(); i++) {
+            assertEquals(plain.allowsImageFromSource(images.get(i)), allowedImages.get(i));
+        }
+
+        assertTrue(plain.checkAll(List.of(), List.of(), true).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> plain.checkAll(destinations, images, false));
+        assertThrows(IllegalArgumentException.class, () -> plain.checkAll(Destination.InlineScript, images));
+    }
+
     @Test
     public void javascriptUrl() {
         Policy p;